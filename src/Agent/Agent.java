@@ -14,6 +14,8 @@ import Utility.*;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
 /**
  * The Agent class initializes the heads of most objects, bank proxy, display,
  * auctionHouseProxy, NotificationServer, and the AgentProtocol. The agent is
@@ -22,12 +24,29 @@ import java.util.HashMap;
  * program. The Agent handles the displays button eventHandlers and sends out
  * messages accordingly.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (access tokens renewed before bids)
+ * previously modified: 10/18/26 by lb (long secret keys, leaving with a
+ *     token)
+ * previously modified: 10/18/26 by lb (inventories a page at a time)
+ * previously modified: 10/18/26 by lb (joining with access tokens)
+ * previously modified: 10/18/26 by lb (inventory deltas)
+ * previously modified: 10/18/26 by lb (close timestamps on local clock)
+ * previously modified: 10/18/26 by lb (balance requests off the JavaFX thread)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class Agent extends Application {
+    // how long a button waits on the bank before giving up
+    private static final long BANK_TIMEOUT_SECONDS = 5;
+    // how long to wait on a auction house for its whole inventory
+    private static final long AUCTION_TIMEOUT_SECONDS = 5;
+    // how many items to ask a auction house for at a time
+    private static final int PAGE_SIZE = 100;
+    // an access token this close to expiring is renewed before a bid
+    private static final long TOKEN_RENEW_MILLIS =
+            TimeUnit.MINUTES.toMillis(10);
     private int holdPort, holdMyPort;
     private String holdHost, localHost;
     private IDRecord myRecords;
@@ -38,6 +57,8 @@ public class Agent extends Application {
     private BankProxy bankProxy;
     private ArrayList<AuctionItem> waiting;
     private boolean bankFlag;
+    // auction houses already asked for their whole inventory
+    private HashSet<Integer> inventoryRequests = new HashSet<>();
 
     /**
      * initial constructor
@@ -69,6 +90,7 @@ public class Agent extends Application {
      * @param newInventory new auction item list
      */
     public void itemsUpdate(AuctionHouseInventory newInventory) {
+        newInventory.adjustToLocalClock();
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
@@ -77,6 +99,89 @@ public class Agent extends Application {
         });
     }
 
+    /**
+     * Notification of the items that changed in one of the auction houses.
+     * If the delta can't be applied because a earlier one was missed, the
+     * whole inventory is requested from the auction house instead. Called on
+     * the javafx thread.
+     * @param delta the changed items
+     */
+    public void itemsDelta(InventoryDelta delta) {
+        delta.adjustToLocalClock();
+        if(!display.applyInventoryDelta(delta)){
+            requestItems(delta.getAccountNumber());
+        }
+    }
+
+    /**
+     * asks a auction house for its inventory again from the first page (or
+     * all of it, from a auction house without pages) and shows it once it
+     * arrives. Only one request per auction house is made at a time.
+     * @param houseID the auction houses id
+     */
+    private void requestItems(int houseID) {
+        AuctionHouseLink link = auctionHouses.get(houseID);
+        if(link == null || !inventoryRequests.add(houseID)){
+            return;
+        }
+        link.getProxy().getItemsPageAsync(new InventoryPageRequest(PAGE_SIZE),
+                AUCTION_TIMEOUT_SECONDS, TimeUnit.SECONDS).
+                whenComplete((inventory, e) ->
+                Platform.runLater(() -> {
+                    inventoryRequests.remove(houseID);
+                    if(inventory != null) {
+                        display.updateAuctionItems(inventory);
+                    }else{
+                        System.out.println("can't get auction items");
+                    }
+                }));
+    }
+
+    /**
+     * if the access token i joined a auction house with is about to expire,
+     * gets fresh tokens from the bank and sends the auction house the
+     * renewed one, so my bids there keep being accepted.
+     * @param link the auction house i am about to bid at
+     */
+    private void renewAccessToken(AuctionHouseLink link) {
+        AccessToken token = link.getToken();
+        if(token == null || !token.isExpired(
+                System.currentTimeMillis() + TOKEN_RENEW_MILLIS)){
+            return;
+        }
+        bankProxy.getListOfAuctionHouses(myRecords);
+        AccessToken renewed = bankProxy.getAccessToken(
+                link.getId().getNumericalID());
+        if(renewed != null && renewed.getSecretKey() == link.getSecretKey()
+                && renewed.getExpiresAtMillis() > token.getExpiresAtMillis()
+                && link.getProxy().renewAccessToken(renewed)){
+            link.setToken(renewed);
+        }
+    }
+
+    /**
+     * asks a auction house for the next page of its inventory, for when its
+     * tab is scrolled near the end, and gives it to the tab once it arrives.
+     * @param houseID the auction houses id
+     * @param pageToken the page token of the page wanted
+     */
+    private void requestPage(int houseID, long pageToken) {
+        AuctionHouseLink link = auctionHouses.get(houseID);
+        if(link == null){
+            display.addInventoryPage(houseID, null, pageToken);
+            return;
+        }
+        link.getProxy().getItemsPageAsync(
+                new InventoryPageRequest(PAGE_SIZE, pageToken),
+                AUCTION_TIMEOUT_SECONDS, TimeUnit.SECONDS).
+                whenComplete((page, e) -> Platform.runLater(() -> {
+                    if(page == null) {
+                        System.out.println("can't get auction items");
+                    }
+                    display.addInventoryPage(houseID, page, pageToken);
+                }));
+    }
+
     /**
      * displays a notification for when someone has outbid an item you have bid
      * on.
@@ -156,7 +261,7 @@ public class Agent extends Application {
         AgentProtocol protocol = new AgentProtocol(this);
         auctionHouses = new HashMap<>();
         try {
-            NotificationServer notificationserver = new NotificationServer(
+            Runnable notificationserver = NotificationServer.createServer(
                     holdMyPort, protocol);
             Thread t = new Thread(notificationserver);
             t.start();
@@ -219,6 +324,7 @@ public class Agent extends Application {
         display = new Display(stage, myRecords, bid, leaveAuc, leaveBank,
                 getAuction, getBalance, transfer, join,
                 myRecords.getInitialBalance());
+        display.setPageRequester(this::requestPage);
         if(me != null) {
             display.updateLabels(me);
         }else{
@@ -245,7 +351,8 @@ public class Agent extends Application {
                 int id = bid.getHouseID();
                 AuctionHouseLink link = auctionHouses.get(id);
                 AuctionHouseProxy proxy = link.getProxy();
-                int secretKey = link.getSecretKey();
+                renewAccessToken(link);
+                long secretKey = link.getSecretKey();
                 int response = proxy.makeBid(bid, secretKey);
                 if (response == 0) {
                     display.displayNotification("Bid Failed: Bid was " +
@@ -321,7 +428,7 @@ public class Agent extends Application {
             }
             if(!foundPending) {
                 if (link.getProxy().closeRequest(myRecords,
-                        link.getSecretKey())) {
+                        link.getSecretKey(), link.getToken())) {
                     auctionHouses.remove(link.getId().getNumericalID());
                     display.removeCurrentTab();
                 } else {
@@ -340,7 +447,8 @@ public class Agent extends Application {
         * the list.
         */
         getAuction.setOnAction(event -> {
-            ArrayList<IDRecord> auctions = bankProxy.getListOfAuctionHouses();
+            ArrayList<IDRecord> auctions =
+                    bankProxy.getListOfAuctionHouses(myRecords);
             if(auctions != null) {
                 if(!auctions.isEmpty()) {
                     join.setDisable(false);
@@ -358,12 +466,15 @@ public class Agent extends Application {
          * Updates the display with the received info.
         */
         getBalance.setOnAction(event -> {
-            BankAccount info = bankProxy.requestBalance(myRecords);
-            if(info != null) {
-                display.updateLabels(info);
-            }else{
-                display.displayNotification("can't get balance");
-            }
+            bankProxy.requestBalanceAsync(myRecords, BANK_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS).whenComplete((info, e) ->
+                    Platform.runLater(() -> {
+                        if(info != null) {
+                            display.updateLabels(info);
+                        }else{
+                            display.displayNotification("can't get balance");
+                        }
+                    }));
         });
         /*
         * Used to transfer the funds for a purchased item. Gets the item
@@ -395,8 +506,9 @@ public class Agent extends Application {
         * house list from the display. clears the list and makes it so you can't
         * click the button again till the list of auction houses is requested
         * again. Makes sure you aren't already connected to that
-        * auction house. Sets up the auction houses Proxy and asks for a secret
-        * key for the auction house from the bank. creates a new tab for the
+        * auction house. Sets up the auction houses Proxy and uses the access
+        * token the bank sent with the list, only asking the bank for a secret
+        * key if there was no token. creates a new tab for the
         * auction house in the display and sends a join AH message to the
         * auction house. Stores all the information in a auctionHouseLink and
         * adds it to a hashmap.
@@ -412,11 +524,16 @@ public class Agent extends Application {
                     AccountLink link = new AccountLink(
                             myRecords.getNumericalID(),
                             newAuctionHouse.getNumericalID());
-                    int secretKey = bankProxy.getSecretKey(link);
-                    display.addAuctionTab(proxy.joinAH(myRecords, secretKey),
+                    AccessToken token = bankProxy.getAccessToken(
+                            newAuctionHouse.getNumericalID());
+                    long secretKey = token != null ? token.getSecretKey()
+                            : bankProxy.getSecretKey(link);
+                    display.addAuctionTab(proxy.joinAHPage(myRecords,
+                            secretKey, token,
+                            new InventoryPageRequest(PAGE_SIZE)),
                             newAuctionHouse);
                     AuctionHouseLink linkToAuction = new AuctionHouseLink(
-                            newAuctionHouse, secretKey, proxy);
+                            newAuctionHouse, secretKey, token, proxy);
                     auctionHouses.put(newAuctionHouse.getNumericalID(),
                             linkToAuction);
                 }
@@ -5,7 +5,8 @@ import javafx.application.Platform;
 /**
  * Handles messages received by the notification server.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (inventory deltas)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
@@ -44,6 +45,13 @@ public class AgentProtocol implements PublicAuctionProtocol{
                         Message<AuctionItem> item = msgReceived;
                         agent.addTransferItem(item.getMessageContent());
                         break;
+                    case INVENTORY_DELTA:
+                        msgToSend = new Message<>(Message.MessageIdentifier.
+                                ACKNOWLEDGED,
+                                null);
+                        Message<InventoryDelta> delta = msgReceived;
+                        agent.itemsDelta(delta.getMessageContent());
+                        break;
                     case UPDATE_AUCTION_ITEMS:
                         msgToSend = new Message<>(Message.MessageIdentifier.
                                 ACKNOWLEDGED,
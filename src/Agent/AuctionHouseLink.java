@@ -1,19 +1,24 @@
 package Agent;
 
+import Utility.AccessToken;
 import Utility.IDRecord;
 
 /**
  * Stores all the important information the agent will need to know about the
- * Auction houses it connects to.
+ * Auction houses it connects to, including the access token it joined
+ * with, if any, since that token is how the auction house knows it.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (renewed access tokens)
+ * previously modified: 10/18/26 by lb (long secret keys, access token kept)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class AuctionHouseLink {
     private IDRecord id;
-    private int secretKey;
+    private long secretKey;
+    private AccessToken token;
     private AuctionHouseProxy proxy;
 
     /**
@@ -22,12 +27,15 @@ public class AuctionHouseLink {
      * @param id auction houses IDRecord
      * @param secretKey The secret Key the bank provided for interacting with
      *                  the auction house
+     * @param token the access token i joined the auction house with, or null
      * @param proxy the AuctionHouseProxy used to communicate/ send messages to
      *              the Auction House.
      */
-    public AuctionHouseLink(IDRecord id,int secretKey,AuctionHouseProxy proxy){
+    public AuctionHouseLink(IDRecord id,long secretKey,AccessToken token,
+                            AuctionHouseProxy proxy){
         this.id = id;
         this.secretKey = secretKey;
+        this.token = token;
         this.proxy = proxy;
     }
 
@@ -41,7 +49,19 @@ public class AuctionHouseLink {
      * gets the secret key associated with the auction house
      * @return secret key
      */
-    public int getSecretKey(){return secretKey;}
+    public long getSecretKey(){return secretKey;}
+
+    /**
+     * gets the access token i joined the auction house with
+     * @return access token, or null if i joined with a plain secret key
+     */
+    public AccessToken getToken(){return token;}
+
+    /**
+     * sets the access token after the auction house took a renewed one
+     * @param token the renewed access token
+     */
+    public void setToken(AccessToken token){this.token = token;}
 
     /**
      * gets the AuctionHouseProxy used the communicate with the auction house
@@ -3,14 +3,31 @@ package Agent;
 import Utility.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles all messages that will ever be sent to the Auction house and returns
  * responses from each message to the
- * Agent.
+ * Agent. Each request also has an ...Async() variant that returns right away
+ * with a CompletableFuture, which fails with a TimeoutException if the
+ * auction house takes longer than the given time.
+ * big inventories can be asked for a page at a time (see
+ * InventoryPageRequest), both when joining and afterwards.
+ * an agent that joined with an access token sends it again to leave, and
+ * sends the renewed one before it expires.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (renewing access tokens)
+ * previously modified: 10/18/26 by lb (long secret keys, leaving with a
+ *     token)
+ * previously modified: 10/18/26 by lb (inventory pages)
+ * previously modified: 10/18/26 by lb (joining with an access token)
+ * previously modified: 10/18/26 by lb (versioned inventories)
+ * previously modified: 10/18/26 by lb (close timestamps on local clock)
+ * previously modified: 10/18/26 by lb (async variants with timeouts)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
@@ -39,18 +56,160 @@ public class AuctionHouseProxy {
      * @param secretKey the secret key that does in place of my account number.
      * @return list of items up for auction
      */
-    public List<AuctionItem> joinAH(IDRecord myRecord, int secretKey){
+    public List<AuctionItem> joinAH(IDRecord myRecord, long secretKey){
+        return itemsFromReply(sendMSG(joinMessage(myRecord, secretKey, null,
+                null)));
+    }
+
+    /**
+     * same as joinAH but returns the whole inventory, including its version
+     * so later inventory deltas can be applied to it.
+     * @param myRecord my user information
+     * @param secretKey the secret key that does in place of my account number.
+     * @return the auction houses inventory, or null
+     */
+    public AuctionHouseInventory joinAHInventory(IDRecord myRecord,
+                                                 long secretKey){
+        return joinAHInventory(myRecord, secretKey, null);
+    }
+
+    /**
+     * same as joinAHInventory but with the access token the bank gave me
+     * for the auction house, which it checks in place of asking the bank.
+     * @param myRecord my user information
+     * @param secretKey the secret key taken from the token
+     * @param token my access token for the auction house, or null
+     * @return the auction houses inventory, or null
+     */
+    public AuctionHouseInventory joinAHInventory(IDRecord myRecord,
+                                                 long secretKey,
+                                                 AccessToken token){
+        return joinAHPage(myRecord, secretKey, token, null);
+    }
+
+    /**
+     * same as joinAHInventory but only asks for one page of the inventory.
+     * @param myRecord my user information
+     * @param secretKey the secret key taken from the token
+     * @param token my access token for the auction house, or null
+     * @param page the page of the inventory wanted, or null for all of it
+     * @return the page of the auction houses inventory, or null
+     */
+    public AuctionHouseInventory joinAHPage(IDRecord myRecord, long secretKey,
+                                            AccessToken token,
+                                            InventoryPageRequest page){
+        return inventoryFromReply(sendMSG(joinMessage(myRecord, secretKey,
+                token, page)));
+    }
+
+    /**
+     * async version of joinAH
+     * @param myRecord my user information
+     * @param secretKey the secret key that does in place of my account number.
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future of the list of items up for auction
+     */
+    public CompletableFuture<List<AuctionItem>> joinAHAsync(IDRecord myRecord,
+                                                           long secretKey,
+                                                           long timeout,
+                                                           TimeUnit unit){
+        return sendMSGAsync(joinMessage(myRecord, secretKey, null, null),
+                timeout, unit).
+                thenApply(this::itemsFromReply);
+    }
+
+    /**
+     * builds the JOIN_AUCTION_HOUSE message, with the secret key in place of
+     * my account number, my access token in front if i have one, and the
+     * page i want at the end if i only want one
+     * @param myRecord my user information
+     * @param secretKey the secret key that does in place of my account number.
+     * @param token my access token for the auction house, or null
+     * @param page the page of the inventory wanted, or null for all of it
+     * @return message to send to the auction house
+     */
+    private Message<Object> joinMessage(IDRecord myRecord, long secretKey,
+                                        AccessToken token,
+                                        InventoryPageRequest page){
         IDRecord temp = new IDRecord(myRecord.getRecordType(),myRecord.getName()
                 ,myRecord.getInitialBalance(),
                 myRecord.getHostname(),myRecord.getPortNumber());
-        temp.setNumericalID(secretKey);
-        Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
-                JOIN_AUCTION_HOUSE,temp);
-        Message<AuctionHouseInventory> reply = sendMSG(message);
+        //with a token the auction house takes the key from the token
+        temp.setNumericalID(token != null ? 0 : (int) secretKey);
+        if(token == null && page == null){
+            return new Message<>(Message.MessageIdentifier.
+                    JOIN_AUCTION_HOUSE,temp);
+        }
+        List<Object> joinParts = new ArrayList<>();
+        if(token != null){
+            joinParts.add(token);
+        }
+        joinParts.add(temp);
+        if(page != null){
+            joinParts.add(page);
+        }
+        return new Message<>(Message.MessageIdentifier.
+                JOIN_AUCTION_HOUSE,joinParts);
+    }
+
+    /**
+     * asks the auction house for its whole inventory again, for when an
+     * inventory delta was missed.
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future of the auction houses inventory, or of null
+     */
+    public CompletableFuture<AuctionHouseInventory> getItemsAsync(
+            long timeout, TimeUnit unit){
+        return sendMSGAsync(new Message<>(Message.MessageIdentifier.
+                        GET_AUCTION_HOUSE_ITEMS, null), timeout, unit).
+                thenApply(this::inventoryFromReply);
+    }
+
+    /**
+     * asks the auction house for one page of its inventory.
+     * @param page the page wanted
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future of the page of the auction houses inventory, or of
+     * null
+     */
+    public CompletableFuture<AuctionHouseInventory> getItemsPageAsync(
+            InventoryPageRequest page, long timeout, TimeUnit unit){
+        return sendMSGAsync(new Message<>(Message.MessageIdentifier.
+                        GET_AUCTION_HOUSE_ITEMS, page), timeout, unit).
+                thenApply(this::inventoryFromReply);
+    }
+
+    /**
+     * reads the auction houses reply to JOIN_AUCTION_HOUSE
+     * @param reply the auction houses reply
+     * @return list of items up for auction, or null
+     */
+    private List<AuctionItem> itemsFromReply(
+            Message<AuctionHouseInventory> reply){
+        AuctionHouseInventory inventory = inventoryFromReply(reply);
+        if(inventory == null){
+            return null;
+        }
+        return inventory.getAuctions();
+    }
+
+    /**
+     * reads the auction houses reply to JOIN_AUCTION_HOUSE or
+     * GET_AUCTION_HOUSE_ITEMS, moving the close timestamps to my clock.
+     * @param reply the auction houses reply
+     * @return the auction houses inventory, or null
+     */
+    private AuctionHouseInventory inventoryFromReply(
+            Message<AuctionHouseInventory> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     LIST_OF_AUCTION_HOUSE_ITEMS){
-                return reply.getMessageContent().getAuctions();
+                AuctionHouseInventory inventory = reply.getMessageContent();
+                inventory.adjustToLocalClock();
+                return inventory;
             }else if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     CASE_NOT_FOUND){
                 System.out.println("AuctionHouse missing list of items");
@@ -67,7 +226,29 @@ public class AuctionHouseProxy {
     public void transferedFunds(AuctionItem purchasedItem){
         Message<AuctionItem> message = new Message<>(Message.MessageIdentifier.
                 TRANSFER_FUNDS,purchasedItem);
-        Message<Integer> reply = sendMSG(message);
+        transferFromReply(sendMSG(message));
+    }
+
+    /**
+     * async version of transferedFunds
+     * @param purchasedItem The item I purchased from a auction house
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future completed once the auction house replied
+     */
+    public CompletableFuture<Void> transferedFundsAsync(
+            AuctionItem purchasedItem, long timeout, TimeUnit unit){
+        Message<AuctionItem> message = new Message<>(Message.MessageIdentifier.
+                TRANSFER_FUNDS,purchasedItem);
+        return sendMSGAsync(message, timeout, unit).
+                thenAccept(this::transferFromReply);
+    }
+
+    /**
+     * reads the auction houses reply to TRANSFER_FUNDS
+     * @param reply the auction houses reply
+     */
+    private void transferFromReply(Message<Integer> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     TRANSFER_SUCCESS){
@@ -85,15 +266,87 @@ public class AuctionHouseProxy {
      * @param secretKey secretkey the auction house associates with me.
      * @return whether I'm allowed to leave or not.
      */
-    public Boolean closeRequest(IDRecord myRecord, int secretKey){
+    public Boolean closeRequest(IDRecord myRecord, long secretKey){
+        return closeRequest(myRecord, secretKey, null);
+    }
+
+    /**
+     * closeRequest for an auction house i joined with an access token
+     * @param myRecord my User information
+     * @param secretKey secretkey the auction house associates with me.
+     * @param token the access token i joined with, or null
+     * @return whether I'm allowed to leave or not.
+     */
+    public Boolean closeRequest(IDRecord myRecord, long secretKey,
+                                AccessToken token){
+        return closeFromReply(sendMSG(closeMessage(myRecord, secretKey,
+                token)));
+    }
+
+    /**
+     * async version of closeRequest
+     * @param myRecord my User information
+     * @param secretKey secretkey the auction house associates with me.
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future of whether I'm allowed to leave or not.
+     */
+    public CompletableFuture<Boolean> closeRequestAsync(IDRecord myRecord,
+                                                       long secretKey,
+                                                       long timeout,
+                                                       TimeUnit unit){
+        return sendMSGAsync(closeMessage(myRecord, secretKey, null), timeout,
+                unit).
+                thenApply(this::closeFromReply);
+    }
+
+    /**
+     * builds the CLOSE_REQUEST message, with the secret key in place of my
+     * account number and my access token in front if i have one
+     * @param myRecord my User information
+     * @param secretKey secretkey the auction house associates with me.
+     * @param token the access token i joined with, or null
+     * @return message to send to the auction house
+     */
+    private Message<Object> closeMessage(IDRecord myRecord, long secretKey,
+                                         AccessToken token){
         IDRecord temp = new IDRecord(myRecord.getRecordType(),myRecord.getName()
                 ,myRecord.getInitialBalance(),
                 myRecord.getHostname(),myRecord.getPortNumber());
-        temp.setNumericalID(secretKey);
-        Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
-                CLOSE_REQUEST, temp);
-        Message <Integer>reply = sendMSG(message);
-        if(reply.getMessageIdentifier() == Message.MessageIdentifier.
+        temp.setNumericalID(token != null ? 0 : (int) secretKey);
+        if(token == null){
+            return new Message<>(Message.MessageIdentifier.
+                    CLOSE_REQUEST, temp);
+        }
+        List<Object> closeParts = new ArrayList<>();
+        closeParts.add(token);
+        closeParts.add(temp);
+        return new Message<>(Message.MessageIdentifier.
+                CLOSE_REQUEST, closeParts);
+    }
+
+    /**
+     * sends the auction house the access token the bank renewed mine with,
+     * so my later bids carry one the bank still accepts
+     * @param token my renewed access token for the auction house
+     * @return whether the auction house took the token
+     */
+    public Boolean renewAccessToken(AccessToken token){
+        Message reply = sendMSG(new Message<>(Message.MessageIdentifier.
+                RENEW_ACCESS_TOKEN, token));
+        return reply != null && reply.getMessageIdentifier() ==
+                Message.MessageIdentifier.REQUEST_SUCCEEDED;
+    }
+
+    /**
+     * reads the auction houses reply to CLOSE_REQUEST
+     * @param reply the auction houses reply
+     * @return whether I'm allowed to leave or not.
+     */
+    private Boolean closeFromReply(Message<Integer> reply){
+        if(reply == null){
+            return true;
+        }else if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                 CLOSE_REJECTED){
             return false;
         }else if(reply.getMessageIdentifier() == Message.MessageIdentifier.
@@ -112,13 +365,50 @@ public class AuctionHouseProxy {
      * @param secretKey the secret key associated with my account.
      * @return
      */
-    public int makeBid(AuctionItem item, int secretKey){
+    public int makeBid(AuctionItem item, long secretKey){
+        return bidResultFromReply(sendMSG(bidMessage(item, secretKey)));
+    }
+
+    /**
+     * async version of makeBid
+     * @param item the item im bidding on
+     * @param secretKey the secret key associated with my account.
+     * @param timeout how long to wait for the auction house
+     * @param unit unit of the timeout
+     * @return future of 0 (bid too low), 1 (not enough funds), 2 (accepted)
+     * or -1 (unknown)
+     */
+    public CompletableFuture<Integer> makeBidAsync(AuctionItem item,
+                                                  long secretKey,
+                                                  long timeout,
+                                                  TimeUnit unit){
+        return sendMSGAsync(bidMessage(item, secretKey), timeout, unit).
+                thenApply(this::bidResultFromReply);
+    }
+
+    /**
+     * builds the MAKE_BID message, putting my secret key on the bid
+     * @param item the item im bidding on
+     * @param secretKey the secret key associated with my account.
+     * @return message to send to the auction house
+     */
+    private Message<AuctionItem> bidMessage(AuctionItem item, long secretKey){
         Bid oldBid = item.getBid();
         oldBid.setSecretKey(secretKey);
         item.setBid(oldBid);
-        Message<AuctionItem> message = new Message<>(Message.MessageIdentifier.
+        return new Message<>(Message.MessageIdentifier.
                 MAKE_BID,item);
-        Message<String> reply = sendMSG(message);
+    }
+
+    /**
+     * reads the auction houses reply to MAKE_BID
+     * @param reply the auction houses reply
+     * @return 0 (bid too low), 1 (not enough funds), 2 (accepted) or -1
+     */
+    private int bidResultFromReply(Message<String> reply){
+        if(reply == null){
+            return -1;
+        }
         switch( reply.getMessageIdentifier() ) {
             case BID_REJECTED_INADEQUATE:
                 return 0;
@@ -145,4 +435,17 @@ public class AuctionHouseProxy {
         }
         return reply;
     }
+
+    /**
+     * Send a message to the auction house without waiting for the reply.
+     * @param message message being sent to the auction house
+     * @param timeout how long to wait for the reply
+     * @param unit unit of the timeout
+     * @return future of the reply
+     */
+    private CompletableFuture<Message> sendMSGAsync(Message message,
+                                                    long timeout,
+                                                    TimeUnit unit){
+        return coms.sendMessageAsync(message, timeout, unit);
+    }
 }
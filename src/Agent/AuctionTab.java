@@ -1,6 +1,9 @@
 package Agent;
 
 import Utility.*;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
@@ -15,21 +18,39 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.util.Duration;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
 /**
  * creates a tab that represents the auctionHouse and its properties. This is
  * used to allow the use and displaying of multiple auction houses. This object
  * constructs and handles the auction houses information and provides getters
  * and setters for updating the tab and capturing changes made to the tab.
+ * the bid timer of the selected item counts down locally from the items close
+ * timestamp, the auction house only sends updates when something changes.
+ * keeps the version of the inventory it shows so inventory deltas can be
+ * applied to it.
+ * big inventories come a page at a time. the next page is asked for once
+ * the list is scrolled near its end, and deltas for items not loaded yet
+ * are skipped since their page will be up to date when it comes.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (inventory pages loaded on scroll)
+ * previously modified: 10/18/26 by lb (bids in cents)
+ * previously modified: 10/18/26 by lb (inventory versions and deltas)
+ * previously modified: 10/18/26 by lb (local bid countdown)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class AuctionTab {
+    // ask for the next page once a cell this close to the end is shown
+    private static final int PAGE_PREFETCH = 20;
     private ListView<String> list;
     private ObservableList<String> itemDisp;
     private Tab auctionHouse;
@@ -42,6 +63,13 @@ public class AuctionTab {
     private TextField proposedBid;
     private HBox leaveHold, biddingArea;
     private DecimalFormat df;
+    private Timeline countdown;
+    private long version;
+    // where each loaded item is in items, by item id
+    private Map<Integer, Integer> positions = new HashMap<>();
+    private long nextPageToken = InventoryPageRequest.NO_PAGE_TOKEN;
+    private boolean pageRequested;
+    private LongConsumer pageLoader;
     /**
      * stores the each auction houses tab info. Formats the auctionHouse tab ,
      * creates the needed items, and sets default values.
@@ -57,11 +85,22 @@ public class AuctionTab {
         list.setOrientation(Orientation.VERTICAL);
         itemDisp = FXCollections.observableArrayList();
         list.setItems(itemDisp);
+        /*asks for the next page once the end of the list is scrolled to*/
+        list.setCellFactory(view -> new ListCell<String>() {
+            @Override
+            protected void updateItem(String info, boolean empty) {
+                super.updateItem(info, empty);
+                setText(empty ? null : info);
+                if(!empty && getIndex() >= itemDisp.size() - PAGE_PREFETCH){
+                    requestNextPage();
+                }
+            }
+        });
         pane = new BorderPane();
         pane.setLeft(list);
         df = new DecimalFormat("####0.00");
         selectedItem = -1;
-        this.items = items;
+        this.items = items == null ? null : new ArrayList<>(items);
         this.bid = bid;
         this.leave = leave;
         this.houseInfo = houseInfo;
@@ -94,7 +133,9 @@ public class AuctionTab {
                                                 observable,Number oldValue,
                                         Number newValue) {
                         int select = (int) newValue;
-                        if(select < items.size() && select >= 0) {
+                        List<AuctionItem> shown = AuctionTab.this.items;
+                        if(shown != null && select < shown.size() &&
+                                select >= 0) {
                             selectedItem = select;
                             DisplayItem();
                         }
@@ -156,6 +197,12 @@ public class AuctionTab {
         pane.setBottom(leaveHold);
         auctionHouse.setContent(pane);
 
+        /*ticks the bid timer of the selected item once a second*/
+        countdown = new Timeline(new KeyFrame(Duration.seconds(1),
+                event -> updateTimer()));
+        countdown.setCycleCount(Animation.INDEFINITE);
+        countdown.play();
+
     }
 
     /**
@@ -177,25 +224,33 @@ public class AuctionTab {
      * adds the available items to the auction house display
      */
     private void addItems(){
+        positions.clear();
         if(items != null) {
             for (AuctionItem item : items) {
-                Double bid;
-                if(item.getBid().getCurrentBid() == 0){
-                    bid = item.getBid().getMinBid();
-                }else{
-                    bid = item.getBid().getCurrentBid();
-                }
-                String info;
-                if(item.getBid().getBidState() == Bid.BidState.SOLD){
-                    info = item.getItemName() + "\nSOLD";
-                }else {
-                    info = item.getItemName() + "\n$" + df.format(bid);
-                }
-                itemDisp.add(info);
+                positions.put(item.getItemID(), itemDisp.size());
+                itemDisp.add(describe(item));
             }
         }
     }
 
+    /**
+     * the text shown for an item in the list
+     * @param item the item
+     * @return its name and price, or SOLD
+     */
+    private String describe(AuctionItem item){
+        Double bid;
+        if(item.getBid().getCurrentBidCents() == 0){
+            bid = item.getBid().getMinBid();
+        }else{
+            bid = item.getBid().getCurrentBid();
+        }
+        if(item.getBid().getBidState() == Bid.BidState.SOLD){
+            return item.getItemName() + "\nSOLD";
+        }
+        return item.getItemName() + "\n$" + df.format(bid);
+    }
+
     /**
      * Displays a item selected from the List of items the auction house has.
      * Edits the labels to match the item information. Also formats the prices
@@ -214,11 +269,7 @@ public class AuctionTab {
                         getCurrentBid()));
                 minBid.setText("Min Bid: $" + df.format(hold.getBid().
                         getMinBid()));
-                if(hold.getTimeLeftOnBid() == 0){
-                    timer.setText("     Bid End In: --");
-                }else {
-                    timer.setText("     Bid End In: " + hold.getTimeLeftOnBid() + " Second(s)");
-                }
+                updateTimer();
                 bid.setDisable(false);
             }
             itemID.setText("     Item ID: " + Integer.toString(hold.
@@ -228,12 +279,39 @@ public class AuctionTab {
             System.out.println("no selected item");
         }
     }
+    /**
+     * updates the bid timer label of the selected item from its close
+     * timestamp.
+     */
+    private void updateTimer(){
+        if(selectedItem < 0 || selectedItem >= items.size()){
+            return;
+        }
+        AuctionItem hold = items.get(selectedItem);
+        if(hold == null || hold.getBid().getBidState() == Bid.BidState.SOLD){
+            return;
+        }
+        int secondsLeft = hold.getSecondsLeft(System.currentTimeMillis());
+        if(secondsLeft == 0){
+            timer.setText("     Bid End In: --");
+        }else {
+            timer.setText("     Bid End In: " + secondsLeft + " Second(s)");
+        }
+    }
+
+    /**
+     * stops the bid countdown, for when the tab is closed
+     */
+    public void stopCountdown(){
+        countdown.stop();
+    }
+
     /**
      * updates the display with any new items list
      * @param newItems the new items list
      */
     public void updateItems(List<AuctionItem> newItems){
-        items = newItems;
+        items = newItems == null ? null : new ArrayList<>(newItems);
         itemDisp.clear();
         addItems();
         if(selectedItem >= 0 && selectedItem < items.size()) {
@@ -241,6 +319,129 @@ public class AuctionTab {
         }
     }
 
+    /**
+     * sets the version of the inventory the tab was created with.
+     * @param version inventory version
+     */
+    public void setVersion(long version){
+        this.version = version;
+    }
+
+    /**
+     * sets the page token of the page after the ones the tab was created
+     * with.
+     * @param nextPageToken page token, or NO_PAGE_TOKEN if there are no
+     *                      more pages
+     */
+    public void setNextPageToken(long nextPageToken){
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * sets what the tab calls to ask for the next page of the inventory.
+     * @param pageLoader called with the page token of the page wanted
+     */
+    public void setPageLoader(LongConsumer pageLoader){
+        this.pageLoader = pageLoader;
+    }
+
+    /**
+     * asks for the next page of the inventory, unless there are no more
+     * pages or one has already been asked for.
+     */
+    private void requestNextPage(){
+        if(pageRequested || pageLoader == null ||
+                nextPageToken == InventoryPageRequest.NO_PAGE_TOKEN){
+            return;
+        }
+        pageRequested = true;
+        pageLoader.accept(nextPageToken);
+    }
+
+    /**
+     * updates the display with a whole new inventory, or its first page,
+     * unless it is older than the one already shown. inventories from older
+     * auction houses have no version and are always shown.
+     * @param inventory the new inventory
+     */
+    public void updateInventory(AuctionHouseInventory inventory){
+        if(inventory.getVersion() != 0 && inventory.getVersion() <= version){
+            return;
+        }
+        version = inventory.getVersion();
+        nextPageToken = inventory.getNextPageToken();
+        pageRequested = false;
+        updateItems(inventory.getAuctions());
+    }
+
+    /**
+     * adds the next page of the inventory to the end of the list, if it is
+     * the page that was asked for. a page older than the inventory shown is
+     * asked for again, since deltas for its items were skipped while they
+     * weren't loaded.
+     * @param page the page from the auction house, or null if it couldn't
+     *             be got
+     * @param pageToken the page token the page was asked for with
+     */
+    public void addPage(AuctionHouseInventory page, long pageToken){
+        if(!pageRequested || pageToken != nextPageToken){
+            return;
+        }
+        pageRequested = false;
+        if(page == null || items == null){
+            return;
+        }
+        if(page.getVersion() < version){
+            requestNextPage();
+            return;
+        }
+        for(AuctionItem item : page.getAuctions()){
+            if(!positions.containsKey(item.getItemID())){
+                positions.put(item.getItemID(), items.size());
+                items.add(item);
+                itemDisp.add(describe(item));
+            }
+        }
+        nextPageToken = page.getNextPageToken();
+    }
+
+    /**
+     * applies a inventory delta to the items shown. old deltas are ignored,
+     * and so are changes to items from a page newer than the delta, or not
+     * loaded yet.
+     * @param delta the changes from the auction house
+     * @return false if the delta doesn't follow on from the inventory shown
+     *         (a version was missed) and the whole inventory is needed
+     */
+    public boolean applyDelta(InventoryDelta delta){
+        if(delta.getVersion() <= version){
+            return true;
+        }
+        if(delta.getBaseVersion() != version || items == null){
+            return false;
+        }
+        for(InventoryDelta.ItemChange change : delta.getChanges()){
+            Integer index = positions.get(change.getItemID());
+            if(index == null){
+                if(nextPageToken != InventoryPageRequest.NO_PAGE_TOKEN){
+                    continue;
+                }
+                return false;
+            }
+            AuctionItem item = items.get(index);
+            if(change.getVersion() > item.getVersion()){
+                AuctionItem updated = change.applyTo(item);
+                items.set(index, updated);
+                itemDisp.set(index, describe(updated));
+            }
+        }
+        version = delta.getVersion();
+        if(selectedItem >= 0 && selectedItem < items.size()) {
+            DisplayItem();
+        }
+        return true;
+    }
+
     /**
      * gets the selected item and returns it.
      * @return the selected item.
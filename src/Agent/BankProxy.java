@@ -4,18 +4,32 @@ import Utility.*;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles all messages that will ever be sent to the bank and returns responses
- * from each message to the Agent.
+ * from each message to the Agent. Each request also has an ...Async()
+ * variant that returns right away with a CompletableFuture, which fails with
+ * a TimeoutException if the bank takes longer than the given time.
+ * when asked for the auction houses with my IDRecord the bank also sends an
+ * access token for each, so joining a house needs no GET_SECRET_KEY. the
+ * tokens are kept here until the next list, and sent along when i pay.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (access tokens with the auction houses)
+ * previously modified: 10/18/26 by lb (async variants with timeouts)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class BankProxy {
     private CommunicationService coms;
+    // access tokens from the last list of auction houses, by house id
+    private final Map<Integer, AccessToken> accessTokens =
+            new ConcurrentHashMap<>();
 
     /**
      * establishes the initial connection to the bank.
@@ -41,8 +55,33 @@ public class BankProxy {
     public IDRecord createBankAccount(IDRecord myInfo) {
         Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
                 OPEN_AGENT_ACCT, myInfo);
-        Message<IDRecord> reply;
-        reply = sendMSG(message);
+        return accountFromReply(sendMSG(message), myInfo);
+    }
+
+    /**
+     * async version of createBankAccount
+     * @param myInfo my personal information excluding the bank account number
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of myInfo updated with a account number
+     */
+    public CompletableFuture<IDRecord> createBankAccountAsync(IDRecord myInfo,
+                                                             long timeout,
+                                                             TimeUnit unit){
+        Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
+                OPEN_AGENT_ACCT, myInfo);
+        return sendMSGAsync(message, timeout, unit).
+                thenApply(reply -> accountFromReply(reply, myInfo));
+    }
+
+    /**
+     * reads the banks reply to OPEN_AGENT_ACCT
+     * @param reply the banks reply
+     * @param myInfo my personal information excluding the bank account number
+     * @return myInfo updated with a account number provided by the bank
+     */
+    private IDRecord accountFromReply(Message<IDRecord> reply,
+                                      IDRecord myInfo){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     AGENT_ACCT_CONFIRMED){
@@ -61,14 +100,59 @@ public class BankProxy {
      * @return List of auction houses and their info provided by the bank
      */
     public ArrayList<IDRecord> getListOfAuctionHouses(){
-        Message<ArrayList<IDRecord>> message = new Message(Message.
-                MessageIdentifier.GET_LIST_OF_AUCTION_HOUSES, null);
-        Message<ArrayList<IDRecord>> reply;
-        reply = sendMSG(message);
+        return getListOfAuctionHouses(null);
+    }
+
+    /**
+     * requests a list of auction houses available from the bank, along with
+     * an access token for each (see getAccessToken)
+     * @param myID my IDRecord so the bank knows who the tokens are for, or
+     *             null for no tokens
+     * @return List of auction houses and their info provided by the bank
+     */
+    public ArrayList<IDRecord> getListOfAuctionHouses(IDRecord myID){
+        Message<IDRecord> message = new Message<>(Message.
+                MessageIdentifier.GET_LIST_OF_AUCTION_HOUSES, myID);
+        return auctionHousesFromReply(sendMSG(message));
+    }
+
+    /**
+     * async version of getListOfAuctionHouses
+     * @param myID my IDRecord so the bank knows who the tokens are for, or
+     *             null for no tokens
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of the list of auction houses provided by the bank
+     */
+    public CompletableFuture<ArrayList<IDRecord>> getListOfAuctionHousesAsync(
+            IDRecord myID, long timeout, TimeUnit unit){
+        Message<IDRecord> message = new Message<>(Message.
+                MessageIdentifier.GET_LIST_OF_AUCTION_HOUSES, myID);
+        return sendMSGAsync(message, timeout, unit).
+                thenApply(this::auctionHousesFromReply);
+    }
+
+    /**
+     * reads the banks reply to GET_LIST_OF_AUCTION_HOUSES. any access tokens
+     * after the houses are kept for joining them.
+     * @param reply the banks reply
+     * @return List of auction houses, or null
+     */
+    private ArrayList<IDRecord> auctionHousesFromReply(
+            Message<ArrayList<Object>> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     LIST_OF_AUCTION_HOUSES){
-                return reply.getMessageContent();
+                ArrayList<IDRecord> houses = new ArrayList<>();
+                for(Object entry : reply.getMessageContent()){
+                    if(entry instanceof AccessToken){
+                        AccessToken token = (AccessToken) entry;
+                        accessTokens.put(token.getHouseAcctNum(), token);
+                    }else{
+                        houses.add((IDRecord) entry);
+                    }
+                }
+                return houses;
             }else if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     CASE_NOT_FOUND){
                 System.out.println("bank missing list of Auction Houses");
@@ -77,6 +161,15 @@ public class BankProxy {
         return null;
     }
 
+    /**
+     * gets the access token the bank sent for an auction house
+     * @param houseID the auction houses account number
+     * @return the token, or null if the bank sent none
+     */
+    public AccessToken getAccessToken(int houseID){
+        return accessTokens.get(houseID);
+    }
+
     /**
      * Requests for a balance check from the bank
      * @param myID My current information
@@ -86,7 +179,31 @@ public class BankProxy {
     public BankAccount requestBalance(IDRecord myID){
         Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
                 REQUEST_BALANCE,myID);
-        Message<BankAccount> reply = sendMSG(message);
+        return balanceFromReply(sendMSG(message));
+    }
+
+    /**
+     * async version of requestBalance
+     * @param myID My current information
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of my account information
+     */
+    public CompletableFuture<BankAccount> requestBalanceAsync(IDRecord myID,
+                                                             long timeout,
+                                                             TimeUnit unit){
+        Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
+                REQUEST_BALANCE,myID);
+        return sendMSGAsync(message, timeout, unit).
+                thenApply(this::balanceFromReply);
+    }
+
+    /**
+     * reads the banks reply to REQUEST_BALANCE
+     * @param reply the banks reply
+     * @return my account information, or null
+     */
+    private BankAccount balanceFromReply(Message<BankAccount> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     BALANCE){
@@ -108,8 +225,31 @@ public class BankProxy {
     public int getSecretKey(AccountLink selection){
         Message<AccountLink> message = new Message<>(Message.MessageIdentifier.
                 GET_SECRET_KEY,selection);
-        Message<Integer> reply;
-        reply = sendMSG(message);
+        return secretKeyFromReply(sendMSG(message));
+    }
+
+    /**
+     * async version of getSecretKey
+     * @param selection the auction house I selected
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of the secretkey for the auction house
+     */
+    public CompletableFuture<Integer> getSecretKeyAsync(AccountLink selection,
+                                                       long timeout,
+                                                       TimeUnit unit){
+        Message<AccountLink> message = new Message<>(Message.MessageIdentifier.
+                GET_SECRET_KEY,selection);
+        return sendMSGAsync(message, timeout, unit).
+                thenApply(this::secretKeyFromReply);
+    }
+
+    /**
+     * reads the banks reply to GET_SECRET_KEY
+     * @param reply the banks reply
+     * @return the secretkey, or -1
+     */
+    private int secretKeyFromReply(Message<Integer> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     SECRET_KEY){
@@ -131,8 +271,34 @@ public class BankProxy {
     public Boolean closeRequest(IDRecord myID) {
         Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
                 CLOSE_REQUEST, myID);
-        Message <Integer>reply = sendMSG(message);
-        if (reply.getMessageIdentifier() == Message.MessageIdentifier.
+        return closeFromReply(sendMSG(message));
+    }
+
+    /**
+     * async version of closeRequest
+     * @param myID my IDRecord so the bank knows who's asking
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of whether or not the bank accepted my request
+     */
+    public CompletableFuture<Boolean> closeRequestAsync(IDRecord myID,
+                                                       long timeout,
+                                                       TimeUnit unit){
+        Message<IDRecord> message = new Message<>(Message.MessageIdentifier.
+                CLOSE_REQUEST, myID);
+        return sendMSGAsync(message, timeout, unit).
+                thenApply(this::closeFromReply);
+    }
+
+    /**
+     * reads the banks reply to CLOSE_REQUEST
+     * @param reply the banks reply
+     * @return whether or not the bank accepted my request
+     */
+    private Boolean closeFromReply(Message<Integer> reply){
+        if (reply == null) {
+            return true;
+        } else if (reply.getMessageIdentifier() == Message.MessageIdentifier.
                 CLOSE_REJECTED) {
             return false;
         } else if (reply.getMessageIdentifier() == Message.MessageIdentifier.
@@ -150,9 +316,48 @@ public class BankProxy {
      * @return get returned my updated account information after the transfer
      */
     public BankAccount transferFunds(AuctionItem purchasedItem){
-        Message<AuctionItem> message = new Message<>(Message.MessageIdentifier.
-                TRANSFER_FUNDS,purchasedItem);
-        Message<BankAccount> reply = sendMSG(message);
+        return transferFromReply(sendMSG(transferMessage(purchasedItem)));
+    }
+
+    /**
+     * async version of transferFunds
+     * @param purchasedItem The item I purchased from a auction house
+     * @param timeout how long to wait for the bank
+     * @param unit unit of the timeout
+     * @return future of my updated account information after the transfer
+     */
+    public CompletableFuture<BankAccount> transferFundsAsync(
+            AuctionItem purchasedItem, long timeout, TimeUnit unit){
+        return sendMSGAsync(transferMessage(purchasedItem), timeout, unit).
+                thenApply(this::transferFromReply);
+    }
+
+    /**
+     * builds the TRANSFER_FUNDS message, with my access token for the
+     * auction house in front of the item if i joined with one
+     * @param purchasedItem The item I purchased from a auction house
+     * @return message to send to the bank
+     */
+    private Message<Object> transferMessage(AuctionItem purchasedItem){
+        AccessToken token = accessTokens.get(purchasedItem.getHouseID());
+        if(token == null ||
+                token.getSecretKey() != purchasedItem.getBid().getSecretKey()){
+            return new Message<>(Message.MessageIdentifier.TRANSFER_FUNDS,
+                    purchasedItem);
+        }
+        ArrayList<Object> tokenAndItem = new ArrayList<>();
+        tokenAndItem.add(token);
+        tokenAndItem.add(purchasedItem);
+        return new Message<>(Message.MessageIdentifier.TRANSFER_FUNDS,
+                tokenAndItem);
+    }
+
+    /**
+     * reads the banks reply to TRANSFER_FUNDS
+     * @param reply the banks reply
+     * @return my updated account information, or null
+     */
+    private BankAccount transferFromReply(Message<BankAccount> reply){
         if(reply != null){
             if(reply.getMessageIdentifier() == Message.MessageIdentifier.
                     TRANSFER_SUCCESS){
@@ -181,4 +386,20 @@ public class BankProxy {
         }
         return reply;
     }
+
+    /**
+     * Send a message to the bank without waiting for the reply.
+     * @param message message being sent to the bank
+     * @param timeout how long to wait for the reply
+     * @param unit unit of the timeout
+     * @return future of the reply (null if there is no bank)
+     */
+    private CompletableFuture<Message> sendMSGAsync(Message message,
+                                                    long timeout,
+                                                    TimeUnit unit){
+        if(coms == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return coms.sendMessageAsync(message, timeout, unit);
+    }
 }
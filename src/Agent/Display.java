@@ -13,12 +13,16 @@ import javafx.stage.Stage;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.BiConsumer;
 /**
  * Object for creating and displaying new tabs for auctionHouses and banks.
  * Designed to allow for multiple auctions and future use of multiple banks.
  * Used for communication between the agent and the auctionHouse and Bank tabs.
  * created: 11/30/18 by lb
- * last modified: 12/07/18 by lb
+ * last modified: 10/18/26 by lb (inventory pages)
+ * previously modified: 10/18/26 by lb (inventory deltas)
+ * previously modified: 10/18/26 by lb (stops the countdown of a closed tab)
+ * previously modified: 12/07/18 by lb
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
@@ -31,6 +35,8 @@ public class Display {
     private Button bid,leaveAuc,leaveBank,getAuction,getBalance,transfer,join;
     private IDRecord myInfo;
     private Stage stage;
+    // asks a auction house (by id) for the page with a page token
+    private BiConsumer<Integer, Long> pageRequester;
 
     /**
      * Sets the initial values that are needed for creating new tabs. Creates a
@@ -98,6 +104,11 @@ public class Display {
             if (auctions.get(auctionHouse.getNumericalID()) == null) {
                 AuctionTab auction = new AuctionTab(items, auctionHouse, bid,
                         leaveAuc);
+                if(pageRequester != null) {
+                    int houseID = auctionHouse.getNumericalID();
+                    auction.setPageLoader(pageToken ->
+                            pageRequester.accept(houseID, pageToken));
+                }
                 tabs.getTabs().add(auction.getTab());
                 if (auctionHouse != null) {
                     auctions.put(auctionHouse.getNumericalID(), auction);
@@ -108,6 +119,51 @@ public class Display {
         }
     }
 
+    /**
+     * creates a new tab for the Auction House the user connected to, showing
+     * the inventory it sent when joining.
+     * @param inventory the auction houses inventory, or null
+     * @param auctionHouse auction house info
+     */
+    public void addAuctionTab(AuctionHouseInventory inventory,
+                              IDRecord auctionHouse){
+        if(inventory == null || auctionHouse == null){
+            addAuctionTab((List<AuctionItem>) null, auctionHouse);
+            return;
+        }
+        boolean existed = doesAuctionExist(auctionHouse.getNumericalID());
+        addAuctionTab(inventory.getAuctions(), auctionHouse);
+        if(!existed) {
+            AuctionTab auction = auctions.get(auctionHouse.getNumericalID());
+            auction.setVersion(inventory.getVersion());
+            auction.setNextPageToken(inventory.getNextPageToken());
+        }
+    }
+
+    /**
+     * sets what auction tabs call to ask for the next page of their
+     * inventory. only tabs created afterwards use it.
+     * @param pageRequester called with the auction house id and the page
+     *                      token of the page wanted
+     */
+    public void setPageRequester(BiConsumer<Integer, Long> pageRequester){
+        this.pageRequester = pageRequester;
+    }
+
+    /**
+     * gives a page of a auction houses inventory to its tab.
+     * @param houseID the auction houses id
+     * @param page the page, or null if it couldn't be got
+     * @param pageToken the page token the page was asked for with
+     */
+    public void addInventoryPage(int houseID, AuctionHouseInventory page,
+                                 long pageToken){
+        AuctionTab auction = auctions.get(houseID);
+        if(auction != null) {
+            auction.addPage(page, pageToken);
+        }
+    }
+
     /**
      * removes the current open tab from the list of tabs and removes the tab
      * from the list of Auction house objects. This method is called by the
@@ -115,7 +171,11 @@ public class Display {
      * auction house.
      */
     public void removeCurrentTab(){
-        auctions.remove(Integer.parseInt(currentTab.getId()));
+        AuctionTab closed = auctions.remove(Integer.parseInt(currentTab.
+                getId()));
+        if(closed != null){
+            closed.stopCountdown();
+        }
         tabs.getTabs().remove(currentTab);
     }
 
@@ -169,9 +229,24 @@ public class Display {
      *               updated items
      */
     public void updateAuctionItems(AuctionHouseInventory update){
-        List<AuctionItem> items = update.getAuctions();
         AuctionTab auction = auctions.get(update.getAccountNumber());
-        auction.updateItems(items);
+        if(auction != null) {
+            auction.updateInventory(update);
+        }
+    }
+
+    /**
+     * applies a inventory delta to the corresponding AuctionHouse tab.
+     * @param delta changes from the auction house
+     * @return false if the tab missed a version and needs the whole
+     *         inventory, true otherwise
+     */
+    public boolean applyInventoryDelta(InventoryDelta delta){
+        AuctionTab auction = auctions.get(delta.getAccountNumber());
+        if(auction == null){
+            return true;
+        }
+        return auction.applyDelta(delta);
     }
 
     /**
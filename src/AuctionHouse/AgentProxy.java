@@ -2,12 +2,28 @@ package AuctionHouse;
 
 import Utility.*;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An Agent Client to mediate communications with an Agent. Communicates with
  * the Agent by sending serialized messages through a CommunicationService.
+ * Notifications are sent in the background, in order, on an Executor, so a
+ * slow Agent never holds up bidding. The ...Async() variants report, through
+ * a CompletableFuture, whether the agent acknowledged the notification
+ * within the given time.
+ * An AgentProxy also keeps the AccessToken the agent joined with, if any,
+ * so requests to the Bank about the agent can carry it, and replaces it
+ * when the agent renews it.
  * created: 11/30/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (renewed AccessTokens)
+ * previously modified: 10/18/26 by thf (AccessToken the agent joined with)
+ * previously modified: 10/18/26 by thf (inventory deltas)
+ * previously modified: 10/18/26 by thf (shared inventory updates)
+ * previously modified: 10/18/26 by thf (async variants with timeouts)
+ * previously modified: 10/18/26 by thf (sending on an Executor)
+ * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
@@ -15,6 +31,11 @@ import java.io.IOException;
 public class AgentProxy {
 
     private CommunicationService cs;
+    //runs sends one at a time so messages to this agent never interleave
+    private Executor sender;
+    //null if the agent joined with a secret key from the Bank; read by
+    //every bid, replaced when the agent renews it
+    private volatile AccessToken accessToken;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -28,7 +49,32 @@ public class AgentProxy {
      * @param cs CommunicationService used to communicate with the Agent
      */
     public AgentProxy(CommunicationService cs){
+        this(cs, ExecutorFactory.shared());
+    }
+
+    /**
+     * Constructor for the AgentProxy with the Executor its outbound
+     * messages are sent on. Messages are still delivered one at a time and
+     * in the order they were requested.
+     * @param cs CommunicationService used to communicate with the Agent
+     * @param executor Executor that runs the sends
+     */
+    public AgentProxy(CommunicationService cs, Executor executor){
+        this(cs, executor, null);
+    }
+
+    /**
+     * Constructor for the AgentProxy of an agent who joined with an
+     * AccessToken.
+     * @param cs CommunicationService used to communicate with the Agent
+     * @param executor Executor that runs the sends
+     * @param accessToken the agent's AccessToken, or null
+     */
+    public AgentProxy(CommunicationService cs, Executor executor,
+                      AccessToken accessToken){
         this.cs = cs;
+        this.sender = ExecutorFactory.serial(executor);
+        this.accessToken = accessToken;
     }
 
     // ****************************** //
@@ -52,6 +98,42 @@ public class AgentProxy {
         return returnMessage;
     }
 
+    /**
+     * Queues a Message to be sent to the agent in the background. The reply
+     * (an acknowledgement) is not needed by the AuctionHouse.
+     * @param message to be sent
+     */
+    private void sendInBackground(Message message){
+        sender.execute(() -> sendMsg(message));
+    }
+
+    /**
+     * Queues a Message to be sent to the agent in the background, in the
+     * same order as every other notification, and reports whether the agent
+     * acknowledged it. The Message is still delivered after a timeout; only
+     * the caller stops waiting.
+     * @param message to be sent
+     * @param timeout how long to wait for the acknowledgement
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the agent replied ACKNOWLEDGED
+     */
+    private CompletableFuture<Boolean> sendInBackgroundAsync(Message message,
+                                                             long timeout,
+                                                             TimeUnit unit){
+        CompletableFuture<Boolean> acknowledged = new CompletableFuture<>();
+        sender.execute(() -> {
+            try{
+                Message reply = cs.sendMessage(message);
+                acknowledged.complete(reply != null &&
+                        reply.getMessageIdentifier() ==
+                                Message.MessageIdentifier.ACKNOWLEDGED);
+            }catch(IOException e){
+                acknowledged.completeExceptionally(e);
+            }
+        });
+        return acknowledged.orTimeout(timeout, unit);
+    }
+
     // ****************************** //
     //   Public Methods               //
     // ****************************** //
@@ -63,7 +145,7 @@ public class AgentProxy {
      */
     public void notifyOutbidded(AuctionItem ai){
 
-        sendMsg(new Message<AuctionItem>
+        sendInBackground(new Message<AuctionItem>
                 (Message.MessageIdentifier.BID_OUTBIDDED, ai));
     }
 
@@ -76,11 +158,69 @@ public class AgentProxy {
      */
     public void updateAuctions(AuctionHouseInventory ahi){
 
-        sendMsg(new Message<AuctionHouseInventory>
+        sendInBackground(new Message<AuctionHouseInventory>
                 (Message.MessageIdentifier.UPDATE_AUCTION_ITEMS, ahi));
 
     }
 
+    /**
+     * Sends the agent an UPDATE_AUCTION_ITEMS Message that is shared with
+     * every other connected agent, so its cached encoding is reused rather
+     * than serializing the inventory again for this agent.
+     * @param update SharedMessage carrying an AuctionHouseInventory snapshot
+     */
+    public void updateAuctions(SharedMessage<AuctionHouseInventory> update){
+
+        sendInBackground(update);
+    }
+
+    /**
+     * Sends the agent an INVENTORY_DELTA Message that is shared with every
+     * other connected agent. Should only be used if acceptsDeltas().
+     * @param delta SharedMessage carrying the InventoryDelta
+     */
+    public void sendInventoryDelta(SharedMessage<InventoryDelta> delta){
+
+        sendInBackground(delta);
+    }
+
+    /**
+     * Returns the AccessToken the agent joined with, or the latest one it
+     * renewed it with.
+     * @return AccessToken, or null if the agent used a secret key
+     */
+    public AccessToken getAccessToken(){
+        return accessToken;
+    }
+
+    /**
+     * Replaces the agent's AccessToken with a renewed one, unless the one
+     * held already lasts as long. The caller checks the renewed token.
+     * @param renewed AccessToken for the same agent, secret key and house
+     * @return true if the agent joined with an AccessToken, else false
+     */
+    public synchronized boolean renewAccessToken(AccessToken renewed){
+        if(accessToken == null){
+            return false;
+        }
+        if(renewed.getExpiresAtMillis() > accessToken.getExpiresAtMillis()){
+            accessToken = renewed;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the agent can be sent InventoryDeltas. Only an agent on the
+     * same build can, and only the same build agrees to the binary codec
+     * (its offer carries a fingerprint of every MessageIdentifier), so the
+     * connection having switched to the binary codec is the test. Older
+     * agents are sent the whole inventory instead.
+     * @return true if InventoryDeltas can be sent
+     */
+    public boolean acceptsDeltas(){
+        return cs != null && cs.isBinary();
+    }
+
     /**
      * Sends a notification the agent that they won the bid on the passed
      * AuctionItem.
@@ -88,7 +228,49 @@ public class AgentProxy {
      */
     public void notifyWinner(AuctionItem ai) {
 
-        sendMsg(new Message<AuctionItem>
+        sendInBackground(new Message<AuctionItem>
                 (Message.MessageIdentifier.BID_WON, ai));
     }
+
+    /**
+     * Async variant of notifyOutbidded(AuctionItem).
+     * @param ai AuctionItem the agent was outbid on
+     * @param timeout how long to wait for the agent
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the agent acknowledged
+     */
+    public CompletableFuture<Boolean> notifyOutbiddedAsync(AuctionItem ai,
+                                                           long timeout,
+                                                           TimeUnit unit){
+        return sendInBackgroundAsync(new Message<AuctionItem>
+                (Message.MessageIdentifier.BID_OUTBIDDED, ai), timeout, unit);
+    }
+
+    /**
+     * Async variant of updateAuctions(AuctionHouseInventory).
+     * @param ahi AuctionHouseInventory with the current list of AuctionItems
+     * @param timeout how long to wait for the agent
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the agent acknowledged
+     */
+    public CompletableFuture<Boolean> updateAuctionsAsync(
+            AuctionHouseInventory ahi, long timeout, TimeUnit unit){
+        return sendInBackgroundAsync(new Message<AuctionHouseInventory>
+                        (Message.MessageIdentifier.UPDATE_AUCTION_ITEMS, ahi),
+                timeout, unit);
+    }
+
+    /**
+     * Async variant of notifyWinner(AuctionItem).
+     * @param ai AuctionItem that the agent won a bid on
+     * @param timeout how long to wait for the agent
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the agent acknowledged
+     */
+    public CompletableFuture<Boolean> notifyWinnerAsync(AuctionItem ai,
+                                                        long timeout,
+                                                        TimeUnit unit){
+        return sendInBackgroundAsync(new Message<AuctionItem>
+                (Message.MessageIdentifier.BID_WON, ai), timeout, unit);
+    }
 }
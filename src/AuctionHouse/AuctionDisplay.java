@@ -2,6 +2,8 @@ package AuctionHouse;
 
 import Utility.AuctionItem;
 import Utility.Bid;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Scene;
@@ -19,7 +21,11 @@ import javafx.util.Callback;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Provides a 2-phase GUI display for an AuctionHouse.
@@ -29,13 +35,21 @@ import java.util.List;
  * (2) Phase 2 is then a final window that represents the established,
  *     working AuctionHouse and displays information about the AuctionHouse
  *     and contained AuctionItems.
+ * The AuctionDisplay is the AuctionHouse's AuctionHouseObserver. Its
+ * observer methods may be called from any thread, and each one carries its
+ * change over to the JavaFX thread.
  * created: 11/30/2018 by thf
- * last modified: 12/02/2018 by thf
+ * last modified: 10/18/26 by thf (only changed items added or redrawn)
+ * previously modified: 10/18/26 by thf (items passed as a Collection)
+ * previously modified: 10/18/26 by thf (AuctionHouseObserver for the
+ *     AuctionHouse)
+ * previously modified: 10/18/26 by thf (bid timers counted down locally)
+ * previously modified: 12/02/2018 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft
  * @author Tyler Fenske (thf)
  */
-public class AuctionDisplay {
+public class AuctionDisplay implements AuctionHouseObserver {
 
     private GridPane gridPane;
 
@@ -49,6 +63,8 @@ public class AuctionDisplay {
 
     private ObservableList<AuctionItem> auctions =
             FXCollections.observableArrayList();
+    //itemIDs of the items in the table, only used on the JavaFX thread
+    private Set<Integer> shownItemIDs = new HashSet<>();
 
     private TextArea consoleTextArea;
     private String consoleText;
@@ -243,8 +259,12 @@ public class AuctionDisplay {
 
         TableColumn colBidTimer = new TableColumn<>("Bid Timer");
         colBidTimer.setMinWidth(10);
-        colBidTimer.setCellValueFactory(
-                new PropertyValueFactory<AuctionItem, Integer>("timeLeftOnBid")
+        //computed from the close timestamp on every refresh, so the timers
+        //count down without the items themselves being updated
+        colBidTimer.setCellValueFactory(cellData ->
+                new ReadOnlyObjectWrapper<>(((AuctionItem)
+                        ((TableColumn.CellDataFeatures) cellData).getValue())
+                        .getSecondsLeft(System.currentTimeMillis()))
         );
 
         TableColumn colItemID = new TableColumn<>("Item ID");
@@ -524,37 +544,68 @@ public class AuctionDisplay {
      * @param name Name of the AuctionHouse
      * @param id Account Number of the AuctionHouse provided by the bank
      */
+    @Override
     public void setupAHLabelInfo(String name, int id){
-        auctionLabel.setText(name + " — ID: " + id);
+        Platform.runLater(() -> auctionLabel.setText(name + " — ID: " + id));
     }
 
     /**
-     * Updates the AuctionItems display portion of the main GUI.
-     * @param auctionItems a list of current AuctionItems
+     * Updates the AuctionItems display portion of the main GUI with the
+     * items that changed. Items not yet in the table are added to it; the
+     * others are the same objects already shown, so a redraw is enough.
+     * The items are copied into a list first, since the AuctionHouse may
+     * change the collection before the JavaFX thread gets to it.
+     * @param auctionItems the AuctionItems added or changed
      */
-    public void updateAuctionItemDisplay(List<AuctionItem> auctionItems){
-        auctions.remove(0, auctions.size());
-        auctions.addAll(auctionItems);
-        theTable.sort();
-        theTable.refresh();
+    @Override
+    public void updateAuctionItemDisplay(
+            Collection<AuctionItem> auctionItems){
+        List<AuctionItem> items = new ArrayList<>(auctionItems);
+        Platform.runLater(() -> {
+            List<AuctionItem> added = new ArrayList<>();
+            for(AuctionItem ai : items){
+                if(shownItemIDs.add(ai.getItemID())){
+                    added.add(ai);
+                }
+            }
+            if(!added.isEmpty()){
+                auctions.addAll(added);
+                theTable.sort();
+            }
+            theTable.refresh();
+        });
+    }
+
+    /**
+     * Redraws the AuctionItems display without changing its items, so the
+     * Bid Timer column shows the current time left on each bid.
+     */
+    @Override
+    public void refreshAuctionItemDisplay(){
+        Platform.runLater(theTable::refresh);
     }
 
     /**
      * Appends any additional console messages to the display.
      * @param message to be appended
      */
+    @Override
     public void updateConsoleDisplay(String message){
-        consoleText += "\n" + message;
-        consoleTextArea.setText(consoleText);
-        consoleTextArea.appendText("");
+        Platform.runLater(() -> {
+            consoleText += "\n" + message;
+            consoleTextArea.setText(consoleText);
+            consoleTextArea.appendText("");
+        });
     }
 
     /**
      * Updates the bankBalance label.
      * @param balance the amount of total funds available to the AuctionHouse
      */
+    @Override
     public void updateBankBalance(double balance){
-        bankBalance.setText("\t\tBank Balance: $" + df.format(balance) + "\t");
+        Platform.runLater(() -> bankBalance.setText(
+                "\t\tBank Balance: $" + df.format(balance) + "\t"));
     }
 
     /**
@@ -562,12 +613,16 @@ public class AuctionDisplay {
      * @param owed the total amount of money agents owe this AuctionHouse for
      *             won bids.
      */
+    @Override
     public void updateAmountOwed(double owed){
-        if(owed < 0.01){
-            amountOwed.setText("\tAmount Owed: $0.00\t");
-        }else{
-            amountOwed.setText("\tAmount Owed: $" + df.format(owed) + "\t");
-        }
+        Platform.runLater(() -> {
+            if(owed < 0.01){
+                amountOwed.setText("\tAmount Owed: $0.00\t");
+            }else{
+                amountOwed.setText("\tAmount Owed: $" + df.format(owed) +
+                        "\t");
+            }
+        });
     }
 
 
@@ -2,11 +2,15 @@ package AuctionHouse;
 
 import Utility.*;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.net.BindException;
 import java.net.ConnectException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Provides the structure and functionality of a simulated AuctionHouse
@@ -15,8 +19,63 @@ import java.util.*;
  * a BankAccount, where it stores it's funds from selling AuctionItems to
  * Agents. Connected Agents can bid on AuctionItems if they have sufficient
  * funds to do so.
+ * Everything shown about the AuctionHouse goes to its AuctionHouseObserver,
+ * which is the AuctionDisplay GUI or, for a headless AuctionHouse, a
+ * LoggingAuctionHouseObserver; the AuctionHouse itself never uses JavaFX.
+ * Bids are checked against a credit line per agent (see CreditLines):
+ * a budget of the agent's funds the Bank froze for this AuctionHouse in
+ * advance. Only when a line runs out does a bid wait on the Bank; winning
+ * bids are settled, and unused budget released, off the bidding path.
+ * With -Dpublicauction.creditLines=false each bid is instead held by the
+ * Bank on its own, in one TRANSFER_HOLD request that also unfreezes the
+ * bid it outbids.
+ * Agents join with an AccessToken from the Bank rather than a secret key
+ * the Bank had to store; the AuctionHouse checks the token's HMAC with the
+ * key the Bank gave it (see joinAuctionHouse()), and passes the token on
+ * whenever it asks the Bank to hold that agent's funds. Such an agent is
+ * known by the 64-bit secret key carried in its token, so two agents'
+ * keys are all but certain never to collide. The Bank puts the same key
+ * in every token it issues for that agent and this AuctionHouse, so an
+ * agent can send a renewed token before the old one expires (see
+ * renewAccessToken()).
+ * Items are found by itemID, and agents' winning bids by secret key,
+ * through an AuctionItemIndex, so neither a bid nor an agent leaving
+ * goes through the whole inventory.
+ * The number of items is set with -Dpublicauction.inventorySize (15 by
+ * default). Agents may ask for the inventory a page at a time (see
+ * InventoryPageRequest), with pages capped at
+ * -Dpublicauction.maxPageSize items; pages are cut from the same snapshot
+ * as every other listing, which is kept in itemID order.
+ * With -Dpublicauction.catalog=file the items are read from a CSV catalog
+ * (see CatalogLoader) rather than made up, and more lots can be added
+ * while the AuctionHouse runs (see addLots() and importCatalog()).
  * created: 11/30/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (only changed items sent to the display)
+ * previously modified: 10/18/26 by thf (bids on SOLD items rejected)
+ * previously modified: 10/18/26 by thf (renewed AccessTokens; connected
+ *     agents in a ConcurrentHashMap)
+ * previously modified: 10/18/26 by thf (agents known by long secret keys)
+ * previously modified: 10/18/26 by thf (changed items queued, not kept in
+ *     a set)
+ * previously modified: 10/18/26 by thf (inventory kept in a skip list)
+ * previously modified: 10/18/26 by thf (deltas from items marked as changed)
+ * previously modified: 10/18/26 by thf (deadline set before a bid is
+ *     broadcast)
+ * previously modified: 10/18/26 by thf (catalog import, lots added while
+ *     running)
+ * previously modified: 10/18/26 by thf (configurable size, inventory pages)
+ * previously modified: 10/18/26 by thf (AuctionItemIndex for items and
+ *     bidders)
+ * previously modified: 10/18/26 by thf (agents join with AccessTokens)
+ * previously modified: 10/18/26 by thf (per-bid holds via transferHold)
+ * previously modified: 10/18/26 by thf (bids held against credit lines)
+ * previously modified: 10/18/26 by thf (AuctionHouseObserver for display)
+ * previously modified: 10/18/26 by thf (money in long cents)
+ * previously modified: 10/18/26 by thf (versioned inventory, delta updates)
+ * previously modified: 10/18/26 by thf (agents count bid timers down locally)
+ * previously modified: 10/18/26 by thf (AuctionScheduler for bid deadlines)
+ * previously modified: 10/18/26 by thf (inventory encoded once per change)
+ * previously modified: 10/18/26 by thf (shared task executor)
  * previously modified: 12/02/18 by thf
  * @author Liam Brady
  * @author Warren D. Craft (wdc)
@@ -24,17 +83,65 @@ import java.util.*;
  */
 public class AuctionHouse {
 
-    private final int NUM_AUCTION_ITEMS = 15;
+    //system property: "false" to have the Bank hold each bid on its own
+    //rather than against a credit line
+    public static final String CREDIT_LINES_PROPERTY =
+            "publicauction.creditLines";
+    //system property: how many items the AuctionHouse puts up for auction
+    public static final String INVENTORY_SIZE_PROPERTY =
+            "publicauction.inventorySize";
+    //system property: most items sent in one inventory page
+    public static final String MAX_PAGE_SIZE_PROPERTY =
+            "publicauction.maxPageSize";
+    //system property: CSV catalog to read the items from
+    public static final String CATALOG_PROPERTY = "publicauction.catalog";
+
+    private final int numAuctionItems =
+            Integer.getInteger(INVENTORY_SIZE_PROPERTY, 15);
+    private final int maxPageSize =
+            Math.max(1, Integer.getInteger(MAX_PAGE_SIZE_PROPERTY, 500));
     private final long BID_TIMER = 30000;
+    //a credit line is asked for as this many times the bid that needs it
+    private final int CREDIT_LINE_MULTIPLE = 2;
 
     private IDRecord idRecord;
-    private AuctionDisplay display;
+    private AuctionHouseObserver display;
     private BankProxy bankProxy;
-    private List<AuctionItem> auctions;
-    private Map<Integer, AgentProxy> connectedAgents;
-
-    private double amountOwed;
-    private double bankBalance;
+    //the auctions in itemID order; lots are added in place, and readers
+    //walking it are not disturbed
+    private final ConcurrentSkipListMap<Integer, AuctionItem> auctions =
+            new ConcurrentSkipListMap<>();
+    //the auctions by itemID, and each agent's winning bids by secret key
+    private AuctionItemIndex itemIndex;
+    //read by every bid, changed by agents joining and leaving
+    private Map<Long, AgentProxy> connectedAgents;
+    //runs connection handlers, bid timers and outbound agent messages
+    private ExecutorService taskExecutor;
+    //closes items at their deadlines and ticks the bid timers on display
+    private AuctionScheduler auctionScheduler;
+    //budgets the Bank has frozen for bids from each agent; null if the
+    //Bank holds each bid on its own
+    private CreditLines creditLines;
+    //items changed since agents were last told, added where they change
+    //(a bid, a sale, a new lot) and taken out for the next InventoryDelta;
+    //a queue rather than a set, since a set's table stays as large as the
+    //most items it ever held (every lot, at startup), and walking it on
+    //each delta would cost as much; an item may be in it more than once
+    private final Queue<AuctionItem> changedItems =
+            new ConcurrentLinkedQueue<>();
+    //snapshot of the inventory, and the Messages carrying it, each encoded
+    //once and then shared by every UPDATE_AUCTION_ITEMS broadcast and
+    //JOIN_AUCTION_HOUSE reply until the inventory next changes; only built
+    //when someone asks for the whole inventory
+    private final Object inventoryLock = new Object();
+    private long inventoryVersion;
+    private AuctionHouseInventory inventorySnapshot;
+    private SharedMessage<AuctionHouseInventory> inventoryUpdate;
+    private SharedMessage<AuctionHouseInventory> inventoryListing;
+
+    //amounts in cents
+    private long amountOwed;
+    private long bankBalance;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -45,7 +152,8 @@ public class AuctionHouse {
      * necessary setup information (Name, HostName, Port, BankHostName,
      * BankPort), an AuctionHouse is created and passed a reference of its
      * display.
-     * @param display The AuctionHouse GUI class
+     * @param display The AuctionHouse GUI class, or any other
+     *                AuctionHouseObserver
      * @param name A string name to describe the AuctionHouse
      * @param hostName The hostname of the pc this auction house is running on
      * @param port The chosen port number for this auction house to run on
@@ -53,11 +161,20 @@ public class AuctionHouse {
      * @param bankPort The port number the bank is running on
      * @throws IOException
      */
-    public AuctionHouse(AuctionDisplay display, String name, String hostName,
-                        int port, String bankHostName, int bankPort)
+    public AuctionHouse(AuctionHouseObserver display, String name,
+                        String hostName, int port, String bankHostName,
+                        int bankPort)
             throws IOException {
 
-        connectedAgents = new HashMap<>();
+        connectedAgents = new ConcurrentHashMap<>();
+        itemIndex = new AuctionItemIndex();
+        taskExecutor = ExecutorFactory.newPerTaskExecutor("auction-house");
+        auctionScheduler = new AuctionScheduler(this, taskExecutor);
+        //stop bidding against a line while its bids can still close
+        if(Boolean.parseBoolean(
+                System.getProperty(CREDIT_LINES_PROPERTY, "true"))){
+            creditLines = new CreditLines(2 * BID_TIMER);
+        }
 
         this.display = display;
 
@@ -79,9 +196,20 @@ public class AuctionHouse {
         bankProxy = new BankProxy(cs);
         idRecord = bankProxy.openAccount(idRecord);
 
-        List<String> names = createAuctionNames();
-        List<Bid> bids = createBids();
-        createAuctionItems(names, bids);
+        String catalog = System.getProperty(CATALOG_PROPERTY);
+        if(catalog != null){
+            try{
+                importCatalog(Paths.get(catalog));
+            }catch(IOException e){
+                display.updateConsoleDisplay("Catalog " + catalog +
+                        " could not be read: " + e.getMessage());
+            }
+        }
+        if(auctions.isEmpty()){
+            List<String> names = createAuctionNames();
+            List<Bid> bids = createBids();
+            createAuctionItems(names, bids);
+        }
 
         display.setupAHLabelInfo(name, idRecord.getNumericalID());
         updateDisplay();
@@ -89,8 +217,8 @@ public class AuctionHouse {
         PublicAuctionProtocol auctionProtocol = new AuctionHouseProtocol(this);
 
         try{
-            NotificationServer ns = new NotificationServer(port,
-                    auctionProtocol);
+            Runnable ns = NotificationServer.createServer(port,
+                    auctionProtocol, taskExecutor);
             Thread notificationServer = new Thread(ns);
             notificationServer.start();
         }catch(BindException e){
@@ -115,11 +243,9 @@ public class AuctionHouse {
     private AuctionItem createCopyAuctionItem(AuctionItem auctionItem){
         Bid bid = auctionItem.getBid();
 
-        Bid copyBid = new Bid(bid.getMinBid());
-        copyBid.setCurrentBid(bid.getCurrentBid());
-        copyBid.setBidState(bid.getBidState());
-        copyBid.setProposedBid(bid.getProposedBid());
-        copyBid.setSecretKey(bid.getSecretKey());
+        Bid copyBid = new Bid(bid.getBidState(), bid.getMinBidCents(),
+                bid.getCurrentBidCents(), bid.getSecretKey(),
+                bid.getProposedBidCents());
 
         AuctionItem copyAuctionItem = new AuctionItem(auctionItem.getHouseID(),
                 auctionItem.getItemID(), auctionItem.getItemName(), copyBid);
@@ -128,18 +254,16 @@ public class AuctionHouse {
     }
 
     /**
-     * Does a linear search through the list of auctions, returning the
-     * first AuctionItem that matches the itemOfInterest.
+     * Looks up the AuctionItem with the itemOfInterest's itemID, if the
+     * itemOfInterest is from this AuctionHouse.
      * @param itemOfInterest AuctionItem of interest
-     * @return Matching AuctionItem to the passed argument
+     * @return Matching AuctionItem to the passed argument, or null
      */
     private AuctionItem findMatchingAuctionItem(AuctionItem itemOfInterest){
-        for(AuctionItem ai : auctions){
-            if(ai.equals(itemOfInterest)){
-                return ai;
-            }
+        if(itemOfInterest.getHouseID() != idRecord.getNumericalID()){
+            return null;
         }
-        return null;
+        return itemIndex.get(itemOfInterest.getItemID());
     }
 
     /**
@@ -179,7 +303,7 @@ public class AuctionHouse {
         }
 
         if(!adjectives.isEmpty() && !nouns.isEmpty()){
-            for(int i = 0; i < NUM_AUCTION_ITEMS; i++){
+            for(int i = 0; i < numAuctionItems; i++){
                 auctionNames.add(adjectives.get(rand.nextInt(adjectives.size()))
                         + " " + nouns.get(rand.nextInt(nouns.size())));
             }
@@ -189,7 +313,7 @@ public class AuctionHouse {
     }
 
     /**
-     * Creates random bid objects by choosing a random double [0.00, 999.99]
+     * Creates random bid objects by choosing a random amount [$0.00, $999.99]
      * inclusive to be used as the starting minBid.
      * @return List<Bid> to create AuctionItems.
      */
@@ -197,8 +321,8 @@ public class AuctionHouse {
         List<Bid> bids = new ArrayList<>();
         Random rand = new Random();
 
-        for(int i = 0; i < NUM_AUCTION_ITEMS; i++){
-            Bid bid = new Bid(round(rand.nextInt(1000) + rand.nextDouble(), 2));
+        for(int i = 0; i < numAuctionItems; i++){
+            Bid bid = new Bid(Bid.BidState.OPEN, rand.nextInt(100000), 0, 0, 0);
             bids.add(bid);
         }
 
@@ -213,40 +337,216 @@ public class AuctionHouse {
      *             AuctionItems.
      */
     private void createAuctionItems(List<String> names, List<Bid> bids){
-        auctions = new ArrayList<>();
+        List<AuctionItem> items = new ArrayList<>();
 
-        for(int i = 0; i < NUM_AUCTION_ITEMS; i++){
+        for(int i = 0; i < numAuctionItems; i++){
             AuctionItem ai = new AuctionItem(idRecord.getNumericalID(), i+1,
                     names.get(i), bids.get(i));
-            auctions.add(ai);
+            items.add(ai);
         }
+
+        insertLots(items);
     }
 
+    /**
+     * Adds lots to the inventory and the AuctionItemIndex, keeping the
+     * inventory in itemID order, and marks them as changed so the next
+     * InventoryDelta announces them. Lots from another AuctionHouse, or with
+     * the itemID of an item already here, are left out. Only the new lots
+     * are touched, so adding k lots costs O(k log n) however large the
+     * inventory already is.
+     * @param lots AuctionItems to add, in any order
+     * @return number of lots added
+     */
+    private int insertLots(List<AuctionItem> lots){
+        List<AuctionItem> sorted = new ArrayList<>(lots);
+        sorted.sort(Comparator.comparingInt(AuctionItem::getItemID));
+
+        synchronized(inventoryLock){
+            List<AuctionItem> fresh = new ArrayList<>(sorted.size());
+            for(AuctionItem lot : sorted){
+                boolean duplicate = itemIndex.get(lot.getItemID()) != null ||
+                        (!fresh.isEmpty() && fresh.get(fresh.size() - 1).
+                                getItemID() == lot.getItemID());
+                if(lot.getHouseID() == idRecord.getNumericalID() &&
+                        !duplicate){
+                    fresh.add(lot);
+                }
+            }
+            if(fresh.isEmpty()){
+                return 0;
+            }
+
+            itemIndex.addAll(fresh);
+            for(AuctionItem lot : fresh){
+                auctions.put(lot.getItemID(), lot);
+            }
+            changedItems.addAll(fresh);
+            return fresh.size();
+        }
+    }
 
     /**
-     * Adapted from an answer found on StackOverflow:
-     *
-     * https://stackoverflow.com/questions/2808535
-     * /round-a-double-to-2-decimal-places
-     *
-     * Rounds a decimal value to "places" decimal places.
-     * @param value value to be rounded
-     * @param places number of places to round to:
-     *               Example - value = 2.3423 places = 2
-     *                         result = 2.34
-     * @return newly rounded double
+     * Copies an item as it is sent to agents: its bid, deadline and
+     * version, which later bids cannot change.
+     * @param ai AuctionItem of this AuctionHouse
+     * @param now current time, in System.currentTimeMillis() terms
+     * @return AuctionItem copy
+     */
+    private AuctionItem copyForAgents(AuctionItem ai, long now){
+        synchronized(ai){
+            AuctionItem copy = createCopyAuctionItem(ai);
+            //agents count down from closeTimestamp; timeLeftOnBid is kept
+            //for agents built before it existed
+            copy.setTimeLeftOnBid(ai.getSecondsLeft(now));
+            copy.setCloseTimestamp(ai.getCloseTimestamp());
+            copy.setVersion(ai.getVersion());
+            return copy;
+        }
+    }
+
+    /**
+     * Returns a copy of the current inventory that later bids cannot
+     * change, building it if the inventory changed since the last call.
+     * Only needed for the whole inventory (JOIN_AUCTION_HOUSE without a
+     * page request, and agents that cannot take an InventoryDelta).
+     * Must be called while holding inventoryLock.
+     * @return AuctionHouseInventory snapshot
+     */
+    private AuctionHouseInventory getInventorySnapshot(){
+        if(inventorySnapshot == null){
+            long now = System.currentTimeMillis();
+            List<AuctionItem> items = new ArrayList<>(itemIndex.size());
+            for(AuctionItem ai : auctions.values()){
+                items.add(copyForAgents(ai, now));
+            }
+            inventorySnapshot = new AuctionHouseInventory
+                    (idRecord.getNumericalID(), items);
+            inventorySnapshot.setVersion(inventoryVersion);
+            inventorySnapshot.setTotalItems(items.size());
+        }
+        return inventorySnapshot;
+    }
+
+    /**
+     * Returns the full UPDATE_AUCTION_ITEMS Message for agents that cannot
+     * take an InventoryDelta, building it at most once per inventory
+     * version. Must be called while holding inventoryLock.
+     * @return SharedMessage UPDATE_AUCTION_ITEMS
+     */
+    private SharedMessage<AuctionHouseInventory> getInventoryUpdate(){
+        if(inventoryUpdate == null){
+            inventoryUpdate = new SharedMessage<>
+                    (Message.MessageIdentifier.UPDATE_AUCTION_ITEMS,
+                            getInventorySnapshot());
+        }
+        return inventoryUpdate;
+    }
+
+    /**
+     * Makes the page token for a page starting at the given item. The
+     * token is the itemID, with a bit above it set so that no token is
+     * InventoryPageRequest.NO_PAGE_TOKEN.
+     * @param itemID itemID the next page starts at
+     * @return long page token
+     */
+    private static long pageTokenFor(int itemID){
+        return (1L << 32) | (itemID & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Reads the itemID a page starts at back out of its page token.
+     * @param pageToken page token made by pageTokenFor()
+     * @return int itemID
      */
-    private double round(double value, int places){
-        BigDecimal bd = new BigDecimal(value);
-        bd = bd.setScale(places, RoundingMode.HALF_UP);
-        return bd.doubleValue();
+    private static int itemIDFromPageToken(long pageToken){
+        return (int) pageToken;
+    }
+
+    /**
+     * Holds a bid against the bidding agent's credit line. If the agent
+     * has no line, or not enough left on it, asks the bank for a line (or
+     * more on the existing one) of CREDIT_LINE_MULTIPLE times the bid;
+     * this is the only time a bid waits on the bank.
+     * @param agentBid Bid holding the agent's secretKey and proposedBid
+     * @return true if the bid is held, false if the agent lacks the funds
+     */
+    private boolean holdAgentFunds(Bid agentBid){
+        long secretKey = agentBid.getSecretKey();
+        long cents = agentBid.getProposedBidCents();
+        if(creditLines.tryHold(secretKey, cents)){
+            return true;
+        }
+
+        releaseCreditLine(secretKey, creditLines.closeIfPastCutoff(secretKey));
+        long requestedAt = System.nanoTime();
+        CreditLine grant = bankProxy.requestCreditLine(secretKey,
+                tokenFor(secretKey), cents * CREDIT_LINE_MULTIPLE);
+        if(grant == null){
+            return false;
+        }
+        creditLines.addGrant(grant, requestedAt);
+        return creditLines.tryHold(secretKey, cents);
+    }
+
+    /**
+     * Holds a bid without credit lines: the bank freezes the new bid and
+     * unfreezes the one it outbids in a single request, so an outbid agent
+     * gets their funds back in the same round trip that checks the new
+     * bidder's. Must be called before the item's bid is updated.
+     * @param agentBid Bid holding the agent's secretKey and proposedBid
+     * @param currentBid the item's Bid, holding the secretKey (0 if none)
+     *                   and currentBid of the bid being outbid
+     * @return true if the bid is held, false if the agent lacks the funds
+     */
+    private boolean transferAgentFunds(Bid agentBid, Bid currentBid){
+        return bankProxy.transferHold(agentBid,
+                tokenFor(agentBid.getSecretKey()), currentBid,
+                tokenFor(currentBid.getSecretKey()));
+    }
+
+    /**
+     * Returns the AccessToken a connected agent joined with.
+     * @param secretKey the agent's secret key
+     * @return AccessToken, or null if the agent joined with a secret key
+     *         from the bank (or is not connected)
+     */
+    private AccessToken tokenFor(long secretKey){
+        AgentProxy ap = connectedAgents.get(secretKey);
+        return ap == null ? null : ap.getAccessToken();
+    }
+
+    /**
+     * Stops holding an outbid bid against the agent's credit line, giving
+     * the amount back to the bank if the line is past its cutoff.
+     * @param outbidBid Bid holding the outbid secretKey and currentBid
+     */
+    private void releaseAgentFunds(Bid outbidBid){
+        if(creditLines.release(outbidBid.getSecretKey(),
+                outbidBid.getCurrentBidCents())){
+            releaseCreditLine(outbidBid.getSecretKey(),
+                    outbidBid.getCurrentBidCents());
+        }
+    }
+
+    /**
+     * Gives unused credit line budget back to the bank, on the task
+     * executor so the caller never waits for the bank.
+     * @param secretKey the agent's secret key
+     * @param cents amount to release; nothing is sent if 0
+     */
+    private void releaseCreditLine(long secretKey, long cents){
+        if(cents > 0){
+            taskExecutor.execute(() ->
+                    bankProxy.releaseCreditLine(secretKey, cents));
+        }
     }
 
     /**
      * Debugging print method. Prints all AuctionItems to the console.
      */
     private void printAuctionItems(){
-        for(AuctionItem ai : auctions){
+        for(AuctionItem ai : auctions.values()){
             System.out.println("ITEM ID: " + ai.getItemID() +
                     "\t BID STATE: " + ai.getBid().getBidState() +
                     "\t MIN BID: $" + ai.getBid().getMinBid() +
@@ -263,14 +563,34 @@ public class AuctionHouse {
      * This method is called when an agent requests to join the AuctionHouse.
      * A CommunicationService is established with the agent to allow for
      * future notifications about bids, which is then passed to an AgentProxy,
-     * whose reference will then be stored in a HashMap, with it's secretKey
-     * (found in the IDRecord's numericalID field) as the key, and the
-     * AgentProxy reference as the value.
+     * whose reference will then be stored in a ConcurrentHashMap, with its
+     * secretKey (see agentKeyOf()) as the key, and the AgentProxy reference
+     * as the value.
+     *
+     * An agent joining with an AccessToken is turned away unless the token
+     * is one the Bank issued for this AuctionHouse (its HMAC matches under
+     * the house key) and has not expired. Checking costs one HMAC; nothing
+     * is looked up. Agents joining with a secret key from the Bank, and
+     * every agent if the Bank sent no house key, are let in as before, and
+     * the Bank checks their key when they bid.
      * @param agentInfo IDRecord of the agent requesting to join the
      *                  AuctionHouse
+     * @param token the agent's AccessToken, or null
+     * @return true if the agent joined, false if the token was refused
      * @throws IOException
      */
-    public void joinAuctionHouse(IDRecord agentInfo) throws IOException{
+    public boolean joinAuctionHouse(IDRecord agentInfo, AccessToken token)
+            throws IOException{
+        byte[] houseKey = bankProxy.getHouseKey();
+        if(token != null && houseKey != null &&
+                (!token.isAuthentic(houseKey) ||
+                        token.getHouseAcctNum() != idRecord.getNumericalID() ||
+                        token.isExpired(System.currentTimeMillis()))){
+            display.updateConsoleDisplay("Agent [" + agentInfo.getName() +
+                    "] was refused: invalid access token.");
+            return false;
+        }
+
         display.updateConsoleDisplay("Agent [" + agentInfo.getName() + "] " +
                 "has connected." +
                 " — Host: " + agentInfo.getHostname() + " Port: " +
@@ -284,32 +604,254 @@ public class AuctionHouse {
                 " — Host: " + agentInfo.getHostname() + " Port: " +
                 agentInfo.getPortNumber());
 
-        AgentProxy ap = new AgentProxy(cs);
+        AgentProxy ap = new AgentProxy(cs, taskExecutor, token);
 
-        connectedAgents.put(agentInfo.getNumericalID(), ap);
+        connectedAgents.put(agentKeyOf(agentInfo, token), ap);
+        return true;
     }
 
     /**
-     * Creates an AuctionHouseInventory object which contains this
-     * AuctionHouse's account number, and a current up-to-date list
-     * of AuctionItems. This object is then sent to each connected agent,
-     * usually to let them know of any changes that have been made in the
-     * AuctionHouse.
+     * Gives a connected agent's AgentProxy a renewed AccessToken, so its
+     * later bids carry a token the Bank still accepts. The token must be
+     * one the Bank issued for this AuctionHouse and must not have expired;
+     * since the Bank gives every token for the same agent and AuctionHouse
+     * the same secret key, the agent is still known by the key it joined
+     * with.
+     * @param token the agent's renewed AccessToken
+     * @return true if the token was taken, false if it was refused or the
+     *         agent did not join with an AccessToken
      */
-    public void updateAgentsAboutChanges(){
-        AuctionHouseInventory ahi =
-                new AuctionHouseInventory(idRecord.getNumericalID(), auctions);
-        for(AgentProxy ap : connectedAgents.values()){
-            ap.updateAuctions(ahi);
+    public boolean renewAccessToken(AccessToken token){
+        byte[] houseKey = bankProxy.getHouseKey();
+        if(token == null || houseKey == null ||
+                !token.isAuthentic(houseKey) ||
+                token.getHouseAcctNum() != idRecord.getNumericalID() ||
+                token.isExpired(System.currentTimeMillis())){
+            return false;
         }
+        AgentProxy ap = connectedAgents.get(token.getSecretKey());
+        AccessToken current = ap == null ? null : ap.getAccessToken();
+        if(current == null ||
+                current.getAgentAcctNum() != token.getAgentAcctNum()){
+            return false;
+        }
+        return ap.renewAccessToken(token);
     }
 
     /**
-     * Updates the AuctionHouse GUI with the current set of AuctionItems.
+     * Returns the secret key an agent is known by in this AuctionHouse: the
+     * one taken from their AccessToken if they joined with one, else the
+     * secret key from the bank, found in the IDRecord's numericalID field.
+     * @param agentInfo IDRecord of the agent
+     * @param token the agent's AccessToken, or null
+     * @return long secret key
+     */
+    private static long agentKeyOf(IDRecord agentInfo, AccessToken token){
+        return token != null ? token.getSecretKey()
+                : agentInfo.getNumericalID();
+    }
+
+    /**
+     * If any AuctionItem was marked as changed since the last call, gives
+     * the inventory the next version number, stamps the changed items with
+     * it and lets each connected agent know. Agents that can take them are
+     * sent an InventoryDelta with only the changed items, built from those
+     * items alone; older agents are sent the whole AuctionHouseInventory.
+     * Each Message is encoded once, and the same bytes are sent to every
+     * agent. Messages are queued while holding inventoryLock, so every
+     * agent receives the versions in order.
+     * @return the AuctionItems changed since the last call, in itemID
+     *         order, each once (empty if none were)
+     */
+    public List<AuctionItem> updateAgentsAboutChanges(){
+        synchronized(inventoryLock){
+            if(changedItems.isEmpty()){
+                return Collections.emptyList();
+            }
+            List<AuctionItem> changed = new ArrayList<>();
+            AuctionItem marked;
+            //taken out before it is read, so a change made after this
+            //marks it again for the next delta
+            while((marked = changedItems.poll()) != null){
+                changed.add(marked);
+            }
+            changed.sort(Comparator.comparingInt(AuctionItem::getItemID));
+            //an item marked more than once is sent once
+            int distinct = 0;
+            for(AuctionItem ai : changed){
+                if(distinct == 0 || changed.get(distinct - 1) != ai){
+                    changed.set(distinct++, ai);
+                }
+            }
+            changed.subList(distinct, changed.size()).clear();
+
+            long baseVersion = inventoryVersion;
+            inventoryVersion++;
+            inventorySnapshot = null;
+            inventoryListing = null;
+            inventoryUpdate = null;
+
+            long now = System.currentTimeMillis();
+            List<InventoryDelta.ItemChange> changes =
+                    new ArrayList<>(changed.size());
+            for(AuctionItem ai : changed){
+                synchronized(ai){
+                    ai.setVersion(inventoryVersion);
+                    Bid bid = ai.getBid();
+                    changes.add(new InventoryDelta.ItemChange(ai.getItemID(),
+                            inventoryVersion, bid.getBidState(),
+                            bid.getMinBidCents(), bid.getCurrentBidCents(),
+                            bid.getSecretKey(), ai.getSecondsLeft(now),
+                            ai.getCloseTimestamp()));
+                }
+            }
+            if(connectedAgents.isEmpty()){
+                //e.g. a catalog imported at startup; no one to tell
+                return changed;
+            }
+
+            SharedMessage<InventoryDelta> delta = new SharedMessage<>
+                    (Message.MessageIdentifier.INVENTORY_DELTA,
+                            new InventoryDelta(idRecord.getNumericalID(),
+                                    baseVersion, inventoryVersion, changes,
+                                    now));
+            for(AgentProxy ap : connectedAgents.values()){
+                if(ap.acceptsDeltas()){
+                    ap.sendInventoryDelta(delta);
+                }else{
+                    ap.updateAuctions(getInventoryUpdate());
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Returns the reply to JOIN_AUCTION_HOUSE and GET_AUCTION_HOUSE_ITEMS:
+     * this AuctionHouse's account number, its current AuctionItems and the
+     * inventory version. The same Message (and so the same encoded bytes)
+     * is reused for every agent asking until the inventory changes.
+     * @return SharedMessage LIST_OF_AUCTION_HOUSE_ITEMS
+     */
+    public SharedMessage<AuctionHouseInventory> getInventoryListing(){
+        synchronized(inventoryLock){
+            if(inventoryListing == null){
+                inventoryListing = new SharedMessage<>
+                        (Message.MessageIdentifier.LIST_OF_AUCTION_HOUSE_ITEMS,
+                                getInventorySnapshot());
+            }
+            return inventoryListing;
+        }
+    }
+
+    /**
+     * Returns one page of the inventory, for JOIN_AUCTION_HOUSE or
+     * GET_AUCTION_HOUSE_ITEMS carrying an InventoryPageRequest: the items
+     * in the requested itemID range, starting after the page the request's
+     * token came with, and at most maxPageSize of them. Found through the
+     * itemID-ordered inventory in O(log n), and only the items on the page
+     * are copied. An item changed since the last InventoryDelta
+     * is sent as it is now; the next delta brings it again, harmlessly.
+     * @param request InventoryPageRequest from the agent
+     * @return Message LIST_OF_AUCTION_HOUSE_ITEMS holding the page
+     */
+    public Message<AuctionHouseInventory> getInventoryPage(
+            InventoryPageRequest request){
+        synchronized(inventoryLock){
+            long now = System.currentTimeMillis();
+
+            long fromItemID = request.getFromItemID();
+            if(request.getPageToken() != InventoryPageRequest.NO_PAGE_TOKEN){
+                fromItemID = Math.max(fromItemID,
+                        itemIDFromPageToken(request.getPageToken()));
+            }
+            int pageSize = request.getPageSize() <= 0 ? maxPageSize
+                    : Math.min(request.getPageSize(), maxPageSize);
+
+            Iterator<AuctionItem> items = fromItemID > Integer.MAX_VALUE
+                    ? Collections.emptyIterator()
+                    : auctions.tailMap((int) Math.max(fromItemID,
+                            Integer.MIN_VALUE), true).values().iterator();
+            List<AuctionItem> pageItems = new ArrayList<>();
+            AuctionItem next = null;
+            while(items.hasNext()){
+                AuctionItem ai = items.next();
+                if(ai.getItemID() > request.getToItemID()){
+                    break;
+                }
+                if(pageItems.size() == pageSize){
+                    next = ai;
+                    break;
+                }
+                pageItems.add(copyForAgents(ai, now));
+            }
+            AuctionHouseInventory page = new AuctionHouseInventory
+                    (idRecord.getNumericalID(), pageItems, now);
+            page.setVersion(inventoryVersion);
+            page.setTotalItems(itemIndex.size());
+            if(next != null){
+                page.setNextPageToken(pageTokenFor(next.getItemID()));
+            }
+            return new Message<>
+                    (Message.MessageIdentifier.LIST_OF_AUCTION_HOUSE_ITEMS,
+                            page);
+        }
+    }
+
+    /**
+     * Adds lots to the inventory while the AuctionHouse is running; agents
+     * are told about them like any other change. Lots from another
+     * AuctionHouse, or with the itemID of an item already here, are left
+     * out.
+     * @param lots AuctionItems to add, in any order
+     * @return number of lots added
+     */
+    public int addLots(List<AuctionItem> lots){
+        int added = insertLots(lots);
+        if(added > 0){
+            updateDisplay();
+        }
+        return added;
+    }
+
+    /**
+     * Reads the lots in a CSV catalog (see CatalogLoader) and adds them to
+     * the inventory. Segments of the file are parsed in parallel on this
+     * AuctionHouse's task executor.
+     * @param catalog Path of the catalog
+     * @return number of lots added
+     * @throws IOException if the catalog cannot be read
+     */
+    public int importCatalog(Path catalog) throws IOException{
+        CatalogLoader loader = new CatalogLoader(idRecord.getNumericalID(),
+                taskExecutor);
+        List<AuctionItem> lots = loader.load(catalog);
+        int added = addLots(lots);
+        display.updateConsoleDisplay("Added " + added + " lots from " +
+                catalog + " (" + (lots.size() - added) + " duplicates, " +
+                loader.getSkippedLines() + " malformed lines skipped).");
+        return added;
+    }
+
+    /**
+     * Tells agents about the AuctionItems changed since the last update,
+     * then passes just those items on to the AuctionHouse GUI, rather than
+     * the whole inventory on every bid.
      */
     public void updateDisplay(){
-        updateAgentsAboutChanges();
-        display.updateAuctionItemDisplay(auctions);
+        List<AuctionItem> changed = updateAgentsAboutChanges();
+        if(!changed.isEmpty()){
+            display.updateAuctionItemDisplay(changed);
+        }
+    }
+
+    /**
+     * Redraws the bid timers on the AuctionHouse GUI. Nothing is sent to
+     * agents, who count the timers down themselves from each item's close
+     * timestamp.
+     */
+    public void refreshBidTimers(){
+        display.refreshAuctionItemDisplay();
     }
 
     /**
@@ -321,9 +863,13 @@ public class AuctionHouse {
      * how much they want to bid).
      *
      * Once a matching AuctionItem reference is found, a synchronized operation
-     * on that item commences. Checking first if the agent's bid was high
-     * enough (proposedBid >= minBid), then if the agent has sufficient funds
-     * in their account (by checking with the bank), and finally starting a
+     * on that item commences. Checking first that the item has not already
+     * been sold (its BidTimer marks it SOLD under the same lock), then if
+     * the agent's bid was high enough (proposedBid >= minBid), then if the
+     * agent has sufficient funds
+     * (by holding the bid against the agent's credit line, which only
+     * involves the bank if the line is used up, or else by having the bank
+     * move the hold from the outbid agent), and finally starting a
      * BidTimer and notifying the agent of a successful bid in the case that
      * all other tests checked out.
      *
@@ -345,15 +891,29 @@ public class AuctionHouse {
         AuctionItem auctionItem = findMatchingAuctionItem(itemOfInterest);
         AuctionItem oldAuctionItem;
 
+        if(auctionItem == null){
+            //no such item here, so there is nothing to bid on
+            return Message.MessageIdentifier.BID_REJECTED_INADEQUATE;
+        }
 
         synchronized(auctionItem){
 
-            if(itemOfInterest.getBid().getProposedBid() <
-                    auctionItem.getBid().getMinBid()){
+            //the deadline has passed and the item went to its last bidder
+            if(auctionItem.getBid().getBidState() == Bid.BidState.SOLD){
                 return Message.MessageIdentifier.BID_REJECTED_INADEQUATE;
             }
 
-            if(!bankProxy.checkAgentFunds(itemOfInterest.getBid())){
+            if(itemOfInterest.getBid().getProposedBidCents() <
+                    auctionItem.getBid().getMinBidCents()){
+                return Message.MessageIdentifier.BID_REJECTED_INADEQUATE;
+            }
+
+            boolean fundsHeld = creditLines != null
+                    ? holdAgentFunds(itemOfInterest.getBid())
+                    : transferAgentFunds(itemOfInterest.getBid(),
+                            auctionItem.getBid());
+
+            if(!fundsHeld){
                 return Message.MessageIdentifier.BID_REJECTED_NSF;
             }else{
                 oldAuctionItem = createCopyAuctionItem(auctionItem);
@@ -362,32 +922,38 @@ public class AuctionHouse {
                 auctionItem.getBid().setSecretKey
                         (itemOfInterest.getBid().getSecretKey());
                 //Updates auction item's current high bid
-                auctionItem.getBid().setCurrentBid
-                        (round(itemOfInterest.getBid().getProposedBid(), 2));
-                //Updates auction item's new min bid
-                auctionItem.getBid().setMinBid
-                        (round(itemOfInterest.getBid().
-                                getProposedBid() + .01,  2));
+                auctionItem.getBid().setCurrentBidCents
+                        (itemOfInterest.getBid().getProposedBidCents());
+                //Updates auction item's new min bid, one cent higher
+                auctionItem.getBid().setMinBidCents
+                        (itemOfInterest.getBid().getProposedBidCents() + 1);
                 //Updates auction item's bid state
                 auctionItem.getBid().setBidState(Bid.BidState.BIDDING);
+                //Moves the item to the new bidder's active bids
+                itemIndex.bidPlaced(auctionItem,
+                        oldAuctionItem.getBid().getSecretKey(),
+                        itemOfInterest.getBid().getSecretKey());
+                //Sets the new closing deadline before anyone is told
+                //about the bid, so agents never see a stale one
+                auctionItem.startTimer(BID_TIMER, connectedAgents.get(
+                        itemOfInterest.getBid().getSecretKey()), this);
+                changedItems.add(auctionItem);
             }
         }
 
-        //updates the AH server gui
+        //updates the AH server gui, and the agents
         updateDisplay();
 
-        updateAgentsAboutChanges();
-
-        auctionItem.startTimer(BID_TIMER,
-                connectedAgents.get(auctionItem.getBid().getSecretKey()), this);
-
         //if true, there was a previous bidder, so they are notified about
-        //being outbidded. The bank then unfreezes their funds.
+        //being outbidded, and their bid no longer holds their credit line
+        //(without credit lines, the bank already unfroze it).
         if(oldAuctionItem.getBid().getSecretKey() != 0){
             connectedAgents.get(oldAuctionItem.getBid().getSecretKey()).
                     notifyOutbidded(oldAuctionItem);
 
-            bankProxy.unfreezeAgentFunds(oldAuctionItem.getBid());
+            if(creditLines != null){
+                releaseAgentFunds(oldAuctionItem.getBid());
+            }
         }
 
         return Message.MessageIdentifier.BID_ACCEPTED;
@@ -395,22 +961,43 @@ public class AuctionHouse {
 
     /**
      * Called whenever an agent requests to leave the AuctionHouse. If any
-     * bids are currently in a BIDDING status by that agent, the request
-     * will be denied. Otherwise, it'll be approved.
+     * bids are currently in a BIDDING status by that agent (see
+     * AuctionItemIndex), the request will be denied. Otherwise, it'll be
+     * approved.
      * @param idRecord IDRecord of the agent requesting to leave, including
      *                 their secretKey in the numericalID field.
      * @return True if agent is permitted to leave, else false.
      */
     public boolean requestToLeaveAuctionHouse(IDRecord idRecord){
+        return requestToLeaveAuctionHouse(idRecord, null);
+    }
 
-        for(AuctionItem ai : auctions){
-            if(ai.getBid().getSecretKey() == idRecord.getNumericalID() &&
-                    ai.getBid().getBidState() == Bid.BidState.BIDDING){
-                return false;
-            }
+    /**
+     * As requestToLeaveAuctionHouse(IDRecord), for an agent that joined
+     * with an AccessToken and is known by the secret key taken from it.
+     * The token must be one the Bank issued for this AuctionHouse, so no
+     * one can make up a token with another agent's secret key.
+     * @param idRecord IDRecord of the agent requesting to leave
+     * @param token the agent's AccessToken, or null if they joined with a
+     *              secret key from the bank
+     * @return True if agent is permitted to leave, else false.
+     */
+    public boolean requestToLeaveAuctionHouse(IDRecord idRecord,
+                                              AccessToken token){
+        byte[] houseKey = bankProxy.getHouseKey();
+        if(token != null && houseKey != null && !token.isAuthentic(houseKey)){
+            return false;
+        }
+
+        long secretKey = agentKeyOf(idRecord, token);
+        if(itemIndex.hasActiveBids(secretKey)){
+            return false;
         }
 
-        connectedAgents.remove(idRecord.getNumericalID());
+        connectedAgents.remove(secretKey);
+        if(creditLines != null){
+            releaseCreditLine(secretKey, creditLines.remove(secretKey));
+        }
         display.updateConsoleDisplay("Agent [" + idRecord.getName() +
                 "] has disconnected.");
 
@@ -430,15 +1017,44 @@ public class AuctionHouse {
         return false;
     }
 
+    /**
+     * Records that an item was sold to the holder of its winning bid, who
+     * may then leave once none of their other bids are still open, and
+     * marks the item as changed for the next InventoryDelta. Called by the
+     * item's BidTimer.
+     * @param soldItem the AuctionItem that was sold
+     */
+    public void itemSold(AuctionItem soldItem){
+        itemIndex.bidClosed(soldItem, soldItem.getBid().getSecretKey());
+        changedItems.add(soldItem);
+    }
+
+    /**
+     * Settles a winning bid: takes it out of the agent's credit line, and
+     * tells the bank, so the amount stays frozen for the agent's payment.
+     * Called by the item's BidTimer once the bid has won. Without credit
+     * lines the bank already holds the bid on its own, so nothing is done.
+     * @param winningBid Bid holding the winner's secretKey and currentBid
+     */
+    public void settleAgentFunds(Bid winningBid){
+        if(creditLines == null){
+            return;
+        }
+        creditLines.spend(winningBid.getSecretKey(),
+                winningBid.getCurrentBidCents());
+        bankProxy.settleCreditLine(winningBid.getSecretKey(),
+                winningBid.getCurrentBidCents());
+    }
+
     /**
      * Adds to the current amount owed by any agents who have won an Auction.
      * The amountOwed is then presented on the display.
-     * @param owed the amount to be added to amountOwed.
+     * @param owed the amount in cents to be added to amountOwed.
      */
-    public void updateAmountOwed(double owed){
+    public synchronized void updateAmountOwed(long owed){
         amountOwed += owed;
 
-        display.updateAmountOwed(amountOwed);
+        display.updateAmountOwed(Money.toDollars(amountOwed));
     }
 
     /**
@@ -448,14 +1064,14 @@ public class AuctionHouse {
      * oldBalance is removed from amountOwed. The current Bank Balance and
      * amount owed totals are then updated on the AuctionHouse GUI.
      */
-    public void updateBankBalance(){
-        double currentBalance = bankProxy.
-                checkFunds(idRecord).getTotalBalance();
-        double newFunds = currentBalance - bankBalance;
+    public synchronized void updateBankBalance(){
+        long currentBalance = bankProxy.
+                checkFunds(idRecord).getTotalBalanceCents();
+        long newFunds = currentBalance - bankBalance;
 
         bankBalance = currentBalance;
 
-        display.updateBankBalance(currentBalance);
+        display.updateBankBalance(Money.toDollars(currentBalance));
 
         updateAmountOwed(-newFunds);
     }
@@ -465,11 +1081,12 @@ public class AuctionHouse {
     // ****************************** //
 
     /**
-     * Returns the list of AuctionItems in this auction.
-     * @return List<AuctionItem>
+     * Returns the AuctionItems in this auction, in itemID order. The
+     * Collection is a live, read-only view of the inventory.
+     * @return Collection<AuctionItem>
      */
-    public List<AuctionItem> getAuctions(){
-        return auctions;
+    public Collection<AuctionItem> getAuctions(){
+        return Collections.unmodifiableCollection(auctions.values());
     }
 
     /**
@@ -480,4 +1097,22 @@ public class AuctionHouse {
         return idRecord;
     }
 
+    /**
+     * Returns the Executor this AuctionHouse runs its connection handlers,
+     * item closes and outbound agent messages on.
+     * @return ExecutorService shared by this AuctionHouse
+     */
+    public ExecutorService getTaskExecutor(){
+        return taskExecutor;
+    }
+
+    /**
+     * Returns the scheduler that keeps the BidTimers of this AuctionHouse's
+     * items.
+     * @return AuctionScheduler of this AuctionHouse
+     */
+    public AuctionScheduler getAuctionScheduler(){
+        return auctionScheduler;
+    }
+
 }
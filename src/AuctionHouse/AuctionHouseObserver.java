@@ -0,0 +1,68 @@
+package AuctionHouse;
+
+import Utility.AuctionItem;
+
+import java.util.Collection;
+
+/**
+ * Receives the display events of an AuctionHouse: console messages, its
+ * name and account number, its AuctionItems and bid timers, and its bank
+ * balance and the amount agents owe it. The AuctionHouse GUI
+ * (AuctionDisplay) is one AuctionHouseObserver; an AuctionHouse running as
+ * a headless server uses a LoggingAuctionHouseObserver instead, so the
+ * AuctionHouse itself never depends on JavaFX.
+ * The AuctionHouse calls its observer from whichever thread made the
+ * change, so an observer that updates a GUI must move that work onto the
+ * GUI's own thread.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (only changed items reported)
+ * previously modified: 10/18/26 by thf (items passed as a Collection)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public interface AuctionHouseObserver {
+
+    /**
+     * Reports a console message, such as a connection to the Bank or an
+     * agent.
+     * @param message to be shown
+     */
+    void updateConsoleDisplay(String message);
+
+    /**
+     * Reports the AuctionHouse name and account ID.
+     * @param name Name of the AuctionHouse
+     * @param id Account Number of the AuctionHouse provided by the bank
+     */
+    void setupAHLabelInfo(String name, int id);
+
+    /**
+     * Reports the AuctionItems added or changed since the last report.
+     * Items are never removed, and each is the AuctionHouse's own live
+     * AuctionItem, so an item reported once only needs redrawing later.
+     * @param auctionItems the changed AuctionItems, in itemID order
+     */
+    void updateAuctionItemDisplay(Collection<AuctionItem> auctionItems);
+
+    /**
+     * Reports that the time left on bids has changed, though the
+     * AuctionItems themselves have not.
+     */
+    void refreshAuctionItemDisplay();
+
+    /**
+     * Reports the AuctionHouse's bank balance.
+     * @param balance the amount of total funds available to the AuctionHouse
+     */
+    void updateBankBalance(double balance);
+
+    /**
+     * Reports the amount agents owe the AuctionHouse.
+     * @param owed the total amount of money agents owe this AuctionHouse for
+     *             won bids.
+     */
+    void updateAmountOwed(double owed);
+
+}
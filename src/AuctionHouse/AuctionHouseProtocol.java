@@ -1,14 +1,31 @@
 package AuctionHouse;
 
 import Utility.*;
-import javafx.application.Platform;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Message-handling protocol for messages received by a AuctionHouse from an
  * Agent or Bank.
+ * An agent joining with an AccessToken sends JOIN_AUCTION_HOUSE with a
+ * List of the token, then its IDRecord; one refused is sent REQUEST_FAILED.
+ * An InventoryPageRequest, as the content of GET_AUCTION_HOUSE_ITEMS or
+ * at the end of that List, asks for one page of the inventory rather than
+ * all of it.
+ * An agent that joined with an AccessToken leaves the same way, sending
+ * CLOSE_REQUEST with a List of the token, then its IDRecord, and sends
+ * RENEW_ACCESS_TOKEN with the token the Bank renewed it with; a renewal
+ * is answered REQUEST_SUCCEEDED, or REQUEST_FAILED if refused.
  * created: 11/30/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (RENEW_ACCESS_TOKEN)
+ * previously modified: 10/18/26 by thf (leaving with an AccessToken)
+ * previously modified: 10/18/26 by thf (inventory pages)
+ * previously modified: 10/18/26 by thf (joining with an AccessToken)
+ * previously modified: 10/18/26 by thf (balance refreshed off the
+ *     JavaFX thread)
+ * previously modified: 10/18/26 by thf (GET_AUCTION_HOUSE_ITEMS)
+ * previously modified: 10/18/26 by thf (shared inventory listing)
+ * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D Craft (wdc)
  * @author Tyler Fenske (thf)*/
@@ -51,8 +68,23 @@ public class AuctionHouseProtocol implements PublicAuctionProtocol {
             switch(message.getMessageIdentifier()){
 
                 case CLOSE_REQUEST:
-                    if(auctionHouse.requestToLeaveAuctionHouse
-                            ((IDRecord) message.getMessageContent())){
+                    Object closeContent = message.getMessageContent();
+                    AccessToken closeToken = null;
+                    IDRecord closeInfo = null;
+                    if(closeContent instanceof List){
+                        for(Object part : (List<?>) closeContent){
+                            if(part instanceof AccessToken){
+                                closeToken = (AccessToken) part;
+                            }else{
+                                closeInfo = (IDRecord) part;
+                            }
+                        }
+                    }else{
+                        closeInfo = (IDRecord) closeContent;
+                    }
+
+                    if(auctionHouse.requestToLeaveAuctionHouse(closeInfo,
+                            closeToken)){
                         reply = new Message<>
                                 (Message.MessageIdentifier.
                                         CLOSE_ACCEPTED, null);
@@ -62,17 +94,58 @@ public class AuctionHouseProtocol implements PublicAuctionProtocol {
                                         CLOSE_REJECTED, null);
                     }
                     break;
+                case RENEW_ACCESS_TOKEN:
+                    if(auctionHouse.renewAccessToken(
+                            (AccessToken) message.getMessageContent())){
+                        reply = new Message<>
+                                (Message.MessageIdentifier.
+                                        REQUEST_SUCCEEDED, null);
+                    }else{
+                        reply = new Message<>
+                                (Message.MessageIdentifier.
+                                        REQUEST_FAILED, null);
+                    }
+                    break;
+                case GET_AUCTION_HOUSE_ITEMS:
+                    //an agent missed an inventory version, or wants the
+                    //next page
+                    if(message.getMessageContent() instanceof
+                            InventoryPageRequest){
+                        reply = auctionHouse.getInventoryPage(
+                                (InventoryPageRequest)
+                                        message.getMessageContent());
+                    }else{
+                        reply = auctionHouse.getInventoryListing();
+                    }
+                    break;
                 case JOIN_AUCTION_HOUSE:
-                    auctionHouse.joinAuctionHouse((IDRecord)
-                            message.getMessageContent());
-
-                    AuctionHouseInventory ahi = new AuctionHouseInventory
-                            (auctionHouse.getIdRecord().getNumericalID(),
-                                    auctionHouse.getAuctions());
+                    Object joinContent = message.getMessageContent();
+                    AccessToken token = null;
+                    IDRecord agentInfo = null;
+                    InventoryPageRequest page = null;
+                    if(joinContent instanceof List){
+                        for(Object part : (List<?>) joinContent){
+                            if(part instanceof AccessToken){
+                                token = (AccessToken) part;
+                            }else if(part instanceof InventoryPageRequest){
+                                page = (InventoryPageRequest) part;
+                            }else{
+                                agentInfo = (IDRecord) part;
+                            }
+                        }
+                    }else{
+                        agentInfo = (IDRecord) joinContent;
+                    }
 
-                    reply = new Message<>
-                            (Message.MessageIdentifier.
-                                    LIST_OF_AUCTION_HOUSE_ITEMS, ahi);
+                    if(!auctionHouse.joinAuctionHouse(agentInfo, token)){
+                        reply = new Message<>
+                                (Message.MessageIdentifier.REQUEST_FAILED,
+                                        null);
+                    }else if(page != null){
+                        reply = auctionHouse.getInventoryPage(page);
+                    }else{
+                        reply = auctionHouse.getInventoryListing();
+                    }
                     break;
                 case MAKE_BID:
                     AuctionItem ai = (AuctionItem) message.getMessageContent();
@@ -85,12 +158,9 @@ public class AuctionHouseProtocol implements PublicAuctionProtocol {
                     AuctionItem auctionItem =
                             (AuctionItem) message.getMessageContent();
 
-                    Platform.runLater(new Runnable() {
-                        @Override
-                        public void run() {
-                            auctionHouse.updateBankBalance();
-                        }
-                    });
+                    //asks the Bank for the new balance after this reply
+                    auctionHouse.getTaskExecutor().execute(
+                            auctionHouse::updateBankBalance);
 
                     reply = new Message<>
                             (Message.MessageIdentifier.TRANSFER_SUCCESS, null);
@@ -0,0 +1,224 @@
+package AuctionHouse;
+
+import Utility.AuctionItem;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Constant-time lookups into an AuctionHouse's inventory: each AuctionItem
+ * by its itemID, and the items each agent (by secret key) currently holds
+ * the winning bid on.
+ *
+ * Items are kept in an open-addressing table keyed on their int itemIDs
+ * (linear probing, at most half full), so finding the item a bid is for
+ * neither boxes the itemID nor compares names. Items are only ever added,
+ * each into a free slot of the current table, so lookups read the table
+ * without taking a lock. Once the table would be more than half full it
+ * is copied into one twice the size, so adding n items costs O(n) in all.
+ *
+ * The bidder index is updated by the AuctionHouse as bids are accepted
+ * (the item moves from the outbid agent to the new bidder) and as items
+ * are sold (the item leaves the winner's set), so an agent asking to leave
+ * is checked without going through the inventory. Its methods are
+ * synchronized.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (adding in place, growing by
+ *     doubling)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D Craft (wdc)
+ * @author Tyler Fenske (thf)*/
+public class AuctionItemIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile ItemTable items;
+    private final Map<Long, Set<AuctionItem>> activeBids;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for an empty AuctionItemIndex.
+     */
+    public AuctionItemIndex(){
+        items = new ItemTable(MIN_CAPACITY);
+        activeBids = new HashMap<>();
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Adds AuctionItems to the index. An item with the itemID of one
+     * already indexed replaces it.
+     * @param newItems AuctionItems to add
+     */
+    public synchronized void addAll(Collection<AuctionItem> newItems){
+        ItemTable current = items;
+        int needed = current.size + newItems.size();
+        if(2 * needed > current.capacity()){
+            int capacity = current.capacity();
+            while(capacity < 2 * needed){
+                capacity *= 2;
+            }
+            current = current.copyInto(capacity);
+            items = current;
+        }
+        for(AuctionItem ai : newItems){
+            current.put(ai);
+        }
+    }
+
+    /**
+     * Finds the AuctionItem with the given itemID. Does not lock.
+     * @param itemID int itemID of the item
+     * @return AuctionItem, or null if there is none
+     */
+    public AuctionItem get(int itemID){
+        return items.get(itemID);
+    }
+
+    /**
+     * Returns how many AuctionItems are indexed.
+     * @return int number of items
+     */
+    public int size(){
+        return items.size;
+    }
+
+    /**
+     * Records that an item's winning bid moved to a new bidder.
+     * @param item AuctionItem that was bid on
+     * @param oldSecretKey secret key of the outbid agent (0 if none)
+     * @param newSecretKey secret key of the new bidder
+     */
+    public synchronized void bidPlaced(AuctionItem item, long oldSecretKey,
+                                       long newSecretKey){
+        if(oldSecretKey != 0){
+            removeActiveBid(oldSecretKey, item);
+        }
+        activeBids.computeIfAbsent(newSecretKey,
+                key -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                .add(item);
+    }
+
+    /**
+     * Records that an item was sold, so its winner no longer holds an
+     * active bid on it. Does nothing if the item has since been bid on by
+     * someone else.
+     * @param item AuctionItem that was sold
+     * @param secretKey secret key of the winner
+     */
+    public synchronized void bidClosed(AuctionItem item, long secretKey){
+        removeActiveBid(secretKey, item);
+    }
+
+    /**
+     * Checks whether an agent holds the winning bid on any unsold item.
+     * @param secretKey the agent's secret key
+     * @return true if the agent has active bids
+     */
+    public synchronized boolean hasActiveBids(long secretKey){
+        return activeBids.containsKey(secretKey);
+    }
+
+    // ****************************** //
+    //   Private Methods              //
+    // ****************************** //
+
+    /**
+     * Takes an item out of an agent's active bids, dropping the agent's
+     * set once it is empty. Must be called while synchronized.
+     * @param secretKey the agent's secret key
+     * @param item AuctionItem to take out
+     */
+    private void removeActiveBid(long secretKey, AuctionItem item){
+        Set<AuctionItem> held = activeBids.get(secretKey);
+        if(held != null && held.remove(item) && held.isEmpty()){
+            activeBids.remove(secretKey);
+        }
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * Open-addressing table of AuctionItems by itemID. The itemID of each
+     * slot is read from the item in it, and each slot is written once with
+     * a volatile store, so a lookup that finds an item sees it whole. Only
+     * changed while the AuctionItemIndex is locked.
+     */
+    private static final class ItemTable {
+        private final AtomicReferenceArray<AuctionItem> values;
+        private final int mask;
+        private volatile int size;
+
+        private ItemTable(int capacity){
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        private int capacity(){
+            return mask + 1;
+        }
+
+        /**
+         * Copies every item into a new table of the given capacity, which
+         * is not published until it is filled in.
+         */
+        private ItemTable copyInto(int capacity){
+            ItemTable next = new ItemTable(capacity);
+            for(int slot = 0; slot <= mask; slot++){
+                AuctionItem ai = values.get(slot);
+                if(ai != null){
+                    next.put(ai);
+                }
+            }
+            return next;
+        }
+
+        private void put(AuctionItem ai){
+            int slot = slotOf(ai.getItemID());
+            AuctionItem held;
+            while((held = values.get(slot)) != null){
+                if(held.getItemID() == ai.getItemID()){
+                    values.set(slot, ai);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            values.set(slot, ai);
+            size++;
+        }
+
+        private AuctionItem get(int itemID){
+            int slot = slotOf(itemID);
+            AuctionItem held;
+            while((held = values.get(slot)) != null){
+                if(held.getItemID() == itemID){
+                    return held;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Spreads itemIDs, which are often consecutive, across the table.
+         */
+        private int slotOf(int itemID){
+            int h = itemID * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
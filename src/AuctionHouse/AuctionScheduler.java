@@ -0,0 +1,155 @@
+package AuctionHouse;
+
+import Utility.AuctionItem;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single auction-deadline scheduler of an AuctionHouse. Holds at most
+ * one BidTimer per AuctionItem, each closing its item at a fixed
+ * System.nanoTime() deadline. One scheduler thread serves every item in the
+ * house, however many are being bid on: it only hands due work to the
+ * AuctionHouse's task executor, which does the actual closing.
+ *
+ * Restarting an item's timer cancels the old one in constant time; the
+ * cancelled entry is simply skipped when its deadline comes around. Each
+ * item also records the wall-clock time its bid closes, which agents count
+ * down from locally, so agents only hear from the AuctionHouse when a bid
+ * is placed or an item is sold. Once a second, a single tick redraws the
+ * timers on the AuctionHouse's own display.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (item marked SOLD under its lock)
+ * previously modified: 10/18/26 by thf (local tick, no broadcast)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D Craft (wdc)
+ * @author Tyler Fenske (thf)*/
+public class AuctionScheduler {
+
+    private final long ONE_SEC = 1000;
+
+    private AuctionHouse ah;
+    private Executor executor;
+    private ScheduledExecutorService scheduler;
+    //the live BidTimer of every item currently being bid on
+    private Map<AuctionItem, BidTimer> activeTimers;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for an AuctionScheduler. Starts the scheduler thread and
+     * the once-a-second display tick.
+     * @param ah The AuctionHouse whose items are scheduled
+     * @param executor Executor that closes items and runs the tick
+     */
+    public AuctionScheduler(AuctionHouse ah, Executor executor){
+        this.ah = ah;
+        this.executor = executor;
+        activeTimers = new ConcurrentHashMap<>();
+
+        ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1,
+                r -> {
+                    Thread thread = new Thread(r, "auction-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        //cancelled timers are dropped lazily, keeping cancel O(1)
+        stpe.setRemoveOnCancelPolicy(false);
+        scheduler = stpe;
+
+        scheduler.scheduleAtFixedRate(() -> executor.execute(this::tick),
+                ONE_SEC, ONE_SEC, TimeUnit.MILLISECONDS);
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Starts (or restarts) the BidTimer for an item, cancelling the timer
+     * of the previous bid if there was one.
+     * @param ai AuctionItem that was bid on
+     * @param time how long the bid stays open, in milliseconds
+     * @param ap AgentProxy of the agent who currently holds the bid
+     */
+    public void startTimer(AuctionItem ai, long time, AgentProxy ap){
+        BidTimer bidTimer = new BidTimer(time, ap, ai, ah);
+
+        synchronized(ai){
+            BidTimer oldTimer = activeTimers.put(ai, bidTimer);
+            if(oldTimer != null){
+                oldTimer.cancelTimer();
+            }
+            ai.setTimeLeftOnBid(bidTimer.getSecondsLeft());
+            ai.setCloseTimestamp(System.currentTimeMillis() + time);
+            bidTimer.setFuture(scheduler.schedule(
+                    () -> executor.execute(() -> close(bidTimer)),
+                    time, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Cancels the BidTimer of an item, if it has one.
+     * @param ai AuctionItem whose timer is cancelled
+     */
+    public void cancelTimer(AuctionItem ai){
+        synchronized(ai){
+            BidTimer bidTimer = activeTimers.remove(ai);
+            if(bidTimer != null){
+                bidTimer.cancelTimer();
+            }
+        }
+    }
+
+    /**
+     * Returns how many items currently have a running BidTimer.
+     * @return int number of open bids
+     */
+    public int getActiveCount(){
+        return activeTimers.size();
+    }
+
+    // ****************************** //
+    //   Private Methods              //
+    // ****************************** //
+
+    /**
+     * Closes an item whose deadline has passed, unless its BidTimer was
+     * replaced or cancelled in the meantime. The item is marked SOLD while
+     * its lock is still held, so a bid arriving after the deadline is
+     * turned away by makeBid() rather than accepted on a sold item.
+     * @param bidTimer the BidTimer that came due
+     */
+    private void close(BidTimer bidTimer){
+        AuctionItem ai = bidTimer.getAuctionItem();
+        synchronized(ai){
+            if(!activeTimers.remove(ai, bidTimer)){
+                return;
+            }
+            bidTimer.markSold();
+        }
+        bidTimer.run();
+    }
+
+    /**
+     * Refreshes the time left on every open bid from its deadline, then
+     * redraws the timers on the display once for all of them. Agents are
+     * not sent anything.
+     */
+    private void tick(){
+        if(activeTimers.isEmpty()){
+            return;
+        }
+        for(BidTimer bidTimer : activeTimers.values()){
+            bidTimer.getAuctionItem().setTimeLeftOnBid(
+                    bidTimer.getSecondsLeft());
+        }
+        ah.refreshBidTimers();
+    }
+}
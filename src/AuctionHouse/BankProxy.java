@@ -2,7 +2,12 @@ package AuctionHouse;
 
 import Utility.*;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Bank Client to mediate communications with a Bank. Communicates with the
@@ -10,15 +15,41 @@ import java.util.Random;
  * A null reference of CommunicationService will be passed if no Bank is
  * available for connection. If a null CommunicationService is detected, all
  * methods will return "fake" values to allow the AuctionHouse to still run.
+ * Every operation also has an ...Async() variant that returns at once with
+ * a CompletableFuture, which completes exceptionally (for example with a
+ * TimeoutException) if the Bank does not answer within the given time.
+ * Credit lines (see requestCreditLine()) let the AuctionHouse accept an
+ * agent's bids against a budget the Bank has already frozen, rather than
+ * checking funds with the Bank for each bid. Without credit lines,
+ * transferHold() moves the hold on an item from its outbid agent to the
+ * new bidder in one request.
+ * The Bank's reply to OPEN_AUCTIONHOUSE_ACCT carries this AuctionHouse's
+ * key for checking agents' AccessTokens (see getHouseKey()). Requests that
+ * name an agent who joined with a token carry the token too, in front of
+ * the usual content, so the Bank can check it rather than look the
+ * agent's secret key up.
  * created: 11/30/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (AccessTokens)
+ * previously modified: 10/18/26 by thf (transferHold for outbid agents)
+ * previously modified: 10/18/26 by thf (credit lines)
+ * previously modified: 10/18/26 by thf (async variants with timeouts)
+ * previously modified: 10/18/26 by thf (checking funds for many bids at once)
+ * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class BankProxy {
 
+    //how long a credit line from a missing Bank lasts
+    private static final long FAKE_CREDIT_LINE_MILLIS =
+            TimeUnit.DAYS.toMillis(1);
+
     private CommunicationService cs;
+    //key the Bank signs this AuctionHouse's AccessTokens with; null until
+    //the account is open, or if the Bank sent none
+    private volatile byte[] houseKey;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -62,12 +93,32 @@ public class BankProxy {
         Message<IDRecord> msg = new Message<>
                 (Message.MessageIdentifier.OPEN_AUCTIONHOUSE_ACCT, idRecord);
 
-        Message<IDRecord> replyMessage = sendMsg(msg);
+        return accountFromReply(sendMsg(msg), idRecord);
+    }
 
+    /**
+     * Interprets the Bank's reply to OPEN_AUCTIONHOUSE_ACCT, falling back
+     * to a fake account number if the Bank could not provide one. The
+     * reply is the IDRecord, followed by the house key (Base64) if the
+     * Bank issues AccessTokens.
+     * @param replyMessage reply from the bank (may be null)
+     * @param idRecord with a missing numericalID field.
+     * @return IDRecord with an account number in the numericalID field.
+     */
+    private IDRecord accountFromReply(Message replyMessage,
+                                      IDRecord idRecord){
         if(replyMessage !=  null){
+            Object content = replyMessage.getMessageContent();
             if(replyMessage.getMessageIdentifier() ==
+                    Message.MessageIdentifier.AUCTIONHOUSE_ACCT_CONFIRMED &&
+                    content instanceof List){
+                List<?> recordAndKey = (List<?>) content;
+                houseKey = Base64.getDecoder().decode(
+                        (String) recordAndKey.get(1));
+                return (IDRecord) recordAndKey.get(0);
+            }else if(replyMessage.getMessageIdentifier() ==
                     Message.MessageIdentifier.AUCTIONHOUSE_ACCT_CONFIRMED){
-                return replyMessage.getMessageContent();
+                return (IDRecord) content;
             }else if(replyMessage.getMessageIdentifier() ==
                     Message.MessageIdentifier.CASE_NOT_FOUND){
                 System.out.println("Bank Functionality Unimplemented\n" +
@@ -94,6 +145,91 @@ public class BankProxy {
         return returnMessage;
     }
 
+    /**
+     * Utility method that sends a Message without waiting for the response.
+     * @param message to be sent
+     * @param timeout how long to wait for the reply
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of the reply message
+     */
+    private CompletableFuture<Message> sendMsgAsync(Message message,
+                                                   long timeout,
+                                                   TimeUnit unit){
+        return cs.sendMessageAsync(message, timeout, unit);
+    }
+
+    /**
+     * Interprets the Bank's reply to GRANT_CREDIT_LINE.
+     * @param replyMessage reply from the bank (may be null)
+     * @return CreditLine granted, or null if the bank refused
+     */
+    private static CreditLine grantFromReply(Message replyMessage){
+        if(replyMessage != null &&
+                replyMessage.getMessageIdentifier() ==
+                        Message.MessageIdentifier.CREDIT_LINE_GRANTED){
+            return (CreditLine) replyMessage.getMessageContent();
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the Bank's reply to CHECK_FUNDS means the funds are there.
+     * @param replyMessage reply from the bank (may be null)
+     * @return true if the bank returned CHECK_SUCCESS
+     */
+    private static boolean isCheckSuccess(Message replyMessage){
+        return replyMessage != null &&
+                replyMessage.getMessageIdentifier().equals
+                        (Message.MessageIdentifier.CHECK_SUCCESS);
+    }
+
+    /**
+     * Builds a TRANSFER_HOLD request: the new bid, then the one it outbids,
+     * then the two bidders' AccessTokens if either has one.
+     */
+    private static Message<List<Object>> holdTransferMessage(
+            Bid newBidInfo, AccessToken newToken,
+            Bid oldBidInfo, AccessToken oldToken){
+        List<Object> bids = new ArrayList<>(4);
+        bids.add(newBidInfo);
+        bids.add(oldBidInfo);
+        if(newToken != null || oldToken != null){
+            bids.add(newToken);
+            bids.add(oldToken);
+        }
+        return new Message<>(Message.MessageIdentifier.TRANSFER_HOLD, bids);
+    }
+
+    /**
+     * Puts an agent's AccessToken, if they have one, in front of the
+     * content of a request naming them.
+     * @param token the agent's AccessToken, or null
+     * @param content usual content of the request
+     * @return content to send
+     */
+    private static Object withToken(AccessToken token, Object content){
+        if(token == null){
+            return content;
+        }
+        List<Object> tokenAndContent = new ArrayList<>(2);
+        tokenAndContent.add(token);
+        tokenAndContent.add(content);
+        return tokenAndContent;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the key the Bank signs this AuctionHouse's AccessTokens with,
+     * as sent in reply to OPEN_AUCTIONHOUSE_ACCT.
+     * @return byte[] house key, or null if the Bank sent none
+     */
+    public byte[] getHouseKey(){
+        return houseKey;
+    }
+
     // ****************************** //
     //   Public Methods               //
     // ****************************** //
@@ -142,10 +278,118 @@ public class BankProxy {
             Message<Bid> msg = new Message<>
                     (Message.MessageIdentifier.CHECK_FUNDS, agentBidInfo);
 
-            Message replyMessage = sendMsg(msg);
+            return isCheckSuccess(sendMsg(msg));
+        }
+    }
+
+    /**
+     * Asks the Bank, in one request, to freeze the funds for a new bid and
+     * to unfreeze those of the bid it outbids. If the new bidder can not
+     * cover the bid, nothing changes and the method returns false.
+     * @param newBidInfo bid object with the new bidder's secret key and
+     *                   proposed bid
+     * @param newToken the new bidder's AccessToken, or null
+     * @param oldBidInfo the item's bid before the new bid, with the
+     *                   previous bidder's secret key (0 if none) and bid
+     * @param oldToken the previous bidder's AccessToken, or null
+     * @return true if the bank returns CHECK_SUCCESS else false
+     */
+    public boolean transferHold(Bid newBidInfo, AccessToken newToken,
+                                Bid oldBidInfo, AccessToken oldToken){
+        if(cs == null){
+            return true;
+        }
+        return isCheckSuccess(sendMsg(holdTransferMessage(newBidInfo,
+                newToken, oldBidInfo, oldToken)));
+    }
+
+    /**
+     * Asks the Bank whether agents have enough funds for each of several
+     * bids. All of the CHECK_FUNDS requests are sent before any reply is
+     * awaited, so over a binary connection the Bank checks them in
+     * parallel on the one socket. If the Bank is unreachable every check
+     * succeeds, as with checkAgentFunds(Bid).
+     * @param agentBidInfos bid objects agents are interested in bidding on.
+     * @return List of results in the same order as the bids: true if the
+     *         bank returned CHECK_SUCCESS for that bid, else false
+     */
+    public List<Boolean> checkAgentFunds(List<Bid> agentBidInfos){
+        List<Boolean> results = new ArrayList<>(agentBidInfos.size());
+        if(cs == null){
+            for(int i = 0; i < agentBidInfos.size(); i++){
+                results.add(true);
+            }
+            return results;
+        }
+
+        List<CompletableFuture<Message>> replies =
+                new ArrayList<>(agentBidInfos.size());
+        for(Bid agentBidInfo : agentBidInfos){
+            replies.add(cs.sendMessageAsync(new Message<>
+                    (Message.MessageIdentifier.CHECK_FUNDS, agentBidInfo)));
+        }
+        for(CompletableFuture<Message> reply : replies){
+            Message replyMessage = null;
+            try{
+                replyMessage = reply.join();
+            }catch(RuntimeException e){
+                e.printStackTrace();
+            }
+            results.add(isCheckSuccess(replyMessage));
+        }
+        return results;
+    }
+
+    /**
+     * Asks the Bank to freeze a budget of an agent's funds as a credit line
+     * for this AuctionHouse, or to add to the line it already has. The
+     * Bank may grant less than requested (as much as the agent can cover),
+     * or nothing but a longer period for an existing line. If the Bank is
+     * unreachable the whole budget is granted, as with checkAgentFunds().
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param token the agent's AccessToken, or null if they joined with a
+     *              secret key from the Bank
+     * @param budgetCents the budget in cents requested
+     * @return CreditLine with the amount granted and the period of the
+     *         line, or null if the bank refused
+     */
+    public CreditLine requestCreditLine(long secretKey, AccessToken token,
+                                        long budgetCents){
+        if(cs == null){
+            return new CreditLine(secretKey, budgetCents,
+                    FAKE_CREDIT_LINE_MILLIS);
+        }
+        return grantFromReply(sendMsg(new Message<>
+                (Message.MessageIdentifier.GRANT_CREDIT_LINE,
+                        withToken(token,
+                                new CreditLine(secretKey, budgetCents, 0)))));
+    }
+
+    /**
+     * Tells the Bank a bid accepted against a credit line has won, so the
+     * amount stays frozen for the agent's payment rather than being
+     * unfrozen with the rest of the line.
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param settledCents the winning bid in cents
+     */
+    public void settleCreditLine(long secretKey, long settledCents){
+        if(cs != null){
+            sendMsg(new Message<>(Message.MessageIdentifier.SETTLE_CREDIT_LINE,
+                    new CreditLine(secretKey, settledCents, 0)));
+        }
+    }
 
-            return replyMessage.getMessageIdentifier().equals
-                    (Message.MessageIdentifier.CHECK_SUCCESS);
+    /**
+     * Gives back part of a credit line the AuctionHouse no longer needs,
+     * so the Bank unfreezes it in the agent's account.
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param releasedCents the amount in cents to release
+     */
+    public void releaseCreditLine(long secretKey, long releasedCents){
+        if(cs != null){
+            sendMsg(new Message<>(
+                    Message.MessageIdentifier.RELEASE_CREDIT_LINE,
+                    new CreditLine(secretKey, releasedCents, 0)));
         }
     }
 
@@ -181,4 +425,224 @@ public class BankProxy {
         }
         return null;
     }
+
+    // ****************************** //
+    //   Public Methods               //
+    //   (async)                      //
+    // ****************************** //
+
+    /**
+     * Async variant of openAccount(IDRecord).
+     * @param idRecord missing numericalID field.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of the IDRecord with numericalID filled in
+     */
+    public CompletableFuture<IDRecord> openAccountAsync(IDRecord idRecord,
+                                                        long timeout,
+                                                        TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(
+                    openFakeAccount(idRecord));
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.OPEN_AUCTIONHOUSE_ACCT,
+                                idRecord), timeout, unit)
+                .thenApply(reply -> accountFromReply(reply, idRecord));
+    }
+
+    /**
+     * Async variant of unfreezeAgentFunds(Bid).
+     * @param bidderInfo bid object containing bidders secretKey and amount
+     *                   that needs to be unfrozen in the "proposedBid" field.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture completed once the bank has replied
+     */
+    public CompletableFuture<Void> unfreezeAgentFundsAsync(Bid bidderInfo,
+                                                           long timeout,
+                                                           TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendMsgAsync(new Message<Bid>
+                        (Message.MessageIdentifier.UNFREEZE_FUNDS, bidderInfo),
+                timeout, unit)
+                .thenApply(reply -> null);
+    }
+
+    /**
+     * Async variant of checkAgentFunds(Bid).
+     * @param agentBidInfo bid object agent is interested in bidding on.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the bank returns CHECK_SUCCESS
+     */
+    public CompletableFuture<Boolean> checkAgentFundsAsync(Bid agentBidInfo,
+                                                           long timeout,
+                                                           TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(true);
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.CHECK_FUNDS, agentBidInfo),
+                timeout, unit)
+                .thenApply(BankProxy::isCheckSuccess);
+    }
+
+    /**
+     * Async variant of checkAgentFunds(List). The timeout applies to each
+     * check, and all checks are in flight at once.
+     * @param agentBidInfos bid objects agents are interested in bidding on.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of the results, in the same order as the bids
+     */
+    public CompletableFuture<List<Boolean>> checkAgentFundsAsync(
+            List<Bid> agentBidInfos, long timeout, TimeUnit unit){
+        List<CompletableFuture<Boolean>> checks =
+                new ArrayList<>(agentBidInfos.size());
+        for(Bid agentBidInfo : agentBidInfos){
+            checks.add(checkAgentFundsAsync(agentBidInfo, timeout, unit));
+        }
+        return CompletableFuture.allOf(
+                checks.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    List<Boolean> results = new ArrayList<>(checks.size());
+                    for(CompletableFuture<Boolean> check : checks){
+                        results.add(check.join());
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * Async variant of transferHold(Bid, AccessToken, Bid, AccessToken).
+     * @param newBidInfo bid object with the new bidder's proposed bid
+     * @param newToken the new bidder's AccessToken, or null
+     * @param oldBidInfo the item's bid before the new bid
+     * @param oldToken the previous bidder's AccessToken, or null
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of true if the bank returns CHECK_SUCCESS
+     */
+    public CompletableFuture<Boolean> transferHoldAsync(
+            Bid newBidInfo, AccessToken newToken, Bid oldBidInfo,
+            AccessToken oldToken, long timeout, TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(true);
+        }
+        return sendMsgAsync(holdTransferMessage(newBidInfo, newToken,
+                        oldBidInfo, oldToken), timeout, unit)
+                .thenApply(BankProxy::isCheckSuccess);
+    }
+
+    /**
+     * Async variant of requestCreditLine(int, AccessToken, long).
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param token the agent's AccessToken, or null
+     * @param budgetCents the budget in cents requested
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of the CreditLine granted, or of null if
+     *         the bank refused
+     */
+    public CompletableFuture<CreditLine> requestCreditLineAsync(
+            long secretKey, AccessToken token, long budgetCents, long timeout,
+            TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(new CreditLine(
+                    secretKey, budgetCents, FAKE_CREDIT_LINE_MILLIS));
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.GRANT_CREDIT_LINE,
+                                withToken(token, new CreditLine(secretKey,
+                                        budgetCents, 0))),
+                timeout, unit)
+                .thenApply(BankProxy::grantFromReply);
+    }
+
+    /**
+     * Async variant of settleCreditLine(int, long).
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param settledCents the winning bid in cents
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture completed once the bank has replied
+     */
+    public CompletableFuture<Void> settleCreditLineAsync(long secretKey,
+                                                         long settledCents,
+                                                         long timeout,
+                                                         TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.SETTLE_CREDIT_LINE,
+                                new CreditLine(secretKey, settledCents, 0)),
+                timeout, unit)
+                .thenApply(reply -> null);
+    }
+
+    /**
+     * Async variant of releaseCreditLine(int, long).
+     * @param secretKey the agent's secret key for this AuctionHouse
+     * @param releasedCents the amount in cents to release
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture completed once the bank has replied
+     */
+    public CompletableFuture<Void> releaseCreditLineAsync(long secretKey,
+                                                          long releasedCents,
+                                                          long timeout,
+                                                          TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.RELEASE_CREDIT_LINE,
+                                new CreditLine(secretKey, releasedCents, 0)),
+                timeout, unit)
+                .thenApply(reply -> null);
+    }
+
+    /**
+     * Async variant of closeAccount(IDRecord).
+     * @param idRecord that contains this AuctionHouse's account number.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture completed once the bank has replied
+     */
+    public CompletableFuture<Void> closeAccountAsync(IDRecord idRecord,
+                                                     long timeout,
+                                                     TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.CLOSE_REQUEST, idRecord),
+                timeout, unit)
+                .thenApply(reply -> null);
+    }
+
+    /**
+     * Async variant of checkFunds(IDRecord).
+     * @param idRecord with account number in numericalID field.
+     * @param timeout how long to wait for the bank
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture of the BankAccount of this AuctionHouse
+     *         (null if there is no Bank)
+     */
+    public CompletableFuture<BankAccount> checkFundsAsync(IDRecord idRecord,
+                                                          long timeout,
+                                                          TimeUnit unit){
+        if(cs == null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendMsgAsync(new Message<>
+                        (Message.MessageIdentifier.REQUEST_BALANCE, idRecord),
+                timeout, unit)
+                .thenApply(reply -> reply == null ? null :
+                        (BankAccount) reply.getMessageContent());
+    }
 }
@@ -2,26 +2,39 @@ package AuctionHouse;
 
 import Utility.AuctionItem;
 import Utility.Bid;
-import javafx.application.Platform;
-import java.io.Serializable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A runnable Timer class, used for measuring how long it has been since an
- * agent has bid on an AuctionItem of interest. BidTimers are contained inside
- * of an AuctionItem, and are started/restarted by an AuctionHouse.
+ * The timer of the current bid on an AuctionItem: who holds the bid, and
+ * the System.nanoTime() deadline at which the item is sold to them. A
+ * BidTimer does not sleep or hold a thread; the AuctionHouse's
+ * AuctionScheduler runs it once its deadline has passed, unless a newer
+ * bid has replaced it first.
  * created: 12/1/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (marked SOLD under the item's lock)
+ * previously modified: 10/18/26 by thf (tells the AuctionHouse the item
+ *     sold)
+ * previously modified: 10/18/26 by thf (settles the winner's credit line)
+ * previously modified: 10/18/26 by thf (no JavaFX, for headless AuctionHouses)
+ * previously modified: 10/18/26 by thf (amount owed in cents)
+ * previously modified: 10/18/26 by thf (clears the close timestamp when sold)
+ * previously modified: 10/18/26 by thf (nanoTime deadline on AuctionScheduler)
+ * previously modified: 10/18/26 by thf (one inventory broadcast per change)
+ * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D Craft (wdc)
  * @author Tyler Fenske (thf)*/
-public class BidTimer implements Runnable, Serializable {
+public class BidTimer implements Runnable {
 
-    private final long TIME;
-    private final long ONE_SEC = 1000;
+    private final long ONE_SEC_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final long deadline;
     private AgentProxy ap;
     private AuctionItem ai;
-    private boolean stillValid;
+    private volatile boolean stillValid;
     private AuctionHouse ah;
+    //scheduled close, so a cancelled timer can be dropped by the scheduler
+    private volatile Future<?> future;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -32,28 +45,78 @@ public class BidTimer implements Runnable, Serializable {
      * which decides how long the timer will last, and uses references of the
      * related AgentProxy, AuctionItem, and AuctionHouse to notify the
      * appropriate parties of the timer finishing.
-     * @param time How long the BidTimer will last for
+     * @param time How long the BidTimer will last for, in milliseconds
      * @param ap The AgentProxy reference of the agent who bid on the item
      * @param ai The AuctionItem the agent bid on
      * @param ah The AuctionHouse the item that was bid on is in
      */
     public BidTimer(long time, AgentProxy ap, AuctionItem ai, AuctionHouse ah){
-        this.TIME = time;
+        this.deadline = System.nanoTime() +
+                TimeUnit.MILLISECONDS.toNanos(time);
         this.ap = ap;
         this.ai = ai;
         this.ah = ah;
         stillValid = true;
     }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the AuctionItem this timer closes.
+     * @return AuctionItem
+     */
+    public AuctionItem getAuctionItem(){
+        return ai;
+    }
+
+    /**
+     * Returns the whole seconds left until the deadline, rounded up, so an
+     * open bid never shows 0 before it is closed.
+     * @return int seconds left (0 once the deadline has passed)
+     */
+    public int getSecondsLeft(){
+        long nanosLeft = deadline - System.nanoTime();
+        if(nanosLeft <= 0){
+            return 0;
+        }
+        return (int) ((nanosLeft + ONE_SEC_NANOS - 1) / ONE_SEC_NANOS);
+    }
+
+    /**
+     * Records the scheduled close of this timer, so cancelTimer() can
+     * cancel it.
+     * @param future Future returned by the scheduler
+     */
+    void setFuture(Future<?> future){
+        this.future = future;
+    }
+
     // ****************************** //
     //   Public Methods               //
     // ****************************** //
 
     /**
      * If this method is called, when the timer is finished, it will no
-     * longer notify anyone, and will die in silence.
+     * longer notify anyone, and will die in silence. Constant time.
      */
     public void cancelTimer(){
         stillValid = false;
+        Future<?> scheduled = future;
+        if(scheduled != null){
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Marks the item SOLD and its bid closed. Called by the AuctionScheduler
+     * while it holds the item's lock, before run() tells anyone.
+     */
+    void markSold(){
+        ai.getBid().setBidState(Bid.BidState.SOLD);
+        ai.setTimeLeftOnBid(0);
+        ai.setCloseTimestamp(0);
     }
 
     // ****************************** //
@@ -61,37 +124,20 @@ public class BidTimer implements Runnable, Serializable {
     // ****************************** //
 
     /**
-     * Called when the thread is started. After TIME seconds, if the
-     * cancelTimer() method was never called, the agent will be notified
-     * of winning the bid, and the AuctionHouse GUI will be updated.
+     * Called by the AuctionScheduler once the deadline has passed and the
+     * item has been marked SOLD (see markSold()). If the cancelTimer()
+     * method was never called, the agent will be notified of winning the
+     * bid, the AuctionHouse told the item is sold, the winning bid settled
+     * against their credit line, and the AuctionHouse GUI will be updated.
      */
     @Override
     public void run() {
-        try{
-
-            for(int i = 0; i < TIME/ONE_SEC; i++){
-                if(stillValid){
-                    ai.setTimeLeftOnBid((int)(TIME/ONE_SEC - i));
-                    ah.updateDisplay();
-                    Thread.sleep(ONE_SEC);
-                }
-            }
-
-            if(stillValid){
-                ap.notifyWinner(ai);
-                ai.getBid().setBidState(Bid.BidState.SOLD);
-                ai.setTimeLeftOnBid(0);
-                ah.updateDisplay();
-                ah.updateAgentsAboutChanges();
-                Platform.runLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        ah.updateAmountOwed(ai.getBid().getCurrentBid());
-                    }
-                });
-            }
-        }catch(InterruptedException e){
-            e.printStackTrace();
+        if(stillValid){
+            ap.notifyWinner(ai);
+            ah.itemSold(ai);
+            ah.updateDisplay();
+            ah.settleAgentFunds(ai.getBid());
+            ah.updateAmountOwed(ai.getBid().getCurrentBidCents());
         }
     }
 }
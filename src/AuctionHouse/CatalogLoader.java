@@ -0,0 +1,314 @@
+package AuctionHouse;
+
+import Utility.AuctionItem;
+import Utility.Bid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a catalog of lots for an AuctionHouse from a CSV file with one lot
+ * per line:
+ *     itemID,minBid,name
+ * where minBid is in dollars (e.g. 12.50) and the name runs to the end of
+ * the line, so it may hold commas (double quotes around it are dropped, and
+ * "" inside them stands for one "). Blank lines, lines starting with '#'
+ * and a header line at the top of the file are skipped; so are malformed
+ * lines, which are counted (see getSkippedLines()).
+ *
+ * The file is never read onto the heap. It is cut at line boundaries into
+ * segments of about SEGMENT_BYTES, and each segment is memory-mapped on its
+ * own and parsed straight from the mapped bytes, on the Executor given, so
+ * segments are parsed in parallel and only the AuctionItems built from them
+ * take up heap. Lots are returned in the order they appear in the file.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D Craft (wdc)
+ * @author Tyler Fenske (thf)*/
+public class CatalogLoader {
+
+    private static final int SEGMENT_BYTES = 8 * 1024 * 1024;
+    //how much of the file is mapped at a time when looking for the end of
+    //a line to cut a segment at
+    private static final int BOUNDARY_WINDOW = 64 * 1024;
+
+    private final int houseID;
+    private final Executor executor;
+    private final AtomicInteger skippedLines = new AtomicInteger();
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for a CatalogLoader.
+     * @param houseID account number of the AuctionHouse the lots are for
+     * @param executor Executor the segments are parsed on
+     */
+    public CatalogLoader(int houseID, Executor executor){
+        this.houseID = houseID;
+        this.executor = executor;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Reads every lot in a catalog file.
+     * @param catalog Path of the CSV catalog
+     * @return List of the lots as open AuctionItems, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public List<AuctionItem> load(Path catalog) throws IOException{
+        try(FileChannel channel = FileChannel.open(catalog,
+                StandardOpenOption.READ)){
+            long size = channel.size();
+
+            List<Long> starts = new ArrayList<>();
+            starts.add(0L);
+            for(long cut = SEGMENT_BYTES; cut < size; cut += SEGMENT_BYTES){
+                long start = nextLineStart(channel, cut, size);
+                if(start > starts.get(starts.size() - 1) && start < size){
+                    starts.add(start);
+                }
+            }
+            starts.add(size);
+
+            List<CompletableFuture<List<AuctionItem>>> segments =
+                    new ArrayList<>();
+            for(int i = 0; i + 1 < starts.size(); i++){
+                long start = starts.get(i);
+                long end = starts.get(i + 1);
+                boolean firstSegment = i == 0;
+                segments.add(CompletableFuture.supplyAsync(() -> {
+                    try{
+                        return parseSegment(channel, start, end,
+                                firstSegment);
+                    }catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+
+            List<AuctionItem> lots = new ArrayList<>();
+            for(CompletableFuture<List<AuctionItem>> segment : segments){
+                try{
+                    lots.addAll(segment.join());
+                }catch(CompletionException e){
+                    if(e.getCause() instanceof UncheckedIOException){
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw e;
+                }
+            }
+            return lots;
+        }
+    }
+
+    /**
+     * Returns how many malformed lines were skipped so far.
+     * @return int number of lines
+     */
+    public int getSkippedLines(){
+        return skippedLines.get();
+    }
+
+    // ****************************** //
+    //   Private Methods              //
+    // ****************************** //
+
+    /**
+     * Finds where the first line starting at or after a position begins.
+     * @param channel FileChannel of the catalog
+     * @param position position in the file
+     * @param size size of the file
+     * @return position just after the first '\n' at or after
+     *         position - 1, or size if there is none
+     * @throws IOException
+     */
+    private long nextLineStart(FileChannel channel, long position, long size)
+            throws IOException{
+        long from = position - 1;
+        while(from < size){
+            int length = (int) Math.min(BOUNDARY_WINDOW, size - from);
+            MappedByteBuffer window = channel.map(
+                    FileChannel.MapMode.READ_ONLY, from, length);
+            for(int i = 0; i < length; i++){
+                if(window.get(i) == '\n'){
+                    return from + i + 1;
+                }
+            }
+            from += length;
+        }
+        return size;
+    }
+
+    /**
+     * Maps one segment of the catalog and parses the lots in it.
+     * @param channel FileChannel of the catalog
+     * @param start position of the first line of the segment
+     * @param end position just after the segment's last line
+     * @param firstSegment true if the segment starts the file, so its
+     *                     first line may be a header
+     * @return List of the lots in the segment
+     * @throws IOException
+     */
+    private List<AuctionItem> parseSegment(FileChannel channel, long start,
+                                           long end, boolean firstSegment)
+            throws IOException{
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                start, end - start);
+        List<AuctionItem> lots = new ArrayList<>();
+        byte[] scratch = new byte[256];
+        int limit = bytes.limit();
+        int lineStart = 0;
+        boolean firstLine = firstSegment;
+
+        while(lineStart < limit){
+            int lineEnd = lineStart;
+            while(lineEnd < limit && bytes.get(lineEnd) != '\n'){
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if(lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r'){
+                lineEnd--;
+            }
+
+            int from = skipSpaces(bytes, lineStart, lineEnd);
+            boolean isLot = from < lineEnd && bytes.get(from) != '#' &&
+                    !(firstLine && !isNumberStart(bytes.get(from)));
+            if(isLot){
+                if(lineEnd - lineStart > scratch.length){
+                    scratch = new byte[lineEnd - lineStart];
+                }
+                AuctionItem lot = parseLot(bytes, from, lineEnd, scratch);
+                if(lot != null){
+                    lots.add(lot);
+                }else{
+                    skippedLines.incrementAndGet();
+                }
+            }
+            firstLine = false;
+            lineStart = next;
+        }
+        return lots;
+    }
+
+    /**
+     * Parses one line of the catalog.
+     * @param bytes mapped segment
+     * @param from first non-space byte of the line
+     * @param to end of the line, without its line break
+     * @param scratch array to copy the name into, at least to - from long
+     * @return the lot, or null if the line is malformed
+     */
+    private AuctionItem parseLot(MappedByteBuffer bytes, int from, int to,
+                                 byte[] scratch){
+        //itemID
+        int p = from;
+        boolean negative = p < to && bytes.get(p) == '-';
+        if(negative){
+            p++;
+        }
+        long itemID = 0;
+        int digits = 0;
+        while(p < to && isDigit(bytes.get(p))){
+            itemID = itemID * 10 + (bytes.get(p) - '0');
+            if(itemID > (long) Integer.MAX_VALUE + 1){
+                return null;
+            }
+            p++;
+            digits++;
+        }
+        itemID = negative ? -itemID : itemID;
+        p = skipSpaces(bytes, p, to);
+        if(digits == 0 || itemID > Integer.MAX_VALUE || p >= to ||
+                bytes.get(p) != ','){
+            return null;
+        }
+
+        //minBid, in dollars with at most two decimals
+        p = skipSpaces(bytes, p + 1, to);
+        long minBidCents = 0;
+        digits = 0;
+        while(p < to && isDigit(bytes.get(p))){
+            minBidCents = minBidCents * 10 + (bytes.get(p) - '0');
+            if(minBidCents > Long.MAX_VALUE / 1000){
+                return null;
+            }
+            p++;
+            digits++;
+        }
+        minBidCents *= 100;
+        if(p < to && bytes.get(p) == '.'){
+            p++;
+            long scale = 10;
+            while(p < to && isDigit(bytes.get(p))){
+                if(scale == 0){
+                    return null;
+                }
+                minBidCents += (bytes.get(p) - '0') * scale;
+                scale /= 10;
+                p++;
+                digits++;
+            }
+        }
+        p = skipSpaces(bytes, p, to);
+        if(digits == 0 || p >= to || bytes.get(p) != ','){
+            return null;
+        }
+
+        //name
+        int nameFrom = skipSpaces(bytes, p + 1, to);
+        int nameTo = to;
+        while(nameTo > nameFrom && bytes.get(nameTo - 1) == ' '){
+            nameTo--;
+        }
+        boolean quoted = nameTo - nameFrom >= 2 &&
+                bytes.get(nameFrom) == '"' && bytes.get(nameTo - 1) == '"';
+        if(quoted){
+            nameFrom++;
+            nameTo--;
+        }
+        bytes.get(nameFrom, scratch, 0, nameTo - nameFrom);
+        String name = new String(scratch, 0, nameTo - nameFrom,
+                StandardCharsets.UTF_8);
+        if(quoted){
+            name = name.replace("\"\"", "\"");
+        }
+        if(name.isEmpty()){
+            return null;
+        }
+
+        Bid bid = new Bid(Bid.BidState.OPEN, minBidCents, 0, 0, 0);
+        return new AuctionItem(houseID, (int) itemID, name, bid);
+    }
+
+    private static int skipSpaces(MappedByteBuffer bytes, int from, int to){
+        while(from < to && (bytes.get(from) == ' ' ||
+                bytes.get(from) == '\t')){
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isNumberStart(byte b){
+        return isDigit(b) || b == '-';
+    }
+}
@@ -0,0 +1,164 @@
+package AuctionHouse;
+
+import Utility.CreditLine;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AuctionHouse's side of the credit lines the Bank has granted it, one
+ * per agent secret key. Each line has a budget (what the Bank has frozen
+ * for this AuctionHouse and not yet paid out) and the amount held by the
+ * agent's current winning bids. A bid is accepted locally if it fits in
+ * the budget left over, so the Bank only hears about bids when a line is
+ * used up, when a bid wins (the amount is settled), or when unused budget
+ * is given back.
+ *
+ * A line is only used until a margin before it expires at the Bank, long
+ * enough for any bid placed against it to close first (or half the line's
+ * duration, for a Bank granting lines shorter than that). Past that cutoff
+ * no new bids are held against it, and budget freed up is given back to
+ * the Bank right away rather than waiting for the line to expire. Expiry
+ * times are kept as System.nanoTime() deadlines measured from when each
+ * grant was requested, which is never later than the Bank's own deadline.
+ * All methods are synchronized; none of them talk to the Bank.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (margin clamped to short grants)
+ * previously modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D Craft (wdc)
+ * @author Tyler Fenske (thf)*/
+public class CreditLines {
+
+    private final long marginNanos;
+    private final Map<Long, Line> lines;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for an empty set of CreditLines.
+     * @param marginMillis how long before a line expires to stop holding
+     *                     bids against it, in milliseconds
+     */
+    public CreditLines(long marginMillis){
+        marginNanos = TimeUnit.MILLISECONDS.toNanos(marginMillis);
+        lines = new HashMap<>();
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Holds a bid against the agent's credit line, if the line is before
+     * its cutoff and has enough budget left over.
+     * @param secretKey the agent's secret key
+     * @param cents the bid in cents
+     * @return true if the bid is now held against the line
+     */
+    public synchronized boolean tryHold(long secretKey, long cents){
+        Line line = lines.get(secretKey);
+        if(line == null || System.nanoTime() - line.cutoff >= 0 ||
+                line.budget - line.held < cents){
+            return false;
+        }
+        line.held += cents;
+        return true;
+    }
+
+    /**
+     * If the agent's line is past its cutoff, stops counting its unused
+     * budget, which should then be released at the Bank.
+     * @param secretKey the agent's secret key
+     * @return the unused budget in cents to release (0 if none)
+     */
+    public synchronized long closeIfPastCutoff(long secretKey){
+        Line line = lines.get(secretKey);
+        if(line == null || System.nanoTime() - line.cutoff < 0){
+            return 0;
+        }
+        long unused = line.budget - line.held;
+        line.budget = line.held;
+        return unused;
+    }
+
+    /**
+     * Adds a grant from the Bank to the agent's line, opening the line if
+     * needed, and moves the line's expiry to that of the grant. A Bank
+     * configured with grants shorter than the margin would otherwise give
+     * lines whose cutoff has already passed, so every bid would be refused;
+     * the margin is clamped to half the grant's duration instead.
+     * @param grant CreditLine granted by the Bank
+     * @param requestedAt System.nanoTime() when the grant was requested
+     */
+    public synchronized void addGrant(CreditLine grant, long requestedAt){
+        Line line = lines.computeIfAbsent(grant.getSecretKey(),
+                key -> new Line());
+        line.budget += grant.getBudgetCents();
+        long durationNanos =
+                TimeUnit.MILLISECONDS.toNanos(grant.getDurationMillis());
+        line.cutoff = requestedAt + durationNanos -
+                Math.min(marginNanos, durationNanos / 2);
+    }
+
+    /**
+     * Stops holding a bid that has been outbid.
+     * @param secretKey the agent's secret key
+     * @param cents the bid in cents
+     * @return true if the line is past its cutoff, so the amount is no
+     *         longer part of its budget and should be released at the Bank
+     */
+    public synchronized boolean release(long secretKey, long cents){
+        Line line = lines.get(secretKey);
+        if(line == null){
+            return false;
+        }
+        line.held -= cents;
+        if(System.nanoTime() - line.cutoff >= 0){
+            line.budget -= cents;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a winning bid out of the agent's line: it is no longer held,
+     * and no longer part of the budget. It should be settled at the Bank.
+     * @param secretKey the agent's secret key
+     * @param cents the winning bid in cents
+     */
+    public synchronized void spend(long secretKey, long cents){
+        Line line = lines.get(secretKey);
+        if(line != null){
+            line.held -= cents;
+            line.budget -= cents;
+        }
+    }
+
+    /**
+     * Closes the agent's line, e.g. when the agent leaves.
+     * @param secretKey the agent's secret key
+     * @return the unused budget in cents, which should be released at the
+     *         Bank (0 if there was no line)
+     */
+    public synchronized long remove(long secretKey){
+        Line line = lines.remove(secretKey);
+        return line == null ? 0 : line.budget - line.held;
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * One agent's credit line. Amounts in cents; guarded by the CreditLines.
+     */
+    private static final class Line {
+        private long budget;
+        private long held;
+        private long cutoff;
+    }
+}
@@ -0,0 +1,82 @@
+package AuctionHouse;
+
+import Utility.AuctionItem;
+
+import java.util.Collection;
+
+/**
+ * An AuctionHouseObserver for an AuctionHouse running without a GUI. Prints
+ * console messages and changes to the bank balance and amount owed to
+ * standard output, each labelled with the AuctionHouse name. Changes to the
+ * AuctionItems and the bid timers are ignored, since they happen on every
+ * bid and every timer tick and would flood the log. Safe to call from
+ * any thread.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (items passed as a Collection)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class LoggingAuctionHouseObserver implements AuctionHouseObserver {
+
+    private volatile String label;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for the LoggingAuctionHouseObserver.
+     * @param name Name of the AuctionHouse, used to label each line
+     */
+    public LoggingAuctionHouseObserver(String name){
+        label = name;
+    }
+
+    // ****************************** //
+    //   Override Methods             //
+    // ****************************** //
+
+    @Override
+    public void updateConsoleDisplay(String message){
+        print(message);
+    }
+
+    @Override
+    public void setupAHLabelInfo(String name, int id){
+        label = name + " — ID: " + id;
+        print("Open for business.");
+    }
+
+    @Override
+    public void updateAuctionItemDisplay(
+            Collection<AuctionItem> auctionItems){
+    }
+
+    @Override
+    public void refreshAuctionItemDisplay(){
+    }
+
+    @Override
+    public void updateBankBalance(double balance){
+        print(String.format("Bank Balance: $%.2f", balance));
+    }
+
+    @Override
+    public void updateAmountOwed(double owed){
+        print(String.format("Amount Owed: $%.2f", Math.max(owed, 0)));
+    }
+
+    // ****************************** //
+    //   Private Methods              //
+    // ****************************** //
+
+    /**
+     * Prints a line labelled with the AuctionHouse name.
+     * @param message to be printed
+     */
+    private void print(String message){
+        System.out.println(label + ": " + message);
+    }
+}
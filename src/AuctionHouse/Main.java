@@ -3,20 +3,35 @@ package AuctionHouse;
 import javafx.application.Application;
 import javafx.scene.control.Button;
 import javafx.stage.Stage;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 /**
  * The Main class within the AuctionHouse package, providing the construction
  * of an AuctionHouse object. Run this to set up an AuctionHouse and
  * open it for business.
+ * Run with no arguments to set up the AuctionHouse through its GUI, or with
+ * the arguments
+ *     name hostName port [bankHostName [bankPort]]
+ * to run it as a headless server that never starts JavaFX and logs to
+ * standard output instead (the Bank defaults to localhost, port 1234).
+ * A headless AuctionHouse adds the lots in a CSV catalog while running
+ * when the line
+ *     import catalogFile
+ * is typed on its standard input.
+ * The GUI lives in the nested Gui class, so a headless AuctionHouse never
+ * loads a JavaFX class.
  * created: 11/30/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (catalog import on standard input)
+ * previously modified: 10/18/26 by thf (headless server mode)
  * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
-public class Main extends Application {
+public class Main {
 
     private static AuctionHouse auctionHouse;
 
@@ -25,12 +40,18 @@ public class Main extends Application {
     // ****************************** //
 
     /**
-     * Standard main method that launches JavaFX application
-     * @param args command line arguments (unused in this program)
+     * Standard main method. Launches the JavaFX application, or starts a
+     * headless AuctionHouse if given at least a name, hostName and port.
+     * @param args command line arguments
+     *             (name hostName port [bankHostName [bankPort]])
      */
     public static void main(String[] args){
 
-        launch(args);
+        if(args.length >= 3){
+            startHeadless(args);
+        }else{
+            Application.launch(Gui.class, args);
+        }
 
     }
 
@@ -48,7 +69,7 @@ public class Main extends Application {
      * @param bankHostName
      * @param bankPort
      */
-    private static void createAuctionHouse(AuctionDisplay display,
+    private static void createAuctionHouse(AuctionHouseObserver display,
                                            String auctionHouseName,
                                            String auctionHouseHostName,
                                            int auctionHousePort,
@@ -64,66 +85,133 @@ public class Main extends Application {
         }
     }
 
-
-    // ****************************** //
-    //   Override Methods             //
-    // ****************************** //
-
     /**
-     * Override of stop method, called whenever the default close button
-     * is pressed. System.exit(0) will close all active threads of the
-     * program at once.
-     * @throws Exception
+     * Creates an AuctionHouse with no GUI, reporting to a
+     * LoggingAuctionHouseObserver.
+     * @param args command line arguments
+     *             (name hostName port [bankHostName [bankPort]])
      */
-    @Override
-    public void stop() throws Exception {
-        System.exit(0);
+    private static void startHeadless(String[] args){
+        String bankHostName = args.length > 3 ? args[3] : "localhost";
+        int port;
+        int bankPort;
+        try{
+            port = Integer.parseInt(args[2]);
+            bankPort = args.length > 4 ? Integer.parseInt(args[4]) : 1234;
+        }catch(NumberFormatException e){
+            System.err.println("Usage: AuctionHouse.Main [name hostName " +
+                    "port [bankHostName [bankPort]]]");
+            System.exit(1);
+            return;
+        }
+
+        createAuctionHouse(new LoggingAuctionHouseObserver(args[0]),
+                args[0], args[1], port, bankHostName, bankPort);
+
+        if(auctionHouse != null){
+            Thread commands = new Thread(Main::readCommands,
+                    "auction-house-commands");
+            commands.setDaemon(true);
+            commands.start();
+        }
     }
 
     /**
-     * The starting point of the program. Creates the display, and
-     * defines the event handlers for the createAuctionHouse button and
-     * close button for the AuctionHouse Stage.
-     * @param primaryStage
-     * @throws Exception
+     * Reads commands for a headless AuctionHouse from standard input until
+     * it is closed. The only command is "import catalogFile", which adds
+     * the lots in the catalog to the running AuctionHouse.
      */
-    @Override
-    public void start(Stage primaryStage) throws Exception {
-
-        AuctionDisplay auctionDisplay = new AuctionDisplay(primaryStage);
+    private static void readCommands(){
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in));
+        try{
+            String line;
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                if(line.startsWith("import ")){
+                    String catalog = line.substring(7).trim();
+                    try{
+                        auctionHouse.importCatalog(Paths.get(catalog));
+                    }catch(IOException e){
+                        System.err.println("Catalog " + catalog +
+                                " could not be read: " + e.getMessage());
+                    }
+                }else if(!line.isEmpty()){
+                    System.err.println("Unknown command: " + line +
+                            " (try: import catalogFile)");
+                }
+            }
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+    }
 
-        Button createAuctionHouse = new Button("Create Auction House");
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
 
-        createAuctionHouse.setOnAction(event -> {
-            if(auctionDisplay.infoFilledOut()){
-                auctionDisplay.openTerminalWindow();
+    /**
+     * The JavaFX application for an AuctionHouse set up through its GUI.
+     */
+    public static class Gui extends Application {
+
+        /**
+         * Override of stop method, called whenever the default close button
+         * is pressed. System.exit(0) will close all active threads of the
+         * program at once.
+         * @throws Exception
+         */
+        @Override
+        public void stop() throws Exception {
+            System.exit(0);
+        }
 
-                createAuctionHouse(auctionDisplay,
-                        auctionDisplay.getAuctionHouseName(),
-                        auctionDisplay.getAuctionHouseHostName(),
-                        auctionDisplay.getAuctionHousePort(),
-                        auctionDisplay.getBankHostName(),
-                        auctionDisplay.getBankPort());
-            }
-        });
-
-        Stage newWindow = new Stage();
-
-        newWindow.setOnCloseRequest(event -> {
-            try{
-                if(auctionHouse.safeToClose()){
-                    stop();
-                }else{
-                    auctionDisplay.displayErrorMessage("PLEASE WAIT FOR ALL" +
-                            "AGENTS TO DISCONNECT!");
-                    event.consume();
+        /**
+         * The starting point of the program. Creates the display, and
+         * defines the event handlers for the createAuctionHouse button and
+         * close button for the AuctionHouse Stage.
+         * @param primaryStage
+         * @throws Exception
+         */
+        @Override
+        public void start(Stage primaryStage) throws Exception {
+
+            AuctionDisplay auctionDisplay = new AuctionDisplay(primaryStage);
+
+            Button createAuctionHouse = new Button("Create Auction House");
+
+            createAuctionHouse.setOnAction(event -> {
+                if(auctionDisplay.infoFilledOut()){
+                    auctionDisplay.openTerminalWindow();
+
+                    createAuctionHouse(auctionDisplay,
+                            auctionDisplay.getAuctionHouseName(),
+                            auctionDisplay.getAuctionHouseHostName(),
+                            auctionDisplay.getAuctionHousePort(),
+                            auctionDisplay.getBankHostName(),
+                            auctionDisplay.getBankPort());
                 }
-            }catch(Exception e){
-                e.printStackTrace();
-            }
-        });
+            });
+
+            Stage newWindow = new Stage();
+
+            newWindow.setOnCloseRequest(event -> {
+                try{
+                    if(auctionHouse.safeToClose()){
+                        stop();
+                    }else{
+                        auctionDisplay.displayErrorMessage("PLEASE WAIT FOR " +
+                                "ALL AGENTS TO DISCONNECT!");
+                        event.consume();
+                    }
+                }catch(Exception e){
+                    e.printStackTrace();
+                }
+            });
 
-        auctionDisplay.setupAHGUIComponents(createAuctionHouse, newWindow);
+            auctionDisplay.setupAHGUIComponents(createAuctionHouse,
+                    newWindow);
 
+        }
     }
 }
@@ -0,0 +1,509 @@
+package Bank;
+
+import Utility.AccountLink;
+import Utility.BankAccount;
+import Utility.IDRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe store for the Bank's account-related information: the
+ * BankAccounts themselves (by account number), the AccountLinks (by secret
+ * key), and the IDRecords of the Auction Houses and Agents holding accounts.
+ * Every Bank request runs on its own connection thread, so all of these
+ * are concurrent maps, and lookups never block.
+ *
+ * Operations that must see an account in a consistent state from start to
+ * finish (checking then freezing funds, closing an account only if it has
+ * no frozen funds, transferring between two accounts) synchronize on the
+ * account's lock stripe (see lockFor()). Stripes are chosen by account
+ * number, so requests for different accounts almost never wait on each
+ * other, and there is no global lock. An operation needing two accounts
+ * takes both stripes in stripe order (see lockOrder()), so two transfers
+ * in opposite directions cannot deadlock.
+ *
+ * Alongside the secret keys, the store keeps a reverse index from each
+ * account number to the secret keys of its links, and the IDRecords are
+ * kept by account number, so closing an account costs O(links of that
+ * account) however many accounts and keys the Bank holds.
+ *
+ * When the Bank keeps a LedgerJournal, the store also remembers, for each
+ * account, the LSN of the last journal record that changed it, so that a
+ * LedgerSnapshot knows exactly which journal records each account it
+ * captures already reflects.
+ *
+ * Finally, the store keeps the credit lines granted to Auction Houses, by
+ * secret key ( see Bank.grantCreditLine() ). A credit line is guarded by
+ * the lock stripe of the agent account whose funds it freezes, and is not
+ * removed with either account: it stays until it is released or expires,
+ * so the funds it froze are always unfrozen again. Credit lines are also
+ * indexed by agent account, so a LedgerSnapshot can capture an account's
+ * lines together with the account.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (credit lines under long secret keys)
+ * previously modified: 10/18/26 by wdc (credit lines by agent account)
+ * previously modified: 10/18/26 by wdc (credit lines)
+ * previously modified: 10/18/26 by wdc (journal LSN per account)
+ * previously modified: 10/18/26 by wdc (reporting removed secret keys)
+ * previously modified: 10/18/26 by wdc (reverse indexes for closing accounts)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class AccountStore {
+
+    // number of lock stripes; a power of 2 so a stripe is a simple mask
+    private static final int NUMBER_OF_STRIPES = 64;
+
+    private final Map<Integer, BankAccount> mapOfAllAccts;
+    private final Map<Integer, AccountLink> mapOfSecretKeys;
+    // reverse index: account number -> secret keys of the account's links
+    private final Map<Integer, Set<Integer>> mapOfSecretKeysByAcct;
+    // IDRecords by account number
+    private final Map<Integer, IDRecord> mapOfAuctionHouseIDRecords;
+    private final Map<Integer, IDRecord> mapOfAgentIDRecords;
+    // account number -> LSN of the last journal record changing it
+    private final Map<Integer, Long> mapOfJournalLsns;
+    // secret key -> credit line granted under it
+    private final Map<Long, CreditLineState> mapOfCreditLines;
+    // reverse index: agent account number -> secret keys of its lines
+    private final Map<Integer, Set<Long>> mapOfCreditLinesByAcct;
+    private final Object[] stripes;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for an empty AccountStore.
+     */
+    public AccountStore() {
+        mapOfAllAccts = new ConcurrentHashMap<>();
+        mapOfSecretKeys = new ConcurrentHashMap<>();
+        mapOfSecretKeysByAcct = new ConcurrentHashMap<>();
+        mapOfAuctionHouseIDRecords = new ConcurrentHashMap<>();
+        mapOfAgentIDRecords = new ConcurrentHashMap<>();
+        mapOfJournalLsns = new ConcurrentHashMap<>();
+        mapOfCreditLines = new ConcurrentHashMap<>();
+        mapOfCreditLinesByAcct = new ConcurrentHashMap<>();
+        stripes = new Object[NUMBER_OF_STRIPES];
+        for ( int i = 0; i < NUMBER_OF_STRIPES; i++ ) {
+            stripes[i] = new Object();
+        }
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the BankAccount with the given account number.
+     * @param acctNum int account number
+     * @return BankAccount, or null if there is no such account
+     */
+    public BankAccount getAccount(int acctNum) {
+        return mapOfAllAccts.get(acctNum);
+    }
+
+    /**
+     * Returns the AccountLink associated with a secret key.
+     * @param secretKey int secret key
+     * @return AccountLink, or null if the secret key is not valid
+     */
+    public AccountLink getAccountLink(int secretKey) {
+        return mapOfSecretKeys.get(secretKey);
+    }
+
+    /**
+     * Returns the credit line granted under a secret key. Callers should
+     * hold the lock stripe of the line's agent account before changing it.
+     * @param secretKey long secret key
+     * @return CreditLineState, or null if there is no such credit line
+     */
+    public CreditLineState getCreditLine(long secretKey) {
+        return mapOfCreditLines.get(secretKey);
+    }
+
+    /**
+     * Returns the secret keys of every credit line, e.g. to find those
+     * that have expired.
+     * @return List<Long> of secret keys
+     */
+    public List<Long> getCreditLineKeys() {
+        return new ArrayList<>(mapOfCreditLines.keySet());
+    }
+
+    /**
+     * Returns a copy of the secret keys of the credit lines freezing an
+     * agent account's funds. Callers should hold the account's lock stripe
+     * if the result must match the lines' current state.
+     * @param acctNum int agent account number
+     * @return List<Long> of secret keys, possibly empty
+     */
+    public List<Long> getCreditLineKeysOf(int acctNum) {
+        Set<Long> setOfSecretKeys = mapOfCreditLinesByAcct.get(acctNum);
+        if ( setOfSecretKeys == null ) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(setOfSecretKeys);
+    }
+
+    /**
+     * Returns the IDRecord of an account's owner.
+     * @param acctNum int account number
+     * @return IDRecord, or null if there is none ( no such account, or an
+     *         account that is neither an Agent's nor an Auction House's )
+     */
+    public IDRecord getIDRecord(int acctNum) {
+        IDRecord theIDRecord = mapOfAgentIDRecords.get(acctNum);
+        if ( theIDRecord == null ) {
+            theIDRecord = mapOfAuctionHouseIDRecords.get(acctNum);
+        }
+        return theIDRecord;
+    }
+
+    /**
+     * Returns a copy of the secret keys linked to an account.
+     * @param acctNum int account number
+     * @return List<Integer> of secret keys, possibly empty
+     */
+    public List<Integer> getSecretKeysOf(int acctNum) {
+        Set<Integer> setOfSecretKeys = mapOfSecretKeysByAcct.get(acctNum);
+        if ( setOfSecretKeys == null ) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(setOfSecretKeys);
+    }
+
+    /**
+     * Returns the LSN of the last journal record that changed an account.
+     * @param acctNum int account number
+     * @return long LSN, or 0 if none has been recorded
+     */
+    public long getJournalLsn(int acctNum) {
+        Long lsn = mapOfJournalLsns.get(acctNum);
+        return lsn == null ? 0 : lsn;
+    }
+
+    /**
+     * Records the LSN of a journal record that changed an account. Callers
+     * should hold the account's lock stripe, as they do for the change
+     * itself.
+     * @param acctNum int account number
+     * @param lsn long LSN of the journal record
+     */
+    public void setJournalLsn(int acctNum, long lsn) {
+        mapOfJournalLsns.put(acctNum, lsn);
+    }
+
+    /**
+     * Returns every BankAccount currently held. The view is live, and safe
+     * to iterate while accounts are being opened and closed.
+     * @return Collection<BankAccount>
+     */
+    public Collection<BankAccount> getAllAccounts() {
+        return mapOfAllAccts.values();
+    }
+
+    /**
+     * Returns a copy of the list of Auction House IDRecords, in account
+     * number order.
+     * @return ArrayList<IDRecord>, possibly empty but never null
+     */
+    public ArrayList<IDRecord> getAuctionHouseIDRecords() {
+        ArrayList<IDRecord> listOfIDRecords =
+            new ArrayList<>(mapOfAuctionHouseIDRecords.values());
+        listOfIDRecords.sort(
+            Comparator.comparingInt(IDRecord::getNumericalID));
+        return listOfIDRecords;
+    }
+
+    /**
+     * Returns the number of accounts currently held.
+     * @return int
+     */
+    public int getNumberOfAccounts() {
+        return mapOfAllAccts.size();
+    }
+
+    /**
+     * Returns the number of Agent accounts currently held.
+     * @return int
+     */
+    public int getNumberOfAgentAccounts() {
+        return mapOfAgentIDRecords.size();
+    }
+
+    /**
+     * Returns the number of Auction House accounts currently held.
+     * @return int
+     */
+    public int getNumberOfAuctionHouseAccounts() {
+        return mapOfAuctionHouseIDRecords.size();
+    }
+
+    /**
+     * Checks if the store holds no accounts at all.
+     * @return boolean true if there are no accounts
+     */
+    public boolean isEmpty() {
+        return mapOfAllAccts.isEmpty();
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Adds a new BankAccount, along with the IDRecord of its owner, unless
+     * its account number is already in use. Checking for and claiming the
+     * account number is a single atomic step.
+     * @param theBankAccount BankAccount to add
+     * @param theIDRecord IDRecord of the account's owner
+     * @return boolean true if added; false if the account number was taken
+     */
+    public boolean addAccount(BankAccount theBankAccount,
+                              IDRecord theIDRecord) {
+
+        int acctNum = theBankAccount.getAccountNumber();
+        if ( mapOfAllAccts.putIfAbsent(acctNum, theBankAccount) != null ) {
+            return false;
+        }
+        if ( theBankAccount.getAccountType() ==
+            BankAccount.AccountType.AUCTION_HOUSE ) {
+
+            mapOfAuctionHouseIDRecords.put(acctNum, theIDRecord);
+
+        } else if ( theBankAccount.getAccountType() ==
+            BankAccount.AccountType.AGENT ) {
+
+            mapOfAgentIDRecords.put(acctNum, theIDRecord);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an AccountLink under a secret key, unless the secret key is
+     * already in use, and indexes the key under both linked accounts.
+     * Callers should hold both accounts' lock stripes, so the key cannot
+     * be added while either account is being closed.
+     * @param secretKey int secret key
+     * @param theAccountLink AccountLink the key gives access to
+     * @return boolean true if added; false if the secret key was taken
+     */
+    public boolean addSecretKey(int secretKey, AccountLink theAccountLink) {
+        if ( mapOfSecretKeys.putIfAbsent(secretKey, theAccountLink) != null ) {
+            return false;
+        }
+        secretKeysOf(theAccountLink.getAGENT_ACCOUNT_NUMBER()).add(secretKey);
+        secretKeysOf(theAccountLink.getAH_ACCOUNT_NUMBER()).add(secretKey);
+        return true;
+    }
+
+    /**
+     * Removes an account, its owner's IDRecord, and every secret key that
+     * links to it, using the reverse index rather than searching all keys.
+     * Secret keys indexed under the account number are removed even if
+     * there is no such account ( as can happen replaying a journal ).
+     * Callers should hold the account's lock stripe, so the account cannot
+     * change between deciding to close it and removing it.
+     * @param acctNum int account number
+     * @param removedSecretKeys Collection the removed secret keys are added
+     *                          to, so they can be reused; may be null
+     * @return BankAccount that was removed, or null if there was none
+     */
+    public BankAccount removeAccount(int acctNum,
+                                     Collection<Integer> removedSecretKeys) {
+
+        BankAccount removed = mapOfAllAccts.remove(acctNum);
+        mapOfAuctionHouseIDRecords.remove(acctNum);
+        mapOfAgentIDRecords.remove(acctNum);
+        mapOfJournalLsns.remove(acctNum);
+
+        Set<Integer> setOfSecretKeys = mapOfSecretKeysByAcct.remove(acctNum);
+        if ( setOfSecretKeys != null ) {
+            for ( int secretKey : setOfSecretKeys ) {
+                AccountLink theAccountLink = mapOfSecretKeys.remove(secretKey);
+                if ( theAccountLink == null ) {
+                    continue;
+                }
+                if ( removedSecretKeys != null ) {
+                    removedSecretKeys.add(secretKey);
+                }
+                // and drop the key from the other account's index
+                int otherAcctNum =
+                    theAccountLink.getAGENT_ACCOUNT_NUMBER() == acctNum ?
+                        theAccountLink.getAH_ACCOUNT_NUMBER() :
+                        theAccountLink.getAGENT_ACCOUNT_NUMBER();
+                Set<Integer> otherSecretKeys =
+                    mapOfSecretKeysByAcct.get(otherAcctNum);
+                if ( otherSecretKeys != null ) {
+                    otherSecretKeys.remove(secretKey);
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Adds a credit line under a secret key, and indexes it under its
+     * agent account. Callers should hold the lock stripe of the line's
+     * agent account.
+     * @param secretKey long secret key
+     * @param theCreditLine CreditLineState to add
+     */
+    public void putCreditLine(long secretKey,
+                              CreditLineState theCreditLine) {
+        mapOfCreditLines.put(secretKey, theCreditLine);
+        mapOfCreditLinesByAcct.computeIfAbsent(
+            theCreditLine.getAgentAcctNum(),
+            k -> ConcurrentHashMap.newKeySet()).add(secretKey);
+    }
+
+    /**
+     * Removes the credit line under a secret key, and its index entry.
+     * Callers should hold the lock stripe of the line's agent account.
+     * @param secretKey long secret key
+     */
+    public void removeCreditLine(long secretKey) {
+        CreditLineState removed = mapOfCreditLines.remove(secretKey);
+        if ( removed == null ) {
+            return;
+        }
+        Set<Long> setOfSecretKeys =
+            mapOfCreditLinesByAcct.get(removed.getAgentAcctNum());
+        if ( setOfSecretKeys != null ) {
+            setOfSecretKeys.remove(secretKey);
+            if ( setOfSecretKeys.isEmpty() ) {
+                mapOfCreditLinesByAcct.remove(removed.getAgentAcctNum(),
+                    setOfSecretKeys);
+            }
+        }
+    }
+
+    /**
+     * Returns the lock stripe guarding an account. Synchronize on it to
+     * make a sequence of operations on that account atomic with respect to
+     * every other striped operation on it.
+     * @param acctNum int account number
+     * @return Object to synchronize on
+     */
+    public Object lockFor(int acctNum) {
+        return stripes[stripeIndex(acctNum)];
+    }
+
+    /**
+     * Returns the lock stripes of two accounts in the order they must be
+     * taken: synchronize on element 0, then on element 1. If both accounts
+     * share a stripe, both elements are the same lock.
+     * @param firstAcctNum int account number
+     * @param secondAcctNum int account number
+     * @return Object[2] of locks in acquisition order
+     */
+    public Object[] lockOrder(int firstAcctNum, int secondAcctNum) {
+        int firstIndex = stripeIndex(firstAcctNum);
+        int secondIndex = stripeIndex(secondAcctNum);
+        if ( firstIndex <= secondIndex ) {
+            return new Object[] {stripes[firstIndex], stripes[secondIndex]};
+        }
+        return new Object[] {stripes[secondIndex], stripes[firstIndex]};
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Returns the (live) set of secret keys indexed under an account,
+     * creating it if needed.
+     * @param acctNum int account number
+     * @return Set<Integer> of secret keys
+     */
+    private Set<Integer> secretKeysOf(int acctNum) {
+        return mapOfSecretKeysByAcct.computeIfAbsent(acctNum,
+            k -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Spreads an account number over the stripes. Account numbers are
+     * random, but the bits are mixed anyway in case they ever become
+     * sequential.
+     * @param acctNum int account number
+     * @return int stripe index
+     */
+    private int stripeIndex(int acctNum) {
+        int h = acctNum * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (NUMBER_OF_STRIPES - 1);
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * The Bank's side of a credit line: the agent account whose funds it
+     * froze, how many of those cents are still frozen under the line, and
+     * the System.nanoTime() at which it expires. Guarded by the lock stripe
+     * of the agent account. The deadline is journalled and snapshotted as
+     * wall-clock time ( see getExpiryMillis() ), since System.nanoTime()
+     * means nothing to a restarted Bank.
+     */
+    public static final class CreditLineState {
+        private final int agentAcctNum;
+        private long remainingCents;
+        private long deadlineNanos;
+
+        CreditLineState(int agentAcctNum) {
+            this.agentAcctNum = agentAcctNum;
+        }
+
+        public int getAgentAcctNum() {
+            return agentAcctNum;
+        }
+
+        public long getRemainingCents() {
+            return remainingCents;
+        }
+
+        void setRemainingCents(long remainingCents) {
+            this.remainingCents = remainingCents;
+        }
+
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+
+        void setDeadlineNanos(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Returns the deadline as System.currentTimeMillis() time.
+         * @return long wall-clock time at which the line expires
+         */
+        public long getExpiryMillis() {
+            return System.currentTimeMillis() + TimeUnit.NANOSECONDS
+                .toMillis(deadlineNanos - System.nanoTime());
+        }
+
+        /**
+         * Sets the deadline from System.currentTimeMillis() time, e.g. as
+         * journalled or snapshotted.
+         * @param expiryMillis long wall-clock time at which the line expires
+         */
+        void setExpiryMillis(long expiryMillis) {
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS
+                .toNanos(expiryMillis - System.currentTimeMillis());
+        }
+    }
+
+}
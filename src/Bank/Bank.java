@@ -1,24 +1,106 @@
 package Bank;
 
+import Utility.AccessToken;
 import Utility.AccountLink;
 import Utility.BankAccount;
+import Utility.CreditLine;
 import Utility.IDRecord;
 import Utility.NotificationServer;
-import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides the structure and functionality of a simulated Bank accessible to
  * Agents and Auction Houses, keeping track of client accounts
  * and providing some typical account functionality, such as opening and
  * closing accounts, funding an account, transferring funds from one account
- * to another, etc.
+ * to another, etc. Requests arrive concurrently, one thread per client
+ * connection, so all account information is kept in a thread-safe,
+ * lock-striped AccountStore. All amounts of money are long cents
+ * ( see Utility.Money ).
+ * If started with the LedgerJournal.JOURNAL_PROPERTY system property, the
+ * Bank also keeps a write-ahead LedgerJournal: every change to the ledger
+ * is journalled while the affected accounts' lock stripes are held ( so
+ * the journal order matches the order of the changes ), and the request is
+ * answered only once its record is on disk. Each change is checked, then
+ * journalled, and only then made, so a change whose record cannot be
+ * appended is not made at all. On startup the journal is
+ * replayed to rebuild every account, balance, hold and secret key.
+ * A journalling Bank also writes a LedgerSnapshot of the whole ledger
+ * every SNAPSHOT_PERIOD_PROPERTY seconds, in the background and without
+ * pausing requests, then deletes the journal segments the snapshot makes
+ * redundant; on startup it loads the latest snapshot and replays only the
+ * journal records written after it.
+ * If started with the LedgerSequencer.SEQUENCER_PROPERTY system property
+ * set to "true", the BankProtocol hands every request that moves funds to
+ * a LedgerSequencer, which applies them one at a time, in order, on a
+ * single thread ( see the package-private apply methods ).
+ * Changes only mark the accounts they touch as dirty; a refresher thread
+ * passes just the dirty accounts to the Bank's BankObserver, at most
+ * DISPLAY_REFRESH_HZ times a second. The observer is the BankDisplay GUI,
+ * or a LoggingBankObserver for a headless Bank; the Bank itself never
+ * depends on JavaFX.
+ * An Auction House can ask for a credit line on an agent's secret key
+ * ( see grantCreditLine() ): a budget of the agent's funds, frozen in one
+ * go, against which the Auction House accepts that agent's bids without
+ * a CHECK_FUNDS request per bid. A credit line lasts
+ * CREDIT_LINE_PERIOD_PROPERTY seconds from its latest grant; whatever is
+ * still frozen under it when it expires is unfrozen again. Credit lines
+ * are journalled and snapshotted with the agent's account, expiry and all,
+ * so a restarted Bank still expires them and unfreezes what they froze.
+ * Without a credit line, an Auction House moves the hold on an item from
+ * the outbid agent to the new bidder in one request ( see
+ * transferHold() ).
+ * Agents no longer need a secret key from the Bank for each Auction House
+ * they join: with the list of Auction Houses, the Bank issues an Agent an
+ * AccessToken for each, an HMAC-signed AccountLink that expires after
+ * TOKEN_PERIOD_PROPERTY hours ( see issueAccessToken() ). Issuing a token
+ * stores nothing; a request naming an Agent by a token carries the token,
+ * and the Bank checks its HMAC rather than looking the secret key up
+ * ( see resolveAccountLink() ). Each Auction House is told its own key
+ * for checking tokens when it opens its account ( see getHouseKey() ); the
+ * Bank checks a second HMAC, under a key it never hands out, so an Auction
+ * House cannot sign a token the Bank accepts. A journalling Bank keeps
+ * its master key for tokens with the journal, so tokens, like the rest of
+ * the ledger, survive a restart ( see loadTokenMasterKey() ).
  * created: 11/28/18 by wdc
- * last modified: 12/06/18 by wdc (coord w/GUI)
+ * last modified: 10/18/26 by wdc (public secret key methods take long keys
+ *     and tokens)
+ * previously modified: 10/18/26 by wdc (token key kept with the journal)
+ * previously modified: 10/18/26 by wdc (credit lines under long secret
+ *     keys)
+ * previously modified: 10/18/26 by wdc (tokens checked under the Bank's own
+ *     key)
+ * previously modified: 10/18/26 by wdc (journalled credit lines)
+ * previously modified: 10/18/26 by wdc (journalled before changes are made)
+ * previously modified: 10/18/26 by wdc (AccessTokens in place of secret
+ *     keys)
+ * previously modified: 10/18/26 by wdc (transferHold for outbid agents)
+ * previously modified: 10/18/26 by wdc (credit lines for Auction Houses)
+ * previously modified: 10/18/26 by wdc (BankObserver in place of BankDisplay)
+ * previously modified: 10/18/26 by wdc (coalesced, incremental display refresh)
+ * previously modified: 10/18/26 by wdc (apply methods for a LedgerSequencer)
+ * previously modified: 10/18/26 by wdc (periodic LedgerSnapshots)
+ * previously modified: 10/18/26 by wdc (write-ahead LedgerJournal)
+ * previously modified: 10/18/26 by wdc (amounts in long cents)
+ * previously modified: 10/18/26 by wdc (IdAllocator for numbers and keys)
+ * previously modified: 10/18/26 by wdc (secret keys indexed by account)
+ * previously modified: 10/18/26 by wdc (striped AccountStore)
+ * previously modified: 12/06/18 by wdc (coord w/GUI)
  * previously modified: 12/01/18 by wdc
  * previously modified: 11/28/18 by wdc (creation)
  * @author Liam Brady (lb)
@@ -27,20 +109,68 @@ import java.util.*;
  */
 public class Bank {
 
+    // system property giving the seconds between LedgerSnapshots
+    public static final String SNAPSHOT_PERIOD_PROPERTY =
+        "publicauction.snapshotSeconds";
+    private static final long DEFAULT_SNAPSHOT_PERIOD = 300;
+    // system property giving the seconds a credit line lasts
+    public static final String CREDIT_LINE_PERIOD_PROPERTY =
+        "publicauction.creditLineSeconds";
+    private static final long DEFAULT_CREDIT_LINE_PERIOD = 300;
+    // system property giving the hours an AccessToken lasts
+    public static final String TOKEN_PERIOD_PROPERTY =
+        "publicauction.tokenHours";
+    private static final long DEFAULT_TOKEN_PERIOD = 24;
+    // system property giving the Bank's master key for AccessTokens, in
+    // Base64; without it a journalling Bank keeps its key in TOKEN_KEY_FILE
+    // in the journal directory, and any other Bank makes a random key at
+    // startup, so once restarted it no longer accepts the tokens it issued
+    public static final String TOKEN_KEY_PROPERTY = "publicauction.tokenKey";
+    // file in the journal directory holding the master key for AccessTokens
+    static final String TOKEN_KEY_FILE = "token.key";
+    // how often the BankObserver is told of changed accounts
+    private static final int DISPLAY_REFRESH_HZ = 10;
+    // returned by the apply methods when a change is rejected
+    static final long NOT_APPLIED = -1;
+
     private String bankName;
     private String location;  // machine location
     private int portNumber;   // port used for clients
-    private HashMap<Integer, BankAccount> hashMapOfAllAccts;
-    private HashMap<Integer, AccountLink> hashMapOfSecretKeys;
-    private ArrayList<IDRecord> listOfAuctionHouseIDRecords;
-    private ArrayList<IDRecord> listOfAgentIDRecords;
+    // accounts, secret keys, and Agent & Auction House IDRecords
+    private AccountStore accountStore;
     // private String summaryInfoString;
     private BankProtocol bankProtocol;
-    private NotificationServer notificationServer;
-
-    private BankDisplay bankDisplay;
-
-    private Random rng = new Random();
+    private Runnable notificationServer;
+
+    private BankObserver bankObserver;
+
+    // hand out unique account numbers and secret keys in O(1)
+    private IdAllocator accountNumberAllocator =
+        new IdAllocator(100000, 999999);
+    private IdAllocator secretKeyAllocator =
+        new IdAllocator(100000, 999999);
+    // write-ahead journal of ledger changes; null if not journalling
+    private LedgerJournal journal;
+    private Path journalDirectory;
+    // snapshot the journal was replayed from at startup ( if any )
+    private LedgerSnapshot startupSnapshot;
+    private ScheduledExecutorService snapshotExecutor;
+
+    // accounts changed since the BankObserver was last told
+    private final Set<Integer> dirtyAccounts =
+        ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService displayRefresher;
+
+    // how long a credit line lasts from its latest grant
+    private long creditLinePeriodNanos;
+    private ScheduledExecutorService creditLineExpirer;
+
+    // every Auction House's key for AccessTokens is derived from this
+    private byte[] tokenMasterKey;
+    // key for the HMAC only the Bank checks, also derived from it
+    private byte[] bankTokenKey;
+    // how long an AccessToken lasts from when it is issued
+    private long tokenPeriodMillis;
     // private DecimalFormat df = new DecimalFormat("####0.00");
 
     // ****************************** //
@@ -49,39 +179,70 @@ public class Bank {
 
     /**
      * Generic public constructor for a Bank object, requiring no specific
-     * params other than a reference to the Bank's GUI BankDisplay.
+     * params other than a reference to the Bank's BankObserver ( e.g. its
+     * GUI BankDisplay ).
      * This then produces a Bank object with default location = localhost
      * and default port number 1234.
      */
-    public Bank(BankDisplay bankDisplay) {
-        this("bank", "localhost", 1234, bankDisplay);
+    public Bank(BankObserver bankObserver) {
+        this("bank", "localhost", 1234, bankObserver);
     }
 
     /**
      * Public constructor for a Bank object, allowing the initial specification
      * of the Bank's (machine) location (e.g. localhost or network machine name)
      * the Bank's port number used for communications, and a reference to the
-     * Bank's GUI BankDisplay object.
+     * Bank's BankObserver ( its GUI BankDisplay object, or a
+     * LoggingBankObserver when running without a GUI ).
      * @param bankName String name of bank
      * @param location   String hostname
      * @param portNumber int communication port
-     * @param bankDisplay A BankDisplay object
+     * @param bankObserver A BankObserver object
      */
     public Bank(String bankName,
                 String location,
                 int portNumber,
-                BankDisplay bankDisplay) {
+                BankObserver bankObserver) {
 
         this.bankName = bankName;
         this.location = location;
         this.portNumber = portNumber;
-        this.bankDisplay = bankDisplay;
-
-        // several lists for keeping track of account-related information
-        hashMapOfAllAccts = new HashMap<>();
-        hashMapOfSecretKeys = new HashMap<>();
-        listOfAuctionHouseIDRecords = new ArrayList<>();
-        listOfAgentIDRecords = new ArrayList<>();
+        this.bankObserver = bankObserver;
+
+        // thread-safe store for all account-related information
+        accountStore = new AccountStore();
+
+        // rebuild the ledger from the journal ( if journalling ) before
+        // accepting any requests
+        openJournal();
+
+        // tell the observer of changed accounts, a few times a second,
+        // off the request-handling threads
+        displayRefresher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "bank-display-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        displayRefresher.scheduleAtFixedRate(this::notifyBankObserver,
+            0, 1000 / DISPLAY_REFRESH_HZ, TimeUnit.MILLISECONDS);
+
+        // unfreeze what is left of expired credit lines, once a second
+        creditLinePeriodNanos = TimeUnit.SECONDS.toNanos(Long.getLong(
+            CREDIT_LINE_PERIOD_PROPERTY, DEFAULT_CREDIT_LINE_PERIOD));
+        creditLineExpirer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "bank-credit-lines");
+                thread.setDaemon(true);
+                return thread;
+            });
+        creditLineExpirer.scheduleWithFixedDelay(this::expireCreditLines,
+            1, 1, TimeUnit.SECONDS);
+
+        tokenMasterKey = loadTokenMasterKey();
+        bankTokenKey = AccessToken.deriveBankKey(tokenMasterKey);
+        tokenPeriodMillis = TimeUnit.HOURS.toMillis(Long.getLong(
+            TOKEN_PERIOD_PROPERTY, DEFAULT_TOKEN_PERIOD));
 
         try {
             bankSetup();
@@ -107,29 +268,19 @@ public class Bank {
      * Adds given amount to given account, providing a general method for
      * testing and future development.
      * @param theAcctNum int account number
-     * @param amtToAdd double amount of money to add to account
+     * @param amtToAdd long amount of money in cents to add to account
      * @return updated BankAccount object
      */
-    public BankAccount addFunds(int theAcctNum, double amtToAdd) {
-
-        BankAccount currentBankAccount;
-
-        // find BankAccount from Bank's account -> BankAccount HashMap
-        currentBankAccount = hashMapOfAllAccts.get(theAcctNum);
-
-        if ( currentBankAccount == null) {
-
-            // if no account was found, generate a generic empty account
-            currentBankAccount = new BankAccount();
-
-        } else {
+    public BankAccount addFunds(int theAcctNum, long amtToAdd) {
 
-            // increase funds by amtToAdd
-            currentBankAccount.increaseTotalBalance(amtToAdd);
+        long lsn = applyAddFunds(theAcctNum, amtToAdd);
+        if ( lsn == NOT_APPLIED ) {
+            // if no account was found, return a generic empty account
+            return new BankAccount();
         }
 
-        updateBankDisplay();
-        return currentBankAccount;
+        awaitDurable(lsn);
+        return accountOrGeneric(theAcctNum);
 
     }
 
@@ -137,43 +288,25 @@ public class Bank {
      * Provides a way to (1) check an account to see if it has at least a
      * certain amount of unfrozen funds, and if so, to (2) freeze that amount
      * in funds
-     * @param secretKey int secret key allowing access to the account
-     * @param proposedFreeze double amount to check for and freeze
+     * @param secretKey long secret key allowing access to the account
+     * @param token AccessToken the secret key was taken from, or null for
+     *              a secret key from createSecretKey()
+     * @param proposedFreeze long amount in cents to check for and freeze
      * @return boolean true if checking and freezing the funds was successful,
      *                 false otherwise
      */
-    public boolean checkAndFreezeFunds (int secretKey, double proposedFreeze) {
-
-        int theBankAccountNumber;
-        // use AccountLink and secret key to get actual Bank Account number
-        AccountLink theAccountLink = hashMapOfSecretKeys.get(secretKey);
-        if ( theAccountLink != null ) {
-            theBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
-        } else {
-            return false;
-        }
-        // use account number to get full BankAccount
-        BankAccount theBankAccount =
-            hashMapOfAllAccts.get(theBankAccountNumber);
-
-        // ask BankAccount to check and (if possible) freeze the amount
-        boolean fundsFrozen = theBankAccount.checkAndFreeze(proposedFreeze);
+    public boolean checkAndFreezeFunds (long secretKey, AccessToken token,
+                                        long proposedFreeze) {
 
-        if (fundsFrozen) {
-            updateBankDisplay();
-        }
-
-        return fundsFrozen;
+        return checkAndFreezeFunds(
+            resolveAccountLink(secretKey, token, true), proposedFreeze);
     }
 
     public BankAccount closeAccount ( IDRecord theIDRecord ) {
 
-        // Basically, if request is legitimate, then remove associated
-        // item(s) from the:
-        // (1) hashMapOfAllAccts
-        // (2) listOfAuctionHouseIDRecords;
-        // (3) listOfAgentIDRecords
-        // (4) hashMapOfSecretKeys
+        // Basically, if request is legitimate, then remove from the
+        // AccountStore the BankAccount, the associated IDRecord, and
+        // every secret key linked to the account.
 
         // For closure requests from an Auction House, simply comply
         // with request -- any un-realized gains from
@@ -186,120 +319,59 @@ public class Bank {
         // (0) extract the Bank Account Number
         int theBankAccountNumber = theIDRecord.getNumericalID();
 
-        // (1) Get the actual BankAccount
-        BankAccount theBankAccount =
-            hashMapOfAllAccts.get(theBankAccountNumber);
-
-        // (2) If such a BankAccount actually exists ...
-        if (theBankAccount != null) {
-
-            // (3) Check if we're dealing with an Auction House
-            if ( theBankAccount.getAccountType() ==
-                BankAccount.AccountType.AUCTION_HOUSE) {
-
-                // 3(a) Remove account from hashMapOfAllAccts
-                hashMapOfAllAccts.remove(theBankAccountNumber);
-
-                // 3(b) Remove account from listOfAuctionHouseIDRecords
-                // Complicated because process doesn't know how to compare
-                // IDRecords (IDRecord class not over-riding .equals() method),
-                // so using list.remove(Obj) does not work!
-                // so we try something different …
-                int indexToRemove = -1;
-                for(int i = 0; i < listOfAuctionHouseIDRecords.size(); i++){
-                    int tempAcctNum =
-                        (listOfAuctionHouseIDRecords.get(i)).getNumericalID();
-                    if (tempAcctNum == theBankAccountNumber ) {
-                        indexToRemove = i;
-                        break;
-                    }
-                }
-                if ( indexToRemove >= 0 ) {
-                    listOfAuctionHouseIDRecords.remove(indexToRemove);
-                }
+        BankAccount theBankAccount;
+        List<Integer> releasedSecretKeys = new ArrayList<>();
+        long lsn = 0;
 
-                // 3(c) More difficult: remove from the HashMap of secretKeys
-                Set<Integer> setOfSecretKeys = hashMapOfSecretKeys.keySet();
-                List<Integer> secretKeysToRemove = new ArrayList<>();
-                for (int i : setOfSecretKeys) {
-                    int tempAcctNum =
-                        (hashMapOfSecretKeys.get(i)).getAH_ACCOUNT_NUMBER();
-                    if ( tempAcctNum == theBankAccountNumber ) {
-                        secretKeysToRemove.add(i);
-                    }
-                }
-                // and only THEN remove the HashMap items
-                // associated with those saved secretKeyToRemove items:
-                if (secretKeysToRemove.size() > 0) {
-                    for (int i = 0; i < secretKeysToRemove.size(); i++) {
-                        hashMapOfSecretKeys.remove(secretKeysToRemove.get(i));
-                    }
-                }
+        // (1) hold the account's lock stripe, so no funds can be frozen
+        // between checking the account and removing it
+        synchronized (accountStore.lockFor(theBankAccountNumber)) {
 
-                // 3(d) then update display and return BankAccount
-                updateBankDisplay();
-                return theBankAccount;
-            }
-            // (4) if account type is AGENT and Agent has no frozen funds
-            else if ( theBankAccount.getAccountType() ==
-                BankAccount.AccountType.AGENT &&
-                theBankAccount.getTotalFrozen() == 0.0) {
-
-                // 4(a) Remove account from hashMapOfAllAccts
-                hashMapOfAllAccts.remove(theBankAccountNumber);
-
-                // 4(b) Remove account from listOfAgentIDRecords
-                // Complicated because process doesn't know how to compare
-                // IDRecords (IDRecord class not over-riding .equals() method),
-                // so using list.remove(Obj) does not work!
-                // so we try something different …
-                int indexToRemove = -1;
-                for ( int i = 0; i < listOfAgentIDRecords.size(); i++ ) {
-                    int tempAcctNum =
-                        (listOfAgentIDRecords.get(i)).getNumericalID();
-                    if (tempAcctNum == theBankAccountNumber ) {
-                        indexToRemove = i;
-                        break;
-                    }
-                }
-                if ( indexToRemove >= 0 ) {
-                    listOfAgentIDRecords.remove(indexToRemove);
-                }
+            // (2) Get the actual BankAccount
+            theBankAccount = accountStore.getAccount(theBankAccountNumber);
 
-                // 4(c) More difficult: remove from the HashMap of secretKeys
-                Set<Integer> setOfSecretKeys = hashMapOfSecretKeys.keySet();
-                List<Integer> secretKeysToRemove = new ArrayList<>();
-                for (int i : setOfSecretKeys) {
-                    int tempAcctNum =
-                        (hashMapOfSecretKeys.get(i)).getAGENT_ACCOUNT_NUMBER();
-                    if ( tempAcctNum == theBankAccountNumber ) {
-                        secretKeysToRemove.add(i);
-                    }
-                }
-                // and only THEN remove the HashMap items
-                // associated with those saved secretKeyToRemove items:
-                if (secretKeysToRemove.size() > 0) {
-                    for (int i = 0; i < secretKeysToRemove.size(); i++) {
-                        hashMapOfSecretKeys.remove(secretKeysToRemove.get(i));
-                    }
-                }
+            // (3) If no such BankAccount exists, cannot close
+            if (theBankAccount == null) {
+                return new BankAccount();
+            }
 
-                // 4(d) then  update display and return BankAccount
-                updateBankDisplay();
-                return theBankAccount;
+            // (4) Auction Houses can always close; Agents only if
+            // they have no frozen funds ( an exact check, in cents )
+            boolean okToClose =
+                theBankAccount.getAccountType() ==
+                    BankAccount.AccountType.AUCTION_HOUSE ||
+                (theBankAccount.getAccountType() ==
+                    BankAccount.AccountType.AGENT &&
+                    theBankAccount.getTotalFrozenCents() == 0);
 
-            } else {
+            if ( !okToClose ) {
                 // valid BankAccount but:
                 // not an auction house
                 // not an agent with 0 frozen funds
                 return new BankAccount();
             }
 
-        } else {
-            // null BankAccount -- cannot close
-            return new BankAccount();
+            // (5) Journal the closing, then remove account, IDRecord, and
+            // secret keys, and have the display drop the account
+            if ( journal != null ) {
+                lsn = journal.logCloseAccount(theBankAccountNumber);
+            }
+            accountStore.removeAccount(theBankAccountNumber,
+                releasedSecretKeys);
+            markDirty(theBankAccountNumber);
+        }
+
+        // (6) wait for the closing to be on disk; the account number
+        // and secret keys can then be reused
+        awaitDurable(lsn);
+        accountNumberAllocator.release(theBankAccountNumber);
+        for ( int secretKey : releasedSecretKeys ) {
+            secretKeyAllocator.release(secretKey);
         }
 
+        // (7) then return BankAccount
+        return theBankAccount;
+
     }
 
     /**
@@ -315,49 +387,42 @@ public class Bank {
         // pull out or generate info for BankAccount
         String userName = updatedIDRecord.getName();
 
-        // generate an account number
-        int acctNum = getUniqueAccountNumber();
-        double initBalance = updatedIDRecord.getInitialBalance();
-        updatedIDRecord.setNumericalID(acctNum);
+        long initBalance = updatedIDRecord.getInitialBalanceCents();
 
         // Formalize info into an actual BankAccount object.
-        // Some as-yet unused options here for future development.
-        BankAccount.AccountType baType;
-        switch (updatedIDRecord.getRecordType()) {
-            case AGENT:
-                baType = BankAccount.AccountType.AGENT;
-                break;
-
-            case AUCTION_HOUSE:
-                baType = BankAccount.AccountType.AUCTION_HOUSE;
-                break;
-
-            case BANK:
-                baType = BankAccount.AccountType.BANK;
-                break;
-
-            default:
-                baType = BankAccount.AccountType.OTHER;
-                break;
-        }
-        BankAccount newBankAccount =
-            new BankAccount(baType, userName, acctNum, initBalance);
-
-        // Update Bank's list(s) of accounts.
-        // Note: at account initiation, secretKeys HashMap not relevant.
-        hashMapOfAllAccts.put(acctNum, newBankAccount);
-        if (baType == BankAccount.AccountType.AUCTION_HOUSE) {
-
-            listOfAuctionHouseIDRecords.add(updatedIDRecord);
-
-        } else if (baType == BankAccount.AccountType.AGENT) {
-
-            listOfAgentIDRecords.add(updatedIDRecord);
+        BankAccount.AccountType baType =
+            accountTypeOf(updatedIDRecord.getRecordType());
+        // Generate an account number and add the account to the Bank's
+        // AccountStore. The allocator never repeats a number in use; the
+        // loop only guards against numbers added to the store directly.
+        // Note: at account initiation, secret keys not relevant.
+        // The account is journalled and added under its lock stripe, so
+        // a LedgerSnapshot never captures it without its LSN. Accounts
+        // are only ever added under their stripe, so a number found free
+        // here is still free once the record is appended.
+        boolean added = false;
+        long lsn = 0;
+        while ( !added ) {
+            int acctNum = accountNumberAllocator.next();
+            synchronized (accountStore.lockFor(acctNum)) {
+                if ( accountStore.getAccount(acctNum) != null ) {
+                    continue;
+                }
+                updatedIDRecord.setNumericalID(acctNum);
+                BankAccount newBankAccount =
+                    new BankAccount(baType, userName, acctNum, initBalance);
+                if ( journal != null ) {
+                    lsn = journal.logCreateAccount(updatedIDRecord);
+                }
+                added =
+                    accountStore.addAccount(newBankAccount, updatedIDRecord);
+                if ( journal != null ) {
+                    accountStore.setJournalLsn(acctNum, lsn);
+                }
+                markDirty(acctNum);
+            }
         }
-
-        // Send requests to the BankDisplay thread to update display
-        // to reflect new account information
-        updateBankDisplay();
+        awaitDurable(lsn);
 
         return updatedIDRecord;
     }
@@ -373,11 +438,38 @@ public class Bank {
     public int createSecretKey (AccountLink theAccountLink) {
 
         // should verify that the accountlink contains valid account #s
-        // generate a unique secret key
-        int aSecretKey = getUniqueSecretKey();
-        // store away that secret key in HashMap with theAccountLink
-        hashMapOfSecretKeys.put(aSecretKey, theAccountLink);
+        // generate a unique secret key and store it away with
+        // theAccountLink, trying again if the key is in use ( restored
+        // from the journal ). The allocator never hands out a key twice, so
+        // a key found free here is still free once its record is appended.
+        // Both accounts' stripes are held so neither account's closing
+        // can miss the new key.
+        int aSecretKey = secretKeyAllocator.next();
+        long lsn = 0;
+        Object[] locks = accountStore.lockOrder(
+            theAccountLink.getAGENT_ACCOUNT_NUMBER(),
+            theAccountLink.getAH_ACCOUNT_NUMBER());
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+                while ( accountStore.getAccountLink(aSecretKey) != null ) {
+                    aSecretKey = secretKeyAllocator.next();
+                }
+                if ( journal != null ) {
+                    lsn = journal.logCreateSecretKey(aSecretKey,
+                        theAccountLink.getAGENT_ACCOUNT_NUMBER(),
+                        theAccountLink.getAH_ACCOUNT_NUMBER());
+                }
+                accountStore.addSecretKey(aSecretKey, theAccountLink);
+                if ( journal != null ) {
+                    accountStore.setJournalLsn(
+                        theAccountLink.getAGENT_ACCOUNT_NUMBER(), lsn);
+                    accountStore.setJournalLsn(
+                        theAccountLink.getAH_ACCOUNT_NUMBER(), lsn);
+                }
+            }
+        }
 
+        awaitDurable(lsn);
         return aSecretKey;
     }
 
@@ -393,8 +485,8 @@ public class Bank {
         // extract the bank account number
         int theAcctNum = idRecord.getNumericalID();
 
-        // find BankAccount from account -> BankAccount HashMap
-        currentBankAccount = hashMapOfAllAccts.get(theAcctNum);
+        // find BankAccount from Bank's account store
+        currentBankAccount = accountStore.getAccount(theAcctNum);
 
         if ( currentBankAccount == null) {
             // if no account was found, generate a generic empty account
@@ -411,17 +503,20 @@ public class Bank {
      * BankAccount objects have an associated secret key, just those for
      * Agents who have joined up to do business with a specific chosen
      * Auction House.
-     * @param secretKey int secret key associated with an AccountLink
+     * @param secretKey long secret key associated with an AccountLink
+     * @param token AccessToken the secret key was taken from, or null for
+     *              a secret key from createSecretKey()
      * @return BankAccount object
      */
-    public BankAccount getBankAccount (int secretKey) {
+    public BankAccount getBankAccount (long secretKey, AccessToken token) {
         // using a secretKey to obtain a BankAccount means/assumes that
         // the BankAccount belongs to an Agent that has been involved in
         // an AuctionHouse-linked transaction
 
         int theBankAccountNumber;
         // use the secretKey to get associated AccountLink
-        AccountLink theAccountLink = hashMapOfSecretKeys.get(secretKey);
+        AccountLink theAccountLink =
+            resolveAccountLink(secretKey, token, false);
 
         if (theAccountLink != null) { // i.e. secret key was valid
             theBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
@@ -430,21 +525,121 @@ public class Bank {
             return new BankAccount();
         }
 
-        // return the associated BankAccount
-        return hashMapOfAllAccts.get(theBankAccountNumber);
+        // return the associated BankAccount (or generic, if since closed)
+        BankAccount theBankAccount =
+            accountStore.getAccount(theBankAccountNumber);
+        if (theBankAccount == null) {
+            return new BankAccount();
+        }
+        return theBankAccount;
 
     }
 
 
+    /**
+     * Returns the key with which an Auction House checks the AccessTokens
+     * issued for it. The key is derived from the Bank's master key each
+     * time, so the Bank stores no key per Auction House.
+     * @param houseAcctNum int account number of the Auction House
+     * @return byte[] the Auction House's key
+     */
+    public byte[] getHouseKey (int houseAcctNum) {
+        return AccessToken.deriveHouseKey(tokenMasterKey, houseAcctNum);
+    }
+
     /**
      * Returns an ArrayList<IDRecord> of Auction House IDRecords corresponding
      * to Auction Houses currently having accounts with the Bank. The ArrayList
-     * might be empty, but should never be null.
+     * might be empty, but should never be null. It is a copy, so it is not
+     * affected by accounts opening or closing while it is being used.
      * @return ArrayList<IDRecord> of Auction House IDRecords
      */
     public ArrayList<IDRecord> getListOfAuctionHouses () {
 
-        return listOfAuctionHouseIDRecords;
+        return accountStore.getAuctionHouseIDRecords();
+    }
+
+    /**
+     * Grants the Auction House linked by a secret key a credit line on the
+     * agent's account, or adds to the one it already has. In detail:
+     * (1) freezes as much of the requested budget as the agent's unfrozen
+     * funds cover; (2) adds that to the secret key's credit line, opening
+     * one if needed; and (3) restarts the line's period, so it now expires
+     * CREDIT_LINE_PERIOD_PROPERTY seconds from now. A request the agent
+     * cannot cover at all still extends an existing line.
+     * The Auction House then accepts bids against the line on its own,
+     * telling the Bank only when a bid it accepted wins ( see
+     * settleCreditLine() ) and when it no longer needs part of the budget
+     * ( see releaseCreditLine() ).
+     * @param secretKey long secret key specifying an AccountLink
+     * @param token AccessToken the secret key was taken from, or null for
+     *              a secret key from createSecretKey()
+     * @param requestedCents long budget requested, in cents
+     * @return CreditLine giving the amount frozen by this grant and how
+     *         long the line lasts, or null if the secret key is invalid,
+     *         or there is no line and no funds at all could be frozen
+     */
+    public CreditLine grantCreditLine (long secretKey, AccessToken token,
+                                       long requestedCents) {
+
+        return grantCreditLine(secretKey,
+            resolveAccountLink(secretKey, token, true), requestedCents);
+    }
+
+    /**
+     * Issues an Agent an AccessToken for doing business with an Auction
+     * House, in place of a secret key ( see createSecretKey() ): the
+     * AccountLink of the two accounts and an expiry TOKEN_PERIOD_PROPERTY
+     * hours from now, signed with the Auction House's key and with the
+     * Bank's own. Nothing is stored; the token is checked again by the
+     * Bank's HMAC whenever it is used.
+     * @param agentAcctNum int account number of the Agent
+     * @param houseAcctNum int account number of the Auction House
+     * @return AccessToken, or null if either account is not open or is
+     *         not of the right type
+     */
+    public AccessToken issueAccessToken (int agentAcctNum, int houseAcctNum) {
+
+        BankAccount agentAccount = accountStore.getAccount(agentAcctNum);
+        BankAccount houseAccount = accountStore.getAccount(houseAcctNum);
+        if ( agentAccount == null || houseAccount == null ||
+            agentAccount.getAccountType() != BankAccount.AccountType.AGENT ||
+            houseAccount.getAccountType() !=
+                BankAccount.AccountType.AUCTION_HOUSE ) {
+            return null;
+        }
+        return AccessToken.sign(bankTokenKey, getHouseKey(houseAcctNum),
+            agentAcctNum, houseAcctNum,
+            System.currentTimeMillis() + tokenPeriodMillis);
+    }
+
+    /**
+     * Releases part of a credit line that the Auction House no longer
+     * needs, unfreezing that amount in the agent's account. At most the
+     * amount still frozen under the line is unfrozen.
+     * @param secretKey long secret key the line was granted under
+     * @param releasedCents long amount in cents to release
+     * @return boolean true if there was such a credit line, else false
+     */
+    public boolean releaseCreditLine (long secretKey, long releasedCents) {
+
+        AccountStore.CreditLineState theCreditLine =
+            accountStore.getCreditLine(secretKey);
+        if ( theCreditLine == null || releasedCents < 0 ) {
+            return false;
+        }
+
+        long lsn;
+        synchronized (accountStore.lockFor(theCreditLine.getAgentAcctNum())) {
+            if ( accountStore.getCreditLine(secretKey) != theCreditLine ) {
+                return false; // expired in the meantime
+            }
+            lsn = unfreezeUnderCreditLine(secretKey, theCreditLine,
+                releasedCents, false);
+        }
+
+        awaitDurable(lsn);
+        return true;
     }
 
     /**
@@ -453,98 +648,659 @@ public class Bank {
      * @return Boolean True if Bank has no current clients, else false.
      */
     public boolean safeToClose(){
-        if(hashMapOfAllAccts.isEmpty()){
+        if(accountStore.isEmpty()){
             return true;
         }
         return false;
     }
 
+    /**
+     * Settles a bid the Auction House accepted against a credit line and
+     * that has now won: the amount stays frozen in the agent's account,
+     * for the agent's TRANSFER_FUNDS, but is no longer part of the line,
+     * so it is not unfrozen when the line expires. At most the amount
+     * still frozen under the line is settled.
+     * @param secretKey long secret key the line was granted under
+     * @param settledCents long amount in cents of the winning bid
+     * @return boolean true if there was such a credit line, else false
+     */
+    public boolean settleCreditLine (long secretKey, long settledCents) {
+
+        AccountStore.CreditLineState theCreditLine =
+            accountStore.getCreditLine(secretKey);
+        if ( theCreditLine == null || settledCents < 0 ) {
+            return false;
+        }
+
+        long lsn = 0;
+        int theBankAccountNumber = theCreditLine.getAgentAcctNum();
+        synchronized (accountStore.lockFor(theBankAccountNumber)) {
+            if ( accountStore.getCreditLine(secretKey) != theCreditLine ) {
+                return false; // expired in the meantime
+            }
+            long amtToSettle = Math.min(settledCents,
+                theCreditLine.getRemainingCents());
+            if ( journal != null ) {
+                lsn = journal.logSettleCreditLine(secretKey,
+                    theBankAccountNumber, amtToSettle);
+                setCreditLineLsn(theBankAccountNumber, lsn);
+            }
+            theCreditLine.setRemainingCents(
+                theCreditLine.getRemainingCents() - amtToSettle);
+        }
+
+        awaitDurable(lsn);
+        return true;
+    }
+
     /**
      * Transfers the specified amount from one account to another, with the
      * secret key specifying a LinkedAccount object giving the source and
      * target/destination accounts for the transfer. Transfer executed only
      * if there are frozen funds in the source account equal to or greater
      * than the desired transfer amount. If frozen funds less than desired
-     * transferred amount, no money is transferred at all.
-     * @param secretKey int secret key specifying to an AccountLink
-     * @param amtToTransfer double amount to transfer
+     * transferred amount, no money is transferred at all. Both accounts'
+     * lock stripes are held for the whole transfer, so the transfer is
+     * atomic with respect to every other operation on either account.
+     * @param secretKey long secret key specifying to an AccountLink
+     * @param token AccessToken the secret key was taken from, or null for
+     *              a secret key from createSecretKey()
+     * @param amtToTransfer long amount in cents to transfer
      * @return boolean true if transfer successful; false otherwise
      */
-    public boolean transferFunds (int secretKey, double amtToTransfer) {
+    public boolean transferFunds (long secretKey, AccessToken token,
+                                  long amtToTransfer) {
+
+        return transferFunds(resolveAccountLink(secretKey, token, false),
+            amtToTransfer);
+    }
+
+    /**
+     * Moves the hold on an item from its previous high bidder to a new one,
+     * in a single step: (1) unfreezes the previous bid in the previous
+     * bidder's account; (2) checks and freezes the new bid in the new
+     * bidder's account; and (3) if the new bid cannot be frozen, leaves
+     * the previous bid frozen, so nothing changes at all. Both accounts'
+     * lock stripes are held throughout, so no other request sees both
+     * bids frozen, or neither. Since the previous bid is unfrozen first,
+     * an agent raising their own bid needs only the difference in unfrozen
+     * funds. If the previous bid cannot be unfrozen ( e.g. the previous
+     * bidder's key is no longer valid ) the new bid is still frozen.
+     * @param newSecretKey long secret key of the new bidder
+     * @param newToken AccessToken of the new bidder, or null
+     * @param newFreeze long amount in cents of the new bid
+     * @param oldSecretKey long secret key of the previous bidder, or 0 if
+     *                     there was no previous bid
+     * @param oldToken AccessToken of the previous bidder, or null
+     * @param oldUnfreeze long amount in cents of the previous bid
+     * @return boolean true if the new bid was frozen, false otherwise
+     */
+    public boolean transferHold (long newSecretKey, AccessToken newToken,
+                                 long newFreeze, long oldSecretKey,
+                                 AccessToken oldToken, long oldUnfreeze) {
+
+        return transferHold(resolveAccountLink(newSecretKey, newToken, true),
+            newFreeze, resolveAccountLink(oldSecretKey, oldToken, false),
+            oldUnfreeze);
+    }
+
+    /**
+     * Unfreezes funds in an account if the account's frozen funds exceed the
+     * amount specified. If frozen funds are less than specified amount, entire
+     * request is rejected.
+     * @param secretKey long secret key allowing access to the bank account
+     * @param token AccessToken the secret key was taken from, or null for
+     *              a secret key from createSecretKey()
+     * @param amtToUnfreeze long amount in cents to unfreeze
+     * @return boolean true if unfreezing was successful (requiring there
+     *                 to have been frozen funds at least equal to or greater
+     *                 than the amount specified to be unfrozen); false
+     *                 otherwise
+     */
+    public boolean unfreezeFunds (long secretKey, AccessToken token,
+                                  long amtToUnfreeze) {
+
+        return unfreezeFunds(resolveAccountLink(secretKey, token, false),
+            amtToUnfreeze);
+    }
+
+    // ****************************** //
+    //   Package-Private Methods      //
+    //   (for the BankProtocol)       //
+    // ****************************** //
+
+    // The BankProtocol resolves the AccountLink a request names, whether
+    // by a secret key or by an AccessToken, with resolveAccountLink(),
+    // then hands it to one of these ( or to the LedgerSequencer ). Each
+    // does what the public method of the same name does; a null
+    // AccountLink ( an invalid key or token ) is rejected.
+
+    /**
+     * Finds the AccountLink named by a request: (1) if the request carried
+     * an AccessToken, checks that the token's HMAC matches under the
+     * Bank's own key ( not the Auction House's, which the Auction House
+     * knows too ), that the secret key was taken from this token,
+     * and, if the request would freeze more funds, that the token has not
+     * expired; (2) otherwise looks the secret key up among those handed
+     * out by createSecretKey(). Expired tokens still unfreeze and transfer
+     * funds, so an Agent can always pay for, or be released from, a bid
+     * made while the token was valid.
+     * @param secretKey long secret key given in the request
+     * @param token AccessToken carried by the request, or null
+     * @param forNewHold boolean true if the request freezes funds
+     * @return AccountLink, or null if the key or token is not valid
+     */
+    AccountLink resolveAccountLink (long secretKey, AccessToken token,
+                                    boolean forNewHold) {
+
+        // (1)
+        if ( token != null ) {
+            if ( token.getSecretKey() != secretKey ||
+                !token.isIssuedByBank(bankTokenKey) ||
+                ( forNewHold &&
+                    token.isExpired(System.currentTimeMillis()) ) ) {
+                return null;
+            }
+            return token.getAccountLink();
+        }
+
+        // (2)
+        if ( secretKey != (int) secretKey ) {
+            return null; // only tokens give out keys wider than an int
+        }
+        return accountStore.getAccountLink((int) secretKey);
+    }
+
+    /**
+     * See checkAndFreezeFunds( long, AccessToken, long ).
+     * @param theAccountLink AccountLink, or null if the key was invalid
+     * @param proposedFreeze long amount in cents to check for and freeze
+     * @return boolean true if the funds were frozen, false otherwise
+     */
+    boolean checkAndFreezeFunds (AccountLink theAccountLink,
+                                 long proposedFreeze) {
+
+        long lsn = applyCheckAndFreezeFunds(theAccountLink, proposedFreeze);
+        if ( lsn == NOT_APPLIED ) {
+            return false;
+        }
+
+        awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * See grantCreditLine( long, AccessToken, long ). An existing line under
+     * the secret key must belong to the same agent account.
+     * @param secretKey long secret key the line is granted under
+     * @param theAccountLink AccountLink, or null if the key was invalid
+     * @param requestedCents long budget requested, in cents
+     * @return CreditLine granted, or null
+     */
+    CreditLine grantCreditLine (long secretKey, AccountLink theAccountLink,
+                                long requestedCents) {
+
+        if ( theAccountLink == null || requestedCents < 0 ) {
+            return null;
+        }
+        int theBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
+
+        long grantedCents;
+        long lsn = 0;
+        synchronized (accountStore.lockFor(theBankAccountNumber)) {
+            BankAccount theBankAccount =
+                accountStore.getAccount(theBankAccountNumber);
+            if ( theBankAccount == null ) {
+                return null;
+            }
+            AccountStore.CreditLineState theCreditLine =
+                accountStore.getCreditLine(secretKey);
+            if ( theCreditLine != null &&
+                theCreditLine.getAgentAcctNum() != theBankAccountNumber ) {
+                return null; // a different agent's line under this key
+            }
+
+            // (1) what the agent can cover
+            grantedCents = Math.min(requestedCents,
+                theBankAccount.getBalances().getTotalUnfrozenCents());
+            if ( grantedCents <= 0 ) {
+                grantedCents = 0;
+                if ( theCreditLine == null ) {
+                    return null;
+                }
+            }
+
+            // journal the freeze together with (2) and (3), then make them
+            if ( journal != null ) {
+                lsn = journal.logGrantCreditLine(secretKey,
+                    theBankAccountNumber, grantedCents,
+                    System.currentTimeMillis() +
+                        TimeUnit.NANOSECONDS.toMillis(creditLinePeriodNanos));
+                accountStore.setJournalLsn(theBankAccountNumber, lsn);
+            }
+            if ( grantedCents > 0 ) {
+                theBankAccount.checkAndFreeze(grantedCents);
+                markDirty(theBankAccountNumber);
+            }
+            if ( theCreditLine == null ) {
+                theCreditLine =
+                    new AccountStore.CreditLineState(theBankAccountNumber);
+                accountStore.putCreditLine(secretKey, theCreditLine);
+            }
+            theCreditLine.setRemainingCents(
+                theCreditLine.getRemainingCents() + grantedCents);
+            theCreditLine.setDeadlineNanos(
+                System.nanoTime() + creditLinePeriodNanos);
+        }
+
+        awaitDurable(lsn);
+        return new CreditLine(secretKey, grantedCents,
+            TimeUnit.NANOSECONDS.toMillis(creditLinePeriodNanos));
+    }
+
+    /**
+     * See transferFunds( long, AccessToken, long ).
+     * @param theAccountLink AccountLink, or null if the key was invalid
+     * @param amtToTransfer long amount in cents to transfer
+     * @return boolean true if transfer successful; false otherwise
+     */
+    boolean transferFunds (AccountLink theAccountLink, long amtToTransfer) {
+
+        long lsn = applyTransferFunds(theAccountLink, amtToTransfer);
+        if ( lsn == NOT_APPLIED ) {
+            return false;
+        }
+
+        awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * See transferHold( long, AccessToken, long, long, AccessToken,
+     * long ).
+     * @param newAccountLink AccountLink of the new bidder, or null if the
+     *                       key was invalid
+     * @param newFreeze long amount in cents of the new bid
+     * @param oldAccountLink AccountLink of the previous bidder, or null
+     * @param oldUnfreeze long amount in cents of the previous bid
+     * @return boolean true if the new bid was frozen, false otherwise
+     */
+    boolean transferHold (AccountLink newAccountLink, long newFreeze,
+                          AccountLink oldAccountLink, long oldUnfreeze) {
+
+        long lsn = applyTransferHold(newAccountLink, newFreeze,
+            oldAccountLink, oldUnfreeze);
+        if ( lsn == NOT_APPLIED ) {
+            return false;
+        }
+
+        awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * See unfreezeFunds( long, AccessToken, long ).
+     * @param theAccountLink AccountLink, or null if the key was invalid
+     * @param amtToUnfreeze long amount in cents to unfreeze
+     * @return boolean true if unfreezing was successful; false otherwise
+     */
+    boolean unfreezeFunds (AccountLink theAccountLink, long amtToUnfreeze) {
+
+        long lsn = applyUnfreezeFunds(theAccountLink, amtToUnfreeze);
+        if ( lsn == NOT_APPLIED ) {
+            return false;
+        }
+
+        awaitDurable(lsn);
+        return true;
+    }
+
+    // ****************************** //
+    //   Package-Private Methods      //
+    //   (for the LedgerSequencer)    //
+    // ****************************** //
+
+    // These apply one change to the ledger, journalling it if the Bank
+    // keeps a journal, but do not wait for the journal record to be on
+    // disk. Each returns the LSN of the journal record ( 0 when not
+    // journalling ), or NOT_APPLIED if the change was rejected. The public
+    // methods above wrap them for one request at a time; a LedgerSequencer
+    // applies a whole batch of requests, then waits for the journal once
+    // for the batch.
+
+    /**
+     * Applies addFunds() to the ledger. See addFunds().
+     * @param theAcctNum int account number
+     * @param amtToAdd long amount of money in cents to add to account
+     * @return long LSN of the journal record, or NOT_APPLIED if there is
+     *         no such account
+     */
+    long applyAddFunds(int theAcctNum, long amtToAdd) {
+
+        long lsn = 0;
+        synchronized (accountStore.lockFor(theAcctNum)) {
+
+            // find BankAccount from Bank's account store
+            BankAccount currentBankAccount =
+                accountStore.getAccount(theAcctNum);
+            if ( currentBankAccount == null) {
+                return NOT_APPLIED;
+            }
+
+            // journal, then increase funds by amtToAdd
+            if ( journal != null ) {
+                lsn = journal.logAddFunds(theAcctNum, amtToAdd);
+                accountStore.setJournalLsn(theAcctNum, lsn);
+            }
+            currentBankAccount.increaseTotalBalance(amtToAdd);
+            markDirty(theAcctNum);
+        }
+        return lsn;
+    }
+
+    /**
+     * Applies checkAndFreezeFunds() to the ledger. See
+     * checkAndFreezeFunds().
+     * @param theAccountLink AccountLink resolved from the request's secret
+     *                       key or AccessToken, or null if invalid
+     * @param proposedFreeze long amount in cents to check for and freeze
+     * @return long LSN of the journal record, or NOT_APPLIED if the funds
+     *         could not be frozen
+     */
+    long applyCheckAndFreezeFunds (AccountLink theAccountLink,
+                                   long proposedFreeze) {
+
+        int theBankAccountNumber;
+        // use AccountLink to get actual Bank Account number
+        if ( theAccountLink != null ) {
+            theBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
+        } else {
+            return NOT_APPLIED;
+        }
+
+        long lsn = 0;
+        synchronized (accountStore.lockFor(theBankAccountNumber)) {
+            // use account number to get full BankAccount
+            BankAccount theBankAccount =
+                accountStore.getAccount(theBankAccountNumber);
+            if ( theBankAccount == null ) {
+                return NOT_APPLIED; // account closed in the meantime
+            }
+
+            // check the amount can be frozen; nothing else changes the
+            // account while its stripe is held, so once journalled the
+            // freeze succeeds
+            if ( theBankAccount.getTotalUnfrozenCents() < proposedFreeze ) {
+                return NOT_APPLIED;
+            }
+            if ( journal != null ) {
+                lsn = journal.logFreezeFunds(theBankAccountNumber,
+                    proposedFreeze);
+                accountStore.setJournalLsn(theBankAccountNumber, lsn);
+            }
+            theBankAccount.checkAndFreeze(proposedFreeze);
+            markDirty(theBankAccountNumber);
+        }
+        return lsn;
+    }
+
+    /**
+     * Applies transferFunds() to the ledger. See transferFunds().
+     * @param theAccountLink AccountLink resolved from the request's secret
+     *                       key or AccessToken, or null if invalid
+     * @param amtToTransfer long amount in cents to transfer
+     * @return long LSN of the journal record, or NOT_APPLIED if the
+     *         transfer was not possible
+     */
+    long applyTransferFunds (AccountLink theAccountLink,
+                             long amtToTransfer) {
 
         int sourceBankAccountNumber;   // account FROM which to transfer
         int targetBankAccountNumber;   // account TO which to transfer
 
-        // use secretKey to obtain AccountLink, which will contains the
-        // source and target BankAccount numbers
-        AccountLink theAccountLink = hashMapOfSecretKeys.get(secretKey);
-
+        // the AccountLink contains the source and target BankAccount
+        // numbers
         if ( theAccountLink != null ) { // i.e. secretKey was valid
 
             sourceBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
             targetBankAccountNumber = theAccountLink.getAH_ACCOUNT_NUMBER();
 
         } else { // secretKey appears invalid; no transfer possible
-            return false;
+            return NOT_APPLIED;
         }
 
-        // use account numbers to get full BankAccounts
-        BankAccount sourceBankAccount =
-            hashMapOfAllAccts.get(sourceBankAccountNumber);
-        BankAccount targetBankAccount =
-            hashMapOfAllAccts.get(targetBankAccountNumber);
+        // lock both accounts' stripes, always in stripe order
+        long lsn = 0;
+        Object[] locks = accountStore.lockOrder(sourceBankAccountNumber,
+            targetBankAccountNumber);
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+
+                // use account numbers to get full BankAccounts
+                BankAccount sourceBankAccount =
+                    accountStore.getAccount(sourceBankAccountNumber);
+                BankAccount targetBankAccount =
+                    accountStore.getAccount(targetBankAccountNumber);
+                if ( sourceBankAccount == null || targetBankAccount == null ) {
+                    return NOT_APPLIED; // an account has been closed
+                }
 
-        // ask source BankAccount to delete amtToTransfer (if possible)
-        // This effects a transfer only if frozen funds >= amtToTransfer
-        boolean fundsTakenFromSource =
-            sourceBankAccount.decreaseFrozenAndBalance(amtToTransfer);
+                // a transfer is possible only if the source's
+                // frozen funds >= amtToTransfer
+                if ( sourceBankAccount.getTotalFrozenCents() <
+                    amtToTransfer ) {
+                    return NOT_APPLIED;
+                }
+                if ( journal != null ) {
+                    lsn = journal.logTransferFunds(sourceBankAccountNumber,
+                        targetBankAccountNumber, amtToTransfer);
+                    accountStore.setJournalLsn(sourceBankAccountNumber, lsn);
+                    accountStore.setJournalLsn(targetBankAccountNumber, lsn);
+                }
 
-        // if funds were able to be taken from source, then add amt to target
-        if ( fundsTakenFromSource ) {
-            targetBankAccount.increaseTotalBalance(amtToTransfer);
-            updateBankDisplay();
-        } else {
-            return false; // b/c funds could not be taken from source
+                // take amtToTransfer from the source and add it to target
+                sourceBankAccount.decreaseFrozenAndBalance(amtToTransfer);
+                targetBankAccount.increaseTotalBalance(amtToTransfer);
+                markDirty(sourceBankAccountNumber);
+                markDirty(targetBankAccountNumber);
+            }
         }
+        return lsn;
+    }
 
-        return true;
+    /**
+     * Applies transferHold() to the ledger. See transferHold().
+     * @param newAccountLink AccountLink of the new bidder, or null if the
+     *                       new bidder's key or token was invalid
+     * @param newFreeze long amount in cents of the new bid
+     * @param oldAccountLink AccountLink of the previous bidder, or null
+     * @param oldUnfreeze long amount in cents of the previous bid
+     * @return long LSN of the last journal record, or NOT_APPLIED if the
+     *         new bid could not be frozen
+     */
+    long applyTransferHold (AccountLink newAccountLink, long newFreeze,
+                            AccountLink oldAccountLink, long oldUnfreeze) {
+
+        if ( newAccountLink == null ) {
+            return NOT_APPLIED;
+        }
+        int newBankAccountNumber = newAccountLink.getAGENT_ACCOUNT_NUMBER();
+        // with no valid previous bidder, this is a plain check and freeze
+        if ( oldAccountLink == null ) {
+            return applyCheckAndFreezeFunds(newAccountLink, newFreeze);
+        }
+        int oldBankAccountNumber = oldAccountLink.getAGENT_ACCOUNT_NUMBER();
+
+        long lsn = 0;
+        Object[] locks = accountStore.lockOrder(newBankAccountNumber,
+            oldBankAccountNumber);
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+
+                BankAccount newBankAccount =
+                    accountStore.getAccount(newBankAccountNumber);
+                BankAccount oldBankAccount =
+                    accountStore.getAccount(oldBankAccountNumber);
+                if ( newBankAccount == null ) {
+                    return NOT_APPLIED; // account closed in the meantime
+                }
+
+                // (1) can the previous bid be unfrozen?
+                boolean oldUnfrozen = oldBankAccount != null &&
+                    oldBankAccount.getTotalFrozenCents() >= oldUnfreeze;
+
+                // (2) and (3) can the new bid be frozen, once (1) is done?
+                // If not, nothing is changed at all
+                long newUnfrozen = newBankAccount.getTotalUnfrozenCents();
+                if ( oldUnfrozen && oldBankAccount == newBankAccount ) {
+                    newUnfrozen += oldUnfreeze;
+                }
+                if ( newUnfrozen < newFreeze ) {
+                    return NOT_APPLIED;
+                }
+
+                // journal both steps as one record, then make them
+                if ( journal != null ) {
+                    if ( oldUnfrozen ) {
+                        lsn = journal.logTransferHold(oldBankAccountNumber,
+                            oldUnfreeze, newBankAccountNumber, newFreeze);
+                        accountStore.setJournalLsn(oldBankAccountNumber, lsn);
+                    } else {
+                        lsn = journal.logFreezeFunds(newBankAccountNumber,
+                            newFreeze);
+                    }
+                    accountStore.setJournalLsn(newBankAccountNumber, lsn);
+                }
+                if ( oldUnfrozen ) {
+                    oldBankAccount.decreaseFreeze(oldUnfreeze);
+                    markDirty(oldBankAccountNumber);
+                }
+                newBankAccount.checkAndFreeze(newFreeze);
+                markDirty(newBankAccountNumber);
+            }
+        }
+        return lsn;
     }
 
     /**
-     * Unfreezes funds in an account if the account's frozen funds exceed the
-     * amount specified. If frozen funds are less than specified amount, entire
-     * request is rejected.
-     * @param secretKey int secret key allowing access to the bank account
-     * @param amtToUnfreeze double amount to unfreeze
-     * @return boolean true if unfreezing was successful (requiring there
-     *                 to have been frozen funds at least equal to or greater
-     *                 than the amount specified to be unfrozen); false
-     *                 otherwise
+     * Applies unfreezeFunds() to the ledger. See unfreezeFunds().
+     * @param theAccountLink AccountLink resolved from the request's secret
+     *                       key or AccessToken, or null if invalid
+     * @param amtToUnfreeze long amount in cents to unfreeze
+     * @return long LSN of the journal record, or NOT_APPLIED if the funds
+     *         could not be unfrozen
      */
-    public boolean unfreezeFunds (int secretKey, double amtToUnfreeze) {
+    long applyUnfreezeFunds (AccountLink theAccountLink,
+                             long amtToUnfreeze) {
 
         int theBankAccountNumber;
-        // use AccountLink and secret key to get actual Bank Account number
-        AccountLink theAccountLink = hashMapOfSecretKeys.get(secretKey);
+        // use AccountLink to get actual Bank Account number
         if ( theAccountLink != null ) {
             theBankAccountNumber = theAccountLink.getAGENT_ACCOUNT_NUMBER();
         } else {
-            return false;
+            return NOT_APPLIED;
         }
-        // use account number to get full BankAccount
-        BankAccount theBankAccount =
-            hashMapOfAllAccts.get(theBankAccountNumber);
 
-        // ask BankAccount to check and (if possible) un-freeze the amount
-        boolean fundsUnfrozen = theBankAccount.decreaseFreeze(amtToUnfreeze);
+        long lsn = 0;
+        synchronized (accountStore.lockFor(theBankAccountNumber)) {
+            // use account number to get full BankAccount
+            BankAccount theBankAccount =
+                accountStore.getAccount(theBankAccountNumber);
+            if ( theBankAccount == null ) {
+                return NOT_APPLIED; // account closed in the meantime
+            }
 
-        if ( fundsUnfrozen ) {
-            updateBankDisplay();
+            // check the amount can be un-frozen, journal it, then do it
+            if ( theBankAccount.getTotalFrozenCents() < amtToUnfreeze ) {
+                return NOT_APPLIED;
+            }
+            if ( journal != null ) {
+                lsn = journal.logUnfreezeFunds(theBankAccountNumber,
+                    amtToUnfreeze);
+                accountStore.setJournalLsn(theBankAccountNumber, lsn);
+            }
+            theBankAccount.decreaseFreeze(amtToUnfreeze);
+            markDirty(theBankAccountNumber);
         }
+        return lsn;
+    }
 
-        return fundsUnfrozen;
+    /**
+     * Returns the BankAccount with the given account number, or a generic
+     * BankAccount if there is none ( e.g. closed in the meantime ).
+     * @param theAcctNum int account number
+     * @return BankAccount
+     */
+    BankAccount accountOrGeneric (int theAcctNum) {
+        BankAccount theBankAccount = accountStore.getAccount(theAcctNum);
+        return theBankAccount == null ? new BankAccount() : theBankAccount;
     }
 
+    /**
+     * Runs DISPLAY_REFRESH_HZ times a second on the display refresher
+     * thread, never on a request-handling thread, telling the BankObserver
+     * of the accounts changed since the last run: (1) drains the dirty
+     * accounts, removing each before reading it so a change made meanwhile
+     * is caught next time; (2) hands just those accounts, and the account
+     * counts, to the observer in a single call.
+     */
+    private void notifyBankObserver () {
+
+        if ( dirtyAccounts.isEmpty() ) {
+            return;
+        }
+
+        // (1)
+        List<BankAccount> changedAccounts = new ArrayList<>();
+        List<Integer> closedAcctNums = new ArrayList<>();
+        for ( Integer acctNum : dirtyAccounts ) {
+            if ( dirtyAccounts.remove(acctNum) ) {
+                BankAccount theBankAccount = accountStore.getAccount(acctNum);
+                if ( theBankAccount == null ) {
+                    closedAcctNums.add(acctNum);
+                } else {
+                    changedAccounts.add(theBankAccount);
+                }
+            }
+        }
+
+        // (2)
+        try {
+            bankObserver.accountsChanged(changedAccounts, closedAcctNums,
+                accountStore.getNumberOfAccounts(),
+                accountStore.getNumberOfAgentAccounts(),
+                accountStore.getNumberOfAuctionHouseAccounts());
+        } catch (RuntimeException e) {
+            // keep the refresher running for the next change
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits until a journal record is on disk, so the request that made
+     * the change can be answered. Does nothing when not journalling ( an
+     * LSN of 0 ).
+     * @param lsn long LSN returned by the LedgerJournal, or 0
+     */
+    void awaitDurable ( long lsn ) {
+        if ( journal != null ) {
+            journal.awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * As awaitDurable(), but without blocking: returns a stage completed
+     * once the journal record is on disk ( at once when not journalling ).
+     * @param lsn long LSN returned by the LedgerJournal, or 0
+     * @return CompletionStage, completed exceptionally if the journal can
+     *         no longer be written
+     */
+    CompletionStage<Void> whenDurable ( long lsn ) {
+        if ( journal == null ) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return journal.whenDurable(lsn);
+    }
 
     // ****************************** //
     //   Private Utility Fxns         //
@@ -552,118 +1308,467 @@ public class Bank {
 
     /**
      * Establishes the Bank's BankProtocol (handing it a reference to the
-     * Bank) and the Bank's NotificationServer (using a port number defined
+     * Bank, and a LedgerSequencer if the SEQUENCER_PROPERTY system property
+     * is "true") and the Bank's NotificationServer (using a port number defined
      * elsewhere and the BankProtocol object). The corresponding
      * NotificationServer created is then started on its own thread.
      * @throws IOException
      */
     private void bankSetup() throws IOException {
-        bankProtocol = new BankProtocol(this);
-        notificationServer = new NotificationServer(portNumber, bankProtocol);
+        if ( Boolean.getBoolean(LedgerSequencer.SEQUENCER_PROPERTY) ) {
+            bankProtocol = new BankProtocol(this, new LedgerSequencer(this,
+                LedgerSequencer.DEFAULT_RING_SIZE));
+        } else {
+            bankProtocol = new BankProtocol(this);
+        }
+        notificationServer =
+            NotificationServer.createServer(portNumber, bankProtocol);
         Thread serverThread = new Thread(notificationServer);
         serverThread.start();
     }
 
     /**
-     * Private Bank utility function used internally to generate unique
-     * random integer values for account numbers. Should probably be
-     * synchronized at some point.
-     * @return int
+     * Runs once a second on the credit line thread: removes every credit
+     * line whose period has run out, unfreezing whatever is still frozen
+     * under it.
+     */
+    private void expireCreditLines () {
+
+        long lsn = 0;
+        long now = System.nanoTime();
+        for ( long secretKey : accountStore.getCreditLineKeys() ) {
+            AccountStore.CreditLineState theCreditLine =
+                accountStore.getCreditLine(secretKey);
+            if ( theCreditLine == null ||
+                now - theCreditLine.getDeadlineNanos() < 0 ) {
+                continue;
+            }
+            synchronized (accountStore.lockFor(
+                theCreditLine.getAgentAcctNum())) {
+                // recheck: the line may have been extended meanwhile
+                if ( accountStore.getCreditLine(secretKey) != theCreditLine ||
+                    now - theCreditLine.getDeadlineNanos() < 0 ) {
+                    continue;
+                }
+                lsn = Math.max(lsn, unfreezeUnderCreditLine(secretKey,
+                    theCreditLine, theCreditLine.getRemainingCents(), true));
+            }
+        }
+
+        try {
+            awaitDurable(lsn);
+        } catch (RuntimeException e) {
+            // keep the expirer running for the next period
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Notes that an account changed ( or was opened or closed ), so that
+     * the next display refresh shows it. Cheap enough to call on every
+     * change, while holding the account's lock stripe.
+     * @param acctNum int account number
      */
-    private int getUniqueAccountNumber () {
+    private void markDirty ( int acctNum ) {
+        dirtyAccounts.add(acctNum);
+    }
 
-        int minInt = 100000;
-        int maxInt = 999999;
-        int candidateNumber = -1;
-        Set<Integer> listOfCurrentAccountNumbers =
-            hashMapOfAllAccts.keySet();
-        boolean numberIsUnique = false;
-        while ( !numberIsUnique ) {
+    /**
+     * Notes the LSN of a credit line record against the line's agent
+     * account, if still open, so that a LedgerSnapshot capturing the
+     * account ( and with it the line ) knows the record is reflected.
+     * Callers must hold the lock stripe of the agent account.
+     * @param acctNum int agent account number
+     * @param lsn long LSN of the credit line record
+     */
+    private void setCreditLineLsn ( int acctNum, long lsn ) {
+        if ( accountStore.getAccount(acctNum) != null ) {
+            accountStore.setJournalLsn(acctNum, lsn);
+        }
+    }
 
-            candidateNumber = rng.nextInt(maxInt+1);
-            // assume unique for a moment
-            numberIsUnique = true;
-            // verify uniqueness assumption
-            for ( int acctNum : listOfCurrentAccountNumbers) {
-                if (candidateNumber == acctNum) {
-                    numberIsUnique = false;
-                    break;
-                }
-            } // end for() loop
+    /**
+     * Unfreezes part of what is frozen under a credit line, in the line's
+     * agent account ( if still open ), and takes it off the line; or, when
+     * the line expires, unfreezes all that is left and removes the line.
+     * Journalled as a single release or expiry record before anything is
+     * changed. Callers must hold the lock stripe of the agent account.
+     * @param secretKey long secret key the line was granted under
+     * @param theCreditLine AccountStore.CreditLineState
+     * @param cents long amount in cents to unfreeze; at most the amount
+     *              remaining under the line is unfrozen
+     * @param expire boolean true to remove the line as well
+     * @return long LSN of the journal record, or 0 if none was written
+     */
+    private long unfreezeUnderCreditLine ( long secretKey,
+            AccountStore.CreditLineState theCreditLine, long cents,
+            boolean expire ) {
+
+        long amtToUnfreeze = Math.min(cents,
+            theCreditLine.getRemainingCents());
+        if ( amtToUnfreeze <= 0 && !expire ) {
+            return 0; // nothing to release
+        }
 
-        } // end while() loop
+        int theBankAccountNumber = theCreditLine.getAgentAcctNum();
+        BankAccount theBankAccount =
+            accountStore.getAccount(theBankAccountNumber);
+        long unfrozenCents = 0;
+        if ( amtToUnfreeze > 0 && theBankAccount != null &&
+            theBankAccount.getTotalFrozenCents() >= amtToUnfreeze ) {
+            unfrozenCents = amtToUnfreeze;
+        }
 
-        return candidateNumber;
+        long lsn = 0;
+        if ( journal != null ) {
+            lsn = expire ?
+                journal.logExpireCreditLine(secretKey, theBankAccountNumber,
+                    unfrozenCents) :
+                journal.logReleaseCreditLine(secretKey, theBankAccountNumber,
+                    amtToUnfreeze, unfrozenCents);
+            setCreditLineLsn(theBankAccountNumber, lsn);
+        }
+        if ( unfrozenCents > 0 ) {
+            theBankAccount.decreaseFreeze(unfrozenCents);
+            markDirty(theBankAccountNumber);
+        }
+        if ( expire ) {
+            accountStore.removeCreditLine(secretKey);
+        } else {
+            theCreditLine.setRemainingCents(
+                theCreditLine.getRemainingCents() - amtToUnfreeze);
+        }
+        return lsn;
     }
 
     /**
-     * Private Bank utility function used internally to generate unique
-     * random integer values for so-called secret keys. Should probably be
-     * synchronized at some point.
-     * Note: at the time of this writing, this method uses the same process
-     * as the one for generating unique bank account numbers, but I wanted
-     * to keep it separate so we have the option for the two processes to
-     * produce different types of values.
-     * @return int
+     * Maps the type of an IDRecord to the type of BankAccount opened for it.
+     * Some as-yet unused options here for future development.
+     * @param recordType IDRecord.RecordType
+     * @return BankAccount.AccountType
      */
-    private int getUniqueSecretKey () {
+    private static BankAccount.AccountType accountTypeOf (
+        IDRecord.RecordType recordType ) {
 
-        int minInt = 100000;
-        int maxInt = 999999;
-        int candidateNumber = -1;
-        Set<Integer> listOfCurrentSecretKeys =
-            hashMapOfSecretKeys.keySet();
-        boolean numberIsUnique = false;
-        while ( !numberIsUnique ) {
+        switch (recordType) {
+            case AGENT:
+                return BankAccount.AccountType.AGENT;
 
-            candidateNumber = rng.nextInt(maxInt+1);
-            // assume unique for a moment
-            numberIsUnique = true;
-            // verify uniqueness assumption
-            for ( int theNum : listOfCurrentSecretKeys) {
-                if (candidateNumber == theNum) {
-                    numberIsUnique = false;
-                    break;
-                }
-            } // end for() loop
+            case AUCTION_HOUSE:
+                return BankAccount.AccountType.AUCTION_HOUSE;
+
+            case BANK:
+                return BankAccount.AccountType.BANK;
+
+            default:
+                return BankAccount.AccountType.OTHER;
+        }
+    }
+
+    /**
+     * If the JOURNAL_PROPERTY system property names a journal directory,
+     * (1) loads the latest LedgerSnapshot there ( if any ) into the
+     * AccountStore, (2) opens the LedgerJournal, replaying the records
+     * written after the snapshot, (3) schedules the periodic snapshots,
+     * and (4) updates the display with the rebuilt accounts. Account
+     * numbers and secret keys from the journal are not known to the
+     * allocators, but createAccount() and createSecretKey() already retry
+     * if handed a number in use.
+     */
+    private void openJournal () {
+
+        String journalProperty =
+            System.getProperty(LedgerJournal.JOURNAL_PROPERTY);
+        if ( journalProperty == null ) {
+            return; // in-memory only
+        }
+        journalDirectory = Paths.get(journalProperty);
 
-        } // end while() loop
+        // (1) and (2) load the snapshot, then replay and open the journal
+        try {
+            startupSnapshot =
+                LedgerSnapshot.readLatest(journalDirectory, accountStore);
+            long fromLsn =
+                startupSnapshot == null ? 0 : startupSnapshot.getStartLsn();
+            journal = new LedgerJournal(journalDirectory,
+                LedgerJournal.DEFAULT_SEGMENT_SIZE, fromLsn,
+                new JournalReplayer());
+            startupSnapshot = null; // only needed for the replay
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Bank: unable to open ledger journal in " +
+                journalProperty + "; running without one.");
+            accountStore = new AccountStore(); // discard a partial replay
+            journal = null;
+            return;
+        }
+
+        // (3) snapshot periodically on a background thread
+        long snapshotPeriod = Long.getLong(SNAPSHOT_PERIOD_PROPERTY,
+            DEFAULT_SNAPSHOT_PERIOD);
+        if ( snapshotPeriod > 0 ) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ledger-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            snapshotExecutor.scheduleWithFixedDelay(this::snapshotLedger,
+                snapshotPeriod, snapshotPeriod, TimeUnit.SECONDS);
+        }
 
-        return candidateNumber;
+        // (4) show the rebuilt accounts
+        for ( BankAccount theBankAccount : accountStore.getAllAccounts() ) {
+            markDirty(theBankAccount.getAccountNumber());
+        }
     }
 
     /**
-     * Utility function to update display information when Bank accounts
-     * change — for example, when new accounts are created, old accounts
-     * closed, or existing accounts have funds frozen or unfrozen.
-     * This updates all display information -- later we might break this
-     * into pieces if we regularly need to update just one or two
-     * components.
+     * Returns the master key every AccessToken key is derived from:
+     * (1) the key given by TOKEN_KEY_PROPERTY, if set; otherwise
+     * (2) for a journalling Bank, the key kept in TOKEN_KEY_FILE in the
+     * journal directory, made and written there the first time, so the
+     * tokens issued before a restart, and the keys the Auction Houses were
+     * given, stay valid along with the rest of the ledger; otherwise
+     * (3) a new random key.
+     * A journalling Bank that cannot read or write its key file does not
+     * start, rather than turn away every token it issued before.
+     * @return byte[] master key
      */
-    private void updateBankDisplay () {
+    private byte[] loadTokenMasterKey () {
 
-        // Make an ObservableArrayList of the BankAccounts
-        // to pass to the BankDisplay
-        ObservableList<BankAccount> tempListOfBankAccounts =
-            FXCollections.observableArrayList();
-        Set<Integer> tempSetOfAcctNumbers = hashMapOfAllAccts.keySet();
-        for ( int tempAcctNum : tempSetOfAcctNumbers ) {
-            BankAccount tempBA = hashMapOfAllAccts.get(tempAcctNum);
-            tempListOfBankAccounts.add(tempBA);
+        // (1)
+        String tokenKey = System.getProperty(TOKEN_KEY_PROPERTY);
+        if ( tokenKey != null ) {
+            return Base64.getDecoder().decode(tokenKey);
         }
 
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                bankDisplay.updateNumberOfAccounts(hashMapOfAllAccts.size());
-                bankDisplay.updateNumberOfAgentAccounts(
-                    listOfAgentIDRecords.size());
-                bankDisplay.updateNumberOfAHAccounts(
-                    listOfAuctionHouseIDRecords.size());
-                bankDisplay.updateAccountData(tempListOfBankAccounts);
+        byte[] theMasterKey = new byte[32];
+        new SecureRandom().nextBytes(theMasterKey);
+        if ( journal == null ) {
+            return theMasterKey; // (3)
+        }
 
+        // (2) write the new key to a temporary file first, so a crash
+        // never leaves a partial key file behind
+        Path keyFile = journalDirectory.resolve(TOKEN_KEY_FILE);
+        try {
+            if ( Files.exists(keyFile) ) {
+                return Files.readAllBytes(keyFile);
             }
-        });
+            Path tempFile = journalDirectory.resolve(TOKEN_KEY_FILE + ".tmp");
+            Files.write(tempFile, theMasterKey, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                StandardOpenOption.SYNC);
+            Files.move(tempFile, keyFile, StandardCopyOption.ATOMIC_MOVE);
+            return theMasterKey;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Bank: unable to keep the token " +
+                "key in " + keyFile + ".", e);
+        }
+    }
+
+    /**
+     * Writes a LedgerSnapshot while requests carry on ( see
+     * LedgerSnapshot.write() ), then deletes the journal segments before
+     * the snapshot's start LSN, which replay no longer needs.
+     * Failures are reported and the next snapshot is tried as scheduled;
+     * the journal alone is still enough to recover.
+     */
+    private void snapshotLedger () {
+        try {
+            long startLsn = LedgerSnapshot.write(journalDirectory,
+                accountStore, journal);
+            journal.deleteSegmentsBefore(startLsn);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.out.println("Bank: unable to snapshot ledger in " +
+                journalDirectory + ".");
+        }
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * Applies replayed LedgerJournal records directly to the AccountStore,
+     * without journalling them again or updating the display. Records are
+     * only ever journalled for changes that succeeded, so each one applies
+     * cleanly in journal order. When the Bank started from a LedgerSnapshot,
+     * the part of a record changing an account is skipped if the account's
+     * captured state already reflects it ( see isNewer() ); each record
+     * also sets the account's journal LSN, so the next snapshot starts
+     * from the right place.
+     */
+    private class JournalReplayer implements LedgerJournal.Ledger {
+
+        @Override
+        public void createAccount ( long lsn, IDRecord theIDRecord ) {
+            int acctNum = theIDRecord.getNumericalID();
+            if ( isNewer(lsn, acctNum) ) {
+                accountStore.addAccount(
+                    new BankAccount(accountTypeOf(theIDRecord.getRecordType()),
+                        theIDRecord.getName(), acctNum,
+                        theIDRecord.getInitialBalanceCents()),
+                    theIDRecord);
+                accountStore.setJournalLsn(acctNum, lsn);
+            }
+        }
+
+        @Override
+        public void addFunds ( long lsn, int acctNum, long cents ) {
+            BankAccount theBankAccount = accountToChange(lsn, acctNum);
+            if ( theBankAccount != null ) {
+                theBankAccount.increaseTotalBalance(cents);
+            }
+        }
+
+        @Override
+        public void freezeFunds ( long lsn, int acctNum, long cents ) {
+            BankAccount theBankAccount = accountToChange(lsn, acctNum);
+            if ( theBankAccount != null ) {
+                theBankAccount.checkAndFreeze(cents);
+            }
+        }
+
+        @Override
+        public void unfreezeFunds ( long lsn, int acctNum, long cents ) {
+            BankAccount theBankAccount = accountToChange(lsn, acctNum);
+            if ( theBankAccount != null ) {
+                theBankAccount.decreaseFreeze(cents);
+            }
+        }
+
+        @Override
+        public void transferFunds ( long lsn, int sourceAcctNum,
+                                    int targetAcctNum, long cents ) {
+            // the two halves may have been captured at different times
+            BankAccount sourceBankAccount =
+                accountToChange(lsn, sourceAcctNum);
+            BankAccount targetBankAccount =
+                accountToChange(lsn, targetAcctNum);
+            if ( sourceBankAccount != null ) {
+                sourceBankAccount.decreaseFrozenAndBalance(cents);
+            }
+            if ( targetBankAccount != null ) {
+                targetBankAccount.increaseTotalBalance(cents);
+            }
+        }
+
+        @Override
+        public void closeAccount ( long lsn, int acctNum ) {
+            if ( isNewer(lsn, acctNum) ) {
+                accountStore.removeAccount(acctNum, null);
+            }
+        }
+
+        @Override
+        public void createSecretKey ( long lsn, int secretKey,
+                                      int agentAcctNum, int ahAcctNum ) {
+            // a key is captured with either account, if captured after it
+            if ( isNewer(lsn, agentAcctNum) && isNewer(lsn, ahAcctNum) ) {
+                accountStore.addSecretKey(secretKey,
+                    new AccountLink(agentAcctNum, ahAcctNum));
+                if ( accountStore.getAccount(agentAcctNum) != null ) {
+                    accountStore.setJournalLsn(agentAcctNum, lsn);
+                }
+                if ( accountStore.getAccount(ahAcctNum) != null ) {
+                    accountStore.setJournalLsn(ahAcctNum, lsn);
+                }
+            }
+        }
+
+        @Override
+        public void grantCreditLine ( long lsn, long secretKey,
+                                      int agentAcctNum, long cents,
+                                      long expiryMillis ) {
+            // a line is captured with its agent account
+            if ( !isNewer(lsn, agentAcctNum) ) {
+                return;
+            }
+            BankAccount theBankAccount = accountToChange(lsn, agentAcctNum);
+            if ( theBankAccount != null && cents > 0 ) {
+                theBankAccount.checkAndFreeze(cents);
+            }
+            AccountStore.CreditLineState theCreditLine =
+                accountStore.getCreditLine(secretKey);
+            if ( theCreditLine == null ) {
+                theCreditLine = new AccountStore.CreditLineState(agentAcctNum);
+                accountStore.putCreditLine(secretKey, theCreditLine);
+            }
+            theCreditLine.setRemainingCents(
+                theCreditLine.getRemainingCents() + cents);
+            theCreditLine.setExpiryMillis(expiryMillis);
+        }
+
+        @Override
+        public void settleCreditLine ( long lsn, long secretKey,
+                                       int agentAcctNum, long cents ) {
+            if ( !isNewer(lsn, agentAcctNum) ) {
+                return;
+            }
+            accountToChange(lsn, agentAcctNum);
+            AccountStore.CreditLineState theCreditLine =
+                accountStore.getCreditLine(secretKey);
+            if ( theCreditLine != null ) {
+                theCreditLine.setRemainingCents(
+                    theCreditLine.getRemainingCents() - cents);
+            }
+        }
+
+        @Override
+        public void releaseCreditLine ( long lsn, long secretKey,
+                                        int agentAcctNum, long cents,
+                                        long unfrozenCents ) {
+            if ( !isNewer(lsn, agentAcctNum) ) {
+                return;
+            }
+            unfreezeFunds(lsn, agentAcctNum, unfrozenCents);
+            AccountStore.CreditLineState theCreditLine =
+                accountStore.getCreditLine(secretKey);
+            if ( theCreditLine != null ) {
+                theCreditLine.setRemainingCents(
+                    theCreditLine.getRemainingCents() - cents);
+            }
+        }
+
+        @Override
+        public void expireCreditLine ( long lsn, long secretKey,
+                                       int agentAcctNum,
+                                       long unfrozenCents ) {
+            if ( !isNewer(lsn, agentAcctNum) ) {
+                return;
+            }
+            unfreezeFunds(lsn, agentAcctNum, unfrozenCents);
+            accountStore.removeCreditLine(secretKey);
+        }
+
+        /**
+         * Checks whether a record is newer than an account's state as
+         * captured in the startup LedgerSnapshot ( always true without a
+         * snapshot, or for an account the snapshot did not capture ).
+         */
+        private boolean isNewer ( long lsn, int acctNum ) {
+            return startupSnapshot == null ||
+                lsn > startupSnapshot.getAccountLsn(acctNum);
+        }
+
+        /**
+         * Returns the account a record changes, noting the record's LSN,
+         * or null if the record is already reflected in the account or the
+         * account no longer exists.
+         */
+        private BankAccount accountToChange ( long lsn, int acctNum ) {
+            if ( !isNewer(lsn, acctNum) ) {
+                return null;
+            }
+            BankAccount theBankAccount = accountStore.getAccount(acctNum);
+            if ( theBankAccount != null ) {
+                accountStore.setJournalLsn(acctNum, lsn);
+            }
+            return theBankAccount;
+        }
     }
 
 }
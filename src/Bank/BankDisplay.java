@@ -1,8 +1,10 @@
 package Bank;
 
 import Utility.BankAccount;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -18,6 +20,12 @@ import javafx.util.Callback;
 
 import java.math.RoundingMode;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Provides a 2-phase GUI display for a Bank.
@@ -26,13 +34,22 @@ import java.text.NumberFormat;
  * construct a Bank; (2) Phase 2 is then a final window that represents the
  * established, working bank and displays information about the Bank and its
  * operations and accounts.
+ * The table of accounts is updated row by row ( see updateAccounts() ),
+ * so a refresh costs time in proportion to the number of accounts that
+ * changed rather than to the number of accounts held.
+ * The BankDisplay is the Bank's BankObserver: the Bank reports changed
+ * accounts from its own refresher thread ( see accountsChanged() ), and
+ * the BankDisplay moves them onto the JavaFX thread, merging any reports
+ * that arrive before the JavaFX thread gets to them.
  * created: 12/02/2018 by wdc
- * last modified: 12/06/2018 by wdc
+ * last modified: 10/18/2026 by wdc (BankObserver for the Bank)
+ * previously modified: 10/18/2026 by wdc (incremental updates of account rows)
+ * previously modified: 12/06/2018 by wdc
  * @author Liam Brady (lb)
  * @author Warren D. Craft
  * @author Tyler Fenske (thf)
  */
-public class BankDisplay {
+public class BankDisplay implements BankObserver {
 
     private Stage stage01;
     private Stage stage02;
@@ -54,9 +71,19 @@ public class BankDisplay {
     private TableView theTable = new TableView();
 
     // an observable list to hold data from the Bank and
-    // used in displaying Bank's accounts information
+    // used in displaying Bank's accounts information; the table shows
+    // it through a SortedList, so accountData itself is kept in no
+    // particular order, with each account's row index kept alongside
     private ObservableList<BankAccount> accountData =
         FXCollections.observableArrayList();
+    private Map<Integer, Integer> mapOfRowsByAcctNum = new HashMap<>();
+
+    // changes reported by the Bank but not yet shown, by account number
+    // ( null for a closed account ); guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private Map<Integer, BankAccount> mapOfPendingChanges =
+        new LinkedHashMap<>();
+    private int[] pendingCounts;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -206,18 +233,99 @@ public class BankDisplay {
     }
 
     /**
-     * Updates the ObservableList accountData with given ObservableList.
-     * Typically called from the Bank, which passes the new ObservableList
-     * when Bank Account information has changed.
+     * Called by the Bank, on its display refresher thread, with the
+     * accounts changed since its last call. Merges them into any changes
+     * not yet shown and, if no update is already waiting for the JavaFX
+     * thread, schedules one ( see showPendingChanges() ), so a slow JavaFX
+     * thread sees one update covering every report, not a queue of them.
+     */
+    @Override
+    public void accountsChanged (Collection<BankAccount> changedAccounts,
+                                 Collection<Integer> closedAcctNums,
+                                 int numberOfAccounts,
+                                 int numberOfAgentAccounts,
+                                 int numberOfAHAccounts) {
+        boolean updateWaiting;
+        synchronized (pendingLock) {
+            updateWaiting = pendingCounts != null;
+            for ( int acctNum : closedAcctNums ) {
+                mapOfPendingChanges.put(acctNum, null);
+            }
+            for ( BankAccount theBankAccount : changedAccounts ) {
+                mapOfPendingChanges.put(theBankAccount.getAccountNumber(),
+                    theBankAccount);
+            }
+            pendingCounts = new int[] {
+                numberOfAccounts, numberOfAgentAccounts, numberOfAHAccounts };
+        }
+        if ( !updateWaiting ) {
+            Platform.runLater(this::showPendingChanges);
+        }
+    }
+
+    /**
+     * Updates the rows of just the given accounts: (1) removes the rows
+     * of closed accounts, moving the last row into each hole so nothing
+     * else shifts; (2) replaces the row of each changed account, which has
+     * the table redraw that row ( the BankAccount may be the very object
+     * already shown, with new balances ); and (3) adds rows for new
+     * accounts. The table's SortedList re-sorts only the rows affected.
+     * Called on the JavaFX thread with the accounts changed since the
+     * last call ( see accountsChanged() ).
+     * @param changedAccounts Collection of BankAccounts opened or changed
+     * @param closedAcctNums Collection of numbers of accounts closed
+     */
+    public void updateAccounts (Collection<BankAccount> changedAccounts,
+                                Collection<Integer> closedAcctNums) {
+
+        // (1) closed accounts
+        for ( int acctNum : closedAcctNums ) {
+            Integer row = mapOfRowsByAcctNum.remove(acctNum);
+            if ( row == null ) {
+                continue;
+            }
+            int lastRow = accountData.size() - 1;
+            if ( row != lastRow ) {
+                BankAccount movedAccount = accountData.get(lastRow);
+                accountData.set(row, movedAccount);
+                mapOfRowsByAcctNum.put(movedAccount.getAccountNumber(), row);
+            }
+            accountData.remove(lastRow);
+        }
+
+        // (2) and (3) changed and new accounts
+        List<BankAccount> newAccounts = new ArrayList<>();
+        for ( BankAccount theBankAccount : changedAccounts ) {
+            Integer row =
+                mapOfRowsByAcctNum.get(theBankAccount.getAccountNumber());
+            if ( row != null ) {
+                accountData.set(row, theBankAccount);
+            } else {
+                mapOfRowsByAcctNum.put(theBankAccount.getAccountNumber(),
+                    accountData.size() + newAccounts.size());
+                newAccounts.add(theBankAccount);
+            }
+        }
+        accountData.addAll(newAccounts);
+    }
+
+    /**
+     * Updates the ObservableList accountData with given ObservableList,
+     * replacing every row. updateAccounts() is much cheaper when only a
+     * few accounts have changed.
      * @param listOfBankAccounts An ObservableList of BankAccount objects
      */
     public void updateAccountData (ObservableList listOfBankAccounts) {
 
         accountData.setAll(listOfBankAccounts);
-        theTable.sort();
+        mapOfRowsByAcctNum.clear();
+        for ( int row = 0; row < accountData.size(); row++ ) {
+            mapOfRowsByAcctNum.put(accountData.get(row).getAccountNumber(),
+                row);
+        }
         // this should then automatically update the table theTable
-        // populating it with most recent info, and sorting it by
-        // account type (AGENT vs. AUCTION_HOUSE)
+        // populating it with most recent info, sorted by account type
+        // (AGENT vs. AUCTION_HOUSE) through its SortedList
     }
 
     // ****************************** //
@@ -417,8 +525,13 @@ public class BankDisplay {
         );
 
         // link data and columns to the Table and set some
-        // table characteristics
-        theTable.setItems(accountData);
+        // table characteristics; the SortedList follows the table's
+        // sort order, re-sorting only rows that change
+        SortedList<BankAccount> sortedAccountData =
+            new SortedList<>(accountData);
+        sortedAccountData.comparatorProperty().bind(
+            theTable.comparatorProperty());
+        theTable.setItems(sortedAccountData);
         theTable.getColumns().addAll(
             colAcctNum, colAcctType, colBalance,
             colFrozen, colAvailable, colClientName
@@ -580,5 +693,34 @@ public class BankDisplay {
 
     }
 
+    /**
+     * Runs on the JavaFX thread: takes every change reported by the Bank
+     * since the last run and shows it, updating the account rows and
+     * the numbers of accounts.
+     */
+    private void showPendingChanges() {
+        Map<Integer, BankAccount> changes;
+        int[] counts;
+        synchronized (pendingLock) {
+            changes = mapOfPendingChanges;
+            counts = pendingCounts;
+            mapOfPendingChanges = new LinkedHashMap<>();
+            pendingCounts = null;
+        }
+
+        List<BankAccount> changedAccounts = new ArrayList<>();
+        List<Integer> closedAcctNums = new ArrayList<>();
+        for ( Map.Entry<Integer, BankAccount> change : changes.entrySet() ) {
+            if ( change.getValue() == null ) {
+                closedAcctNums.add(change.getKey());
+            } else {
+                changedAccounts.add(change.getValue());
+            }
+        }
+        updateAccounts(changedAccounts, closedAcctNums);
+        updateNumberOfAccounts(counts[0]);
+        updateNumberOfAgentAccounts(counts[1]);
+        updateNumberOfAHAccounts(counts[2]);
+    }
 
 }
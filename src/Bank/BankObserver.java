@@ -0,0 +1,40 @@
+package Bank;
+
+import Utility.BankAccount;
+
+import java.util.Collection;
+
+/**
+ * Receives the display events of a Bank: changes to its accounts, and to
+ * the number of accounts it holds. The Bank's GUI ( BankDisplay ) is one
+ * BankObserver; a Bank running as a headless server uses a
+ * LoggingBankObserver instead, so the Bank itself never depends on JavaFX.
+ * A Bank calls its observer from its own display refresher thread, at
+ * most a few times a second, never from a request-handling thread; an
+ * observer that must update a GUI is responsible for moving the work onto
+ * the GUI's thread.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public interface BankObserver {
+
+    /**
+     * Reports the accounts opened, changed or closed since the last call,
+     * along with the current numbers of accounts.
+     * @param changedAccounts Collection of BankAccounts opened or changed
+     * @param closedAcctNums Collection of numbers of accounts closed
+     * @param numberOfAccounts int number of accounts now open
+     * @param numberOfAgentAccounts int number of AGENT accounts now open
+     * @param numberOfAHAccounts int number of AUCTION_HOUSE accounts now
+     *                           open
+     */
+    void accountsChanged(Collection<BankAccount> changedAccounts,
+                         Collection<Integer> closedAcctNums,
+                         int numberOfAccounts,
+                         int numberOfAgentAccounts,
+                         int numberOfAHAccounts);
+
+}
@@ -3,12 +3,46 @@ package Bank;
 import Utility.*;
 
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Message-handling protocol for messages received by a Bank from an Agent
  * or Auction House.
+ * If given a LedgerSequencer, the protocol hands every request that moves
+ * funds ( ADD_FUNDS, CHECK_FUNDS, TRANSFER_FUNDS, TRANSFER_HOLD and
+ * UNFREEZE_FUNDS ) to
+ * it, and answers those requests asynchronously through
+ * handleMessageAsync() once the sequencer has applied them; all other
+ * requests are still handled directly. That includes the credit line
+ * requests ( GRANT_CREDIT_LINE, SETTLE_CREDIT_LINE and
+ * RELEASE_CREDIT_LINE ), which are rare by design, and take the same
+ * account locks as the sequencer's changes.
+ * Without a LedgerSequencer, handleMessageAsync() applies those requests
+ * directly on the calling thread, but answers them only once their
+ * journal records are on disk ( see Bank.whenDurable() ), so the calling
+ * thread does not wait for the disk itself.
+ * A request naming an Agent by an AccessToken rather than by a secret key
+ * from GET_SECRET_KEY carries the token: its content is a List of the
+ * token followed by the usual content ( for TRANSFER_HOLD, the two Bids
+ * are followed by the new and previous bidder's tokens, either of which
+ * may be null ). The protocol resolves every such request to an
+ * AccountLink with Bank.resolveAccountLink() before applying it.
+ * A GET_LIST_OF_AUCTION_HOUSES request carrying the Agent's IDRecord is
+ * answered with an AccessToken for each Auction House after the
+ * IDRecords, and the reply to OPEN_AUCTIONHOUSE_ACCT carries the Auction
+ * House's key for checking tokens ( Base64 ) after its IDRecord.
  * created: 11/28/18 by Warren D. Craft (wdc)
- * last modified: 12/06/18 by wdc
+ * last modified: 10/18/26 by wdc (answered once durable, without
+ *     blocking)
+ * previously modified: 10/18/26 by wdc (AccessTokens)
+ * previously modified: 10/18/26 by wdc (TRANSFER_HOLD)
+ * previously modified: 10/18/26 by wdc (credit line requests)
+ * previously modified: 10/18/26 by wdc (requests sequenced by LedgerSequencer)
+ * previously modified: 10/18/26 by wdc (amounts in long cents)
+ * previously modified: 12/06/18 by wdc
  * @author Liam Brady (lb)
  * @author Warren D Craft (wdc)
  * @author Tyler Fenske (thf)
@@ -16,6 +50,8 @@ import java.util.ArrayList;
 public class BankProtocol implements PublicAuctionProtocol {
 
     private Bank bank;
+    // applies the fund-moving requests in order; null if not sequencing
+    private LedgerSequencer sequencer;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -28,8 +64,20 @@ public class BankProtocol implements PublicAuctionProtocol {
      * @param bank Bank object.
      */
     public BankProtocol(Bank bank) {
+        this(bank, null);
+    }
+
+    /**
+     * The public constructor for a BankProtocol that hands the requests
+     * moving funds to the given LedgerSequencer.
+     * @param bank Bank object.
+     * @param sequencer LedgerSequencer for the Bank, or null to apply
+     *                  every request directly
+     */
+    public BankProtocol(Bank bank, LedgerSequencer sequencer) {
         // hand the protocol a reference to the creator Bank
         this.bank = bank;
+        this.sequencer = sequencer;
     }
 
 
@@ -41,28 +89,126 @@ public class BankProtocol implements PublicAuctionProtocol {
      * Provides the handleMessage() method required in implementing the
      * PublicAuctionProtocol, establishing the appropriate actions and reply
      * messages for messages coming in from Agent and Auction House clients.
+     * When sequencing, waits for the LedgerSequencer to answer.
      */
     @Override
     public Message handleMessage(Message msgReceived) {
+        if ( sequencer != null ) {
+            return handleMessageAsync(msgReceived).toCompletableFuture()
+                .join();
+        }
+        return handleDirectly(msgReceived);
+    }
+
+    /**
+     * Handles a request that moves funds without waiting for the disk:
+     * hands it to the LedgerSequencer ( if any ), or applies it directly on
+     * the calling thread, returning a CompletionStage completed once the
+     * change's journal record is on disk. A thread with many requests
+     * outstanding ( e.g. pipelined on one connection ) thus has them all
+     * share the journal's next flush. Any other request is handled at
+     * once, as in handleMessage().
+     */
+    @Override
+    public CompletionStage<Message> handleMessageAsync(Message msgReceived) {
+
+        AccessToken token = tokenOf(msgReceived.getMessageContent());
+        Object msgContent = contentOf(msgReceived.getMessageContent());
+        switch (msgReceived.getMessageIdentifier()) {
+
+            case ADD_FUNDS:
+                if ( msgContent instanceof IDRecord ) {
+                    IDRecord idRecord = (IDRecord) msgContent;
+                    return addFunds(idRecord.getNumericalID(),
+                        idRecord.getInitialBalanceCents())
+                        .thenApply(BankProtocol::addFundsReply);
+                }
+                break;
+
+            case CHECK_FUNDS:
+                if ( msgContent instanceof Bid ) {
+                    Bid theBid = (Bid) msgContent;
+                    return checkAndFreezeFunds(
+                        bank.resolveAccountLink(theBid.getSecretKey(),
+                            token, true),
+                        theBid.getProposedBidCents())
+                        .thenApply(BankProtocol::checkFundsReply);
+                }
+                break;
+
+            case TRANSFER_FUNDS:
+                if ( msgContent instanceof AuctionItem ) {
+                    Bid theBid = ((AuctionItem) msgContent).getBid();
+                    AccountLink theAccountLink = bank.resolveAccountLink(
+                        theBid.getSecretKey(), token, false);
+                    return transferFunds(theAccountLink,
+                        theBid.getCurrentBidCents())
+                        .thenApply(fundsTransferred ->
+                            transferFundsReply(fundsTransferred,
+                                theAccountLink));
+                }
+                break;
+
+            case TRANSFER_HOLD:
+                if ( isBidPair(msgContent) ) {
+                    Bid newBid = (Bid) ((List) msgContent).get(0);
+                    Bid oldBid = (Bid) ((List) msgContent).get(1);
+                    return transferHold(
+                        bank.resolveAccountLink(newBid.getSecretKey(),
+                            holdToken(msgContent, 2), true),
+                        newBid.getProposedBidCents(),
+                        bank.resolveAccountLink(oldBid.getSecretKey(),
+                            holdToken(msgContent, 3), false),
+                        oldBid.getCurrentBidCents())
+                        .thenApply(BankProtocol::checkFundsReply);
+                }
+                break;
+
+            case UNFREEZE_FUNDS:
+                if ( msgContent instanceof Bid ) {
+                    Bid theBid = (Bid) msgContent;
+                    return unfreezeFunds(
+                        bank.resolveAccountLink(theBid.getSecretKey(),
+                            token, false),
+                        theBid.getCurrentBidCents())
+                        .thenApply(BankProtocol::unfreezeFundsReply);
+                }
+                break;
+
+            default:
+                break;
+        }
+        return CompletableFuture.completedFuture(
+            handleDirectly(msgReceived));
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Applies a request directly to the Bank, on the calling thread, and
+     * builds the reply message.
+     */
+    private Message handleDirectly(Message msgReceived) {
 
         Message msgToSend = null;
-        Object msgContent = msgReceived.getMessageContent();
+        AccessToken token = tokenOf(msgReceived.getMessageContent());
+        Object msgContent = contentOf(msgReceived.getMessageContent());
         switch (msgReceived.getMessageIdentifier()) {
 
             // cases listed in alphabetical order by Message identifier
 
             case ADD_FUNDS:
                 int theAcctNum;
-                double amtToAdd;
+                long amtToAdd;
                 BankAccount updatedBankAccount;
                 if ( msgContent instanceof IDRecord ) {
                     IDRecord idRecord = (IDRecord) msgContent;
                     theAcctNum = idRecord.getNumericalID();
-                    amtToAdd = idRecord.getInitialBalance();
+                    amtToAdd = idRecord.getInitialBalanceCents();
                     updatedBankAccount = bank.addFunds(theAcctNum, amtToAdd);
-                    msgToSend = new Message<>
-                        (Message.MessageIdentifier.ACKNOWLEDGED,
-                         updatedBankAccount);
+                    msgToSend = addFundsReply(updatedBankAccount);
                 } else {
                     // no valid IDRecord sent, so create a generic BankAccount
                     // to send back with an error identifier
@@ -76,19 +222,12 @@ public class BankProtocol implements PublicAuctionProtocol {
             case CHECK_FUNDS:
                 if ( msgContent instanceof Bid) {
                     Bid theBid = (Bid) msgContent;
-                    int theSecretKey = theBid.getSecretKey();
-                    double proposedFreeze = theBid.getProposedBid();
-                    boolean fundsFrozen =
-                        bank.checkAndFreezeFunds(theSecretKey, proposedFreeze);
-                    if (fundsFrozen) {
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.CHECK_SUCCESS,
-                                null);
-                    } else {
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.CHECK_FAILURE,
-                                null);
-                    }
+                    AccountLink theAccountLink = bank.resolveAccountLink(
+                        theBid.getSecretKey(), token, true);
+                    long proposedFreeze = theBid.getProposedBidCents();
+                    boolean fundsFrozen = bank.checkAndFreezeFunds(
+                        theAccountLink, proposedFreeze);
+                    msgToSend = checkFundsReply(fundsFrozen);
 
                 } else {
                     msgToSend = new Message<>
@@ -127,9 +266,27 @@ public class BankProtocol implements PublicAuctionProtocol {
 
             case GET_LIST_OF_AUCTION_HOUSES:
                 ArrayList<IDRecord> theList = bank.getListOfAuctionHouses();
-                msgToSend = new Message<>(Message.MessageIdentifier.
-                    LIST_OF_AUCTION_HOUSES,
-                    theList);
+                if ( msgContent instanceof IDRecord ) {
+                    // the Agent identified itself, so follow the IDRecords
+                    // with an AccessToken for each Auction House
+                    int agentAcctNum = ((IDRecord) msgContent).getNumericalID();
+                    ArrayList<Object> theListAndTokens =
+                        new ArrayList<>(theList);
+                    for ( IDRecord theHouse : theList ) {
+                        AccessToken theToken = bank.issueAccessToken(
+                            agentAcctNum, theHouse.getNumericalID());
+                        if ( theToken != null ) {
+                            theListAndTokens.add(theToken);
+                        }
+                    }
+                    msgToSend = new Message<>(Message.MessageIdentifier.
+                        LIST_OF_AUCTION_HOUSES,
+                        theListAndTokens);
+                } else {
+                    msgToSend = new Message<>(Message.MessageIdentifier.
+                        LIST_OF_AUCTION_HOUSES,
+                        theList);
+                }
                 break;
 
             case GET_SECRET_KEY:
@@ -147,6 +304,27 @@ public class BankProtocol implements PublicAuctionProtocol {
                     aSecretKey);
                 break;
 
+            case GRANT_CREDIT_LINE:
+                CreditLine theGrant = null;
+                if ( msgContent instanceof CreditLine ) {
+                    CreditLine theRequest = (CreditLine) msgContent;
+                    theGrant = bank.grantCreditLine(
+                        theRequest.getSecretKey(),
+                        bank.resolveAccountLink(theRequest.getSecretKey(),
+                            token, true),
+                        theRequest.getBudgetCents());
+                }
+                if ( theGrant != null ) {
+                    msgToSend = new Message<>(Message.MessageIdentifier.
+                        CREDIT_LINE_GRANTED,
+                        theGrant);
+                } else {
+                    msgToSend = new Message<>
+                        (Message.MessageIdentifier.CHECK_FAILURE,
+                            null);
+                }
+                break;
+
             case OPEN_AGENT_ACCT:
                 if (msgContent instanceof IDRecord) {
                     // if msg content a valid IDRecord, prepare
@@ -171,9 +349,14 @@ public class BankProtocol implements PublicAuctionProtocol {
                     // to reply with updated IDRecord
                     IDRecord updatedIDRecord =
                         bank.createAccount((IDRecord) msgContent);
+                    // follow it with the house's key for AccessTokens
+                    ArrayList<Object> theRecordAndKey = new ArrayList<>();
+                    theRecordAndKey.add(updatedIDRecord);
+                    theRecordAndKey.add(Base64.getEncoder().encodeToString(
+                        bank.getHouseKey(updatedIDRecord.getNumericalID())));
                     msgToSend = new Message<>(Message.MessageIdentifier.
                         AUCTIONHOUSE_ACCT_CONFIRMED,
-                        updatedIDRecord);
+                        theRecordAndKey);
                 } else {
                     // if msg content not a valid IDRecord, prepare
                     // to simply send back original content
@@ -183,6 +366,17 @@ public class BankProtocol implements PublicAuctionProtocol {
                 }
                 break;
 
+            case RELEASE_CREDIT_LINE:
+                if ( msgContent instanceof CreditLine ) {
+                    CreditLine theRelease = (CreditLine) msgContent;
+                    msgToSend = creditLineReply(bank.releaseCreditLine(
+                        theRelease.getSecretKey(),
+                        theRelease.getBudgetCents()));
+                } else {
+                    msgToSend = creditLineReply(false);
+                }
+                break;
+
             case REQUEST_BALANCE:
                 BankAccount theBankAccount;
                 if ( msgContent instanceof IDRecord ) {
@@ -198,6 +392,17 @@ public class BankProtocol implements PublicAuctionProtocol {
                                   theBankAccount);
                 break;
 
+            case SETTLE_CREDIT_LINE:
+                if ( msgContent instanceof CreditLine ) {
+                    CreditLine theSettlement = (CreditLine) msgContent;
+                    msgToSend = creditLineReply(bank.settleCreditLine(
+                        theSettlement.getSecretKey(),
+                        theSettlement.getBudgetCents()));
+                } else {
+                    msgToSend = creditLineReply(false);
+                }
+                break;
+
             case TEST_MESSAGE:
                 msgToSend = new Message<>(Message.MessageIdentifier.
                     ACKNOWLEDGED,
@@ -209,22 +414,13 @@ public class BankProtocol implements PublicAuctionProtocol {
                     AuctionItem theAuctionItem =  (AuctionItem) msgContent;
                     Bid theBid = theAuctionItem.getBid();
                     // the Bid has the secret key and the current (winning) Bid
-                    int theSecretKey = theBid.getSecretKey();
-                    double amtToTransfer = theBid.getCurrentBid();
+                    AccountLink theAccountLink = bank.resolveAccountLink(
+                        theBid.getSecretKey(), token, false);
+                    long amtToTransfer = theBid.getCurrentBidCents();
                     boolean fundsTransferred =
-                        bank.transferFunds(theSecretKey, amtToTransfer);
-                    if (fundsTransferred) {
-                        // get agent's updated BankAccount
-                        BankAccount agentBankAccount =
-                            bank.getBankAccount(theSecretKey);
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.TRANSFER_SUCCESS,
-                                agentBankAccount);
-                    } else {
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.REQUEST_FAILED,
-                                new BankAccount());
-                    }
+                        bank.transferFunds(theAccountLink, amtToTransfer);
+                    msgToSend =
+                        transferFundsReply(fundsTransferred, theAccountLink);
 
                 } else {
                     msgToSend = new Message<>
@@ -233,23 +429,38 @@ public class BankProtocol implements PublicAuctionProtocol {
                 }
                 break;
 
+            case TRANSFER_HOLD:
+                if ( isBidPair(msgContent) ) {
+                    // the new Bid has the new bidder's secret key and
+                    // proposed bid; the old Bid the previous high bidder's
+                    // secret key and (current) bid
+                    Bid newBid = (Bid) ((List) msgContent).get(0);
+                    Bid oldBid = (Bid) ((List) msgContent).get(1);
+                    boolean holdTransferred = bank.transferHold(
+                        bank.resolveAccountLink(newBid.getSecretKey(),
+                            holdToken(msgContent, 2), true),
+                        newBid.getProposedBidCents(),
+                        bank.resolveAccountLink(oldBid.getSecretKey(),
+                            holdToken(msgContent, 3), false),
+                        oldBid.getCurrentBidCents());
+                    msgToSend = checkFundsReply(holdTransferred);
+
+                } else {
+                    msgToSend = new Message<>
+                        (Message.MessageIdentifier.CHECK_FAILURE,
+                            null);
+                }
+                break;
+
             case UNFREEZE_FUNDS:
                 if ( msgContent instanceof Bid) {
                     Bid theBid = (Bid) msgContent;
-                    int theSecretKey = theBid.getSecretKey();
-                    double amtToUnfreeze = theBid.getCurrentBid();
+                    AccountLink theAccountLink = bank.resolveAccountLink(
+                        theBid.getSecretKey(), token, false);
+                    long amtToUnfreeze = theBid.getCurrentBidCents();
                     boolean fundsUnfrozen =
-                        bank.unfreezeFunds(theSecretKey, amtToUnfreeze);
-                    if (fundsUnfrozen) {
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.REQUEST_SUCCEEDED,
-                                null);
-                    } else {
-                        msgToSend = new Message<>
-                            (Message.MessageIdentifier.REQUEST_FAILED,
-                                null);
-                    }
-
+                        bank.unfreezeFunds(theAccountLink, amtToUnfreeze);
+                    msgToSend = unfreezeFundsReply(fundsUnfrozen);
 
                 } else {
                     msgToSend = new Message<>
@@ -271,4 +482,203 @@ public class BankProtocol implements PublicAuctionProtocol {
 
     }
 
+    /**
+     * Returns the AccessToken a request names its Agent by, or null if it
+     * uses a secret key: a token comes first in a List of the request's
+     * content.
+     */
+    private static AccessToken tokenOf(Object msgContent) {
+        if ( msgContent instanceof List && ((List) msgContent).size() == 2 &&
+            ((List) msgContent).get(0) instanceof AccessToken ) {
+            return (AccessToken) ((List) msgContent).get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a request's usual content, without the AccessToken ( if any )
+     * in front of it.
+     */
+    private static Object contentOf(Object msgContent) {
+        if ( tokenOf(msgContent) != null ) {
+            return ((List) msgContent).get(1);
+        }
+        return msgContent;
+    }
+
+    /**
+     * Checks that the content of a TRANSFER_HOLD request is a List of two
+     * Bids: the new bid, then the previous high bid, optionally followed
+     * by the two bidders' AccessTokens.
+     */
+    private static boolean isBidPair(Object msgContent) {
+        if ( !(msgContent instanceof List) ) {
+            return false;
+        }
+        List theList = (List) msgContent;
+        return ( theList.size() == 2 || theList.size() == 4 ) &&
+            theList.get(0) instanceof Bid && theList.get(1) instanceof Bid;
+    }
+
+    /**
+     * Returns the AccessToken at the given index of a TRANSFER_HOLD
+     * request's content, or null if there is none.
+     */
+    private static AccessToken holdToken(Object msgContent, int index) {
+        List theList = (List) msgContent;
+        if ( index < theList.size() &&
+            theList.get(index) instanceof AccessToken ) {
+            return (AccessToken) theList.get(index);
+        }
+        return null;
+    }
+
+    /**
+     * Adds funds through the LedgerSequencer, or directly if there is
+     * none. See Bank.addFunds().
+     */
+    private CompletableFuture<BankAccount> addFunds(int theAcctNum,
+                                                    long amtToAdd) {
+        if ( sequencer != null ) {
+            return sequencer.addFunds(theAcctNum, amtToAdd);
+        }
+        return applied(bank.applyAddFunds(theAcctNum, amtToAdd))
+            .thenApply(added -> added ? bank.accountOrGeneric(theAcctNum)
+                                      : new BankAccount());
+    }
+
+    /**
+     * Checks and freezes funds through the LedgerSequencer, or directly if
+     * there is none. See Bank.checkAndFreezeFunds().
+     */
+    private CompletableFuture<Boolean> checkAndFreezeFunds(
+            AccountLink theAccountLink, long proposedFreeze) {
+        if ( sequencer != null ) {
+            return sequencer.checkAndFreezeFunds(theAccountLink,
+                proposedFreeze);
+        }
+        return applied(bank.applyCheckAndFreezeFunds(theAccountLink,
+            proposedFreeze));
+    }
+
+    /**
+     * Transfers funds through the LedgerSequencer, or directly if there is
+     * none. See Bank.transferFunds().
+     */
+    private CompletableFuture<Boolean> transferFunds(
+            AccountLink theAccountLink, long amtToTransfer) {
+        if ( sequencer != null ) {
+            return sequencer.transferFunds(theAccountLink, amtToTransfer);
+        }
+        return applied(bank.applyTransferFunds(theAccountLink,
+            amtToTransfer));
+    }
+
+    /**
+     * Transfers a hold through the LedgerSequencer, or directly if there
+     * is none. See Bank.transferHold().
+     */
+    private CompletableFuture<Boolean> transferHold(
+            AccountLink newAccountLink, long newFreeze,
+            AccountLink oldAccountLink, long oldUnfreeze) {
+        if ( sequencer != null ) {
+            return sequencer.transferHold(newAccountLink, newFreeze,
+                oldAccountLink, oldUnfreeze);
+        }
+        return applied(bank.applyTransferHold(newAccountLink, newFreeze,
+            oldAccountLink, oldUnfreeze));
+    }
+
+    /**
+     * Unfreezes funds through the LedgerSequencer, or directly if there is
+     * none. See Bank.unfreezeFunds().
+     */
+    private CompletableFuture<Boolean> unfreezeFunds(
+            AccountLink theAccountLink, long amtToUnfreeze) {
+        if ( sequencer != null ) {
+            return sequencer.unfreezeFunds(theAccountLink, amtToUnfreeze);
+        }
+        return applied(bank.applyUnfreezeFunds(theAccountLink,
+            amtToUnfreeze));
+    }
+
+    /**
+     * Turns the LSN returned by one of the Bank's apply methods into a
+     * future of whether the change was made, completed once its journal
+     * record is on disk.
+     */
+    private CompletableFuture<Boolean> applied(long lsn) {
+        if ( lsn == Bank.NOT_APPLIED ) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return bank.whenDurable(lsn).thenApply(durable -> true)
+            .toCompletableFuture();
+    }
+
+    /**
+     * Builds the reply to an ADD_FUNDS request that found its account.
+     */
+    private static Message addFundsReply(BankAccount updatedBankAccount) {
+        return new Message<>(Message.MessageIdentifier.ACKNOWLEDGED,
+            updatedBankAccount);
+    }
+
+    /**
+     * Builds the reply to a CHECK_FUNDS request.
+     */
+    private static Message checkFundsReply(boolean fundsFrozen) {
+        if (fundsFrozen) {
+            return new Message<>(Message.MessageIdentifier.CHECK_SUCCESS,
+                null);
+        } else {
+            return new Message<>(Message.MessageIdentifier.CHECK_FAILURE,
+                null);
+        }
+    }
+
+    /**
+     * Builds the reply to a SETTLE_CREDIT_LINE or RELEASE_CREDIT_LINE
+     * request.
+     */
+    private static Message creditLineReply(boolean creditLineFound) {
+        if (creditLineFound) {
+            return new Message<>(Message.MessageIdentifier.REQUEST_SUCCEEDED,
+                null);
+        } else {
+            return new Message<>(Message.MessageIdentifier.REQUEST_FAILED,
+                null);
+        }
+    }
+
+    /**
+     * Builds the reply to a TRANSFER_FUNDS request, with the Agent's
+     * updated BankAccount if the transfer succeeded.
+     */
+    private Message transferFundsReply(boolean fundsTransferred,
+                                       AccountLink theAccountLink) {
+        if (fundsTransferred) {
+            // get agent's updated BankAccount
+            BankAccount agentBankAccount = bank.accountOrGeneric(
+                theAccountLink.getAGENT_ACCOUNT_NUMBER());
+            return new Message<>(Message.MessageIdentifier.TRANSFER_SUCCESS,
+                agentBankAccount);
+        } else {
+            return new Message<>(Message.MessageIdentifier.REQUEST_FAILED,
+                new BankAccount());
+        }
+    }
+
+    /**
+     * Builds the reply to an UNFREEZE_FUNDS request.
+     */
+    private static Message unfreezeFundsReply(boolean fundsUnfrozen) {
+        if (fundsUnfrozen) {
+            return new Message<>(Message.MessageIdentifier.REQUEST_SUCCEEDED,
+                null);
+        } else {
+            return new Message<>(Message.MessageIdentifier.REQUEST_FAILED,
+                null);
+        }
+    }
+
 }
@@ -0,0 +1,170 @@
+package Bank;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique int IDs (such as bank account numbers and secret keys)
+ * from a fixed range, in constant time and without ever checking an ID
+ * against the ones already in use.
+ *
+ * The n-th ID handed out is a keyed pseudo-random permutation of n over
+ * the range (a small Feistel network, cycle-walked back into the range),
+ * so IDs look random but can never repeat until the whole range has been
+ * used. Each allocation is one atomic increment plus a few arithmetic
+ * rounds, so concurrent allocations never wait on each other. Once the
+ * range is used up, IDs given back with release() are handed out again.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class IdAllocator {
+
+    private static final int ROUNDS = 4;
+
+    private final int minID;
+    private final int size;       // number of IDs in the range
+    private final int halfBits;   // bits in each half of a Feistel block
+    private final int halfMask;
+    private final int[] roundKeys;
+
+    private final AtomicLong nextIndex = new AtomicLong();
+    private final Queue<Integer> releasedIDs = new ConcurrentLinkedQueue<>();
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for an IdAllocator over the range minID..maxID
+     * (inclusive), with a random permutation.
+     * @param minID int smallest ID to hand out
+     * @param maxID int largest ID to hand out
+     */
+    public IdAllocator(int minID, int maxID) {
+        this(minID, maxID, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Public constructor for an IdAllocator over the range minID..maxID
+     * (inclusive), with the permutation given by a seed. Two allocators
+     * with the same range and seed hand out IDs in the same order.
+     * @param minID int smallest ID to hand out
+     * @param maxID int largest ID to hand out
+     * @param seed long seed for the permutation
+     */
+    public IdAllocator(int minID, int maxID, long seed) {
+        if ( maxID < minID ) {
+            throw new IllegalArgumentException("empty ID range");
+        }
+        this.minID = minID;
+        this.size = maxID - minID + 1;
+
+        // smallest even number of bits whose block covers the range
+        int bits = 2;
+        while ( (1L << bits) < size ) {
+            bits += 2;
+        }
+        halfBits = bits / 2;
+        halfMask = (1 << halfBits) - 1;
+
+        roundKeys = new int[ROUNDS];
+        long state = seed;
+        for ( int i = 0; i < ROUNDS; i++ ) {
+            state = mix(state + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = (int) state;
+        }
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Returns an ID not currently handed out: a fresh one while any are
+     * left, otherwise one given back with release().
+     * @return int ID within the range
+     * @throws IllegalStateException if every ID in the range is in use
+     */
+    public int next() {
+        if ( nextIndex.get() < size ) {
+            long index = nextIndex.getAndIncrement();
+            if ( index < size ) {
+                return minID + permute((int) index);
+            }
+        }
+        Integer releasedID = releasedIDs.poll();
+        if ( releasedID == null ) {
+            throw new IllegalStateException("all " + size + " IDs in use");
+        }
+        return releasedID;
+    }
+
+    /**
+     * Gives back an ID that is no longer in use, so it can be handed out
+     * again once the range has been used up.
+     * @param id int ID previously returned by next()
+     */
+    public void release(int id) {
+        if ( id >= minID && id - minID < size ) {
+            releasedIDs.add(id);
+        }
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Maps an index in 0..size-1 to a unique offset in 0..size-1. The
+     * Feistel block may be larger than the range; any result outside the
+     * range is encrypted again until it falls inside ("cycle walking"),
+     * which keeps the mapping a permutation of the range itself.
+     * @param index int index
+     * @return int offset
+     */
+    private int permute(int index) {
+        int value = index;
+        do {
+            value = encrypt(value);
+        } while ( value >= size );
+        return value;
+    }
+
+    /**
+     * One pass of the Feistel network over a block of 2 * halfBits bits.
+     * @param block int block
+     * @return int encrypted block
+     */
+    private int encrypt(int block) {
+        int left = (block >>> halfBits) & halfMask;
+        int right = block & halfMask;
+        for ( int i = 0; i < ROUNDS; i++ ) {
+            int newRight = left ^ (round(right, roundKeys[i]) & halfMask);
+            left = right;
+            right = newRight;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * Feistel round function.
+     */
+    private static int round(int half, int key) {
+        return (int) mix(((long) half << 32) ^ key);
+    }
+
+    /**
+     * 64-bit mixing function (from SplitMix64).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
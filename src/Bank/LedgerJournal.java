@@ -0,0 +1,1015 @@
+package Bank;
+
+import Utility.IDRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, write-ahead journal of every change made to the Bank's
+ * ledger ( accounts opened and closed, funds added, frozen, unfrozen and
+ * transferred, secret keys created, and credit lines granted, settled,
+ * released and expired ), so that a restarted Bank can
+ * rebuild all of its accounts, balances and holds by replaying it.
+ *
+ * The journal is a directory of fixed-size, memory-mapped segment files
+ * ( ledger-00000001.journal, ledger-00000002.journal, ... ). Each record
+ * is appended with a few memory copies under a short lock and is given a
+ * log sequence number ( LSN ): the segment number in the high 32 bits and
+ * the offset just past the record in the low 32 bits, so LSNs only ever
+ * increase. A request must not be answered until its record is durable,
+ * which the caller waits for with awaitDurable(). Durability is provided by
+ * a single flusher thread doing "group commit": each time it wakes it forces
+ * everything appended so far to disk in one call, so all the requests that
+ * arrived while the previous force was running share the cost of the next.
+ * A caller that should not block may instead ask for a future completed
+ * once the record is durable ( whenDurable() ), so that a single thread can
+ * have many requests waiting on the same force.
+ *
+ * Each record is framed as: int length of the body, int CRC32 of the body,
+ * then the body ( a one-byte record type followed by its fields ). Segment
+ * files are zero-filled when created, so a length of 0 marks the end of the
+ * records in a segment; a record whose CRC does not match was torn by a
+ * crash and marks the end of the journal.
+ *
+ * Journalling is opt-in: a Bank keeps one only if started with the
+ * JOURNAL_PROPERTY system property naming the journal directory, e.g.
+ * java -Dpublicauction.journal=/var/bank/journal -jar Bank.jar
+ *
+ * A record is appended before the change it describes is made to the
+ * ledger, while the affected accounts' lock stripes are held ( see Bank ),
+ * so a failed append leaves the ledger as it was. Once the flusher has
+ * failed, appends are refused, since their records could never become
+ * durable.
+ *
+ * Once a LedgerSnapshot has captured the ledger, the records before the
+ * snapshot are no longer needed: the journal is then replayed only from
+ * the snapshot's LSN, and whole segments before it are deleted ( see
+ * deleteSegmentsBefore() ), so the journal does not grow without bound.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (long secret keys in credit line records)
+ * previously modified: 10/18/26 by wdc (credit line records)
+ * previously modified: 10/18/26 by wdc (appended before changes are made)
+ * previously modified: 10/18/26 by wdc (replay from a snapshot,
+ *     truncation)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class LedgerJournal {
+
+    // system property naming the journal directory; no journal if unset
+    public static final String JOURNAL_PROPERTY = "publicauction.journal";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int MAGIC = 0x4C444752; // "LDGR"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // record types
+    private static final byte CREATE_ACCOUNT = 1;
+    private static final byte ADD_FUNDS = 2;
+    private static final byte FREEZE_FUNDS = 3;
+    private static final byte UNFREEZE_FUNDS = 4;
+    private static final byte TRANSFER_FUNDS = 5;
+    private static final byte CLOSE_ACCOUNT = 6;
+    private static final byte CREATE_SECRET_KEY = 7;
+    private static final byte TRANSFER_HOLD = 8;
+    private static final byte GRANT_CREDIT_LINE = 9;
+    private static final byte SETTLE_CREDIT_LINE = 10;
+    private static final byte RELEASE_CREDIT_LINE = 11;
+    private static final byte EXPIRE_CREDIT_LINE = 12;
+
+    private static final IDRecord.RecordType[] RECORD_TYPES =
+        IDRecord.RecordType.values();
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // guarded by this: the segment being appended to, every segment not
+    // yet completely forced to disk ( oldest first, current last ), and
+    // the LSN just past the last record appended
+    private Segment current;
+    private final Deque<Segment> unforced = new ArrayDeque<>();
+    private long appendedLsn;
+    private boolean flusherIdle;
+    private boolean closed;
+
+    // guarded by durableLock: LSN up to which everything is on disk, and
+    // the failure that stopped the flusher, if any
+    private final Object durableLock = new Object();
+    private volatile long durableLsn;
+    private volatile IOException failure;
+    // also guarded by durableLock: the LSN the flusher is forcing up to,
+    // the future completed once it has, and the future for the records
+    // after it, completed by the following force; whenDurable() hands out
+    // one of the two, so a whole group commit shares a single future
+    private long flushingLsn;
+    private CompletableFuture<Void> flushing =
+        CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+
+    private final Thread flusher;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for a LedgerJournal kept in the given directory,
+     * with the default segment size, replaying every record. See the full
+     * constructor.
+     * @param directory Path of the journal directory ( created if needed )
+     * @param ledger Ledger to which existing records are replayed
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public LedgerJournal(Path directory, Ledger ledger) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, 0, ledger);
+    }
+
+    /**
+     * Public constructor for a LedgerJournal kept in the given directory.
+     * ( 1 ) replays every record after fromLsn already in the journal, in
+     * order, to the given Ledger; ( 2 ) positions the journal just past the
+     * last complete record, discarding a torn record left by a crash; and
+     * ( 3 ) starts the flusher thread. The journal is then ready for
+     * appends.
+     * @param directory Path of the journal directory ( created if needed )
+     * @param segmentSize int size in bytes of each segment file
+     * @param fromLsn long LSN of a snapshot the Ledger was restored from;
+     *                only records after it are replayed ( 0 for all )
+     * @param ledger Ledger to which existing records are replayed
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public LedgerJournal(Path directory, int segmentSize, long fromLsn,
+                         Ledger ledger) throws IOException {
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        // ( 1 ) and ( 2 ) replay, then reopen the last segment for appends
+        List<Integer> segmentNumbers = listSegmentNumbers();
+        int lastNumber = 0;
+        int endOffset = 0;
+        for ( int i = 0; i < segmentNumbers.size(); i++ ) {
+            int number = segmentNumbers.get(i);
+            boolean isLast = ( i == segmentNumbers.size() - 1 );
+            if ( number < segmentOf(fromLsn) && !isLast ) {
+                continue; // wholly covered by the snapshot
+            }
+            endOffset = replaySegment(number, isLast, fromLsn, ledger);
+            lastNumber = number;
+        }
+
+        if ( lastNumber == 0 ) {
+            current = createSegment(1);
+        } else {
+            current = openSegment(lastNumber, endOffset);
+        }
+        appendedLsn = lsnOf(current.number, current.writeOffset);
+        durableLsn = appendedLsn;
+        flushingLsn = appendedLsn;
+
+        // ( 3 ) start the group-commit flusher
+        flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the LSN just past the last record appended so far.
+     * @return long LSN
+     */
+    public synchronized long getAppendedLsn() {
+        return appendedLsn;
+    }
+
+    /**
+     * Returns the LSN up to which every record is on disk.
+     * @return long LSN
+     */
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Journals the opening of an account, described by its owner's
+     * IDRecord ( with the account number already set ).
+     * @param theIDRecord IDRecord of the new account's owner
+     * @return long LSN of the record
+     */
+    public long logCreateAccount(IDRecord theIDRecord) {
+        byte[] name = utf8(theIDRecord.getName());
+        byte[] hostname = utf8(theIDRecord.getHostname());
+        ByteBuffer body = ByteBuffer.allocate(
+            1 + 1 + 4 + 8 + 4 + 4 + name.length + 4 + hostname.length);
+        body.put(CREATE_ACCOUNT);
+        body.put((byte) theIDRecord.getRecordType().ordinal());
+        body.putInt(theIDRecord.getNumericalID());
+        body.putLong(theIDRecord.getInitialBalanceCents());
+        body.putInt(theIDRecord.getPortNumber());
+        body.putInt(name.length).put(name);
+        body.putInt(hostname.length).put(hostname);
+        return append(body);
+    }
+
+    /**
+     * Journals funds added to an account.
+     * @param acctNum int account number
+     * @param cents long amount added, in cents
+     * @return long LSN of the record
+     */
+    public long logAddFunds(int acctNum, long cents) {
+        return appendAmount(ADD_FUNDS, acctNum, cents);
+    }
+
+    /**
+     * Journals funds frozen in an account.
+     * @param acctNum int account number
+     * @param cents long amount frozen, in cents
+     * @return long LSN of the record
+     */
+    public long logFreezeFunds(int acctNum, long cents) {
+        return appendAmount(FREEZE_FUNDS, acctNum, cents);
+    }
+
+    /**
+     * Journals funds unfrozen in an account.
+     * @param acctNum int account number
+     * @param cents long amount unfrozen, in cents
+     * @return long LSN of the record
+     */
+    public long logUnfreezeFunds(int acctNum, long cents) {
+        return appendAmount(UNFREEZE_FUNDS, acctNum, cents);
+    }
+
+    /**
+     * Journals a transfer of frozen funds from one account to another.
+     * @param sourceAcctNum int account the funds were taken from
+     * @param targetAcctNum int account the funds were added to
+     * @param cents long amount transferred, in cents
+     * @return long LSN of the record
+     */
+    public long logTransferFunds(int sourceAcctNum, int targetAcctNum,
+                                 long cents) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 4 + 8);
+        body.put(TRANSFER_FUNDS);
+        body.putInt(sourceAcctNum);
+        body.putInt(targetAcctNum);
+        body.putLong(cents);
+        return append(body);
+    }
+
+    /**
+     * Journals a hold moving from one Agent account to another ( see
+     * Bank.transferHold() ): funds unfrozen in the previous bidder's
+     * account and frozen in the new bidder's. The two are a single record,
+     * so neither can be replayed without the other; it is replayed as an
+     * unfreeze followed by a freeze.
+     * @param oldAcctNum int account the previous bid was unfrozen in
+     * @param oldUnfreeze long amount unfrozen, in cents
+     * @param newAcctNum int account the new bid was frozen in
+     * @param newFreeze long amount frozen, in cents
+     * @return long LSN of the record
+     */
+    public long logTransferHold(int oldAcctNum, long oldUnfreeze,
+                                int newAcctNum, long newFreeze) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 8 + 4 + 8);
+        body.put(TRANSFER_HOLD);
+        body.putInt(oldAcctNum);
+        body.putLong(oldUnfreeze);
+        body.putInt(newAcctNum);
+        body.putLong(newFreeze);
+        return append(body);
+    }
+
+    /**
+     * Journals the closing of an account ( which also removes every
+     * secret key linked to it ).
+     * @param acctNum int account number
+     * @return long LSN of the record
+     */
+    public long logCloseAccount(int acctNum) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 4);
+        body.put(CLOSE_ACCOUNT);
+        body.putInt(acctNum);
+        return append(body);
+    }
+
+    /**
+     * Journals the creation of a secret key linking an Agent account with
+     * an Auction House account.
+     * @param secretKey int secret key
+     * @param agentAcctNum int Agent account number
+     * @param ahAcctNum int Auction House account number
+     * @return long LSN of the record
+     */
+    public long logCreateSecretKey(int secretKey, int agentAcctNum,
+                                   int ahAcctNum) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 4 + 4);
+        body.put(CREATE_SECRET_KEY);
+        body.putInt(secretKey);
+        body.putInt(agentAcctNum);
+        body.putInt(ahAcctNum);
+        return append(body);
+    }
+
+    /**
+     * Journals a credit line granted or extended under a secret key ( see
+     * Bank.grantCreditLine() ): the funds frozen for it in the agent
+     * account, added to the line, and the line's new expiry. The freeze
+     * is part of the record, so it is never replayed without the line.
+     * @param secretKey long secret key the line is granted under
+     * @param agentAcctNum int agent account the funds were frozen in
+     * @param cents long amount frozen, in cents ( possibly 0 )
+     * @param expiryMillis long wall-clock time at which the line expires
+     * @return long LSN of the record
+     */
+    public long logGrantCreditLine(long secretKey, int agentAcctNum,
+                                   long cents, long expiryMillis) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + 8 + 8);
+        body.put(GRANT_CREDIT_LINE);
+        body.putLong(secretKey);
+        body.putInt(agentAcctNum);
+        body.putLong(cents);
+        body.putLong(expiryMillis);
+        return append(body);
+    }
+
+    /**
+     * Journals part of a credit line settled by a winning bid: taken off
+     * the line, but left frozen in the agent account.
+     * @param secretKey long secret key the line was granted under
+     * @param agentAcctNum int agent account of the line
+     * @param cents long amount taken off the line, in cents
+     * @return long LSN of the record
+     */
+    public long logSettleCreditLine(long secretKey, int agentAcctNum,
+                                    long cents) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + 8);
+        body.put(SETTLE_CREDIT_LINE);
+        body.putLong(secretKey);
+        body.putInt(agentAcctNum);
+        body.putLong(cents);
+        return append(body);
+    }
+
+    /**
+     * Journals part of a credit line released: taken off the line, and
+     * unfrozen in the agent account ( if the account could still cover
+     * it, which is why the two amounts may differ ).
+     * @param secretKey long secret key the line was granted under
+     * @param agentAcctNum int agent account of the line
+     * @param cents long amount taken off the line, in cents
+     * @param unfrozenCents long amount unfrozen, in cents
+     * @return long LSN of the record
+     */
+    public long logReleaseCreditLine(long secretKey, int agentAcctNum,
+                                     long cents, long unfrozenCents) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + 8 + 8);
+        body.put(RELEASE_CREDIT_LINE);
+        body.putLong(secretKey);
+        body.putInt(agentAcctNum);
+        body.putLong(cents);
+        body.putLong(unfrozenCents);
+        return append(body);
+    }
+
+    /**
+     * Journals a credit line that expired: removed, with what was left of
+     * it unfrozen in the agent account.
+     * @param secretKey long secret key the line was granted under
+     * @param agentAcctNum int agent account of the line
+     * @param unfrozenCents long amount unfrozen, in cents
+     * @return long LSN of the record
+     */
+    public long logExpireCreditLine(long secretKey, int agentAcctNum,
+                                    long unfrozenCents) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + 8);
+        body.put(EXPIRE_CREDIT_LINE);
+        body.putLong(secretKey);
+        body.putInt(agentAcctNum);
+        body.putLong(unfrozenCents);
+        return append(body);
+    }
+
+    /**
+     * Deletes every segment file wholly before the segment holding the
+     * given LSN. Used once a LedgerSnapshot taken at that LSN is safely on
+     * disk, since replay then starts from the snapshot's LSN.
+     * @param lsn long LSN of the snapshot
+     * @return int number of segment files deleted
+     * @throws IOException if a segment file cannot be deleted
+     */
+    public int deleteSegmentsBefore(long lsn) throws IOException {
+        // make sure the segments to delete are no longer being forced
+        awaitDurable(lsn);
+        int deleted = 0;
+        for ( int number : listSegmentNumbers() ) {
+            if ( number >= segmentOf(lsn) ) {
+                break;
+            }
+            synchronized (this) {
+                if ( !unforced.isEmpty() &&
+                    unforced.peekFirst().number <= number ) {
+                    break; // still open ( should not happen )
+                }
+            }
+            Files.deleteIfExists(segmentPath(number));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Waits until every record up to the given LSN is on disk. Returns
+     * at once if it already is ( including for an LSN of 0 ).
+     * @param lsn long LSN returned by one of the log methods
+     * @throws UncheckedIOException if the journal can no longer be written
+     */
+    public void awaitDurable(long lsn) {
+        if ( durableLsn >= lsn ) {
+            return;
+        }
+        synchronized (durableLock) {
+            while ( durableLsn < lsn ) {
+                if ( failure != null ) {
+                    throw new UncheckedIOException(failure);
+                }
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(
+                        new IOException("interrupted awaiting journal", e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stage completed once every record up to the given LSN is
+     * on disk, without blocking. Every caller waiting on the same force is
+     * handed the same stage, completed on the flusher thread, so anything
+     * chained onto it should be quick or run asynchronously.
+     * @param lsn long LSN returned by one of the log methods
+     * @return CompletionStage completed, or completed exceptionally with
+     *         an UncheckedIOException if the journal can no longer be
+     *         written
+     */
+    public CompletionStage<Void> whenDurable(long lsn) {
+        if ( durableLsn >= lsn ) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (durableLock) {
+            if ( durableLsn >= lsn ) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if ( failure != null ) {
+                return CompletableFuture.failedFuture(
+                    new UncheckedIOException(failure));
+            }
+            return ( lsn <= flushingLsn ) ? flushing : nextFlush;
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk, stops the flusher, and
+     * closes the segment files. No more records may be appended.
+     * @throws IOException if closing a segment file fails
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for ( Segment segment : unforced ) {
+                segment.channel.close();
+            }
+            unforced.clear();
+        }
+    }
+
+    // ****************************** //
+    //   Nested Classes & Interfaces  //
+    // ****************************** //
+
+    /**
+     * The ledger operations a journal replays, in the order they were
+     * journalled, each with the LSN of its record. Each is applied
+     * directly, without being journalled again.
+     */
+    public interface Ledger {
+
+        void createAccount(long lsn, IDRecord theIDRecord);
+
+        void addFunds(long lsn, int acctNum, long cents);
+
+        void freezeFunds(long lsn, int acctNum, long cents);
+
+        void unfreezeFunds(long lsn, int acctNum, long cents);
+
+        void transferFunds(long lsn, int sourceAcctNum, int targetAcctNum,
+                           long cents);
+
+        void closeAccount(long lsn, int acctNum);
+
+        void createSecretKey(long lsn, int secretKey, int agentAcctNum,
+                             int ahAcctNum);
+
+        void grantCreditLine(long lsn, long secretKey, int agentAcctNum,
+                             long cents, long expiryMillis);
+
+        void settleCreditLine(long lsn, long secretKey, int agentAcctNum,
+                              long cents);
+
+        void releaseCreditLine(long lsn, long secretKey, int agentAcctNum,
+                               long cents, long unfrozenCents);
+
+        void expireCreditLine(long lsn, long secretKey, int agentAcctNum,
+                              long unfrozenCents);
+    }
+
+    /**
+     * One segment file, mapped into memory in full.
+     */
+    private static final class Segment {
+        private final int number;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // offset just past the last record; guarded by the journal
+        private int writeOffset;
+        // offset up to which the segment is on disk; flusher only
+        private int forcedOffset;
+        // set once the journal has moved on to the next segment
+        private boolean sealed;
+
+        private Segment(int number, FileChannel channel,
+                        MappedByteBuffer buffer, int writeOffset) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.writeOffset = writeOffset;
+            this.forcedOffset = writeOffset;
+        }
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Appends a record carrying an account number and an amount.
+     */
+    private long appendAmount(byte type, int acctNum, long cents) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 8);
+        body.put(type);
+        body.putInt(acctNum);
+        body.putLong(cents);
+        return append(body);
+    }
+
+    /**
+     * Appends one record. The CRC is computed before taking the lock, so
+     * the time spent holding it is just the copy into the mapped segment.
+     * Nothing is written if the append fails.
+     * @param body ByteBuffer holding the record body, positioned at its end
+     * @return long LSN just past the record
+     * @throws IllegalStateException if the journal is closed
+     * @throws UncheckedIOException if the journal can no longer be written
+     */
+    private long append(ByteBuffer body) {
+        body.flip();
+        int length = body.remaining();
+        if ( RECORD_HEADER_SIZE + length > segmentSize - SEGMENT_HEADER_SIZE ) {
+            throw new IllegalArgumentException("journal record too large");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        int checksum = (int) crc.getValue();
+
+        synchronized (this) {
+            if ( closed ) {
+                throw new IllegalStateException("journal closed");
+            }
+            if ( failure != null ) {
+                throw new UncheckedIOException(failure);
+            }
+            if ( current.writeOffset + RECORD_HEADER_SIZE + length >
+                segmentSize ) {
+                rollSegment();
+            }
+            MappedByteBuffer buffer = current.buffer;
+            int offset = current.writeOffset;
+            buffer.putInt(offset, length);
+            buffer.putInt(offset + 4, checksum);
+            buffer.put(offset + RECORD_HEADER_SIZE, body.array(), 0, length);
+            current.writeOffset = offset + RECORD_HEADER_SIZE + length;
+            appendedLsn = lsnOf(current.number, current.writeOffset);
+
+            if ( flusherIdle ) {
+                flusherIdle = false;
+                notifyAll();
+            }
+            return appendedLsn;
+        }
+    }
+
+    /**
+     * Starts the next segment, then seals the current one. If the next
+     * segment cannot be created the current one is left as it was. Called
+     * holding the journal's lock.
+     */
+    private void rollSegment() {
+        Segment next;
+        try {
+            next = createSegment(current.number + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        current.sealed = true;
+        current = next;
+    }
+
+    /**
+     * The flusher thread: repeatedly forces everything appended so far to
+     * disk, then releases every request waiting on it.
+     */
+    private void flushLoop() {
+        try {
+            while ( true ) {
+                long target;
+                Segment[] batch;
+                synchronized (this) {
+                    while ( appendedLsn == durableLsn && !closed ) {
+                        flusherIdle = true;
+                        wait();
+                    }
+                    flusherIdle = false;
+                    if ( appendedLsn == durableLsn ) {
+                        return; // closed, and nothing left to force
+                    }
+                    target = appendedLsn;
+                    batch = unforced.toArray(new Segment[0]);
+                    synchronized (durableLock) {
+                        flushingLsn = target;
+                        flushing = nextFlush;
+                        nextFlush = new CompletableFuture<>();
+                    }
+                }
+
+                // force outside the lock, so appends carry on meanwhile
+                int targetNumber = (int) ( target >>> 32 );
+                int targetOffset = (int) target;
+                for ( Segment segment : batch ) {
+                    if ( segment.number > targetNumber ) {
+                        break;
+                    }
+                    int end = ( segment.number == targetNumber ) ?
+                        targetOffset : writeOffsetOf(segment);
+                    if ( end > segment.forcedOffset ) {
+                        segment.buffer.force(segment.forcedOffset,
+                            end - segment.forcedOffset);
+                        segment.forcedOffset = end;
+                    }
+                }
+
+                synchronized (this) {
+                    // drop sealed segments that are now wholly on disk
+                    while ( !unforced.isEmpty() &&
+                        unforced.peekFirst().sealed &&
+                        unforced.peekFirst().forcedOffset ==
+                            unforced.peekFirst().writeOffset ) {
+                        unforced.pollFirst().channel.close();
+                    }
+                }
+                CompletableFuture<Void> flushed;
+                synchronized (durableLock) {
+                    durableLsn = target;
+                    durableLock.notifyAll();
+                    flushed = flushing;
+                }
+                flushed.complete(null);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            fail(e instanceof UncheckedIOException ?
+                ((UncheckedIOException) e).getCause() : (IOException) e);
+        } catch (InterruptedException e) {
+            fail(new IOException("journal flusher interrupted", e));
+        }
+    }
+
+    /**
+     * Returns a segment's write offset, read under the journal's lock.
+     */
+    private synchronized int writeOffsetOf(Segment segment) {
+        return segment.writeOffset;
+    }
+
+    /**
+     * Records the failure that stopped the flusher and wakes every waiter
+     * ( failing every future from whenDurable() ), so requests fail rather
+     * than waiting forever.
+     */
+    private void fail(IOException e) {
+        e.printStackTrace();
+        CompletableFuture<Void> failedFlush;
+        CompletableFuture<Void> failedNextFlush;
+        synchronized (durableLock) {
+            failure = e;
+            durableLock.notifyAll();
+            failedFlush = flushing;
+            failedNextFlush = nextFlush;
+        }
+        failedFlush.completeExceptionally(new UncheckedIOException(e));
+        failedNextFlush.completeExceptionally(new UncheckedIOException(e));
+    }
+
+    /**
+     * Creates, maps, and registers a new, empty segment file. A file that
+     * cannot be set up is deleted again, so a later attempt can create it.
+     * @param number int segment number
+     * @return Segment ready for appends
+     * @throws IOException if the file cannot be created
+     */
+    private Segment createSegment(int number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(number),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedByteBuffer buffer;
+        try {
+            buffer =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            // make the new file itself ( and its size ) durable now; the
+            // header is forced along with the first records
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(segmentPath(number));
+            throw e;
+        }
+        Segment segment = new Segment(number, channel, buffer,
+            SEGMENT_HEADER_SIZE);
+        segment.forcedOffset = 0;
+        unforced.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Reopens the last existing segment for appends, starting at the end
+     * of its last complete record. Anything after that ( a torn record )
+     * is zeroed, so it can never be mistaken for a record later.
+     * @param number int segment number
+     * @param endOffset int offset just past the last complete record
+     * @return Segment ready for appends
+     * @throws IOException if the file cannot be opened
+     */
+    private Segment openSegment(int number, int endOffset)
+        throws IOException {
+
+        FileChannel channel = FileChannel.open(segmentPath(number),
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        int dirtyEnd = endOffset;
+        for ( int i = endOffset; i < size; i++ ) {
+            if ( buffer.get(i) != 0 ) {
+                buffer.put(i, (byte) 0);
+                dirtyEnd = i + 1;
+            }
+        }
+        if ( dirtyEnd > endOffset ) {
+            buffer.force(endOffset, dirtyEnd - endOffset);
+        }
+
+        Segment segment = new Segment(number, channel, buffer, endOffset);
+        if ( size < segmentSize ) {
+            // an older, smaller segment: append to a new one instead
+            segment.sealed = true;
+            channel.close();
+            return createSegment(number + 1);
+        }
+        unforced.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Replays the records of one segment after fromLsn, in order, to the
+     * Ledger.
+     * @param number int segment number
+     * @param isLast boolean true for the newest segment, the only one in
+     *               which a torn record is expected
+     * @param fromLsn long LSN before which records are skipped
+     * @param ledger Ledger to apply the records to
+     * @return int offset just past the last complete record
+     * @throws IOException if the segment cannot be read or is corrupt
+     */
+    private int replaySegment(int number, boolean isLast, long fromLsn,
+                              Ledger ledger) throws IOException {
+
+        try ( FileChannel channel = FileChannel.open(segmentPath(number),
+                  StandardOpenOption.READ) ) {
+
+            int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if ( size < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC ||
+                buffer.getInt(4) != FORMAT_VERSION ) {
+                throw new IOException("not a ledger journal segment: " +
+                    segmentPath(number));
+            }
+
+            CRC32 crc = new CRC32();
+            int offset = SEGMENT_HEADER_SIZE;
+            while ( offset + RECORD_HEADER_SIZE <= size ) {
+                int length = buffer.getInt(offset);
+                if ( length == 0 ) {
+                    break; // end of the records in this segment
+                }
+                boolean complete = length > 0 &&
+                    length <= size - offset - RECORD_HEADER_SIZE;
+                if ( complete ) {
+                    ByteBuffer body = buffer.slice(
+                        offset + RECORD_HEADER_SIZE, length);
+                    crc.reset();
+                    crc.update(body.duplicate());
+                    complete = (int) crc.getValue() ==
+                        buffer.getInt(offset + 4);
+                    long lsn = lsnOf(number,
+                        offset + RECORD_HEADER_SIZE + length);
+                    if ( complete && lsn > fromLsn ) {
+                        applyRecord(lsn, body, ledger);
+                    }
+                }
+                if ( !complete ) {
+                    if ( isLast ) {
+                        break; // torn by a crash: the end of the journal
+                    }
+                    throw new IOException("corrupt ledger journal segment: "
+                        + segmentPath(number) + " at offset " + offset);
+                }
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Decodes one record body and applies it to the Ledger.
+     */
+    private void applyRecord(long lsn, ByteBuffer body, Ledger ledger) {
+        byte type = body.get();
+        switch (type) {
+            case CREATE_ACCOUNT:
+                IDRecord.RecordType recordType = RECORD_TYPES[body.get()];
+                int acctNum = body.getInt();
+                long initialBalance = body.getLong();
+                int portNumber = body.getInt();
+                String name = readUtf8(body);
+                String hostname = readUtf8(body);
+                IDRecord theIDRecord = new IDRecord(recordType, name, 0,
+                    hostname, portNumber);
+                theIDRecord.setInitialBalanceCents(initialBalance);
+                theIDRecord.setNumericalID(acctNum);
+                ledger.createAccount(lsn, theIDRecord);
+                break;
+
+            case ADD_FUNDS:
+                ledger.addFunds(lsn, body.getInt(), body.getLong());
+                break;
+
+            case FREEZE_FUNDS:
+                ledger.freezeFunds(lsn, body.getInt(), body.getLong());
+                break;
+
+            case UNFREEZE_FUNDS:
+                ledger.unfreezeFunds(lsn, body.getInt(), body.getLong());
+                break;
+
+            case TRANSFER_FUNDS:
+                ledger.transferFunds(lsn, body.getInt(), body.getInt(),
+                    body.getLong());
+                break;
+
+            case CLOSE_ACCOUNT:
+                ledger.closeAccount(lsn, body.getInt());
+                break;
+
+            case CREATE_SECRET_KEY:
+                ledger.createSecretKey(lsn, body.getInt(), body.getInt(),
+                    body.getInt());
+                break;
+
+            case TRANSFER_HOLD:
+                ledger.unfreezeFunds(lsn, body.getInt(), body.getLong());
+                ledger.freezeFunds(lsn, body.getInt(), body.getLong());
+                break;
+
+            case GRANT_CREDIT_LINE:
+                ledger.grantCreditLine(lsn, body.getLong(), body.getInt(),
+                    body.getLong(), body.getLong());
+                break;
+
+            case SETTLE_CREDIT_LINE:
+                ledger.settleCreditLine(lsn, body.getLong(), body.getInt(),
+                    body.getLong());
+                break;
+
+            case RELEASE_CREDIT_LINE:
+                ledger.releaseCreditLine(lsn, body.getLong(), body.getInt(),
+                    body.getLong(), body.getLong());
+                break;
+
+            case EXPIRE_CREDIT_LINE:
+                ledger.expireCreditLine(lsn, body.getLong(), body.getInt(),
+                    body.getLong());
+                break;
+
+            default:
+                throw new IllegalStateException(
+                    "unknown ledger journal record type " + type);
+        }
+    }
+
+    /**
+     * Returns the numbers of the existing segment files, in order.
+     */
+    private List<Integer> listSegmentNumbers() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream(
+                  directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX) ) {
+            for ( Path path : stream ) {
+                String fileName = path.getFileName().toString();
+                numbers.add(Integer.parseInt(fileName.substring(
+                    SEGMENT_PREFIX.length(),
+                    fileName.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s",
+            SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static long lsnOf(int segmentNumber, int offset) {
+        return ((long) segmentNumber << 32) | offset;
+    }
+
+    private static int segmentOf(long lsn) {
+        return (int) ( lsn >>> 32 );
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readUtf8(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
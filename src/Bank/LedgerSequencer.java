@@ -0,0 +1,361 @@
+package Bank;
+
+import Utility.AccountLink;
+import Utility.BankAccount;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-writer alternative to applying the Bank's fund movements on the
+ * threads of the requests themselves. Requests to add, freeze, unfreeze or
+ * transfer funds, or to transfer a hold between bidders, are published
+ * into a preallocated ring buffer ( in the style of the LMAX Disruptor )
+ * and applied one at a time, in the order they were published, by one
+ * business-logic thread. Every change to the ledger therefore happens in a
+ * single, deterministic order ( the same order as in the LedgerJournal ),
+ * the account locks the Bank's apply methods take are never contended by
+ * another fund movement, and nothing is allocated per request but the
+ * CompletableFuture of its reply.
+ *
+ * Publishing ( 1 ) claims the next sequence number with one atomic
+ * increment, ( 2 ) waits only if the ring is full, ( 3 ) fills in the
+ * preallocated Slot for that sequence, and ( 4 ) publishes the Slot by
+ * writing its sequence number. The business-logic thread applies every
+ * Slot published so far as one batch, then ( if the Bank keeps a journal )
+ * waits once for the whole batch's journal records to be on disk, and
+ * completes the batch's futures. While it waits for the journal, new
+ * requests pile up in the ring and make up the next batch, so the cost of
+ * each disk flush is shared by a whole batch.
+ *
+ * Reads ( balances, lists of Auction Houses ) are not sequenced: they are
+ * served directly from the immutable Balances snapshot each BankAccount
+ * publishes after every change. Opening and closing accounts and creating
+ * secret keys are not sequenced either; they take the same account locks
+ * as the apply methods, so they stay safe alongside the sequencer.
+ *
+ * Requests naming an Agent are published with the AccountLink the
+ * BankProtocol resolved from the secret key or AccessToken they carried
+ * ( see Bank.resolveAccountLink() ), so the business-logic thread never
+ * checks a token's HMAC itself.
+ *
+ * The futures are completed on the business-logic thread, so anything
+ * chained onto them should be quick or run asynchronously.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (AccountLinks resolved before publishing)
+ * previously modified: 10/18/26 by wdc (transferHold)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class LedgerSequencer {
+
+    // system property: "true" to sequence the Bank's fund movements
+    public static final String SEQUENCER_PROPERTY = "publicauction.sequencer";
+
+    public static final int DEFAULT_RING_SIZE = 64 * 1024;
+
+    // spins before the business-logic thread parks, waiting for requests
+    private static final int SPINS_BEFORE_PARKING = 1000;
+
+    private enum Operation {
+        ADD_FUNDS, FREEZE, UNFREEZE, TRANSFER, TRANSFER_HOLD }
+
+    private final Bank bank;
+    private final Slot[] ring;
+    private final int mask;
+
+    // next sequence number to claim
+    private final AtomicLong claimed = new AtomicLong();
+    // every Slot before this sequence number has been applied, answered
+    // and may be reused
+    private volatile long consumed;
+    private volatile boolean consumerParked;
+    private final Thread consumer;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for a LedgerSequencer applying requests to the
+     * given Bank, with a ring of the given size. Starts the business-logic
+     * thread.
+     * @param bank Bank to which the requests are applied
+     * @param ringSize int number of Slots in the ring ( a power of 2 ); at
+     *                 most this many requests can be waiting at once
+     */
+    public LedgerSequencer(Bank bank, int ringSize) {
+        if ( Integer.bitCount(ringSize) != 1 ) {
+            throw new IllegalArgumentException(
+                "ring size must be a power of 2: " + ringSize);
+        }
+        this.bank = bank;
+        ring = new Slot[ringSize];
+        for ( int i = 0; i < ringSize; i++ ) {
+            ring[i] = new Slot();
+        }
+        mask = ringSize - 1;
+
+        consumer = new Thread(this::consumeLoop, "ledger-sequencer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Publishes a request to add funds. See Bank.addFunds().
+     * @param theAcctNum int account number
+     * @param amtToAdd long amount of money in cents to add to account
+     * @return CompletableFuture of the updated BankAccount ( a generic
+     *         BankAccount if there is no such account )
+     */
+    public CompletableFuture<BankAccount> addFunds(int theAcctNum,
+                                                   long amtToAdd) {
+        CompletableFuture<BankAccount> reply = new CompletableFuture<>();
+        publish(Operation.ADD_FUNDS, theAcctNum, null, amtToAdd, null, 0,
+            reply);
+        return reply;
+    }
+
+    /**
+     * Publishes a request to check and freeze funds. See
+     * Bank.checkAndFreezeFunds().
+     * @param theAccountLink AccountLink resolved from the request, or null
+     * @param proposedFreeze long amount in cents to check for and freeze
+     * @return CompletableFuture of true if the funds were frozen
+     */
+    public CompletableFuture<Boolean> checkAndFreezeFunds(
+            AccountLink theAccountLink, long proposedFreeze) {
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        publish(Operation.FREEZE, 0, theAccountLink, proposedFreeze, null, 0,
+            reply);
+        return reply;
+    }
+
+    /**
+     * Publishes a request to transfer funds. See Bank.transferFunds().
+     * @param theAccountLink AccountLink resolved from the request, or null
+     * @param amtToTransfer long amount in cents to transfer
+     * @return CompletableFuture of true if the funds were transferred
+     */
+    public CompletableFuture<Boolean> transferFunds(
+            AccountLink theAccountLink, long amtToTransfer) {
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        publish(Operation.TRANSFER, 0, theAccountLink, amtToTransfer, null, 0,
+            reply);
+        return reply;
+    }
+
+    /**
+     * Publishes a request to transfer a hold from a previous bidder to a
+     * new one. See Bank.transferHold().
+     * @param newAccountLink AccountLink of the new bidder, or null
+     * @param newFreeze long amount in cents of the new bid
+     * @param oldAccountLink AccountLink of the previous bidder, or null
+     * @param oldUnfreeze long amount in cents of the previous bid
+     * @return CompletableFuture of true if the new bid was frozen
+     */
+    public CompletableFuture<Boolean> transferHold(
+            AccountLink newAccountLink, long newFreeze,
+            AccountLink oldAccountLink, long oldUnfreeze) {
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        publish(Operation.TRANSFER_HOLD, 0, newAccountLink, newFreeze,
+            oldAccountLink, oldUnfreeze, reply);
+        return reply;
+    }
+
+    /**
+     * Publishes a request to unfreeze funds. See Bank.unfreezeFunds().
+     * @param theAccountLink AccountLink resolved from the request, or null
+     * @param amtToUnfreeze long amount in cents to unfreeze
+     * @return CompletableFuture of true if the funds were unfrozen
+     */
+    public CompletableFuture<Boolean> unfreezeFunds(
+            AccountLink theAccountLink, long amtToUnfreeze) {
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        publish(Operation.UNFREEZE, 0, theAccountLink, amtToUnfreeze, null, 0,
+            reply);
+        return reply;
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Claims, fills in and publishes the next Slot. Safe to call from any
+     * number of threads.
+     */
+    private void publish(Operation operation, int acctNum, AccountLink link,
+                         long cents, AccountLink otherLink, long otherCents,
+                         CompletableFuture<?> reply) {
+
+        // ( 1 ) claim a sequence number
+        long sequence = claimed.getAndIncrement();
+
+        // ( 2 ) wait for the Slot's previous use to be answered
+        int spins = 0;
+        while ( sequence - ring.length >= consumed ) {
+            if ( ++spins < SPINS_BEFORE_PARKING ) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1000);
+            }
+        }
+
+        // ( 3 ) and ( 4 ) fill in the Slot, then publish it
+        Slot slot = ring[(int) sequence & mask];
+        slot.operation = operation;
+        slot.acctNum = acctNum;
+        slot.link = link;
+        slot.cents = cents;
+        slot.otherLink = otherLink;
+        slot.otherCents = otherCents;
+        slot.reply = reply;
+        slot.published = sequence;
+
+        if ( consumerParked ) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * The business-logic thread: applies the published Slots in order, a
+     * batch at a time, and answers each batch once its journal records
+     * are on disk.
+     */
+    private void consumeLoop() {
+        long next = 0;
+        while ( true ) {
+            awaitPublished(next);
+
+            // apply every Slot published so far
+            long batchStart = next;
+            long batchLsn = 0;
+            while ( next - batchStart < ring.length &&
+                ring[(int) next & mask].published == next ) {
+                Slot slot = ring[(int) next & mask];
+                try {
+                    slot.lsn = apply(slot);
+                    batchLsn = Math.max(batchLsn, slot.lsn);
+                } catch (RuntimeException e) {
+                    slot.lsn = Bank.NOT_APPLIED;
+                    slot.failure = e;
+                }
+                next++;
+            }
+
+            // one journal wait for the batch
+            RuntimeException batchFailure = null;
+            try {
+                bank.awaitDurable(batchLsn);
+            } catch (RuntimeException e) {
+                batchFailure = e;
+            }
+
+            for ( long sequence = batchStart; sequence < next; sequence++ ) {
+                answer(ring[(int) sequence & mask], batchFailure);
+            }
+            consumed = next;
+        }
+    }
+
+    /**
+     * Waits, spinning briefly and then parking, until the Slot with the
+     * given sequence number is published.
+     */
+    private void awaitPublished(long sequence) {
+        Slot slot = ring[(int) sequence & mask];
+        int spins = 0;
+        while ( slot.published != sequence ) {
+            if ( ++spins < SPINS_BEFORE_PARKING ) {
+                Thread.onSpinWait();
+                continue;
+            }
+            consumerParked = true;
+            if ( slot.published != sequence ) {
+                LockSupport.park(this);
+            }
+            consumerParked = false;
+        }
+    }
+
+    /**
+     * Applies one request to the Bank.
+     * @return long LSN of its journal record, or Bank.NOT_APPLIED
+     */
+    private long apply(Slot slot) {
+        switch (slot.operation) {
+            case ADD_FUNDS:
+                return bank.applyAddFunds(slot.acctNum, slot.cents);
+            case FREEZE:
+                return bank.applyCheckAndFreezeFunds(slot.link, slot.cents);
+            case UNFREEZE:
+                return bank.applyUnfreezeFunds(slot.link, slot.cents);
+            case TRANSFER:
+                return bank.applyTransferFunds(slot.link, slot.cents);
+            case TRANSFER_HOLD:
+                return bank.applyTransferHold(slot.link, slot.cents,
+                    slot.otherLink, slot.otherCents);
+            default:
+                return Bank.NOT_APPLIED;
+        }
+    }
+
+    /**
+     * Completes a Slot's future and clears the Slot for reuse.
+     */
+    @SuppressWarnings("unchecked")
+    private void answer(Slot slot, RuntimeException batchFailure) {
+        RuntimeException failure =
+            slot.failure != null ? slot.failure : batchFailure;
+        boolean applied = slot.lsn != Bank.NOT_APPLIED;
+        CompletableFuture<Object> reply =
+            (CompletableFuture<Object>) slot.reply;
+        Operation operation = slot.operation;
+        int acctNum = slot.acctNum;
+
+        slot.reply = null;
+        slot.failure = null;
+        slot.link = null;
+        slot.otherLink = null;
+
+        if ( failure != null ) {
+            reply.completeExceptionally(failure);
+        } else if ( operation == Operation.ADD_FUNDS ) {
+            reply.complete(applied ? bank.accountOrGeneric(acctNum)
+                                   : new BankAccount());
+        } else {
+            reply.complete(applied);
+        }
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * One preallocated entry of the ring. Written by one publisher, then
+     * read by the business-logic thread; the volatile write of published
+     * makes the other fields visible to it.
+     */
+    private static final class Slot {
+        private Operation operation;
+        private int acctNum;          // for ADD_FUNDS
+        private AccountLink link;     // for all other operations
+        private long cents;
+        private AccountLink otherLink; // previous bidder, for TRANSFER_HOLD
+        private long otherCents;
+        private CompletableFuture<?> reply;
+        private long lsn;
+        private RuntimeException failure;
+        private volatile long published = -1;
+    }
+
+}
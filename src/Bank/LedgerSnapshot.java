@@ -0,0 +1,415 @@
+package Bank;
+
+import Utility.AccountLink;
+import Utility.BankAccount;
+import Utility.IDRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A point-in-time snapshot of the Bank's ledger ( every BankAccount, the
+ * IDRecord of its owner, every secret key with its AccountLink, and
+ * every credit line an agent account still has ),
+ * written alongside the LedgerJournal so that a restarted Bank can load
+ * the snapshot and replay only the journal records written after it,
+ * and so that older journal segments can be deleted.
+ *
+ * A snapshot is "fuzzy": it is written while the Bank keeps answering
+ * requests, without pausing them. Each account is captured under its own
+ * lock stripe, so each account's captured state is consistent, together
+ * with the LSN of the last journal record that changed that account
+ * ( kept by the AccountStore ). The snapshot also records the journal's
+ * LSN when the snapshot began ( its start LSN ): every record up to it is
+ * reflected in the snapshot, and records after it are replayed, each one
+ * applied to an account only if it is newer than the account's captured
+ * LSN ( see getAccountLsn() ). Replay thus never applies a change twice
+ * or misses one, however the captures interleave with other requests.
+ *
+ * File format ( ledger-<start LSN in hex>.snapshot ): int MAGIC, int
+ * FORMAT_VERSION, long start LSN, then a sequence of tagged entries
+ * ( ACCOUNT, SECRET_KEY or CREDIT_LINE ) ending with an END tag and the
+ * CRC32 of everything before it. A snapshot is written to a temporary
+ * file, forced to disk, and only then renamed into place, so a crash while
+ * writing never leaves a partial snapshot where the Bank would load it.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (long secret keys for credit lines)
+ * previously modified: 10/18/26 by wdc (credit lines)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class LedgerSnapshot {
+
+    private static final String SNAPSHOT_PREFIX = "ledger-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int FORMAT_VERSION = 1;
+
+    // entry tags
+    private static final byte END = 0;
+    private static final byte ACCOUNT = 1;
+    private static final byte SECRET_KEY = 2;
+    private static final byte CREDIT_LINE = 3;
+
+    private static final BankAccount.AccountType[] ACCOUNT_TYPES =
+        BankAccount.AccountType.values();
+    private static final IDRecord.RecordType[] RECORD_TYPES =
+        IDRecord.RecordType.values();
+
+    private final long startLsn;
+    // account number -> LSN of the last journal record captured for it
+    private final Map<Integer, Long> mapOfAccountLsns;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Private constructor for the LedgerSnapshot read back by readLatest().
+     * @param startLsn long journal LSN when the snapshot began
+     * @param mapOfAccountLsns Map of captured LSNs by account number
+     */
+    private LedgerSnapshot(long startLsn,
+                           Map<Integer, Long> mapOfAccountLsns) {
+        this.startLsn = startLsn;
+        this.mapOfAccountLsns = mapOfAccountLsns;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the journal LSN when the snapshot began; only journal records
+     * after it need replaying.
+     * @return long LSN
+     */
+    public long getStartLsn() {
+        return startLsn;
+    }
+
+    /**
+     * Returns the LSN of the last journal record reflected in an account's
+     * captured state. A replayed record changing the account is applied
+     * only if its LSN is greater.
+     * @param acctNum int account number
+     * @return long LSN, or -1 if the account was not captured ( so that
+     *         every record changing it is applied )
+     */
+    public long getAccountLsn(int acctNum) {
+        Long lsn = mapOfAccountLsns.get(acctNum);
+        return lsn == null ? -1 : lsn;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Writes a snapshot of the given AccountStore into the given directory,
+     * then deletes any older snapshot there. The snapshot is built while
+     * other requests keep changing the store: (1) the journal's current
+     * LSN becomes the start LSN, and everything up to it must be on disk;
+     * (2) each account is captured under its lock stripe, along with the
+     * secret keys linked to it ( each key written only once ) and the
+     * credit lines freezing its funds, which that stripe guards; (3) every
+     * journal record reflected in the captures ( some may be newer than
+     * the start LSN ) must be on disk, so a snapshot never shows a change
+     * that a crash could still lose; (4) the file is forced to disk and
+     * renamed into place.
+     * @param directory Path of the directory holding the journal
+     * @param accountStore AccountStore to capture
+     * @param journal LedgerJournal recording changes to the AccountStore
+     * @return long start LSN of the snapshot written; journal segments
+     *         before it are no longer needed
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static long write(Path directory, AccountStore accountStore,
+                             LedgerJournal journal) throws IOException {
+
+        // (1)
+        long startLsn = journal.getAppendedLsn();
+        journal.awaitDurable(startLsn);
+
+        Path snapshotPath = snapshotPath(directory, startLsn);
+        Path temporaryPath = directory.resolve(
+            snapshotPath.getFileName() + TEMPORARY_SUFFIX);
+
+        try ( FileOutputStream fileOut =
+                  new FileOutputStream(temporaryPath.toFile()) ) {
+
+            CheckedOutputStream checkedOut = new CheckedOutputStream(
+                new BufferedOutputStream(fileOut, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checkedOut);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(startLsn);
+
+            // (2) capture each account and its secret keys
+            Set<Integer> writtenSecretKeys = new HashSet<>();
+            for ( BankAccount liveBankAccount :
+                accountStore.getAllAccounts() ) {
+
+                int acctNum = liveBankAccount.getAccountNumber();
+                synchronized (accountStore.lockFor(acctNum)) {
+                    BankAccount theBankAccount =
+                        accountStore.getAccount(acctNum);
+                    if ( theBankAccount == null ) {
+                        continue; // closed in the meantime
+                    }
+                    writeAccount(out, theBankAccount,
+                        accountStore.getIDRecord(acctNum),
+                        accountStore.getJournalLsn(acctNum));
+
+                    for ( int secretKey :
+                        accountStore.getSecretKeysOf(acctNum) ) {
+                        AccountLink theAccountLink =
+                            accountStore.getAccountLink(secretKey);
+                        if ( theAccountLink != null &&
+                            writtenSecretKeys.add(secretKey) ) {
+                            out.writeByte(SECRET_KEY);
+                            out.writeInt(secretKey);
+                            out.writeInt(
+                                theAccountLink.getAGENT_ACCOUNT_NUMBER());
+                            out.writeInt(
+                                theAccountLink.getAH_ACCOUNT_NUMBER());
+                        }
+                    }
+
+                    for ( long secretKey :
+                        accountStore.getCreditLineKeysOf(acctNum) ) {
+                        AccountStore.CreditLineState theCreditLine =
+                            accountStore.getCreditLine(secretKey);
+                        if ( theCreditLine != null ) {
+                            out.writeByte(CREDIT_LINE);
+                            out.writeLong(secretKey);
+                            out.writeInt(acctNum);
+                            out.writeLong(theCreditLine.getRemainingCents());
+                            out.writeLong(theCreditLine.getExpiryMillis());
+                        }
+                    }
+                }
+            }
+            out.writeByte(END);
+            out.writeLong(checkedOut.getChecksum().getValue());
+
+            // (3) and (4) on disk before it replaces the previous snapshot
+            journal.awaitDurable(journal.getAppendedLsn());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temporaryPath, snapshotPath,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        // the previous snapshots are now superseded
+        for ( Path path : listSnapshots(directory) ) {
+            if ( !path.equals(snapshotPath) ) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return startLsn;
+    }
+
+    /**
+     * Loads the newest snapshot in the given directory into the given
+     * ( empty ) AccountStore, recording each account's captured LSN in the
+     * store too, so the next snapshot carries it forward.
+     * @param directory Path of the directory holding the journal
+     * @param accountStore AccountStore to load the accounts into
+     * @return LedgerSnapshot describing what was loaded, or null if there
+     *         is no snapshot
+     * @throws IOException if the snapshot cannot be read or is corrupt
+     */
+    public static LedgerSnapshot readLatest(Path directory,
+                                            AccountStore accountStore)
+        throws IOException {
+
+        if ( !Files.isDirectory(directory) ) {
+            return null;
+        }
+        Path latestPath = null;
+        long latestLsn = -1;
+        for ( Path path : listSnapshots(directory) ) {
+            long lsn = lsnOf(path);
+            if ( lsn > latestLsn ) {
+                latestLsn = lsn;
+                latestPath = path;
+            }
+        }
+        if ( latestPath == null ) {
+            return null;
+        }
+
+        Map<Integer, Long> mapOfAccountLsns = new HashMap<>();
+        try ( InputStream fileIn = Files.newInputStream(latestPath) ) {
+
+            CheckedInputStream checkedIn = new CheckedInputStream(
+                new BufferedInputStream(fileIn, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checkedIn);
+            if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ) {
+                throw new IOException("not a ledger snapshot: " + latestPath);
+            }
+            long startLsn = in.readLong();
+
+            byte tag;
+            while ( (tag = in.readByte()) != END ) {
+                if ( tag == ACCOUNT ) {
+                    readAccount(in, accountStore, mapOfAccountLsns);
+                } else if ( tag == SECRET_KEY ) {
+                    int secretKey = in.readInt();
+                    accountStore.addSecretKey(secretKey,
+                        new AccountLink(in.readInt(), in.readInt()));
+                } else if ( tag == CREDIT_LINE ) {
+                    long secretKey = in.readLong();
+                    AccountStore.CreditLineState theCreditLine =
+                        new AccountStore.CreditLineState(in.readInt());
+                    theCreditLine.setRemainingCents(in.readLong());
+                    theCreditLine.setExpiryMillis(in.readLong());
+                    accountStore.putCreditLine(secretKey, theCreditLine);
+                } else {
+                    throw new IOException("corrupt ledger snapshot " +
+                        latestPath + ": unknown entry " + tag);
+                }
+            }
+            long expectedChecksum = checkedIn.getChecksum().getValue();
+            if ( in.readLong() != expectedChecksum ) {
+                throw new IOException("corrupt ledger snapshot " +
+                    latestPath + ": checksum mismatch");
+            }
+            return new LedgerSnapshot(startLsn, mapOfAccountLsns);
+        }
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    /**
+     * Writes one ACCOUNT entry: the account, the LSN captured with it,
+     * and its owner's IDRecord ( if any ).
+     */
+    private static void writeAccount(DataOutputStream out,
+                                     BankAccount theBankAccount,
+                                     IDRecord theIDRecord,
+                                     long lsn) throws IOException {
+
+        BankAccount.Balances balances = theBankAccount.getBalances();
+        out.writeByte(ACCOUNT);
+        out.writeInt(theBankAccount.getAccountNumber());
+        out.writeLong(lsn);
+        out.writeByte(theBankAccount.getAccountType().ordinal());
+        writeString(out, theBankAccount.getUserName());
+        out.writeLong(balances.getTotalBalanceCents());
+        out.writeLong(balances.getTotalFrozenCents());
+
+        out.writeBoolean(theIDRecord != null);
+        if ( theIDRecord != null ) {
+            out.writeByte(theIDRecord.getRecordType().ordinal());
+            writeString(out, theIDRecord.getName());
+            writeString(out, theIDRecord.getHostname());
+            out.writeInt(theIDRecord.getPortNumber());
+            out.writeLong(theIDRecord.getInitialBalanceCents());
+        }
+    }
+
+    /**
+     * Reads one ACCOUNT entry and adds the account to the AccountStore.
+     */
+    private static void readAccount(DataInputStream in,
+                                    AccountStore accountStore,
+                                    Map<Integer, Long> mapOfAccountLsns)
+        throws IOException {
+
+        int acctNum = in.readInt();
+        long lsn = in.readLong();
+        BankAccount.AccountType accountType = ACCOUNT_TYPES[in.readByte()];
+        String userName = readString(in);
+        long totalBalance = in.readLong();
+        long totalFrozen = in.readLong();
+
+        IDRecord theIDRecord = null;
+        if ( in.readBoolean() ) {
+            IDRecord.RecordType recordType = RECORD_TYPES[in.readByte()];
+            String name = readString(in);
+            String hostname = readString(in);
+            int portNumber = in.readInt();
+            theIDRecord =
+                new IDRecord(recordType, name, 0, hostname, portNumber);
+            theIDRecord.setInitialBalanceCents(in.readLong());
+            theIDRecord.setNumericalID(acctNum);
+        }
+
+        BankAccount theBankAccount = new BankAccount(accountType, userName,
+            acctNum, totalBalance);
+        theBankAccount.checkAndFreeze(totalFrozen);
+        accountStore.addAccount(theBankAccount, theIDRecord);
+        accountStore.setJournalLsn(acctNum, lsn);
+        mapOfAccountLsns.put(acctNum, lsn);
+    }
+
+    /**
+     * Writes a possibly-null String.
+     */
+    private static void writeString(DataOutputStream out, String string)
+        throws IOException {
+        out.writeBoolean(string != null);
+        if ( string != null ) {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * Reads a String written by writeString().
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Lists the snapshot files in a directory ( not temporary files ).
+     */
+    private static Set<Path> listSnapshots(Path directory)
+        throws IOException {
+
+        Set<Path> snapshots = new HashSet<>();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream(
+            directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX) ) {
+            for ( Path path : stream ) {
+                snapshots.add(path);
+            }
+        }
+        return snapshots;
+    }
+
+    private static Path snapshotPath(Path directory, long startLsn) {
+        return directory.resolve(String.format("%s%016x%s",
+            SNAPSHOT_PREFIX, startLsn, SNAPSHOT_SUFFIX));
+    }
+
+    private static long lsnOf(Path snapshotPath) {
+        String fileName = snapshotPath.getFileName().toString();
+        return Long.parseUnsignedLong(fileName.substring(
+            SNAPSHOT_PREFIX.length(),
+            fileName.length() - SNAPSHOT_SUFFIX.length()), 16);
+    }
+
+}
@@ -0,0 +1,60 @@
+package Bank;
+
+import Utility.BankAccount;
+
+import java.util.Collection;
+
+/**
+ * A BankObserver for a Bank running without a GUI: rather than showing
+ * each account, it prints a one-line summary to standard output whenever
+ * accounts are opened or closed, and ignores changes to balances alone
+ * ( which would otherwise flood the log of a busy Bank ).
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class LoggingBankObserver implements BankObserver {
+
+    private final String bankName;
+    // only ever called from the Bank's display refresher thread
+    private int lastNumberOfAccounts;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for a LoggingBankObserver.
+     * @param bankName String name of the bank, used to label each line
+     */
+    public LoggingBankObserver(String bankName) {
+        this.bankName = bankName;
+    }
+
+    // ****************************** //
+    //   Override Methods             //
+    // ****************************** //
+
+    /**
+     * Prints the numbers of accounts if any were opened or closed.
+     */
+    @Override
+    public void accountsChanged(Collection<BankAccount> changedAccounts,
+                                Collection<Integer> closedAcctNums,
+                                int numberOfAccounts,
+                                int numberOfAgentAccounts,
+                                int numberOfAHAccounts) {
+
+        if ( numberOfAccounts == lastNumberOfAccounts &&
+            closedAcctNums.isEmpty() ) {
+            return; // balances changed, but no accounts came or went
+        }
+        lastNumberOfAccounts = numberOfAccounts;
+        System.out.println(bankName + ": " + numberOfAccounts +
+            " accounts ( " + numberOfAgentAccounts + " agent, " +
+            numberOfAHAccounts + " auction house )");
+    }
+
+}
@@ -7,88 +7,136 @@ import javafx.stage.Stage;
 /**
  * The Main class within the Bank package, providing the construction of a
  * Bank object. Run this to set up a Bank and open it for business.
+ * Run with no arguments to set up the Bank through its GUI; run with the
+ * arguments
+ *     bankName hostName portNumber
+ * to open the Bank as a headless server, which never starts JavaFX and
+ * logs its accounts through a LoggingBankObserver instead. The GUI lives
+ * in the nested Gui class so a headless Bank never loads a JavaFX class.
  * created: 11/29/18 by wdc
- * last modified: 12/06/18 by wdc
+ * last modified: 10/18/26 by wdc (headless server mode)
+ * previously modified: 12/06/18 by wdc
  * previously modified: 12/06/18 by wdc (coord w/GUI)
  * previously modified: 12/01/18 by wdc
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
-public class Main extends Application {
+public class Main {
 
     private static Bank theBank;
 
     public static void main(String[] args) {
 
-        launch(args);
+        if ( args.length >= 3 ) {
+            startHeadless(args);
+        } else {
+            Application.launch(Gui.class, args);
+        }
 
     }
 
     /**
-     * The required start() method to extend the JavaFX Application class,
-     * creating the initial GUI asking for Bank information and initializing
-     * the JavaFX Stage for the 2nd GUI used by the Bank once in operation.
-     * @param primaryStage
-     * @throws Exception
+     * Opens a Bank without a GUI, from the arguments
+     * bankName hostName portNumber.
+     * @param args String[] command-line arguments
      */
-    @Override
-    public void start(Stage primaryStage) throws Exception {
-
-        BankDisplay theBankDisplay = new BankDisplay(primaryStage);
-
-        Button btnCreateBank = new Button("Create Bank");
-
-        btnCreateBank.setOnAction(event -> {
-            if(theBankDisplay.infoFilledOut()){
-                theBankDisplay.openStage02();
-
-                createBank (
-                      theBankDisplay.getBankName(),
-                      theBankDisplay.getBankHostName(),
-                      theBankDisplay.getBankPort(),
-                      theBankDisplay );
-
-            } else {
-                theBankDisplay.displayErrorMessage(
-                    "Please complete the requested information first."
-                );
-            }
-        });
-
-        // declare the 2nd stage here in the start() so we can set up
-        // its closing handler and then hand it over to the BankDisplay class
-        Stage stage02 = new Stage();
-        stage02.setOnCloseRequest(event -> {
-            try{
-                if(theBank.safeToClose()){
-                    stop();
-                }else{
-                    theBankDisplay.displayErrorMessage(
-                        "SORRY: ALL BANK CLIENTS MUST CLOSE THEIR ACCOUNTS " +
-                        "BEOFORE THE BANK CAN CLOSE DOWN.");
-                    event.consume();
-                }
-            }catch(Exception e){
-                e.printStackTrace();
-            }
-        });
-
-        theBankDisplay.setupBankGUIComponents(btnCreateBank, stage02);
-    }
-
-    @Override
-    public void stop() throws Exception {
-        super.stop();
-        System.exit(0);
+    private static void startHeadless(String[] args) {
+        String bankName = args[0];
+        String hostName = args[1];
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: Bank.Main [bankName hostName " +
+                "portNumber]; bad port number: " + args[2]);
+            System.exit(1);
+            return;
+        }
+        createBank(bankName, hostName, portNumber,
+            new LoggingBankObserver(bankName));
+        System.out.println(bankName + ": open for business at " +
+            hostName + ":" + portNumber);
     }
 
     private static void createBank(String bankName,
                                    String hostName,
                                    int portNumber,
-                                   BankDisplay theBankDisplay) {
+                                   BankObserver theBankObserver) {
         theBank = new Bank( bankName, hostName, portNumber,
-            theBankDisplay);
+            theBankObserver);
+
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * The JavaFX Application for a Bank set up through its GUI.
+     */
+    public static class Gui extends Application {
+
+        /**
+         * The required start() method to extend the JavaFX Application class,
+         * creating the initial GUI asking for Bank information and initializing
+         * the JavaFX Stage for the 2nd GUI used by the Bank once in operation.
+         * @param primaryStage
+         * @throws Exception
+         */
+        @Override
+        public void start(Stage primaryStage) throws Exception {
+
+            BankDisplay theBankDisplay = new BankDisplay(primaryStage);
+
+            Button btnCreateBank = new Button("Create Bank");
+
+            btnCreateBank.setOnAction(event -> {
+                if(theBankDisplay.infoFilledOut()){
+                    theBankDisplay.openStage02();
+
+                    createBank (
+                          theBankDisplay.getBankName(),
+                          theBankDisplay.getBankHostName(),
+                          theBankDisplay.getBankPort(),
+                          theBankDisplay );
+
+                } else {
+                    theBankDisplay.displayErrorMessage(
+                        "Please complete the requested information first."
+                    );
+                }
+            });
+
+            // declare the 2nd stage here in the start() so we can set up
+            // its closing handler and then hand it over to the BankDisplay
+            // class
+            Stage stage02 = new Stage();
+            stage02.setOnCloseRequest(event -> {
+                try{
+                    if(theBank.safeToClose()){
+                        stop();
+                    }else{
+                        theBankDisplay.displayErrorMessage(
+                            "SORRY: ALL BANK CLIENTS MUST CLOSE THEIR " +
+                            "ACCOUNTS BEOFORE THE BANK CAN CLOSE DOWN.");
+                        event.consume();
+                    }
+                }catch(Exception e){
+                    e.printStackTrace();
+                }
+            });
+
+            theBankDisplay.setupBankGUIComponents(btnCreateBank, stage02);
+        }
+
+        @Override
+        public void stop() throws Exception {
+            super.stop();
+            System.exit(0);
+        }
 
     }
+
 }
+
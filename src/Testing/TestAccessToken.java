@@ -0,0 +1,119 @@
+package Testing;
+
+import Bank.Bank;
+import Bank.LoggingBankObserver;
+import Utility.AccessToken;
+import Utility.IDRecord;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Exercises the Bank's checks on AccessTokens, using a Bank running in
+ * this process ( on the port given as the only argument, default 6460 )
+ * with a master key chosen here, so that the test can mint tokens the
+ * way the Bank does. A token the Bank issued must be accepted; one with
+ * a tampered MAC, one signed without the Bank's key ( e.g. by an Auction
+ * House, which knows only its own key ), one that has expired, and one
+ * presented with a secret key other than its own must all be refused.
+ * Run with: java Testing.TestAccessToken [port]
+ * Prints one line per check and exits with status 1 if any fails.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class TestAccessToken {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+
+        int portNumber = ( args.length > 0 ) ? Integer.parseInt(args[0])
+                                             : 6460;
+
+        // a master key known to the test, so it can sign as the Bank does
+        byte[] masterKey = new byte[32];
+        new SecureRandom().nextBytes(masterKey);
+        System.setProperty(Bank.TOKEN_KEY_PROPERTY,
+            Base64.getEncoder().encodeToString(masterKey));
+        byte[] bankKey = AccessToken.deriveBankKey(masterKey);
+
+        Bank bank = new Bank("bank", "localhost", portNumber,
+            new LoggingBankObserver("bank"));
+        IDRecord agent = bank.createAccount(new IDRecord(
+            IDRecord.RecordType.AGENT, "agent", 1000, "localhost", 1));
+        IDRecord house = bank.createAccount(new IDRecord(
+            IDRecord.RecordType.AUCTION_HOUSE, "house", 0, "localhost", 2));
+        int agentAcctNum = agent.getNumericalID();
+        int houseAcctNum = house.getNumericalID();
+        byte[] houseKey = bank.getHouseKey(houseAcctNum);
+
+        // a token issued by the Bank is accepted by both the Auction House
+        // and the Bank
+        AccessToken issued = bank.issueAccessToken(agentAcctNum, houseAcctNum);
+        check("issued token authentic to the house",
+            issued.isAuthentic(houseKey));
+        check("issued token accepted by the bank",
+            bank.checkAndFreezeFunds(issued.getSecretKey(), issued, 100)
+            && bank.unfreezeFunds(issued.getSecretKey(), issued, 100));
+
+        // two tokens for the same pair share a secret key, so a renewed
+        // token still reaches the same holds
+        AccessToken reissued =
+            bank.issueAccessToken(agentAcctNum, houseAcctNum);
+        check("reissued token keeps its secret key",
+            reissued.getSecretKey() == issued.getSecretKey());
+
+        // ( 1 ) a tampered MAC
+        byte[] tamperedMac = issued.getMac();
+        tamperedMac[0] ^= 1;
+        AccessToken tampered = new AccessToken(agentAcctNum, houseAcctNum,
+            issued.getSecretKey(), issued.getExpiresAtMillis(), tamperedMac,
+            issued.getBankMac());
+        check("tampered token refused by the house",
+            !tampered.isAuthentic(houseKey));
+        check("tampered token refused by the bank",
+            !bank.checkAndFreezeFunds(tampered.getSecretKey(), tampered, 100));
+
+        // ( 2 ) a token forged by someone knowing only the house key: the
+        // house cannot tell, but the Bank can
+        AccessToken forged = AccessToken.sign(houseKey, houseKey,
+            agentAcctNum, houseAcctNum, issued.getExpiresAtMillis());
+        check("forged token passes the house check",
+            forged.isAuthentic(houseKey));
+        check("forged token refused by the bank",
+            !bank.checkAndFreezeFunds(forged.getSecretKey(), forged, 100)
+            && !bank.transferFunds(forged.getSecretKey(), forged, 100)
+            && bank.getBankAccount(forged.getSecretKey(), forged)
+                   .getAccountNumber() != agentAcctNum);
+
+        // ( 3 ) a token the Bank really signed, but which has expired
+        AccessToken expired = AccessToken.sign(bankKey, houseKey,
+            agentAcctNum, houseAcctNum, System.currentTimeMillis() - 1000);
+        check("expired token is genuine", expired.isAuthentic(houseKey)
+            && expired.isIssuedByBank(bankKey));
+        check("expired token refused by the bank",
+            !bank.checkAndFreezeFunds(expired.getSecretKey(), expired, 100)
+            && !bank.transferFunds(expired.getSecretKey(), expired, 100));
+
+        // ( 4 ) a genuine token presented with another secret key
+        check("mismatched secret key refused by the bank",
+            !bank.checkAndFreezeFunds(issued.getSecretKey() + 1, issued, 100));
+
+        check("no funds left frozen",
+            bank.getBalance(agent).getTotalFrozenCents() == 0);
+
+        System.out.println( ( failures == 0 ) ? "ALL PASSED"
+                                              : failures + " FAILED" );
+        System.exit( ( failures == 0 ) ? 0 : 1 );
+    }
+
+    private static void check ( String name, boolean passed ) {
+        System.out.println( ( passed ? "PASS " : "FAIL " ) + name );
+        if ( !passed ) {
+            failures++;
+        }
+    }
+}
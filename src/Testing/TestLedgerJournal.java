@@ -0,0 +1,306 @@
+package Testing;
+
+import Bank.Bank;
+import Bank.LedgerJournal;
+import Bank.LoggingBankObserver;
+import Utility.AccountLink;
+import Utility.BankAccount;
+import Utility.IDRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises the Bank's write-ahead LedgerJournal and LedgerSnapshots in
+ * two parts:
+ * ( 1 ) a torn tail: records are journalled, the last one is corrupted on
+ * disk as a crash mid-write would leave it, and the journal is reopened;
+ * every record before it must be replayed, the torn one dropped, and the
+ * next record appended in its place;
+ * ( 2 ) a restart from a snapshot plus journal: a Bank in a child process
+ * ( so that its snapshot thread really stops ) opens accounts, freezes
+ * funds, waits for a snapshot, makes more changes that are only in the
+ * journal, and exits; a Bank started here on the same journal must then
+ * show every balance, hold, account and secret key.
+ * Run with: java Testing.TestLedgerJournal [port]
+ * ( port, default 6461, and the one after it are used by the two Banks )
+ * Prints one line per check and exits with status 1 if any fails.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class TestLedgerJournal {
+
+    // a small segment size, so the test does not map 64 MB files
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    // mode in which the child process runs the first Bank
+    private static final String BEFORE_RESTART = "beforeRestart";
+    private static final long SNAPSHOT_WAIT_MILLIS = 10000;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+
+        if ( args.length > 0 && args[0].equals(BEFORE_RESTART) ) {
+            beforeRestart(Paths.get(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        int portNumber = ( args.length > 0 ) ? Integer.parseInt(args[0])
+                                             : 6461;
+        tornTail();
+        restartFromSnapshot(portNumber);
+
+        System.out.println( ( failures == 0 ) ? "ALL PASSED"
+                                              : failures + " FAILED" );
+        System.exit( ( failures == 0 ) ? 0 : 1 );
+    }
+
+    // ****************************** //
+    //   ( 1 ) torn tail              //
+    // ****************************** //
+
+    private static void tornTail () throws IOException {
+
+        Path directory = Files.createTempDirectory("ledger-journal");
+
+        // journal five deposits of 100, 200, ... 500 cents
+        LedgerJournal journal = new LedgerJournal(directory, SEGMENT_SIZE, 0,
+            new CountingLedger());
+        long[] lsns = new long[5];
+        for ( int i = 0; i < lsns.length; i++ ) {
+            lsns[i] = journal.logAddFunds(1, 100 * ( i + 1 ));
+        }
+        journal.awaitDurable(lsns[4]);
+        journal.close();
+
+        // corrupt the last byte of the last record, so its CRC no longer
+        // matches ( the low 32 bits of an LSN are the offset just past
+        // its record )
+        Path segment = onlyFile(directory, ".journal");
+        try ( FileChannel channel =
+                  FileChannel.open(segment, StandardOpenOption.READ,
+                      StandardOpenOption.WRITE) ) {
+            long offset = (int) lsns[4] - 1;
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, offset);
+            lastByte.put(0, (byte) ( lastByte.get(0) ^ 0xFF ));
+            lastByte.rewind();
+            channel.write(lastByte, offset);
+        }
+
+        CountingLedger replayed = new CountingLedger();
+        journal = new LedgerJournal(directory, SEGMENT_SIZE, 0, replayed);
+        check("torn tail: records before it replayed",
+            replayed.records == 4 && replayed.cents == 1000);
+        check("torn tail: journal positioned after the last whole record",
+            journal.getAppendedLsn() == lsns[3]);
+
+        // the next record overwrites the torn one
+        journal.awaitDurable(journal.logAddFunds(1, 600));
+        journal.close();
+        replayed = new CountingLedger();
+        journal = new LedgerJournal(directory, SEGMENT_SIZE, 0, replayed);
+        check("torn tail: next record appended in its place",
+            replayed.records == 5 && replayed.cents == 1600);
+        journal.close();
+    }
+
+    // ****************************** //
+    //   ( 2 ) snapshot plus journal  //
+    // ****************************** //
+
+    private static void restartFromSnapshot ( int portNumber )
+        throws IOException, InterruptedException {
+
+        Path directory = Files.createTempDirectory("ledger-snapshot");
+
+        // ( a ) the first Bank, in its own process
+        Process child = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString(),
+            "-cp", System.getProperty("java.class.path"),
+            TestLedgerJournal.class.getName(),
+            BEFORE_RESTART, directory.toString(),
+            Integer.toString(portNumber))
+            .inheritIO()
+            .start();
+        if ( !child.waitFor(60, TimeUnit.SECONDS) ) {
+            child.destroyForcibly().waitFor();
+        }
+        check("first Bank snapshotted and exited", child.exitValue() == 0);
+        if ( child.exitValue() != 0 ) {
+            return;
+        }
+        String[] ids = Files.readString(directory.resolve("ids.txt"))
+            .trim().split(",");
+        int agentAcctNum = Integer.parseInt(ids[0]);
+        int laterAcctNum = Integer.parseInt(ids[1]);
+        int secretKey = Integer.parseInt(ids[2]);
+
+        // ( b ) the restarted Bank, with no snapshots of its own
+        System.setProperty(LedgerJournal.JOURNAL_PROPERTY,
+            directory.toString());
+        System.setProperty(Bank.SNAPSHOT_PERIOD_PROPERTY, "0");
+        Bank bank = new Bank("restarted", "localhost", portNumber + 1,
+            new LoggingBankObserver("restarted"));
+
+        BankAccount agent = bank.getBalance(record(agentAcctNum));
+        check("restart: balance from snapshot plus later deposit",
+            agent.getTotalBalanceCents() == 100000 + 777);
+        check("restart: hold from snapshot less later release",
+            agent.getTotalFrozenCents() == 2500 - 500);
+        check("restart: account opened after the snapshot",
+            bank.getBalance(record(laterAcctNum)).getTotalBalanceCents()
+                == 5000);
+        check("restart: secret key from the snapshot still works",
+            bank.checkAndFreezeFunds(secretKey, null, 1)
+            && bank.getBalance(record(agentAcctNum)).getTotalFrozenCents()
+                   == 2001);
+    }
+
+    /**
+     * Runs in the child process: journals changes on both sides of a
+     * snapshot, records the account numbers for the parent, and exits.
+     */
+    private static void beforeRestart ( Path directory, int portNumber )
+        throws IOException, InterruptedException {
+
+        System.setProperty(LedgerJournal.JOURNAL_PROPERTY,
+            directory.toString());
+        System.setProperty(Bank.SNAPSHOT_PERIOD_PROPERTY, "1");
+        Bank bank = new Bank("first", "localhost", portNumber,
+            new LoggingBankObserver("first"));
+
+        // captured by the snapshot
+        int agentAcctNum = bank.createAccount(new IDRecord(
+            IDRecord.RecordType.AGENT, "agent", 1000, "localhost", 1))
+            .getNumericalID();
+        int houseAcctNum = bank.createAccount(new IDRecord(
+            IDRecord.RecordType.AUCTION_HOUSE, "house", 0, "localhost", 2))
+            .getNumericalID();
+        int secretKey = bank.createSecretKey(
+            new AccountLink(agentAcctNum, houseAcctNum));
+        bank.checkAndFreezeFunds(secretKey, null, 2500);
+
+        long deadline = System.currentTimeMillis() + SNAPSHOT_WAIT_MILLIS;
+        while ( onlyFile(directory, ".snapshot") == null ) {
+            if ( System.currentTimeMillis() > deadline ) {
+                System.exit(1);
+            }
+            Thread.sleep(50);
+        }
+
+        // only in the journal
+        bank.addFunds(agentAcctNum, 777);
+        bank.unfreezeFunds(secretKey, null, 500);
+        int laterAcctNum = bank.createAccount(new IDRecord(
+            IDRecord.RecordType.AGENT, "later", 50, "localhost", 3))
+            .getNumericalID();
+
+        Files.writeString(directory.resolve("ids.txt"),
+            agentAcctNum + "," + laterAcctNum + "," + secretKey);
+        System.exit(0);
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    // ****************************** //
+
+    private static IDRecord record ( int acctNum ) {
+        IDRecord theIDRecord = new IDRecord(IDRecord.RecordType.AGENT,
+            "", 0, "localhost", 0);
+        theIDRecord.setNumericalID(acctNum);
+        return theIDRecord;
+    }
+
+    private static Path onlyFile ( Path directory, String suffix )
+        throws IOException {
+        try ( DirectoryStream<Path> paths =
+                  Files.newDirectoryStream(directory, "*" + suffix) ) {
+            for ( Path path : paths ) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private static void check ( String name, boolean passed ) {
+        System.out.println( ( passed ? "PASS " : "FAIL " ) + name );
+        if ( !passed ) {
+            failures++;
+        }
+    }
+
+    /**
+     * Counts the records replayed to it and totals the deposits.
+     */
+    private static class CountingLedger implements LedgerJournal.Ledger {
+
+        private int records = 0;
+        private long cents = 0;
+
+        public void createAccount ( long lsn, IDRecord theIDRecord ) {
+            records++;
+        }
+
+        public void addFunds ( long lsn, int acctNum, long cents ) {
+            records++;
+            this.cents += cents;
+        }
+
+        public void freezeFunds ( long lsn, int acctNum, long cents ) {
+            records++;
+        }
+
+        public void unfreezeFunds ( long lsn, int acctNum, long cents ) {
+            records++;
+        }
+
+        public void transferFunds ( long lsn, int sourceAcctNum,
+                                    int targetAcctNum, long cents ) {
+            records++;
+        }
+
+        public void closeAccount ( long lsn, int acctNum ) {
+            records++;
+        }
+
+        public void createSecretKey ( long lsn, int secretKey,
+                                      int agentAcctNum, int ahAcctNum ) {
+            records++;
+        }
+
+        public void grantCreditLine ( long lsn, long secretKey,
+                                      int agentAcctNum, long cents,
+                                      long expiryMillis ) {
+            records++;
+        }
+
+        public void settleCreditLine ( long lsn, long secretKey,
+                                       int agentAcctNum, long cents ) {
+            records++;
+        }
+
+        public void releaseCreditLine ( long lsn, long secretKey,
+                                        int agentAcctNum, long cents,
+                                        long unfrozenCents ) {
+            records++;
+        }
+
+        public void expireCreditLine ( long lsn, long secretKey,
+                                       int agentAcctNum,
+                                       long unfrozenCents ) {
+            records++;
+        }
+    }
+}
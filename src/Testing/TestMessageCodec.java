@@ -0,0 +1,198 @@
+package Testing;
+
+import Utility.AccessToken;
+import Utility.AuctionHouseInventory;
+import Utility.AuctionItem;
+import Utility.Bid;
+import Utility.CreditLine;
+import Utility.Message;
+import Utility.MessageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Exercises the binary MessageCodec without any network: round trips of
+ * the payloads it hand-encodes, then frames altered the way a broken or
+ * hostile peer might send them, each of which must be refused with an
+ * IOException (never a RuntimeException or a huge allocation).
+ * Run with: java Testing.TestMessageCodec
+ * Prints one line per check and exits with status 1 if any fails.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+public class TestMessageCodec {
+
+    // offsets into an encoded frame: int length, long correlation ID,
+    // byte MessageIdentifier ordinal, byte payload tag, then the payload
+    // (for a list, an int count first)
+    private static final int IDENTIFIER_OFFSET = 12;
+    private static final int COUNT_OFFSET = 14;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+
+        roundTrips();
+        malformedFrames();
+
+        System.out.println(failures == 0 ? "ALL PASSED"
+                : failures + " FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Encodes and decodes each hand-encoded payload, checking every field
+     * survives, including secret keys that need all 64 bits.
+     */
+    private static void roundTrips() throws IOException {
+
+        long[] secretKeys = {12345L, AccessToken.SECRET_KEY_BIT | 0x123456789L};
+        for(long secretKey : secretKeys){
+            Bid bid = new Bid(Bid.BidState.BIDDING, 100, 200, secretKey, 300);
+            Bid decodedBid = (Bid) roundTrip(bid, 7);
+            check("bid key " + secretKey,
+                    decodedBid.getSecretKey() == secretKey
+                    && decodedBid.getBidState() == Bid.BidState.BIDDING
+                    && decodedBid.getMinBidCents() == 100
+                    && decodedBid.getCurrentBidCents() == 200
+                    && decodedBid.getProposedBidCents() == 300);
+
+            CreditLine line = new CreditLine(secretKey, 5000, 60000);
+            CreditLine decodedLine = (CreditLine) roundTrip(line, 0);
+            check("credit line key " + secretKey,
+                    decodedLine.getSecretKey() == secretKey
+                    && decodedLine.getBudgetCents() == 5000
+                    && decodedLine.getDurationMillis() == 60000);
+        }
+
+        byte[] bankKey = new byte[32];
+        byte[] houseKey = new byte[32];
+        Arrays.fill(bankKey, (byte) 1);
+        Arrays.fill(houseKey, (byte) 2);
+        AccessToken token = AccessToken.sign(bankKey, houseKey, 11, 22,
+                System.currentTimeMillis() + 60000);
+        AccessToken decodedToken = (AccessToken) roundTrip(token, 0);
+        check("access token",
+                decodedToken.isAuthentic(houseKey)
+                && decodedToken.isIssuedByBank(bankKey)
+                && decodedToken.getSecretKey() == token.getSecretKey()
+                && decodedToken.getAgentAcctNum() == 11
+                && decodedToken.getHouseAcctNum() == 22
+                && decodedToken.getExpiresAtMillis()
+                        == token.getExpiresAtMillis());
+
+        List<AuctionItem> items = new ArrayList<>();
+        for(int i = 0; i < 1000; i++){
+            items.add(new AuctionItem(7, i, "item" + i,
+                    new Bid(Bid.BidState.OPEN, 100 + i, 0, 0, 0)));
+        }
+        AuctionHouseInventory inventory =
+                (AuctionHouseInventory) roundTrip(
+                        new AuctionHouseInventory(7, items, 0), 0);
+        AuctionItem last = inventory.getAuctions().get(999);
+        check("inventory of 1000 items",
+                inventory.getAuctions().size() == 1000
+                && last.getItemName().equals("item999")
+                && last.getBid().getMinBidCents() == 1099);
+
+        Object list = roundTrip(new ArrayList<>(List.of("a", "b")), 0);
+        check("list of strings", List.of("a", "b").equals(list));
+
+        Object date = roundTrip(new Date(12345), 0);
+        check("serialized fallback", new Date(12345).equals(date));
+
+        byte[] frame = MessageCodec.encode(new Message<>(
+                Message.MessageIdentifier.TEST_MESSAGE, "x"), 42);
+        MessageCodec.Frame decoded = MessageCodec.readFrame(
+                new DataInputStream(new ByteArrayInputStream(frame)));
+        check("correlation ID", decoded.getCorrelationID() == 42
+                && "x".equals(decoded.getMessage().getMessageContent()));
+    }
+
+    /**
+     * Alters well-formed frames in the ways a peer could: counts that are
+     * negative or larger than the frame, an unknown enum ordinal, a length
+     * over MAX_FRAME_LENGTH, and a frame cut short.
+     */
+    private static void malformedFrames() throws IOException {
+
+        byte[] list = MessageCodec.encode(new Message<>(
+                Message.MessageIdentifier.TEST_MESSAGE,
+                new ArrayList<>(List.of("a", "b"))));
+
+        byte[] negativeCount = list.clone();
+        putInt(negativeCount, COUNT_OFFSET, -1);
+        checkRefused("negative count", negativeCount);
+
+        byte[] hugeCount = list.clone();
+        putInt(hugeCount, COUNT_OFFSET, Integer.MAX_VALUE);
+        checkRefused("count larger than the frame", hugeCount);
+
+        byte[] badOrdinal = list.clone();
+        badOrdinal[IDENTIFIER_OFFSET] = 100;
+        checkRefused("unknown identifier ordinal", badOrdinal);
+
+        byte[] serialized = MessageCodec.encode(new Message<>(
+                Message.MessageIdentifier.TEST_MESSAGE, new Date(0)));
+        putInt(serialized, COUNT_OFFSET, Integer.MAX_VALUE);
+        checkRefused("serialized length larger than the frame", serialized);
+
+        byte[] truncated = Arrays.copyOf(list, list.length - 1);
+        checkRefused("frame cut short", truncated);
+
+        byte[] hugeFrame = {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+        try{
+            MessageCodec.readFrame(new DataInputStream(
+                    new ByteArrayInputStream(hugeFrame)));
+            check("frame longer than MAX_FRAME_LENGTH", false);
+        }catch(StreamCorruptedException e){
+            check("frame longer than MAX_FRAME_LENGTH", true);
+        }
+    }
+
+    private static Object roundTrip(Object content, long correlationID)
+            throws IOException {
+        byte[] frame = MessageCodec.encode(new Message<>(
+                Message.MessageIdentifier.TEST_MESSAGE, content),
+                correlationID);
+        MessageCodec.Frame decoded =
+                MessageCodec.decode(frame, 4, frame.length - 4);
+        return decoded.getMessage().getMessageContent();
+    }
+
+    private static void checkRefused(String name, byte[] frame) {
+        try{
+            MessageCodec.decode(frame, 4, frame.length - 4);
+            check(name, false);
+        }catch(IOException e){
+            check(name + " (" + e + ")", true);
+        }catch(RuntimeException e){
+            System.out.println("    unexpected " + e);
+            check(name, false);
+        }
+    }
+
+    private static void putInt(byte[] frame, int offset, int value) {
+        frame[offset] = (byte) (value >>> 24);
+        frame[offset + 1] = (byte) (value >>> 16);
+        frame[offset + 2] = (byte) (value >>> 8);
+        frame[offset + 3] = (byte) value;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "PASS " : "FAIL ") + name);
+        if(!passed){
+            failures++;
+        }
+    }
+}
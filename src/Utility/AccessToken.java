@@ -0,0 +1,260 @@
+package Utility;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Provides a self-verifying replacement for a Bank-issued secret key: an
+ * Agent's account number, an Auction House's account number and an expiry
+ * time, signed by the Bank with two HMACs ( HmacSHA256, truncated to
+ * MAC_LENGTH bytes ). The first is under a key belonging to that Auction
+ * House, derived from the Bank's own master key ( see deriveHouseKey() )
+ * and handed to the Auction House when it opens its account, so the
+ * Auction House can check a token just by recomputing its HMAC. The second
+ * is under a key only the Bank holds ( see deriveBankKey() ), covers the
+ * first one too, and is the one the Bank checks: an Auction House knows
+ * its own key, so it could sign a token naming any agent, but it cannot
+ * sign one the Bank accepts.
+ * Neither check looks anything up, and the Bank stores nothing when it
+ * issues a token.
+ * Inside an Auction House, and in Bids, a token is still named by a secret
+ * key ( see getSecretKey() ): 62 bits of an HMAC of the two account
+ * numbers under the Bank's own key, carried in the token and covered by
+ * both HMACs. Every token for the same Agent and Auction House, however
+ * often it is renewed, carries the same key, while two agents' keys are
+ * all but certain never to be the same. These keys always have
+ * SECRET_KEY_BIT set, so they never collide with the six-digit int
+ * secret keys the Bank still hands out for GET_SECRET_KEY.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (serialVersionUID pinned)
+ * previously modified: 10/18/26 by wdc (secret key kept across renewals)
+ * previously modified: 10/18/26 by wdc (64-bit secret keys)
+ * previously modified: 10/18/26 by wdc (HMAC only the Bank can check)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class AccessToken implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // bytes of the HmacSHA256 kept in a token
+    public static final int MAC_LENGTH = 16;
+    // set in every secret key taken from a token
+    public static final long SECRET_KEY_BIT = 1L << 62;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final int agentAcctNum;
+    private final int houseAcctNum;
+    private final long secretKey;
+    private final long expiresAtMillis;
+    private final byte[] mac;
+    private final byte[] bankMac;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for an AccessToken with already computed HMACs
+     * ( e.g. one just decoded ); see sign() to issue a new token.
+     * @param agentAcctNum int account number of the Agent
+     * @param houseAcctNum int account number of the Auction House
+     * @param secretKey long secret key naming the token
+     * @param expiresAtMillis long time the token expires, in milliseconds
+     *                        since the epoch ( on the Bank's clock )
+     * @param mac byte[] HMAC of the other fields, under the house key
+     * @param bankMac byte[] HMAC of the other fields and mac, under the
+     *                Bank's key
+     */
+    public AccessToken(int agentAcctNum, int houseAcctNum, long secretKey,
+                       long expiresAtMillis, byte[] mac, byte[] bankMac) {
+        this.agentAcctNum = agentAcctNum;
+        this.houseAcctNum = houseAcctNum;
+        this.secretKey = secretKey;
+        this.expiresAtMillis = expiresAtMillis;
+        this.mac = mac.clone();
+        this.bankMac = bankMac.clone();
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Issues a token linking an Agent's account to an Auction House's,
+     * signed under both the Auction House's key and the Bank's. Its secret
+     * key depends only on the two accounts and the Bank's key, so a token
+     * issued to renew another carries the same one.
+     * @param bankKey byte[] key only the Bank holds ( see deriveBankKey() )
+     * @param houseKey byte[] key of the Auction House ( see
+     *                 deriveHouseKey() )
+     * @param agentAcctNum int account number of the Agent
+     * @param houseAcctNum int account number of the Auction House
+     * @param expiresAtMillis long time the token expires, in milliseconds
+     *                        since the epoch
+     * @return AccessToken
+     */
+    public static AccessToken sign(byte[] bankKey, byte[] houseKey,
+                                   int agentAcctNum, int houseAcctNum,
+                                   long expiresAtMillis) {
+        long secretKey = SECRET_KEY_BIT | (ByteBuffer.wrap(hmac(bankKey,
+            ByteBuffer.allocate(9).put((byte) 'K').putInt(agentAcctNum)
+                .putInt(houseAcctNum).array())).getLong() &
+            (SECRET_KEY_BIT - 1));
+        byte[] mac = macOf(houseKey, agentAcctNum, houseAcctNum, secretKey,
+            expiresAtMillis);
+        return new AccessToken(agentAcctNum, houseAcctNum, secretKey,
+            expiresAtMillis, mac, bankMacOf(bankKey, agentAcctNum,
+                houseAcctNum, secretKey, expiresAtMillis, mac));
+    }
+
+    /**
+     * Derives the key only the Bank holds from its master key. Unlike a
+     * house key, it is never handed out.
+     * @param masterKey byte[] the Bank's master key
+     * @return byte[] key for signing and checking the Bank's HMAC
+     */
+    public static byte[] deriveBankKey(byte[] masterKey) {
+        return hmac(masterKey, new byte[] {(byte) 'B'});
+    }
+
+    /**
+     * Derives an Auction House's key from the Bank's master key, so the
+     * Bank need not store a key per Auction House.
+     * @param masterKey byte[] the Bank's master key
+     * @param houseAcctNum int account number of the Auction House
+     * @return byte[] key for signing and checking that house's tokens
+     */
+    public static byte[] deriveHouseKey(byte[] masterKey, int houseAcctNum) {
+        return hmac(masterKey, ByteBuffer.allocate(5)
+            .put((byte) 'H').putInt(houseAcctNum).array());
+    }
+
+    /**
+     * Checks that the token was signed under the given house key, i.e.
+     * that none of its fields has been changed since it was signed.
+     * Compares in constant time. Used by the Auction House; since the
+     * Auction House holds this key, only the Bank's own check ( see
+     * isIssuedByBank() ) shows the Bank issued the token.
+     * @param houseKey byte[] key of the Auction House named in the token
+     * @return boolean true if the HMAC matches
+     */
+    public boolean isAuthentic(byte[] houseKey) {
+        return houseKey != null && MessageDigest.isEqual(mac,
+            macOf(houseKey, agentAcctNum, houseAcctNum, secretKey,
+                expiresAtMillis));
+    }
+
+    /**
+     * Checks that the token was signed under the Bank's own key, i.e.
+     * that the Bank issued it and none of its fields, nor its other HMAC,
+     * has been changed since. Compares in constant time.
+     * @param bankKey byte[] key only the Bank holds
+     * @return boolean true if the Bank's HMAC matches
+     */
+    public boolean isIssuedByBank(byte[] bankKey) {
+        return bankKey != null && MessageDigest.isEqual(bankMac,
+            bankMacOf(bankKey, agentAcctNum, houseAcctNum, secretKey,
+                expiresAtMillis, mac));
+    }
+
+    /**
+     * Checks whether the token has expired.
+     * @param nowMillis long current time, in milliseconds since the epoch
+     * @return boolean true if the token is no longer valid for new bids
+     */
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the secret key naming this token in Bids and in the
+     * Auction House, the same for every token the Bank issues for this
+     * Agent and Auction House.
+     * @return long secret key, with SECRET_KEY_BIT set
+     */
+    public long getSecretKey() {
+        return secretKey;
+    }
+
+    /**
+     * Returns the pair of accounts the token links.
+     * @return AccountLink
+     */
+    public AccountLink getAccountLink() {
+        return new AccountLink(agentAcctNum, houseAcctNum);
+    }
+
+    public int getAgentAcctNum() {
+        return agentAcctNum;
+    }
+
+    public int getHouseAcctNum() {
+        return houseAcctNum;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    /**
+     * Returns a copy of the token's HMAC.
+     * @return byte[] HMAC
+     */
+    public byte[] getMac() {
+        return mac.clone();
+    }
+
+    /**
+     * Returns a copy of the token's HMAC under the Bank's own key.
+     * @return byte[] HMAC
+     */
+    public byte[] getBankMac() {
+        return bankMac.clone();
+    }
+
+    // ****************************** //
+    //   Private Utility Fxns         //
+    // ****************************** //
+
+    private static byte[] macOf(byte[] key, int agentAcctNum,
+                                int houseAcctNum, long secretKey,
+                                long expiresAtMillis) {
+        byte[] fullMac = hmac(key, ByteBuffer.allocate(24)
+            .putInt(agentAcctNum).putInt(houseAcctNum).putLong(secretKey)
+            .putLong(expiresAtMillis).array());
+        return Arrays.copyOf(fullMac, MAC_LENGTH);
+    }
+
+    private static byte[] bankMacOf(byte[] key, int agentAcctNum,
+                                    int houseAcctNum, long secretKey,
+                                    long expiresAtMillis, byte[] mac) {
+        byte[] fullMac = hmac(key, ByteBuffer.allocate(24 + mac.length)
+            .putInt(agentAcctNum).putInt(houseAcctNum).putLong(secretKey)
+            .putLong(expiresAtMillis).put(mac).array());
+        return Arrays.copyOf(fullMac, MAC_LENGTH);
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) {
+        try {
+            Mac theMac = Mac.getInstance(ALGORITHM);
+            theMac.init(new SecretKeySpec(key, ALGORITHM));
+            return theMac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            // every Java platform is required to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
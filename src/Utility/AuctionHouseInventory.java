@@ -5,17 +5,39 @@ import java.util.List;
 
 /**
  * Provides a simple structure for linking an AuctionHouse's set of
- * AuctionItems, and the AuctionHouse's account number.
+ * AuctionItems, and the AuctionHouse's account number. Also records the
+ * AuctionHouse's clock at the time the inventory was taken, so a receiver
+ * can translate the items' close timestamps to its own clock, and the
+ * inventory version, so later InventoryDeltas can be applied to it.
+ * An inventory may also be one page of a larger one (see
+ * InventoryPageRequest), in which case it carries the token of the next
+ * page and the number of items in the whole inventory.
  * created: 12/02/18 by thf
- * last modified: 12/02/18 by thf
+ * last modified: 10/18/26 by thf (inventory pages)
+ * previously modified: 10/18/26 by thf (inventory version)
+ * previously modified: 10/18/26 by thf (server time for close timestamps)
+ * previously modified: 12/02/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft
  * @author Tyler Fenske (thf)
  */
 public class AuctionHouseInventory implements Serializable{
 
+    //pinned to the value computed for the original class so that peers
+    //running older builds can still exchange inventories
+    private static final long serialVersionUID = 2587121127903950623L;
+
     private int accountNumber;
     private List<AuctionItem> auctions;
+    //AuctionHouse's System.currentTimeMillis() when this was created
+    private long serverTime;
+    //bumped by the AuctionHouse on every change; 0 from older AuctionHouses
+    private long version;
+    //token of the page after this one; NO_PAGE_TOKEN if this is the last
+    //page, or the whole inventory
+    private long nextPageToken = InventoryPageRequest.NO_PAGE_TOKEN;
+    //items in the whole inventory; 0 if unknown (an older AuctionHouse)
+    private int totalItems;
 
     /**
      * Constructor for AuctionHouseInventory, linking a list of AuctionItems
@@ -24,8 +46,21 @@ public class AuctionHouseInventory implements Serializable{
      * @param auctions List of AuctionItems in the AuctionHouse
      */
     public AuctionHouseInventory(int accountNumber, List<AuctionItem> auctions){
+        this(accountNumber, auctions, System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor for AuctionHouseInventory with a known server time, used
+     * when decoding an inventory received from an AuctionHouse.
+     * @param accountNumber AuctionHouse's account number assigned by the bank
+     * @param auctions List of AuctionItems in the AuctionHouse
+     * @param serverTime AuctionHouse's clock when the inventory was taken
+     */
+    public AuctionHouseInventory(int accountNumber, List<AuctionItem> auctions,
+                                 long serverTime){
         this.accountNumber = accountNumber;
         this.auctions = auctions;
+        this.serverTime = serverTime;
     }
 
     /**
@@ -43,4 +78,92 @@ public class AuctionHouseInventory implements Serializable{
     public List<AuctionItem> getAuctions() {
         return auctions;
     }
+
+    /**
+     * Returns the AuctionHouse's clock when this inventory was taken.
+     * @return long server time in milliseconds, 0 if unknown (an older
+     *         AuctionHouse)
+     */
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    /**
+     * Sets the inventory version this is a snapshot of.
+     * @param version long inventory version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns the inventory version this is a snapshot of.
+     * @return long version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the token of the page after this one.
+     * @param nextPageToken long page token, or
+     *                      InventoryPageRequest.NO_PAGE_TOKEN if this is
+     *                      the last page
+     */
+    public void setNextPageToken(long nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * Returns the token to send in an InventoryPageRequest for the page
+     * after this one.
+     * @return long page token, InventoryPageRequest.NO_PAGE_TOKEN if there
+     *         are no more pages
+     */
+    public long getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * Checks if there are pages after this one.
+     * @return true if getNextPageToken() names another page
+     */
+    public boolean hasMorePages() {
+        return nextPageToken != InventoryPageRequest.NO_PAGE_TOKEN;
+    }
+
+    /**
+     * Sets the number of items in the whole inventory.
+     * @param totalItems int number of items
+     */
+    public void setTotalItems(int totalItems) {
+        this.totalItems = totalItems;
+    }
+
+    /**
+     * Returns the number of items in the whole inventory, of which this
+     * may be only a page.
+     * @return int number of items, 0 if unknown
+     */
+    public int getTotalItems() {
+        return totalItems;
+    }
+
+    /**
+     * Shifts the close timestamp of every item from the AuctionHouse's
+     * clock to this machine's clock, so local countdowns are right even if
+     * the two clocks disagree. Should be called once, on receipt.
+     */
+    public void adjustToLocalClock() {
+        if(serverTime == 0 || auctions == null){
+            return;
+        }
+        long offset = System.currentTimeMillis() - serverTime;
+        for(AuctionItem item : auctions){
+            if(item.getCloseTimestamp() != 0){
+                item.setCloseTimestamp(item.getCloseTimestamp() + offset);
+            }
+        }
+        serverTime += offset;
+    }
 }
@@ -4,7 +4,6 @@ import java.io.Serializable;
 
 import AuctionHouse.AgentProxy;
 import AuctionHouse.AuctionHouse;
-import AuctionHouse.BidTimer;
 
 /**
  * Provides a structure for managing and observing an Auction Item which
@@ -16,7 +15,11 @@ import AuctionHouse.BidTimer;
  * see Bid class for more details.
  *
  * created: 11/25/18 by thf
- * last modified: 12/02/18 by thf (adding transient modifier)
+ * last modified: 10/18/26 by thf (per-item version)
+ * previously modified: 10/18/26 by thf (absolute close timestamp)
+ * previously modified: 10/18/26 by thf (timers kept by AuctionScheduler)
+ * previously modified: 10/18/26 by thf (timers run on AuctionHouse executor)
+ * previously modified: 12/02/18 by thf (adding transient modifier)
  * previously modified: 11/25/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
@@ -24,15 +27,19 @@ import AuctionHouse.BidTimer;
  */
 public class AuctionItem implements Serializable {
 
+    //pinned to the value computed for the original class so that peers
+    //running older builds can still exchange AuctionItems
+    private static final long serialVersionUID = 4959492172445810250L;
+
     private int houseID;
     private int itemID;
     private String itemName;
     private Bid bid;
-    //transient variables are ignored during serialization. BidTimer is
-    //irrelevant when passing an AuctionItem between Public Auction
-    //components, and need not be serialized.
-    private transient BidTimer bidTimer;
     private int timeLeftOnBid;
+    //wall-clock millis at which the open bid closes, 0 if none is running
+    private long closeTimestamp;
+    //inventory version in which this item last changed
+    private long version;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -55,7 +62,6 @@ public class AuctionItem implements Serializable {
         this.itemID = itemID;
         this.itemName = itemName;
         this.bid = bid;
-        bidTimer = null;
     }
 
     // ****************************** //
@@ -144,14 +150,70 @@ public class AuctionItem implements Serializable {
         return timeLeftOnBid;
     }
 
-    public void startTimer(long time, AgentProxy ap, AuctionHouse ah){
-        if(bidTimer != null){
-            bidTimer.cancelTimer();
+    /**
+     * Sets the wall-clock time (System.currentTimeMillis()) at which the
+     * current bid closes. If 0, the bid either hasn't begun or is over.
+     * @param closeTimestamp long close time in milliseconds
+     */
+    public void setCloseTimestamp(long closeTimestamp){
+        this.closeTimestamp = closeTimestamp;
+    }
+
+    /**
+     * Returns the wall-clock time at which the current bid closes, so
+     * displays can count down locally instead of waiting on updates.
+     * @return long close time in milliseconds, 0 if no bid is running
+     */
+    public long getCloseTimestamp(){
+        return closeTimestamp;
+    }
+
+    /**
+     * Sets the inventory version in which this item last changed.
+     * @param version long inventory version
+     */
+    public void setVersion(long version){
+        this.version = version;
+    }
+
+    /**
+     * Returns the inventory version in which this item last changed, so
+     * receivers can tell which items an InventoryDelta brings up to date.
+     * @return long version, 0 if unchanged since the AuctionHouse started
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Returns the whole seconds left on the current bid at the given time,
+     * rounded up. Falls back to timeLeftOnBid if no close timestamp is
+     * known (e.g. the item came from an older AuctionHouse).
+     * @param now current time, in System.currentTimeMillis() terms
+     * @return int seconds left, 0 if the bid is over or hasn't begun
+     */
+    public int getSecondsLeft(long now){
+        if(closeTimestamp == 0){
+            return timeLeftOnBid;
+        }
+        long millisLeft = closeTimestamp - now;
+        if(millisLeft <= 0){
+            return 0;
         }
+        return (int) ((millisLeft + 999) / 1000);
+    }
 
-        bidTimer = new BidTimer(time, ap, this, ah);
-        Thread threadTimer = new Thread(bidTimer);
-        threadTimer.start();
+    /**
+     * Starts (or restarts) the BidTimer for this item, cancelling any timer
+     * already running for a previous bid. The timer is kept by the
+     * AuctionHouse's AuctionScheduler, which closes the item once the time
+     * is up without holding a thread for it in the meantime.
+     * @param time how long the bid stays open, in milliseconds
+     * @param ap AgentProxy of the agent who currently holds the bid
+     * @param ah AuctionHouse this item belongs to
+     */
+    public void startTimer(long time, AgentProxy ap, AuctionHouse ah){
+        ah.getAuctionScheduler().startTimer(this, time, ap);
     }
 
     /**
@@ -1,19 +1,37 @@
 package Utility;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * Provides the structure for account information for a client of a Bank.
  * A BankAccount is conceived generally to be held or stored by a Bank, but
  * can also be communicated to a remote client of the Bank to update the
  * client with current account information, hence we also make the class
- * implement Serializable. Methods to check and modify balance, frozen funds,
- * and unfrozen funds are all synchronized to prevent multithread-based
- * interference errors (e.g. to avoid two threads "freezing" the same funds).
+ * implement Serializable.
+ * The total balance and frozen funds are held together in one immutable
+ * Balances object ( unfrozen funds are simply their difference ). Reading
+ * balances is a single volatile read, so readers never wait and always see
+ * a consistent set of values. Methods that modify the balances build a new
+ * Balances and install it with a compare-and-set, retrying if another
+ * thread got there first, so writers never block one another and two
+ * threads can never "freeze" the same funds. getBalances() gives a
+ * consistent snapshot of all three values, e.g. for sending the account
+ * to a client.
+ * All amounts are kept as long cents ( see Money ), so balances never need
+ * rounding and comparisons are exact; the double getters convert to dollars
+ * for display. The serialized form still holds doubles, so BankAccounts can
+ * be exchanged with peers running older builds.
  * created: 11/18/18 by wdc
- * last modified: 12/03/18 by wdc (adding unfreeze method)
+ * last modified: 10/18/26 by wdc (lock-free balances)
+ * previously modified: 10/18/26 by wdc (amounts in long cents)
+ * previously modified: 10/18/26 by thf (constructor for MessageCodec)
+ * previously modified: 12/03/18 by wdc (adding unfreeze method)
  * previously modified: 12/01/18 by wdc (updating types and constructors)
  * previously modified: 11/29/18 by wdc (updating to Utility package)
  * previously modified: 11/18/18 by wdc (creation)
@@ -23,13 +41,37 @@ import java.math.RoundingMode;
  */
 public class BankAccount implements Serializable {
 
+    //pinned to the value computed for the original class so that peers
+    //running older builds can still exchange BankAccounts
+    private static final long serialVersionUID = 8936879216621258819L;
+
+    // the serialized form of the original class, amounts in dollars
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("accountNumber", int.class),
+        new ObjectStreamField("accountType", AccountType.class),
+        new ObjectStreamField("totalBalance", double.class),
+        new ObjectStreamField("totalFrozen", double.class),
+        new ObjectStreamField("totalUnfrozen", double.class),
+        new ObjectStreamField("userName", String.class)
+    };
+
+    // compare-and-set access to the balances field
+    private static final VarHandle BALANCES;
+    static {
+        try {
+            BALANCES = MethodHandles.lookup().findVarHandle(
+                BankAccount.class, "balances", Balances.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private AccountType accountType;
     public enum AccountType { AGENT, AUCTION_HOUSE, BANK, OTHER }
     private String userName;
     private int accountNumber;
-    private double totalBalance;
-    private double totalFrozen = 0.0;
-    private double totalUnfrozen;
+    // only ever replaced as a whole, through BALANCES
+    private volatile Balances balances;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -40,18 +82,31 @@ public class BankAccount implements Serializable {
      * @param accountType AccountType enum AGENT, AUCTION_HOUSE, BANK, or OTHER
      * @param userName String id for account, e.g. "Bob Smith" or "JJ Auctions"
      * @param accountNumber int with no particular internal constraints
-     * @param initialBalance double initial balance
+     * @param initialBalance long initial balance in cents
      */
     public BankAccount(AccountType accountType,
                        String userName,
                        int accountNumber,
-                       double initialBalance) {
+                       long initialBalance) {
+
+        this(accountType, userName, accountNumber, initialBalance, 0);
+    }
 
+    /**
+     * Package-private constructor restoring every field of a BankAccount,
+     * used by MessageCodec when decoding a BankAccount sent over the wire.
+     * @param accountType AccountType enum AGENT, AUCTION_HOUSE, BANK, or OTHER
+     * @param userName String id for account
+     * @param accountNumber int account number
+     * @param totalBalance long total balance in cents
+     * @param totalFrozen long frozen funds in cents
+     */
+    BankAccount(AccountType accountType, String userName, int accountNumber,
+                long totalBalance, long totalFrozen){
         this.accountType = accountType;
         this.userName = userName;
         this.accountNumber = accountNumber;
-        this.totalBalance = initialBalance;
-        this.totalUnfrozen = initialBalance;
+        this.balances = new Balances(totalBalance, totalFrozen);
     }
 
     /**
@@ -61,7 +116,7 @@ public class BankAccount implements Serializable {
      * expected in a Message content).
      */
     public BankAccount () {
-        this(AccountType.OTHER, "unknown", -1, -1);
+        this(AccountType.OTHER, "unknown", -1, Money.ofDollars(-1));
     }
 
     // ****************************** //
@@ -92,13 +147,31 @@ public class BankAccount implements Serializable {
         return accountNumber;
     }
 
+    /**
+     * Returns a consistent snapshot of the account's balances -- the total
+     * balance, frozen, and unfrozen funds all as of the same moment. Later
+     * changes to the account do not affect the returned Balances.
+     * @return Balances snapshot
+     */
+    public Balances getBalances() {
+        return balances;
+    }
+
     /**
      * Returns total balance for the account, the sum of both frozen
      * and unfrozen funds.
      * @return double total balance = frozen funds + unfrozen funds
      */
-    public synchronized double getTotalBalance() {
-        return totalBalance;
+    public double getTotalBalance() {
+        return Money.toDollars(balances.getTotalBalanceCents());
+    }
+
+    /**
+     * Returns total balance for the account in cents.
+     * @return long total balance in cents
+     */
+    public long getTotalBalanceCents() {
+        return balances.getTotalBalanceCents();
     }
 
     /**
@@ -106,8 +179,16 @@ public class BankAccount implements Serializable {
      * temporarily committed through a bidding or purchase process
      * @return double funds currently in account but frozen or on hold
      */
-    public synchronized double getTotalFrozen() {
-        return totalFrozen;
+    public double getTotalFrozen() {
+        return Money.toDollars(balances.getTotalFrozenCents());
+    }
+
+    /**
+     * Returns the total frozen funds in cents.
+     * @return long frozen funds in cents
+     */
+    public long getTotalFrozenCents() {
+        return balances.getTotalFrozenCents();
     }
 
     /**
@@ -116,8 +197,16 @@ public class BankAccount implements Serializable {
      * committed
      * @return double unfrozen funds = total balance - frozen funds
      */
-    public synchronized double getTotalUnfrozen() {
-        return totalUnfrozen;
+    public double getTotalUnfrozen() {
+        return Money.toDollars(balances.getTotalUnfrozenCents());
+    }
+
+    /**
+     * Returns the total unfrozen funds in cents.
+     * @return long unfrozen funds in cents
+     */
+    public long getTotalUnfrozenCents() {
+        return balances.getTotalUnfrozenCents();
     }
 
     // ****************************** //
@@ -125,14 +214,18 @@ public class BankAccount implements Serializable {
     // ****************************** //
 
     /**
-     * Increases balance by balanceIncrease amount in $s. Increases both
+     * Increases balance by balanceIncrease amount in cents. Increases both
      * the total balance and the unfrozen funds.
-     * @param balanceIncrease double $ to add to total account balance
+     * @param balanceIncrease long cents to add to total account balance
      */
-    public synchronized void increaseTotalBalance (double balanceIncrease) {
-        totalBalance += balanceIncrease;
-        totalUnfrozen += balanceIncrease;
-        roundAllValues();
+    public void increaseTotalBalance (long balanceIncrease) {
+        Balances current;
+        do {
+            current = balances;
+            // frozen funds unchanged, so unfrozen funds go up too
+        } while ( !BALANCES.compareAndSet(this, current,
+            new Balances(current.totalBalance + balanceIncrease,
+                current.totalFrozen)) );
     }
 
     /**
@@ -141,18 +234,11 @@ public class BankAccount implements Serializable {
      * increase the frozen funds up to the total balance available in the
      * account. If freeze increase exceeds unfrozen available, entire freeze
      * request fails and method returns false.
-     * @param freezeIncrease double $ to add to total of frozen funds
+     * @param freezeIncrease long cents to add to total of frozen funds
      * @return true if increase successful; false if not possible
      */
-    public synchronized boolean increaseFreeze(double freezeIncrease) {
-        if ( totalUnfrozen >= freezeIncrease ) {
-            totalFrozen += freezeIncrease;
-            totalUnfrozen = totalUnfrozen - freezeIncrease;
-            // and does not change total balance
-            roundAllValues();
-            return true;
-        }
-        return false;
+    public boolean increaseFreeze(long freezeIncrease) {
+        return checkAndFreeze(freezeIncrease);
     }
 
     /**
@@ -161,18 +247,21 @@ public class BankAccount implements Serializable {
      * decrease the frozen funds down to 0. If freeze decrease exceeds frozen
      * funds, this suggests there was an error somewhere and so the request
      * fails and method returns false.
-     * @param freezeDecrease double $ to remove from total of frozen funds
+     * @param freezeDecrease long cents to remove from total of frozen funds
      * @return true if decrease successful; false if not successful
      */
-    public synchronized boolean decreaseFreeze(double freezeDecrease) {
-        if ( totalFrozen >= freezeDecrease ) {
-            totalFrozen -= freezeDecrease;
-            totalUnfrozen += freezeDecrease;
-            roundAllValues();
+    public boolean decreaseFreeze(long freezeDecrease) {
+        Balances current;
+        do {
+            current = balances;
+            if ( current.totalFrozen < freezeDecrease ) {
+                return false;
+            }
             // and this does not change total balance
-            return true;
-        }
-        return false;
+        } while ( !BALANCES.compareAndSet(this, current,
+            new Balances(current.totalBalance,
+                current.totalFrozen - freezeDecrease)) );
+        return true;
     }
 
     /**
@@ -180,20 +269,23 @@ public class BankAccount implements Serializable {
      * funds total by the given amount. This is intended to be used to effect
      * a transfer of frozen funds to another bank account. Can only decrease
      * if frozen funds are greater than or equal to requested decrease amount.
-     * @param decrease double $ to decrease in account
+     * @param decrease long cents to decrease in account
      * @return true if decrease successful; false if not possible
      */
-    public synchronized boolean decreaseFrozenAndBalance (double decrease) {
+    public boolean decreaseFrozenAndBalance (long decrease) {
         // used when transferring previously blocked funds
         // over to an auction house
-        if ( totalFrozen >= decrease ) {
-            totalFrozen -= decrease;
-            totalBalance -= decrease;
+        Balances current;
+        do {
+            current = balances;
+            if ( current.totalFrozen < decrease ) {
+                return false;
+            }
             // and does not change the unfrozen balance
-            roundAllValues();
-            return true;
-        }
-        return false;
+        } while ( !BALANCES.compareAndSet(this, current,
+            new Balances(current.totalBalance - decrease,
+                current.totalFrozen - decrease)) );
+        return true;
     }
 
     /**
@@ -201,55 +293,116 @@ public class BankAccount implements Serializable {
      * amountToFreeze (e.g. like a "hold" on a credit card), and if so,
      * freezes those funds, adjusts the frozen and unfrozen values, and
      * returns true. If NSF for freezing, returns false.
-     * @param amountToFreeze double amount requested to be frozen
+     * @param amountToFreeze long amount in cents requested to be frozen
      * @return Boolean true if freeze successful, false otherwise
      */
-    public synchronized boolean checkAndFreeze (double amountToFreeze) {
+    public boolean checkAndFreeze (long amountToFreeze) {
         // used when verifying an account has sufficient funds to cover
         // an expenditure, and if it does, then freeze or hold those funds
-        if ( totalUnfrozen >= amountToFreeze ) {
-             totalFrozen += amountToFreeze;
-             totalUnfrozen -= amountToFreeze;
-             // and total balance does not change
-            roundAllValues();
-            return true;
-        }
-        return false;
+        Balances current;
+        do {
+            current = balances;
+            if ( current.getTotalUnfrozenCents() < amountToFreeze ) {
+                return false;
+            }
+            // and total balance does not change
+        } while ( !BALANCES.compareAndSet(this, current,
+            new Balances(current.totalBalance,
+                current.totalFrozen + amountToFreeze)) );
+        return true;
     }
 
     // ****************************** //
-    //   Utility Fxns                 //
+    //   Serialization                //
     // ****************************** //
 
     /**
-     * Adapted from an answer found on StackOverflow:
-     *
-     * https://stackoverflow.com/questions/2808535
-     * /round-a-double-to-2-decimal-places
-     *
-     * Rounds a decimal value to "places" decimal places.
-     * @param value value to be rounded
-     * @param places number of places to round to:
-     *               Example - value = 2.3423 places = 2
-     *                         result = 2.34
-     * @return newly rounded double
+     * Writes the BankAccount in the original serialized form, with the
+     * amounts in dollars, all taken from a single snapshot of the balances.
+     * @param out ObjectOutputStream
+     * @throws IOException if the stream fails
      */
-    private double round(double value, int places){
-        BigDecimal bd = new BigDecimal(value);
-        bd = bd.setScale(places, RoundingMode.HALF_UP);
-        return bd.doubleValue();
+    private void writeObject ( ObjectOutputStream out ) throws IOException {
+
+        Balances snapshot = balances;
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("accountNumber", accountNumber);
+        fields.put("accountType", accountType);
+        fields.put("totalBalance",
+            Money.toDollars(snapshot.getTotalBalanceCents()));
+        fields.put("totalFrozen",
+            Money.toDollars(snapshot.getTotalFrozenCents()));
+        fields.put("totalUnfrozen",
+            Money.toDollars(snapshot.getTotalUnfrozenCents()));
+        fields.put("userName", userName);
+        out.writeFields();
     }
 
     /**
-     * Rounds all balances to two decimal places. This is done to
-     * clean up some ambiguous floating point precision.
+     * Reads a BankAccount in the original serialized form, rounding each
+     * amount to the nearest cent. Unfrozen funds are not read, since they
+     * follow from the total balance and frozen funds.
+     * @param in ObjectInputStream
+     * @throws IOException if the stream fails
+     * @throws ClassNotFoundException if AccountType cannot be loaded
      */
-    private void roundAllValues() {
+    private void readObject ( ObjectInputStream in )
+        throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+        accountNumber = fields.get("accountNumber", 0);
+        accountType = (AccountType) fields.get("accountType", null);
+        balances = new Balances(
+            Money.ofDollars(fields.get("totalBalance", 0.0)),
+            Money.ofDollars(fields.get("totalFrozen", 0.0)));
+        userName = (String) fields.get("userName", null);
+    }
 
-        totalBalance = round(totalBalance, 2);
-        totalFrozen = round(totalFrozen, 2);
-        totalUnfrozen = round(totalUnfrozen, 2);
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
 
+    /**
+     * An immutable, consistent set of an account's balances, in cents.
+     */
+    public static final class Balances {
+
+        private final long totalBalance;
+        private final long totalFrozen;
+
+        /**
+         * Constructor for a set of balances.
+         * @param totalBalance long total balance in cents
+         * @param totalFrozen long frozen funds in cents
+         */
+        private Balances ( long totalBalance, long totalFrozen ) {
+            this.totalBalance = totalBalance;
+            this.totalFrozen = totalFrozen;
+        }
+
+        /**
+         * Returns the total balance in cents.
+         * @return long total balance = frozen funds + unfrozen funds
+         */
+        public long getTotalBalanceCents() {
+            return totalBalance;
+        }
+
+        /**
+         * Returns the frozen funds in cents.
+         * @return long frozen funds
+         */
+        public long getTotalFrozenCents() {
+            return totalFrozen;
+        }
+
+        /**
+         * Returns the unfrozen funds in cents.
+         * @return long unfrozen funds = total balance - frozen funds
+         */
+        public long getTotalUnfrozenCents() {
+            return totalBalance - totalFrozen;
+        }
     }
 
 }
@@ -1,5 +1,9 @@
 package Utility;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
@@ -14,25 +18,48 @@ import java.io.Serializable;
  *           on the related item.
  * SOLD    - The bid is over and a winner for the item has been found.
  *
+ * Amounts are kept as long cents (see Money); the double getters and
+ * setters convert to and from dollars for the GUI. The serialized form
+ * still holds doubles, so Bids can be exchanged with older builds.
+ * Secret keys are longs, so that a key taken from an AccessToken can use
+ * 64 bits; the serialized form keeps the original int field for keys that
+ * fit in one, and adds the whole key alongside it.
+ *
  * created: 11/25/18 by thf
- * last modified: 11/25/18 by thf
+ * last modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (amounts in long cents)
+ * previously modified: 11/25/18 by thf
  * @author Liam Brady (lb)
  * @author Warren D. Craft (wdc)
  * @author Tyler Fenske (thf)
  */
 public class Bid implements Serializable {
 
+    //pinned to the value computed for the original class so that peers
+    //running older builds can still exchange Bids
+    private static final long serialVersionUID = 2078508837059090504L;
+
+    //the serialized form of the original class, amounts in dollars, plus
+    //the whole secret key (older builds ignore it)
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("bidState", BidState.class),
+            new ObjectStreamField("currentBid", double.class),
+            new ObjectStreamField("minBid", double.class),
+            new ObjectStreamField("proposedBid", double.class),
+            new ObjectStreamField("secretKey", int.class),
+            new ObjectStreamField("longSecretKey", long.class)
+    };
 
     public enum BidState {OPEN, BIDDING, SOLD}
     private BidState bidState;
-    //the minimum bid that must be made to out-bit the current bid.
-    private double minBid;
-    //the most recent successful bid amount.
-    private double currentBid;
+    //the minimum bid that must be made to out-bit the current bid, in cents.
+    private long minBid;
+    //the most recent successful bid amount, in cents.
+    private long currentBid;
     //secretKey and proposedBid are not initialized until an agent has
     //placed a bid.
-    private int secretKey;
-    private double proposedBid;
+    private long secretKey;
+    private long proposedBid;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -45,11 +72,29 @@ public class Bid implements Serializable {
      * @param minBid the starting price of this bid
      */
     public Bid (double minBid){
-        this.minBid = minBid;
+        this.minBid = Money.ofDollars(minBid);
         bidState = BidState.OPEN;
         currentBid = 0;
     }
 
+    /**
+     * Constructs a Bid with every field given, amounts in cents. Used when
+     * copying or decoding a Bid.
+     * @param bidState state of the bid
+     * @param minBid minimum bid in cents
+     * @param currentBid current bid in cents, 0 if none
+     * @param secretKey secret key of the agent holding or making the bid
+     * @param proposedBid proposed bid in cents, 0 if none
+     */
+    public Bid (BidState bidState, long minBid, long currentBid,
+                long secretKey, long proposedBid){
+        this.bidState = bidState;
+        this.minBid = minBid;
+        this.currentBid = currentBid;
+        this.secretKey = secretKey;
+        this.proposedBid = proposedBid;
+    }
+
     // ****************************** //
     //   Getter(s) & Setter(s)        //
     // ****************************** //
@@ -68,6 +113,14 @@ public class Bid implements Serializable {
      *                   current bid.
      */
     public double getMinBid(){
+        return Money.toDollars(minBid);
+    }
+
+    /**
+     * Returns the minBid in cents.
+     * @return long minBid in cents
+     */
+    public long getMinBidCents(){
         return minBid;
     }
 
@@ -76,6 +129,14 @@ public class Bid implements Serializable {
      * @return currentBid — The most recent successful bid.
      */
     public double getCurrentBid(){
+        return Money.toDollars(currentBid);
+    }
+
+    /**
+     * Returns the currentBid in cents.
+     * @return long currentBid in cents, 0 if no bid has been made
+     */
+    public long getCurrentBidCents(){
         return currentBid;
     }
 
@@ -95,6 +156,14 @@ public class Bid implements Serializable {
      *               currentBid.
      */
     public void setMinBid(double minBid){
+        this.minBid = Money.ofDollars(minBid);
+    }
+
+    /**
+     * Sets the minBid in cents.
+     * @param minBid new minBid in cents
+     */
+    public void setMinBidCents(long minBid){
         this.minBid = minBid;
     }
 
@@ -104,14 +173,22 @@ public class Bid implements Serializable {
      * @param currentBid new potential winning amount of the bid.
      */
     public void setCurrentBid(double currentBid){
+        this.currentBid = Money.ofDollars(currentBid);
+    }
+
+    /**
+     * Sets the currentBid in cents.
+     * @param currentBid new currentBid in cents
+     */
+    public void setCurrentBidCents(long currentBid){
         this.currentBid = currentBid;
     }
 
     /**
      * Returns the secretKey of the last agent that bid on this successfully
-     * @return secretKey int that represents an agent's secret key
+     * @return secretKey long that represents an agent's secret key
      */
-    public int getSecretKey() {
+    public long getSecretKey() {
         return secretKey;
     }
 
@@ -120,7 +197,7 @@ public class Bid implements Serializable {
      * @param secretKey the secretKey an agent has established between
      *                  itself and the AuctionHouse this bid is located in.
      */
-    public void setSecretKey(int secretKey) {
+    public void setSecretKey(long secretKey) {
         this.secretKey = secretKey;
     }
 
@@ -130,6 +207,14 @@ public class Bid implements Serializable {
      *         AuctionItem.
      */
     public double getProposedBid() {
+        return Money.toDollars(proposedBid);
+    }
+
+    /**
+     * Returns the proposed bid in cents.
+     * @return long proposedBid in cents
+     */
+    public long getProposedBidCents() {
         return proposedBid;
     }
 
@@ -139,6 +224,55 @@ public class Bid implements Serializable {
      *                    AuctionItem.
      */
     public void setProposedBid(double proposedBid) {
+        this.proposedBid = Money.ofDollars(proposedBid);
+    }
+
+    /**
+     * Sets the proposed bid in cents.
+     * @param proposedBid amount in cents an agent is trying to bid
+     */
+    public void setProposedBidCents(long proposedBid) {
         this.proposedBid = proposedBid;
     }
+
+    // ****************************** //
+    //   Serialization                //
+    // ****************************** //
+
+    /**
+     * Writes the Bid in the original serialized form, amounts in dollars,
+     * with the secret key in the int field only if it fits there.
+     * @param out ObjectOutputStream
+     * @throws IOException if the stream fails
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("bidState", bidState);
+        fields.put("currentBid", Money.toDollars(currentBid));
+        fields.put("minBid", Money.toDollars(minBid));
+        fields.put("proposedBid", Money.toDollars(proposedBid));
+        fields.put("secretKey",
+                secretKey == (int) secretKey ? (int) secretKey : 0);
+        fields.put("longSecretKey", secretKey);
+        out.writeFields();
+    }
+
+    /**
+     * Reads a Bid in the original serialized form, rounding each amount
+     * to the nearest cent. A Bid from an older build has only the int
+     * secret key.
+     * @param in ObjectInputStream
+     * @throws IOException if the stream fails
+     * @throws ClassNotFoundException if BidState cannot be loaded
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        bidState = (BidState) fields.get("bidState", null);
+        currentBid = Money.ofDollars(fields.get("currentBid", 0.0));
+        minBid = Money.ofDollars(fields.get("minBid", 0.0));
+        proposedBid = Money.ofDollars(fields.get("proposedBid", 0.0));
+        secretKey = fields.get("longSecretKey",
+                (long) fields.get("secretKey", 0));
+    }
 }
@@ -1,16 +1,39 @@
 package Utility;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides encapsulated method for establishing the socket and
  * ObjectOutputStream & ObjectInputStream to a specified host and host port.
  * Used to reach out to a server and wait for a response.
+ * Right after connecting, offers the server the compact binary codec (see
+ * MessageCodec); if the server accepts, every later Message on this
+ * connection is sent as a binary frame instead of a serialized object.
+ * Binary frames carry a correlation ID, so sendMessageAsync() can have many
+ * requests outstanding on the one socket at once, with a reader task
+ * matching each reply to its request in whatever order replies arrive.
  * created: 11/20/18 by thf
- * last modified: 11/23/18 by thf (cleaning up comments)
+ * last modified: 10/18/26 by thf (failing requests on undecodable replies)
+ * previously modified: 10/18/26 by thf (cached bytes for SharedMessages)
+ * previously modified: 10/18/26 by thf (per-call timeouts)
+ * previously modified: 10/18/26 by thf (pipelined requests)
+ * previously modified: 10/18/26 by thf (negotiating the binary codec)
+ * previously modified: 11/23/18 by thf (cleaning up comments)
  * previously modified: 11/21/18 by wdc (adapting to Utility package)
  * @author Tyler Fenske (thf)
  * @author Warren D. Craft (wdc)
@@ -21,6 +44,18 @@ public class CommunicationService {
     private Socket socket;
     private ObjectOutputStream out;
     private ObjectInputStream in;
+    // set once the server has accepted the binary codec
+    private boolean binary = false;
+    private DataOutputStream binaryOut;
+    private DataInputStream binaryIn;
+
+    // binary mode: requests waiting for their reply, by correlation ID
+    private final Map<Long, CompletableFuture<Message>> pendingReplies =
+            new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationID = new AtomicLong();
+    private volatile IOException readFailure;
+    // Java serialization mode: runs async requests one at a time, in order
+    private Executor serialSender;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -29,7 +64,8 @@ public class CommunicationService {
     /**
      * Public constructor for a CommunicationService, establishing the socket
      * and ObjectOutputStream & ObjectInputStream to a specified host and
-     * host port.
+     * host port, then offering the server the binary codec unless the
+     * "publicauction.codec" system property is set to "java".
      * @param hostName String specifying the host name of an
      *                 already-established server
      * @param port     int specifying the port for the already-established
@@ -37,11 +73,36 @@ public class CommunicationService {
      * @throws IOException
      */
     public CommunicationService(String hostName, int port) throws IOException {
+        this(hostName, port, MessageCodec.isBinaryEnabled());
+    }
+
+    /**
+     * Public constructor for a CommunicationService, establishing the socket
+     * and ObjectOutputStream & ObjectInputStream to a specified host and
+     * host port.
+     * @param hostName String specifying the host name of an
+     *                 already-established server
+     * @param port     int specifying the port for the already-established
+     *                 server
+     * @param offerBinaryCodec true to offer the server the binary codec,
+     *                         false to always use Java serialization
+     * @throws IOException
+     */
+    public CommunicationService(String hostName, int port,
+                                boolean offerBinaryCodec) throws IOException {
 
         socket = new Socket(hostName, port);
         out = new ObjectOutputStream(socket.getOutputStream());
         in = new ObjectInputStream(socket.getInputStream());
 
+        if(offerBinaryCodec){
+            negotiateCodec();
+        }
+        if(binary){
+            ExecutorFactory.shared().execute(this::readReplies);
+        }else{
+            serialSender = ExecutorFactory.serial(ExecutorFactory.shared());
+        }
     }
 
     // ****************************** //
@@ -56,10 +117,132 @@ public class CommunicationService {
      * @throws IOException
      */
     public Message sendMessage(Message message) throws IOException {
-        Message msg = null;
-        out.writeObject(message);
+        if(!binary){
+            return exchange(message);
+        }
+
+        try{
+            return sendMessageAsync(message).get();
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }catch(ExecutionException ee){
+            if(ee.getCause() instanceof IOException){
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Sends a message without waiting for its reply. If the server accepted
+     * the binary codec the request is tagged with a fresh correlation ID and
+     * written straight away, so any number of requests can be outstanding;
+     * the server may handle them concurrently and reply in any order.
+     * Otherwise (an older server) requests are queued and sent one at a
+     * time, as sendMessage() would.
+     * @param message message to be sent through output stream
+     * @return CompletableFuture completed with the reply message, or
+     *         completed exceptionally if the connection fails
+     */
+    public CompletableFuture<Message> sendMessageAsync(Message message){
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+
+        if(!binary){
+            serialSender.execute(() -> {
+                try{
+                    reply.complete(exchange(message));
+                }catch(IOException | RuntimeException e){
+                    reply.completeExceptionally(e);
+                }
+            });
+            return reply;
+        }
+
+        long correlationID = nextCorrelationID.incrementAndGet();
+        pendingReplies.put(correlationID, reply);
+        // forget the request however it ends, so a reply that never comes
+        // (or comes after a timeout) leaves nothing behind
+        reply.whenComplete((msg, e) -> pendingReplies.remove(correlationID));
+        try{
+            if(readFailure != null){
+                throw readFailure;
+            }
+            byte[] frame = MessageCodec.encode(message, correlationID);
+            synchronized(binaryOut){
+                binaryOut.write(frame);
+                binaryOut.flush();
+            }
+        }catch(IOException e){
+            pendingReplies.remove(correlationID);
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    /**
+     * As sendMessageAsync(Message), but the returned CompletableFuture
+     * completes exceptionally with a TimeoutException if no reply has
+     * arrived within the given time. A late reply is then discarded.
+     * @param message message to be sent through output stream
+     * @param timeout how long to wait for the reply
+     * @param unit TimeUnit of the timeout
+     * @return CompletableFuture completed with the reply message
+     */
+    public CompletableFuture<Message> sendMessageAsync(Message message,
+                                                      long timeout,
+                                                      TimeUnit unit){
+        return sendMessageAsync(message).orTimeout(timeout, unit);
+    }
+
+    /**
+     * Checks if this connection has switched to the binary codec.
+     * @return true if Messages are sent as binary frames
+     */
+    public boolean isBinary(){
+        return binary;
+    }
+
+    /**
+     * Offers the server the binary codec. The offer is an ordinary
+     * TEST_MESSAGE, so a server that does not know about the codec just
+     * answers it and the connection stays on Java serialization. The offer
+     * is written without resetting the stream, so no serialization bytes
+     * are left pending once both ends switch to binary frames.
+     * @throws IOException
+     */
+    private void negotiateCodec() throws IOException {
+        out.writeObject(MessageCodec.newOffer());
         out.flush();
-        out.reset();
+
+        Message reply = null;
+        try{
+            reply = (Message) in.readObject();
+        }catch(ClassNotFoundException cnf){
+            cnf.printStackTrace();
+        }
+
+        if(MessageCodec.isAcceptance(reply)){
+            binaryOut = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            binaryIn = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            binary = true;
+        }else{
+            out.reset();
+        }
+    }
+
+    /**
+     * Java serialization mode: writes a message, then waits for the reply.
+     * @param message message to be sent through output stream
+     * @return reply message
+     * @throws IOException
+     */
+    private synchronized Message exchange(Message message)
+            throws IOException {
+        Message msg = null;
+        SharedMessage.writeObject(out, socket.getOutputStream(), message);
 
         try {
             msg =  (Message) in.readObject();
@@ -71,4 +254,41 @@ public class CommunicationService {
         return msg;
     }
 
+    /**
+     * Binary mode reader task: hands every reply frame to the request with
+     * the same correlation ID. When the connection fails, or a frame
+     * cannot be decoded (after which the reply it was for is unknown),
+     * every request still waiting (and every later one) fails with the
+     * same exception, and the socket is closed.
+     */
+    private void readReplies(){
+        try{
+            while(true){
+                MessageCodec.Frame frame = MessageCodec.readFrame(binaryIn);
+                CompletableFuture<Message> reply =
+                        pendingReplies.remove(frame.getCorrelationID());
+                if(reply != null){
+                    reply.complete(frame.getMessage());
+                }
+            }
+        }catch(IOException | RuntimeException failure){
+            IOException e = failure instanceof IOException ?
+                    (IOException) failure :
+                    new IOException("Undecodable reply frame", failure);
+            readFailure = e;
+            try{
+                socket.close();
+            }catch(IOException ignored){
+                // already closed
+            }
+            for(Long correlationID : pendingReplies.keySet()){
+                CompletableFuture<Message> reply =
+                        pendingReplies.remove(correlationID);
+                if(reply != null){
+                    reply.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
 }
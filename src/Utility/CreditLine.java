@@ -0,0 +1,80 @@
+package Utility;
+
+import java.io.Serializable;
+
+/**
+ * Provides a simple structure describing a credit line: a budget of an
+ * Agent's funds that the Bank freezes on behalf of an Auction House, under
+ * the secret key linking the two, so the Auction House can accept that
+ * Agent's bids on its own, without asking the Bank to check and freeze
+ * funds for every bid.
+ * As a GRANT_CREDIT_LINE request, budgetCents is the amount the Auction
+ * House asks for; as the Bank's CREDIT_LINE_GRANTED reply, it is the amount
+ * actually frozen by that grant ( which may be less than requested, or 0 if
+ * the grant only extended an existing line ), and durationMillis is how
+ * long the whole line now lasts. The duration is relative rather than a
+ * time of day, so the Bank's and Auction House's clocks need not agree.
+ * created: 10/18/26 by wdc
+ * last modified: 10/18/26 by wdc (serialVersionUID pinned)
+ * previously modified: 10/18/26 by wdc (long secret keys)
+ * previously modified: 10/18/26 by wdc (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class CreditLine implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long secretKey;
+    private final long budgetCents;
+    private final long durationMillis;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for a CreditLine.
+     * @param secretKey long secret key linking the Agent's account to the
+     *                  Auction House's account
+     * @param budgetCents long amount in cents requested or granted
+     * @param durationMillis long milliseconds the line lasts ( 0 in a
+     *                       request )
+     */
+    public CreditLine(long secretKey, long budgetCents,
+                      long durationMillis) {
+        this.secretKey = secretKey;
+        this.budgetCents = budgetCents;
+        this.durationMillis = durationMillis;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the secret key the line is granted under.
+     * @return long secret key
+     */
+    public long getSecretKey() {
+        return secretKey;
+    }
+
+    /**
+     * Returns the amount requested or granted.
+     * @return long amount in cents
+     */
+    public long getBudgetCents() {
+        return budgetCents;
+    }
+
+    /**
+     * Returns how long the line lasts from the moment it was granted.
+     * @return long duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+}
@@ -0,0 +1,164 @@
+package Utility;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the Executors used to run connection handlers, bid timers and
+ * outbound messages in place of creating a new platform Thread for each.
+ * When running on a JVM with virtual threads (Java 21+) each task gets its
+ * own virtual thread, so the blocking style of the NotificationServer and
+ * CommunicationService is kept while a parked connection costs a few
+ * hundred bytes instead of a full thread stack. On older JVMs the executor
+ * falls back to a cached pool of threads with a reduced stack size.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (daemon fallback threads)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+public class ExecutorFactory {
+
+    // stack size for fallback platform threads; the handlers only ever
+    // read, handle and write one Message, so 1MB default is wasteful
+    private static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
+    private static ExecutorService sharedExecutor;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Only static methods.
+     */
+    private ExecutorFactory(){
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Creates an Executor that runs every task on a new virtual thread when
+     * the JVM supports it, and otherwise on a pooled platform thread with a
+     * reduced stack size.
+     * @param name prefix for the names of the threads created
+     * @return ExecutorService for blocking, thread-per-task work
+     */
+    public static ExecutorService newPerTaskExecutor(String name){
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if(virtual != null){
+            return virtual;
+        }
+        return Executors.newCachedThreadPool(new SmallStackThreadFactory(name));
+    }
+
+    /**
+     * Returns a process-wide per-task Executor, created on first use. Used
+     * by components that were not handed an Executor of their own.
+     * @return shared ExecutorService
+     */
+    public static synchronized ExecutorService shared(){
+        if(sharedExecutor == null){
+            sharedExecutor = newPerTaskExecutor("public-auction");
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Wraps an Executor so that the tasks given to the wrapper run one at a
+     * time and in submission order, while still borrowing threads from the
+     * underlying Executor. Used, for example, so that messages to a single
+     * Agent never interleave on its CommunicationService.
+     * @param executor Executor that actually runs the tasks
+     * @return Executor with in-order, one-at-a-time semantics
+     */
+    public static Executor serial(Executor executor){
+        return new SerialExecutor(executor);
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    // ****************************** //
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor() by reflection so
+     * this class still compiles and runs on JVMs without virtual threads.
+     * @return virtual-thread executor, or null if unavailable
+     */
+    private static ExecutorService newVirtualThreadExecutor(){
+        try{
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        }catch(ReflectiveOperationException | RuntimeException e){
+            return null;
+        }
+    }
+
+    /**
+     * Thread factory for the fallback pool.
+     */
+    private static class SmallStackThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        SmallStackThreadFactory(String prefix){
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r){
+            Thread thread = new Thread(null, r,
+                    prefix + "-" + count.incrementAndGet(),
+                    FALLBACK_STACK_SIZE);
+            // daemon, like virtual threads, so a connection left blocked
+            // on a read never keeps the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * The serial executor described in the java.util.concurrent.Executor
+     * documentation.
+     */
+    private static class SerialExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        SerialExecutor(Executor executor){
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable r){
+            tasks.add(() -> {
+                try{
+                    r.run();
+                }finally{
+                    scheduleNext();
+                }
+            });
+            if(active == null){
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext(){
+            if((active = tasks.poll()) != null){
+                executor.execute(active);
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package Utility;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
@@ -12,8 +16,11 @@ import java.io.Serializable;
  * (4) a String for the entity's hostname (machine location)
  * (5) an int for storing a port number (for accessing/contacting
  *     the entity)
+ * The initial balance is kept in long cents ( see Money ); the serialized
+ * form still holds it as a double, for peers running older builds.
  * created: 11/24/18 by wdc
- * last modified: 12/01/18 by wdc (adding initialBalance setter)
+ * last modified: 10/18/26 by wdc (initialBalance in long cents)
+ * previously modified: 12/01/18 by wdc (adding initialBalance setter)
  * previously modified: 11/27/18 by wdc (adding initialBalance field)
  * previously modified: 11/24/18 by wdc (creation)
  * @author Liam Brady (lb)
@@ -22,11 +29,26 @@ import java.io.Serializable;
  */
 public class IDRecord implements Serializable {
 
+    // pinned to the value computed for the original class so that peers
+    // running older builds can still exchange IDRecords
+    private static final long serialVersionUID = 2405801608925350872L;
+
+    // the serialized form of the original class, initialBalance in dollars
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("hostname", String.class),
+        new ObjectStreamField("initialBalance", double.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("numericalID", int.class),
+        new ObjectStreamField("portNumber", int.class),
+        new ObjectStreamField("recordType", RecordType.class)
+    };
+
+
     // enum to identify the type of IDRecord
     public enum RecordType {AGENT, AUCTION_HOUSE, BANK};
     private RecordType recordType;
     private String name;
-    private double initialBalance;
+    private long initialBalance; // in cents
     private int numericalID;
     private String hostname;
     private int portNumber;
@@ -47,7 +69,7 @@ public class IDRecord implements Serializable {
 
         this.recordType = recordType;
         this.name = name;
-        this.initialBalance = initialBalance;
+        this.initialBalance = Money.ofDollars(initialBalance);
         this.hostname = hostname;
         this.portNumber = portNumber;
 
@@ -80,6 +102,14 @@ public class IDRecord implements Serializable {
      * @return double representing the entity's initial balance
      */
     public double getInitialBalance() {
+        return Money.toDollars(initialBalance);
+    }
+
+    /**
+     * Gets the initial balance associated with the IDRecord in cents.
+     * @return long initial balance in cents
+     */
+    public long getInitialBalanceCents() {
         return initialBalance;
     }
 
@@ -120,6 +150,14 @@ public class IDRecord implements Serializable {
      * @param initialBalance double initial account balance
      */
     public void setInitialBalance(double initialBalance) {
+        this.initialBalance = Money.ofDollars(initialBalance);
+    }
+
+    /**
+     * Sets the initialBalance field in cents.
+     * @param initialBalance long initial account balance in cents
+     */
+    public void setInitialBalanceCents(long initialBalance) {
         this.initialBalance = initialBalance;
     }
 
@@ -144,6 +182,46 @@ public class IDRecord implements Serializable {
                 "NumericalID: " + numericalID + "\n" +
                 "HostName: " + hostname + "\n" +
                 "PortNumber: " + portNumber + "\n" +
-                "InitialBalance: " + initialBalance;
+                "InitialBalance: " + Money.toString(initialBalance);
+    }
+
+    // ****************************** //
+    //   Serialization                //
+    // ****************************** //
+
+    /**
+     * Writes the IDRecord in the original serialized form, with the
+     * initial balance in dollars.
+     * @param out ObjectOutputStream
+     * @throws IOException if the stream fails
+     */
+    private void writeObject ( ObjectOutputStream out ) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("hostname", hostname);
+        fields.put("initialBalance", Money.toDollars(initialBalance));
+        fields.put("name", name);
+        fields.put("numericalID", numericalID);
+        fields.put("portNumber", portNumber);
+        fields.put("recordType", recordType);
+        out.writeFields();
+    }
+
+    /**
+     * Reads an IDRecord in the original serialized form, rounding the
+     * initial balance to the nearest cent.
+     * @param in ObjectInputStream
+     * @throws IOException if the stream fails
+     * @throws ClassNotFoundException if RecordType cannot be loaded
+     */
+    private void readObject ( ObjectInputStream in )
+        throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+        hostname = (String) fields.get("hostname", null);
+        initialBalance = Money.ofDollars(fields.get("initialBalance", 0.0));
+        name = (String) fields.get("name", null);
+        numericalID = fields.get("numericalID", 0);
+        portNumber = fields.get("portNumber", 0);
+        recordType = (RecordType) fields.get("recordType", null);
     }
 }
@@ -0,0 +1,264 @@
+package Utility;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The changes made to an AuctionHouse's inventory between two inventory
+ * versions. Every change to the inventory gets the next version number, and
+ * rather than the whole AuctionHouseInventory, agents are sent only the
+ * items that changed, and of those only the fields that can change (the
+ * Bid and its close timestamp). An agent applies a delta only if it holds
+ * the base version; if it has missed a version it asks the AuctionHouse
+ * for a full inventory instead.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (amounts in long cents)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class InventoryDelta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int accountNumber;
+    private long baseVersion;
+    private long version;
+    private List<ItemChange> changes;
+    //AuctionHouse's System.currentTimeMillis() when this was created
+    private long serverTime;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for an InventoryDelta.
+     * @param accountNumber AuctionHouse's account number assigned by the bank
+     * @param baseVersion inventory version the changes apply to
+     * @param version inventory version once the changes are applied
+     * @param changes the changed items
+     * @param serverTime AuctionHouse's clock when the delta was taken
+     */
+    public InventoryDelta(int accountNumber, long baseVersion, long version,
+                          List<ItemChange> changes, long serverTime){
+        this.accountNumber = accountNumber;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.changes = changes;
+        this.serverTime = serverTime;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Useful getter to retrieve AuctionHouse account number.
+     * @return AuctionHouse account number
+     */
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * Returns the inventory version these changes apply to.
+     * @return long base version
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * Returns the inventory version once these changes are applied.
+     * @return long version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the changed items.
+     * @return List<ItemChange>
+     */
+    public List<ItemChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns the AuctionHouse's clock when this delta was taken.
+     * @return long server time in milliseconds
+     */
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Shifts the close timestamp of every change from the AuctionHouse's
+     * clock to this machine's clock; see
+     * AuctionHouseInventory.adjustToLocalClock(). Should be called once, on
+     * receipt.
+     */
+    public void adjustToLocalClock() {
+        if(serverTime == 0 || changes == null){
+            return;
+        }
+        long offset = System.currentTimeMillis() - serverTime;
+        for(ItemChange change : changes){
+            if(change.closeTimestamp != 0){
+                change.closeTimestamp += offset;
+            }
+        }
+        serverTime += offset;
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * The fields of one AuctionItem that can change while it is up for
+     * auction, identified by its itemID.
+     */
+    public static class ItemChange implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int itemID;
+        private long version;
+        private Bid.BidState bidState;
+        //amounts in cents
+        private long minBid;
+        private long currentBid;
+        private long secretKey;
+        private int timeLeftOnBid;
+        private long closeTimestamp;
+
+        /**
+         * Constructor for an ItemChange, copying the changeable fields of
+         * an AuctionItem.
+         * @param item AuctionItem that changed (should not be changing
+         *             while it is copied)
+         */
+        public ItemChange(AuctionItem item){
+            this(item.getItemID(), item.getVersion(),
+                    item.getBid().getBidState(),
+                    item.getBid().getMinBidCents(),
+                    item.getBid().getCurrentBidCents(),
+                    item.getBid().getSecretKey(), item.getTimeLeftOnBid(),
+                    item.getCloseTimestamp());
+        }
+
+        /**
+         * Constructor for an ItemChange with every field given, used when
+         * decoding.
+         * @param itemID identifier of the AuctionItem that changed
+         * @param version item version once changed
+         * @param bidState new BidState
+         * @param minBid new minimum bid in cents
+         * @param currentBid new current bid in cents
+         * @param secretKey secret key of the agent holding the bid
+         * @param timeLeftOnBid seconds left on the bid when it was sent
+         * @param closeTimestamp when the bid closes, 0 if not running
+         */
+        public ItemChange(int itemID, long version, Bid.BidState bidState,
+                          long minBid, long currentBid, long secretKey,
+                          int timeLeftOnBid, long closeTimestamp){
+            this.itemID = itemID;
+            this.version = version;
+            this.bidState = bidState;
+            this.minBid = minBid;
+            this.currentBid = currentBid;
+            this.secretKey = secretKey;
+            this.timeLeftOnBid = timeLeftOnBid;
+            this.closeTimestamp = closeTimestamp;
+        }
+
+        /**
+         * Returns the itemID of the AuctionItem that changed.
+         * @return int itemID
+         */
+        public int getItemID() {
+            return itemID;
+        }
+
+        /**
+         * Returns the item version once changed.
+         * @return long version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the new BidState.
+         * @return BidState
+         */
+        public Bid.BidState getBidState() {
+            return bidState;
+        }
+
+        /**
+         * Returns the new minimum bid in cents.
+         * @return long minBid in cents
+         */
+        public long getMinBidCents() {
+            return minBid;
+        }
+
+        /**
+         * Returns the new current bid in cents.
+         * @return long currentBid in cents
+         */
+        public long getCurrentBidCents() {
+            return currentBid;
+        }
+
+        /**
+         * Returns the secret key of the agent holding the bid.
+         * @return long secretKey
+         */
+        public long getSecretKey() {
+            return secretKey;
+        }
+
+        /**
+         * Returns the seconds left on the bid when the change was sent.
+         * @return int timeLeftOnBid
+         */
+        public int getTimeLeftOnBid() {
+            return timeLeftOnBid;
+        }
+
+        /**
+         * Returns when the bid closes.
+         * @return long close time in milliseconds, 0 if not running
+         */
+        public long getCloseTimestamp() {
+            return closeTimestamp;
+        }
+
+        /**
+         * Returns a new AuctionItem: the given one with this change
+         * applied. The given item is not modified.
+         * @param item the receiver's current copy of the AuctionItem
+         * @return updated AuctionItem
+         */
+        public AuctionItem applyTo(AuctionItem item){
+            Bid bid = new Bid(bidState, minBid, currentBid, secretKey, 0);
+
+            AuctionItem updated = new AuctionItem(item.getHouseID(), itemID,
+                    item.getItemName(), bid);
+            updated.setVersion(version);
+            updated.setTimeLeftOnBid(timeLeftOnBid);
+            updated.setCloseTimestamp(closeTimestamp);
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package Utility;
+
+import java.io.Serializable;
+
+/**
+ * Asks an AuctionHouse for one page of its inventory rather than the whole
+ * thing: the items with itemIDs in [fromItemID, toItemID], in itemID order,
+ * at most pageSize of them (the AuctionHouse may cap this further). Sent as
+ * the content of GET_AUCTION_HOUSE_ITEMS, or alongside the IDRecord in
+ * JOIN_AUCTION_HOUSE; the reply is an AuctionHouseInventory holding just
+ * that page.
+ * To read on from where a page ended, send the same request again with the
+ * page token the page came with (see
+ * AuctionHouseInventory.getNextPageToken()). Tokens are made and read only
+ * by the AuctionHouse; NO_PAGE_TOKEN asks for the first page.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public class InventoryPageRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //page token of the first page, and of the page after the last one
+    public static final long NO_PAGE_TOKEN = 0;
+
+    private final int fromItemID;
+    private final int toItemID;
+    private final int pageSize;
+    private final long pageToken;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Constructor for a request for the first page of the whole inventory.
+     * @param pageSize most items wanted in the page
+     */
+    public InventoryPageRequest(int pageSize){
+        this(Integer.MIN_VALUE, Integer.MAX_VALUE, pageSize, NO_PAGE_TOKEN);
+    }
+
+    /**
+     * Constructor for a request for the page after the one a token came
+     * with, anywhere in the inventory.
+     * @param pageSize most items wanted in the page
+     * @param pageToken token from the previous page, or NO_PAGE_TOKEN
+     */
+    public InventoryPageRequest(int pageSize, long pageToken){
+        this(Integer.MIN_VALUE, Integer.MAX_VALUE, pageSize, pageToken);
+    }
+
+    /**
+     * Constructor for an InventoryPageRequest.
+     * @param fromItemID lowest itemID wanted
+     * @param toItemID highest itemID wanted
+     * @param pageSize most items wanted in the page
+     * @param pageToken token from the previous page, or NO_PAGE_TOKEN
+     */
+    public InventoryPageRequest(int fromItemID, int toItemID, int pageSize,
+                                long pageToken){
+        this.fromItemID = fromItemID;
+        this.toItemID = toItemID;
+        this.pageSize = pageSize;
+        this.pageToken = pageToken;
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * Returns the lowest itemID wanted.
+     * @return int itemID
+     */
+    public int getFromItemID(){
+        return fromItemID;
+    }
+
+    /**
+     * Returns the highest itemID wanted.
+     * @return int itemID
+     */
+    public int getToItemID(){
+        return toItemID;
+    }
+
+    /**
+     * Returns the most items wanted in the page.
+     * @return int page size
+     */
+    public int getPageSize(){
+        return pageSize;
+    }
+
+    /**
+     * Returns the token of the page to read on from.
+     * @return long page token, NO_PAGE_TOKEN for the first page
+     */
+    public long getPageToken(){
+        return pageToken;
+    }
+
+}
@@ -7,7 +7,13 @@ import java.io.Serializable;
  * communication among the triplet of entities Bank, Auction House,
  * and Agent.
  * created: 11/20/18 by thf
- * last modified: 12/02/18 by wdc (adding some identifiers)
+ * last modified: 10/18/26 by lb (adding RENEW_ACCESS_TOKEN)
+ * previously modified: 10/18/26 by wdc (adding TRANSFER_HOLD)
+ * previously modified: 10/18/26 by wdc (adding credit line identifiers)
+ * previously modified: 10/18/26 by thf (adding inventory delta identifiers)
+ * previously modified: 10/18/26 by thf (adding correlationID)
+ * previously modified: 10/18/26 by thf (adding CODEC_ACCEPTED)
+ * previously modified: 12/02/18 by wdc (adding some identifiers)
  * previously modified: 12/01/18 by wdc (adding some identifiers)
  * previously modified: 11/25/18 by thf (adding generics to message structure)
  * previously modified: 11/21/18 by wdc (adapting to Utility package)
@@ -17,9 +23,13 @@ import java.io.Serializable;
  */
 public class Message <T> implements Serializable {
 
+    //pinned to the value computed for the original class so that peers
+    //running older builds can still exchange Messages
+    private static final long serialVersionUID = -2796382480498758906L;
+
     /*
     enum comments use A = Agent, B = BANK, AH = Auction House
-    Most recent count is 35 items, defined in the code in alphab order.
+    Most recent count is 44 items, defined in the code in alphab order.
     Organized in comments below by category. "reply" indicates a reply to
     a message initiated by another entity; "send" indicates a message
     initiated by the entity.
@@ -29,11 +39,13 @@ public class Message <T> implements Serializable {
         ADD_FUNDS                  (send to B)
         CASE_NOT_FOUND             (reply to B or AH)
         CLOSE_REQUEST              (send to B or AH)
+        GET_AUCTION_HOUSE_ITEMS    (send to AH)
         GET_LIST_OF_AUCTION_HOUSES (send to B)
         GET_SECRET_KEY             (send to B)
         JOIN_AUCTION_HOUSE         (send to AH)
         MAKE_BID                   (send to AH)
         OPEN_AGENT_ACCT            (send to B)
+        RENEW_ACCESS_TOKEN         (send to AH, AccessToken renewed by B)
         REQUEST_BALANCE            (send to B)
         TEST_MESSAGE               (send to B)
         TRANSFER_FUNDS             (send to B)
@@ -48,11 +60,25 @@ public class Message <T> implements Serializable {
         CHECK_FUNDS                 (send to B, check A's funds for bid)
         CLOSE_ACCEPTED              (reply to A if OK to close out)
         CLOSE_REJECTED              (reply to A if not OK to close out)
+        GRANT_CREDIT_LINE           (send to B, freeze a budget of A's
+                                     funds for bids)
+        INVENTORY_DELTA             (send to A)
         LIST_OF_AUCTION_HOUSE_ITEMS (reply to A)
         OPEN_AUCTIONHOUSE_ACCT      (send to B)
+        RELEASE_CREDIT_LINE         (send to B, unfreeze unused budget)
+        REQUEST_FAILED              (reply to A, access token refused)
+        REQUEST_SUCCEEDED           (reply to A, access token renewed)
+        SETTLE_CREDIT_LINE          (send to B, winning bid leaves budget)
+        TRANSFER_HOLD               (send to B, freeze new bid, unfreeze
+                                     outbid one)
         UNFREEZE_FUNDS              (send to B)
         UPDATE_AUCTION_ITEMS        (send to A)
 
+    IDS for Messages sent by any entity:
+        CODEC_ACCEPTED              (reply to a TEST_MESSAGE codec offer
+                                     from a CommunicationService; see
+                                     MessageCodec)
+
     IDS for Bank-Sent Messages:
         ACCOUNT_DENIED              (reply to A or AH)
         AGENT_ACCT_CONFIRMED        (reply to A)
@@ -63,6 +89,7 @@ public class Message <T> implements Serializable {
         CHECK_SUCCESS               (reply to AH)
         CLOSE_ACCEPTED              (reply to A or AH)
         CLOSE_REJECTED              (reply to A or AH)
+        CREDIT_LINE_GRANTED         (reply to AH)
         LIST_OF_AUCTION_HOUSES      (reply to A)
         REQUEST_FAILED              (reply to A or AH)
         REQUEST_SUCCEEDED           (reply to A or AH)
@@ -89,20 +116,30 @@ public class Message <T> implements Serializable {
         CLOSE_ACCEPTED,              // B or AH reply to CLOSE_REQUEST
         CLOSE_REJECTED,              // B or AH reply to CLOSE_REQUEST
         CLOSE_REQUEST,               // A send to B or AH; AH send to B
+        CODEC_ACCEPTED,              // All servers reply to a codec offer
+        CREDIT_LINE_GRANTED,         // B reply to GRANT_CREDIT_LINE
+        GET_AUCTION_HOUSE_ITEMS,     // A send to AH
         GET_LIST_OF_AUCTION_HOUSES,  // A send to B
         GET_SECRET_KEY,              // A send to B for AH
+        GRANT_CREDIT_LINE,           // AH send to B
+        INVENTORY_DELTA,             // AH send to A
         JOIN_AUCTION_HOUSE,          // A send to AH
-        LIST_OF_AUCTION_HOUSE_ITEMS, // AH reply to JOIN_AUCTION_HOUSE
+        LIST_OF_AUCTION_HOUSE_ITEMS, // AH reply to JOIN_AUCTION_HOUSE or
+                                     // GET_AUCTION_HOUSE_ITEMS
         LIST_OF_AUCTION_HOUSES,      // B reply to GET_LIST_OF_AUCTION_HOUSES
         MAKE_BID,                    // A send to AH
         OPEN_AGENT_ACCT,             // A send to B
         OPEN_AUCTIONHOUSE_ACCT,      // AH send to B
+        RELEASE_CREDIT_LINE,         // AH send to B
+        RENEW_ACCESS_TOKEN,          // A send to AH
         REQUEST_BALANCE,             // A send to B
-        REQUEST_FAILED,              // B reply to A or AH
-        REQUEST_SUCCEEDED,           // B reply to A or AH
+        REQUEST_FAILED,              // B reply to A or AH; AH reply to A
+        REQUEST_SUCCEEDED,           // B reply to A or AH; AH reply to A
         SECRET_KEY,                  // B reply to GET_SECRET_KEY
-        TEST_MESSAGE,                // A send to B
+        SETTLE_CREDIT_LINE,          // AH send to B
+        TEST_MESSAGE,                // A send to B; also codec offers
         TRANSFER_FUNDS,              // A send to B
+        TRANSFER_HOLD,               // AH send to B
         TRANSFER_SUCCESS,            // B reply to TRANSFER_FUNDS
         UNFREEZE_FUNDS,              // AH send to B
         UPDATE_AUCTION_ITEMS         // AH send to A
@@ -110,6 +147,9 @@ public class Message <T> implements Serializable {
 
     private MessageIdentifier messageIdentifier;
     private T messageContent;
+    //ties a reply to its request when several requests are outstanding on
+    //one connection; 0 means the request expects an in-order reply
+    private long correlationID;
 
     // ****************************** //
     //   Constructor(s)               //
@@ -161,6 +201,23 @@ public class Message <T> implements Serializable {
         this.messageContent = messageContent;
     }
 
+    /**
+     * Returns the correlation ID given to this Message by the
+     * CommunicationService that sent it (0 if none was given).
+     * @return long correlation ID
+     */
+    public long getCorrelationID() {
+        return correlationID;
+    }
+
+    /**
+     * Sets the correlation ID used to match a reply with its request.
+     * @param correlationID long correlation ID, 0 for none
+     */
+    public void setCorrelationID(long correlationID) {
+        this.correlationID = correlationID;
+    }
+
     // ****************************** //
     //   Public Methods               //
     // ****************************** //
@@ -0,0 +1,803 @@
+package Utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, length-prefixed binary encoding for Messages, used in place of
+ * Java serialization once both ends of a connection have agreed to it.
+ * Each payload type carried by a Message (IDRecord, AccountLink,
+ * BankAccount, Bid, AuctionItem, AuctionHouseInventory, InventoryDelta,
+ * CreditLine, AccessToken, InventoryPageRequest, lists of those, Strings
+ * and Integers) has its own
+ * hand-written encoder and decoder, so no class descriptors are ever
+ * sent. Anything else falls back to Java serialization inside the frame.
+ *
+ * A frame is: int length of the rest of the frame, long correlation ID
+ * (see Message.getCorrelationID()), one byte MessageIdentifier ordinal (-1
+ * for a null Message), then the tagged payload. Since every frame names the
+ * request it belongs to, a server that accepted the codec may handle
+ * requests carrying a non-zero correlation ID concurrently and reply to
+ * them in any order.
+ *
+ * Negotiation: right after connecting, a CommunicationService sends a
+ * TEST_MESSAGE whose content is the BINARY_OFFER String, still using Java
+ * serialization. An up-to-date server that agrees replies CODEC_ACCEPTED
+ * and both ends switch to binary frames. Older peers treat the offer as an
+ * ordinary TEST_MESSAGE (or an unknown case), so the connection simply
+ * stays on Java serialization. The offer carries a fingerprint of every
+ * enum whose ordinals go on the wire, so builds with different enums never
+ * agree to the binary codec.
+ *
+ * Every length and count in a frame comes from the peer, so none is
+ * trusted: a frame longer than MAX_FRAME_LENGTH, or a count that is
+ * negative or larger than the bytes left in the frame could hold, is
+ * reported as a StreamCorruptedException before anything is allocated.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (secret keys in AccessTokens)
+ * previously modified: 10/18/26 by thf (lengths and counts checked)
+ * previously modified: 10/18/26 by thf (long secret keys)
+ * previously modified: 10/18/26 by thf (the Bank's HMAC in AccessTokens)
+ * previously modified: 10/18/26 by thf (inventory pages)
+ * previously modified: 10/18/26 by thf (AccessTokens)
+ * previously modified: 10/18/26 by thf (CreditLines)
+ * previously modified: 10/18/26 by thf (BankAccount balances from a snapshot)
+ * previously modified: 10/18/26 by thf (amounts as long cents)
+ * previously modified: 10/18/26 by thf (versions and InventoryDeltas)
+ * previously modified: 10/18/26 by thf (bid close timestamps)
+ * previously modified: 10/18/26 by thf (cached bodies for SharedMessage)
+ * previously modified: 10/18/26 by thf (correlation IDs in frames)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+public class MessageCodec {
+
+    // system property used to opt out of offering the binary codec,
+    // e.g. java -Dpublicauction.codec=java -jar Agent.jar
+    public static final String CODEC_PROPERTY = "publicauction.codec";
+    public static final String JAVA_CODEC = "java";
+
+    public static final String OFFER_PREFIX = "PublicAuction-Codec:";
+    // version 2: frames carry a correlation ID and replies may be sent
+    // out of order, which is what allows requests to be pipelined
+    // version 3: AuctionItems carry their close timestamp and inventories
+    // the server time they were taken at
+    // version 4: items and inventories carry versions; InventoryDeltas
+    // version 5: amounts of money are long cents rather than doubles
+    // version 6: BankAccounts carry total balance and frozen funds only
+    // version 7: CreditLines
+    // version 8: AccessTokens
+    // version 9: InventoryPageRequests; inventories carry a next page token
+    // and their total number of items
+    // version 10: AccessTokens carry a second HMAC, under the Bank's key
+    // version 11: secret keys in Bids, ItemChanges and CreditLines are longs
+    // version 12: AccessTokens carry their secret key;
+    // RENEW_ACCESS_TOKEN
+    private static final int VERSION = 12;
+    public static final String BINARY_OFFER =
+            OFFER_PREFIX + "binary/" + VERSION + "/" + fingerprint();
+
+    // correlation ID + identifier byte
+    private static final int MIN_BODY_LENGTH = 9;
+    // longest frame body accepted from a peer; big inventories are sent a
+    // page at a time (see InventoryPageRequest) well below this
+    public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    // fewest bytes an encoded InventoryDelta.ItemChange and AuctionItem
+    // take, used to bound the counts in front of them
+    private static final int ITEM_CHANGE_LENGTH = 49;
+    private static final int MIN_AUCTION_ITEM_LENGTH = 62;
+    // identifier byte of a frame carrying a null Message
+    private static final byte NULL_MESSAGE = -1;
+
+    // payload tags
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte ID_RECORD = 3;
+    private static final byte ACCOUNT_LINK = 4;
+    private static final byte BANK_ACCOUNT = 5;
+    private static final byte BID = 6;
+    private static final byte AUCTION_ITEM = 7;
+    private static final byte INVENTORY = 8;
+    private static final byte LIST = 9;
+    private static final byte INVENTORY_DELTA = 10;
+    private static final byte CREDIT_LINE = 11;
+    private static final byte ACCESS_TOKEN = 12;
+    private static final byte INVENTORY_PAGE_REQUEST = 13;
+    private static final byte SERIALIZED = 127;
+
+    private static final Message.MessageIdentifier[] IDENTIFIERS =
+            Message.MessageIdentifier.values();
+    private static final Bid.BidState[] BID_STATES = Bid.BidState.values();
+    private static final IDRecord.RecordType[] RECORD_TYPES =
+            IDRecord.RecordType.values();
+    private static final BankAccount.AccountType[] ACCOUNT_TYPES =
+            BankAccount.AccountType.values();
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Only static methods.
+     */
+    private MessageCodec(){
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    //   (negotiation)                //
+    // ****************************** //
+
+    /**
+     * Checks if clients should offer the binary codec, i.e. the
+     * "publicauction.codec" system property is not set to "java".
+     * @return true if the binary codec should be offered
+     */
+    public static boolean isBinaryEnabled(){
+        return !JAVA_CODEC.equalsIgnoreCase(
+                System.getProperty(CODEC_PROPERTY));
+    }
+
+    /**
+     * Returns the Message a client sends to offer the binary codec.
+     * @return TEST_MESSAGE carrying BINARY_OFFER
+     */
+    public static Message<String> newOffer(){
+        return new Message<>(Message.MessageIdentifier.TEST_MESSAGE,
+                BINARY_OFFER);
+    }
+
+    /**
+     * Checks if a received Message is a codec offer (of any version), which
+     * a server answers itself rather than passing it to its protocol.
+     * @param message received Message
+     * @return true if the Message is a codec offer
+     */
+    public static boolean isOffer(Message message){
+        return message != null &&
+                message.getMessageIdentifier() ==
+                        Message.MessageIdentifier.TEST_MESSAGE &&
+                message.getMessageContent() instanceof String &&
+                ((String) message.getMessageContent()).startsWith(
+                        OFFER_PREFIX);
+    }
+
+    /**
+     * Builds the server's answer to a codec offer. The offer is accepted
+     * only if it matches this build's codec exactly; otherwise the reply is
+     * CASE_NOT_FOUND, as an older server would have sent.
+     * @param offer codec offer received from a client
+     * @return reply to send back (still using Java serialization)
+     */
+    public static Message answerOffer(Message offer){
+        if(BINARY_OFFER.equals(offer.getMessageContent())){
+            return new Message<>(Message.MessageIdentifier.CODEC_ACCEPTED,
+                    BINARY_OFFER);
+        }
+        return new Message<>(Message.MessageIdentifier.CASE_NOT_FOUND, null);
+    }
+
+    /**
+     * Checks if a server's reply to our offer means both ends should now
+     * switch to binary frames.
+     * @param reply reply to the offer (may be null)
+     * @return true if the binary codec was accepted
+     */
+    public static boolean isAcceptance(Message reply){
+        return reply != null &&
+                reply.getMessageIdentifier() ==
+                        Message.MessageIdentifier.CODEC_ACCEPTED &&
+                BINARY_OFFER.equals(reply.getMessageContent());
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    //   (framing)                    //
+    // ****************************** //
+
+    /**
+     * Encodes a Message as a complete frame, length prefix included,
+     * carrying the Message's own correlation ID.
+     * @param message Message to encode (may be null)
+     * @return byte[] frame
+     * @throws IOException
+     */
+    public static byte[] encode(Message message) throws IOException {
+        return encode(message,
+                message == null ? 0 : message.getCorrelationID());
+    }
+
+    /**
+     * Encodes a Message as a complete frame, length prefix included. Used
+     * by servers to tag a reply with the correlation ID of its request
+     * without touching the reply Message itself.
+     * @param message Message to encode (may be null)
+     * @param correlationID correlation ID to put in the frame
+     * @return byte[] frame
+     * @throws IOException
+     */
+    public static byte[] encode(Message message, long correlationID)
+            throws IOException {
+        if(message instanceof SharedMessage){
+            return frame(((SharedMessage<?>) message).getFrameBody(),
+                    correlationID);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeLong(correlationID);
+        writeBody(out, message);
+        out.flush();
+
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * Writes one frame to a stream and flushes it, so the frame leaves in a
+     * single write.
+     * @param out stream to write to
+     * @param message Message to send (may be null)
+     * @throws IOException
+     */
+    public static void writeFrame(OutputStream out, Message message)
+            throws IOException {
+        out.write(encode(message));
+        out.flush();
+    }
+
+    /**
+     * Writes one frame tagged with the given correlation ID to a stream and
+     * flushes it.
+     * @param out stream to write to
+     * @param message Message to send (may be null)
+     * @param correlationID correlation ID to put in the frame
+     * @throws IOException
+     */
+    public static void writeFrame(OutputStream out, Message message,
+                                  long correlationID) throws IOException {
+        out.write(encode(message, correlationID));
+        out.flush();
+    }
+
+    /**
+     * Reads one frame from a stream, blocking until it has fully arrived.
+     * @param in stream to read from
+     * @return decoded Frame
+     * @throws IOException
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkFrameLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(body, 0, length);
+    }
+
+    /**
+     * Checks the length prefix of a frame received from a peer.
+     * @param length length of the frame body
+     * @throws StreamCorruptedException if too short or too long
+     */
+    public static void checkFrameLength(int length)
+            throws StreamCorruptedException {
+        if(length < MIN_BODY_LENGTH || length > MAX_FRAME_LENGTH){
+            throw new StreamCorruptedException("Bad frame length " + length);
+        }
+    }
+
+    /**
+     * Decodes the body of a frame (everything after the length prefix).
+     * The correlation ID is also set on the decoded Message.
+     * @param body array holding the frame body
+     * @param offset start of the body in the array
+     * @param length length of the body
+     * @return decoded Frame
+     * @throws IOException
+     */
+    public static Frame decode(byte[] body, int offset, int length)
+            throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(body, offset, length));
+        long correlationID = in.readLong();
+        byte identifier = in.readByte();
+        if(identifier == NULL_MESSAGE){
+            return new Frame(correlationID, null);
+        }
+        Message message = new Message<>(
+                IDENTIFIERS[ordinal(identifier, IDENTIFIERS.length)],
+                readPayload(in));
+        message.setCorrelationID(correlationID);
+        return new Frame(correlationID, message);
+    }
+
+    /**
+     * Encodes the part of a frame that does not depend on the request: the
+     * identifier byte and the payload. Used by SharedMessage, which encodes
+     * this once and reuses it for every frame it is sent in.
+     * @param message Message to encode (may be null)
+     * @return byte[] frame body without length and correlation ID
+     * @throws IOException
+     */
+    static byte[] encodeBody(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeBody(out, message);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * One decoded frame: the Message it carried (possibly null) and the
+     * correlation ID it was tagged with.
+     */
+    public static class Frame {
+
+        private final long correlationID;
+        private final Message message;
+
+        Frame(long correlationID, Message message){
+            this.correlationID = correlationID;
+            this.message = message;
+        }
+
+        /**
+         * @return correlation ID of the frame, 0 if none was given
+         */
+        public long getCorrelationID(){
+            return correlationID;
+        }
+
+        /**
+         * @return Message carried by the frame, possibly null
+         */
+        public Message getMessage(){
+            return message;
+        }
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    //   (payload encoders)           //
+    // ****************************** //
+
+    /**
+     * Builds a frame around an already encoded body.
+     */
+    private static byte[] frame(byte[] body, long correlationID){
+        int length = 8 + body.length;
+        byte[] frame = new byte[4 + length];
+        for(int i = 0; i < 4; i++){
+            frame[i] = (byte) (length >>> (24 - 8 * i));
+        }
+        for(int i = 0; i < 8; i++){
+            frame[4 + i] = (byte) (correlationID >>> (56 - 8 * i));
+        }
+        System.arraycopy(body, 0, frame, 12, body.length);
+        return frame;
+    }
+
+    /**
+     * Writes the identifier byte (NULL_MESSAGE for a null Message) and the
+     * tagged payload.
+     */
+    private static void writeBody(DataOutputStream out, Message message)
+            throws IOException {
+        if(message == null){
+            out.writeByte(NULL_MESSAGE);
+        }else{
+            out.writeByte(message.getMessageIdentifier().ordinal());
+            writePayload(out, message.getMessageContent());
+        }
+    }
+
+    /**
+     * Writes a tagged payload, choosing the encoder by the payload's class.
+     */
+    private static void writePayload(DataOutputStream out, Object content)
+            throws IOException {
+        if(content == null){
+            out.writeByte(NULL);
+        }else if(content instanceof String){
+            out.writeByte(STRING);
+            writeString(out, (String) content);
+        }else if(content instanceof Integer){
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) content);
+        }else if(content instanceof IDRecord){
+            out.writeByte(ID_RECORD);
+            writeIDRecord(out, (IDRecord) content);
+        }else if(content instanceof AccountLink){
+            out.writeByte(ACCOUNT_LINK);
+            AccountLink link = (AccountLink) content;
+            out.writeInt(link.getAGENT_ACCOUNT_NUMBER());
+            out.writeInt(link.getAH_ACCOUNT_NUMBER());
+        }else if(content instanceof BankAccount){
+            out.writeByte(BANK_ACCOUNT);
+            writeBankAccount(out, (BankAccount) content);
+        }else if(content instanceof Bid){
+            out.writeByte(BID);
+            writeBid(out, (Bid) content);
+        }else if(content instanceof AuctionItem){
+            out.writeByte(AUCTION_ITEM);
+            writeAuctionItem(out, (AuctionItem) content);
+        }else if(content instanceof AuctionHouseInventory){
+            out.writeByte(INVENTORY);
+            AuctionHouseInventory inventory = (AuctionHouseInventory) content;
+            out.writeInt(inventory.getAccountNumber());
+            out.writeLong(inventory.getServerTime());
+            out.writeLong(inventory.getVersion());
+            out.writeLong(inventory.getNextPageToken());
+            out.writeInt(inventory.getTotalItems());
+            writeItemList(out, inventory.getAuctions());
+        }else if(content instanceof InventoryDelta){
+            out.writeByte(INVENTORY_DELTA);
+            writeInventoryDelta(out, (InventoryDelta) content);
+        }else if(content instanceof CreditLine){
+            out.writeByte(CREDIT_LINE);
+            CreditLine creditLine = (CreditLine) content;
+            out.writeLong(creditLine.getSecretKey());
+            out.writeLong(creditLine.getBudgetCents());
+            out.writeLong(creditLine.getDurationMillis());
+        }else if(content instanceof AccessToken){
+            out.writeByte(ACCESS_TOKEN);
+            AccessToken token = (AccessToken) content;
+            out.writeInt(token.getAgentAcctNum());
+            out.writeInt(token.getHouseAcctNum());
+            out.writeLong(token.getSecretKey());
+            out.writeLong(token.getExpiresAtMillis());
+            byte[] mac = token.getMac();
+            out.writeByte(mac.length);
+            out.write(mac);
+            byte[] bankMac = token.getBankMac();
+            out.writeByte(bankMac.length);
+            out.write(bankMac);
+        }else if(content instanceof InventoryPageRequest){
+            out.writeByte(INVENTORY_PAGE_REQUEST);
+            InventoryPageRequest request = (InventoryPageRequest) content;
+            out.writeInt(request.getFromItemID());
+            out.writeInt(request.getToItemID());
+            out.writeInt(request.getPageSize());
+            out.writeLong(request.getPageToken());
+        }else if(content instanceof List){
+            out.writeByte(LIST);
+            List<?> list = (List<?>) content;
+            out.writeInt(list.size());
+            for(Object element : list){
+                writePayload(out, element);
+            }
+        }else{
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(content);
+            objectOut.flush();
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        out.writeBoolean(s != null);
+        if(s != null){
+            out.writeUTF(s);
+        }
+    }
+
+    private static void writeIDRecord(DataOutputStream out, IDRecord record)
+            throws IOException {
+        out.writeByte(record.getRecordType().ordinal());
+        writeString(out, record.getName());
+        out.writeLong(record.getInitialBalanceCents());
+        out.writeInt(record.getNumericalID());
+        writeString(out, record.getHostname());
+        out.writeInt(record.getPortNumber());
+    }
+
+    private static void writeBankAccount(DataOutputStream out,
+                                         BankAccount account)
+            throws IOException {
+        out.writeByte(account.getAccountType().ordinal());
+        writeString(out, account.getUserName());
+        out.writeInt(account.getAccountNumber());
+        BankAccount.Balances balances = account.getBalances();
+        out.writeLong(balances.getTotalBalanceCents());
+        out.writeLong(balances.getTotalFrozenCents());
+    }
+
+    private static void writeBid(DataOutputStream out, Bid bid)
+            throws IOException {
+        out.writeByte(bid.getBidState().ordinal());
+        out.writeLong(bid.getMinBidCents());
+        out.writeLong(bid.getCurrentBidCents());
+        out.writeLong(bid.getSecretKey());
+        out.writeLong(bid.getProposedBidCents());
+    }
+
+    private static void writeAuctionItem(DataOutputStream out,
+                                         AuctionItem item)
+            throws IOException {
+        out.writeInt(item.getHouseID());
+        out.writeInt(item.getItemID());
+        writeString(out, item.getItemName());
+        writeBid(out, item.getBid());
+        out.writeInt(item.getTimeLeftOnBid());
+        out.writeLong(item.getCloseTimestamp());
+        out.writeLong(item.getVersion());
+    }
+
+    private static void writeInventoryDelta(DataOutputStream out,
+                                            InventoryDelta delta)
+            throws IOException {
+        out.writeInt(delta.getAccountNumber());
+        out.writeLong(delta.getBaseVersion());
+        out.writeLong(delta.getVersion());
+        out.writeLong(delta.getServerTime());
+        List<InventoryDelta.ItemChange> changes = delta.getChanges();
+        out.writeInt(changes.size());
+        for(InventoryDelta.ItemChange change : changes){
+            out.writeInt(change.getItemID());
+            out.writeLong(change.getVersion());
+            out.writeByte(change.getBidState().ordinal());
+            out.writeLong(change.getMinBidCents());
+            out.writeLong(change.getCurrentBidCents());
+            out.writeLong(change.getSecretKey());
+            out.writeInt(change.getTimeLeftOnBid());
+            out.writeLong(change.getCloseTimestamp());
+        }
+    }
+
+    private static void writeItemList(DataOutputStream out,
+                                      List<AuctionItem> items)
+            throws IOException {
+        if(items == null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(items.size());
+        for(AuctionItem item : items){
+            writeAuctionItem(out, item);
+        }
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    //   (payload decoders)           //
+    // ****************************** //
+
+    /**
+     * Reads a tagged payload written by writePayload().
+     */
+    private static Object readPayload(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch(tag){
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case ID_RECORD:
+                return readIDRecord(in);
+            case ACCOUNT_LINK:
+                return new AccountLink(in.readInt(), in.readInt());
+            case BANK_ACCOUNT:
+                return readBankAccount(in);
+            case BID:
+                return readBid(in);
+            case AUCTION_ITEM:
+                return readAuctionItem(in);
+            case INVENTORY:
+                int accountNumber = in.readInt();
+                long serverTime = in.readLong();
+                long version = in.readLong();
+                long nextPageToken = in.readLong();
+                int totalItems = in.readInt();
+                AuctionHouseInventory inventory = new AuctionHouseInventory
+                        (accountNumber, readItemList(in), serverTime);
+                inventory.setVersion(version);
+                inventory.setNextPageToken(nextPageToken);
+                inventory.setTotalItems(totalItems);
+                return inventory;
+            case INVENTORY_DELTA:
+                return readInventoryDelta(in);
+            case CREDIT_LINE:
+                return new CreditLine(in.readLong(), in.readLong(),
+                        in.readLong());
+            case ACCESS_TOKEN:
+                int agentAcctNum = in.readInt();
+                int houseAcctNum = in.readInt();
+                long tokenSecretKey = in.readLong();
+                long expiresAtMillis = in.readLong();
+                byte[] mac = new byte[in.readUnsignedByte()];
+                in.readFully(mac);
+                byte[] bankMac = new byte[in.readUnsignedByte()];
+                in.readFully(bankMac);
+                return new AccessToken(agentAcctNum, houseAcctNum,
+                        tokenSecretKey, expiresAtMillis, mac, bankMac);
+            case INVENTORY_PAGE_REQUEST:
+                return new InventoryPageRequest(in.readInt(), in.readInt(),
+                        in.readInt(), in.readLong());
+            case LIST:
+                int size = readCount(in, 1);
+                ArrayList<Object> list = new ArrayList<>(size);
+                for(int i = 0; i < size; i++){
+                    list.add(readPayload(in));
+                }
+                return list;
+            case SERIALIZED:
+                byte[] bytes = new byte[readCount(in, 1)];
+                in.readFully(bytes);
+                try{
+                    return new ObjectInputStream(
+                            new ByteArrayInputStream(bytes)).readObject();
+                }catch(ClassNotFoundException cnf){
+                    throw new IOException(cnf);
+                }
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static IDRecord readIDRecord(DataInputStream in)
+            throws IOException {
+        IDRecord.RecordType recordType =
+                RECORD_TYPES[ordinal(in.readByte(), RECORD_TYPES.length)];
+        String name = readString(in);
+        long initialBalance = in.readLong();
+        int numericalID = in.readInt();
+        String hostname = readString(in);
+        int portNumber = in.readInt();
+
+        IDRecord record = new IDRecord(recordType, name, 0,
+                hostname, portNumber);
+        record.setInitialBalanceCents(initialBalance);
+        record.setNumericalID(numericalID);
+        return record;
+    }
+
+    private static BankAccount readBankAccount(DataInputStream in)
+            throws IOException {
+        BankAccount.AccountType accountType =
+                ACCOUNT_TYPES[ordinal(in.readByte(), ACCOUNT_TYPES.length)];
+        String userName = readString(in);
+        int accountNumber = in.readInt();
+        return new BankAccount(accountType, userName, accountNumber,
+                in.readLong(), in.readLong());
+    }
+
+    private static Bid readBid(DataInputStream in) throws IOException {
+        Bid.BidState bidState =
+                BID_STATES[ordinal(in.readByte(), BID_STATES.length)];
+        long minBid = in.readLong();
+        long currentBid = in.readLong();
+        long secretKey = in.readLong();
+        long proposedBid = in.readLong();
+        return new Bid(bidState, minBid, currentBid, secretKey, proposedBid);
+    }
+
+    private static AuctionItem readAuctionItem(DataInputStream in)
+            throws IOException {
+        int houseID = in.readInt();
+        int itemID = in.readInt();
+        String itemName = readString(in);
+        Bid bid = readBid(in);
+        AuctionItem item = new AuctionItem(houseID, itemID, itemName, bid);
+        item.setTimeLeftOnBid(in.readInt());
+        item.setCloseTimestamp(in.readLong());
+        item.setVersion(in.readLong());
+        return item;
+    }
+
+    private static InventoryDelta readInventoryDelta(DataInputStream in)
+            throws IOException {
+        int accountNumber = in.readInt();
+        long baseVersion = in.readLong();
+        long version = in.readLong();
+        long serverTime = in.readLong();
+        int size = readCount(in, ITEM_CHANGE_LENGTH);
+        List<InventoryDelta.ItemChange> changes = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            changes.add(new InventoryDelta.ItemChange(in.readInt(),
+                    in.readLong(),
+                    BID_STATES[ordinal(in.readByte(), BID_STATES.length)],
+                    in.readLong(),
+                    in.readLong(), in.readLong(), in.readInt(),
+                    in.readLong()));
+        }
+        return new InventoryDelta(accountNumber, baseVersion, version,
+                changes, serverTime);
+    }
+
+    private static List<AuctionItem> readItemList(DataInputStream in)
+            throws IOException {
+        in.mark(4);
+        if(in.readInt() == -1){
+            return null;
+        }
+        in.reset();
+        int size = readCount(in, MIN_AUCTION_ITEM_LENGTH);
+        List<AuctionItem> items = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            items.add(readAuctionItem(in));
+        }
+        return items;
+    }
+
+    /**
+     * Reads a count of elements and checks it against the bytes left in
+     * the frame, so a corrupt count cannot make us allocate more than the
+     * frame itself could ever fill.
+     * @param in stream over the rest of the frame
+     * @param minElementLength fewest bytes one element takes
+     * @return int count, at least 0
+     * @throws StreamCorruptedException if the count cannot be right
+     */
+    private static int readCount(DataInputStream in, int minElementLength)
+            throws IOException {
+        int count = in.readInt();
+        // available() is exact for the ByteArrayInputStream of a frame
+        if(count < 0 || (long) count * minElementLength > in.available()){
+            throw new StreamCorruptedException("Bad count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Checks an enum ordinal read from a frame.
+     * @param ordinal byte read from the frame
+     * @param numValues number of values of the enum
+     * @return int ordinal, within the enum's values
+     * @throws StreamCorruptedException if there is no such value
+     */
+    private static int ordinal(byte ordinal, int numValues)
+            throws StreamCorruptedException {
+        if(ordinal < 0 || ordinal >= numValues){
+            throw new StreamCorruptedException("Bad ordinal " + ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Hash of the names of every enum whose ordinals are sent in a frame.
+     * Two builds agree on the binary codec only if these match.
+     * @return String fingerprint
+     */
+    private static String fingerprint(){
+        StringBuilder names = new StringBuilder();
+        for(Enum<?>[] values : new Enum<?>[][]{
+                Message.MessageIdentifier.values(), Bid.BidState.values(),
+                IDRecord.RecordType.values(),
+                BankAccount.AccountType.values()}){
+            for(Enum<?> value : values){
+                names.append(value.name()).append(',');
+            }
+            names.append(';');
+        }
+        return Integer.toHexString(names.toString().hashCode());
+    }
+}
@@ -0,0 +1,83 @@
+package Utility;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money: every amount of money handled by the Bank, the
+ * AuctionHouses and the Agents is a long number of cents. Cents are exact,
+ * so sums and differences never pick up floating-point error, comparisons
+ * such as "no frozen funds" are exact, and nothing needs rounding (or
+ * allocating) after each operation. An amount is a plain long, so it is
+ * immutable and costs nothing to create; this class only holds the
+ * conversions to and from the dollar values users type in and see, which
+ * should happen only at the edges (GUI input and display, and Java
+ * serialization with peers running older builds that still send doubles).
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (ofDollars rounds halves away from zero)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Liam Brady (lb)
+ * @author Warren D. Craft (wdc)
+ * @author Tyler Fenske (thf)
+ */
+public final class Money {
+
+    public static final long CENTS_PER_DOLLAR = 100;
+    //dollar amounts at least this large do not fit in a long of cents
+    private static final double MAX_DOLLARS =
+            (double) Long.MAX_VALUE / CENTS_PER_DOLLAR;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Not instantiated; amounts are long cents.
+     */
+    private Money(){
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Converts a dollar amount to cents, rounding to the nearest cent
+     * (halves away from zero). The amount is rounded as it is written
+     * (see Double.toString), not as the nearest double: 1.005 is stored
+     * as 1.00499999..., so Math.round(1.005 * 100) gives 100 rather than
+     * 101, and -0.005 would round up to 0. NaN, infinite and out-of-range
+     * amounts are left to Math.round(), which gives 0 or the nearest long.
+     * @param dollars double amount in dollars, e.g. 12.345
+     * @return long amount in cents, e.g. 1235 (and -1 for -0.005)
+     */
+    public static long ofDollars(double dollars){
+        if(!(Math.abs(dollars) < MAX_DOLLARS)){
+            return Math.round(dollars * CENTS_PER_DOLLAR);
+        }
+        return BigDecimal.valueOf(dollars).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * Converts an amount in cents to dollars, for display.
+     * @param cents long amount in cents
+     * @return double amount in dollars
+     */
+    public static double toDollars(long cents){
+        return (double) cents / CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Formats an amount in cents as dollars with exactly two decimal
+     * places, e.g. 1235 as "12.35" and -5 as "-0.05".
+     * @param cents long amount in cents
+     * @return String amount in dollars
+     */
+    public static String toString(long cents){
+        long whole = Math.abs(cents / CENTS_PER_DOLLAR);
+        long fraction = Math.abs(cents % CENTS_PER_DOLLAR);
+        return (cents < 0 ? "-" : "") + whole +
+                (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
@@ -1,18 +1,31 @@
 package Utility;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
- * NotificationServer waits for a connection to be made, then creates a new
- * thread for handling the back and forth messaging between this server and the
- * client. This allows for the server to continue listening for other clients
- * trying to connect.
+ * NotificationServer waits for a connection to be made, then hands the
+ * back and forth messaging between this server and the client to its
+ * Executor (by default one virtual thread per connection, see
+ * ExecutorFactory). This allows for the server to continue listening for
+ * other clients trying to connect.
  * created: 11/23/18 by thf
- * last modified: 11/23/18 by thf
+ * last modified: 10/18/26 by thf (closing sockets, accept back-off)
+ * previously modified: 10/18/26 by thf (asynchronous replies)
+ * previously modified: 10/18/26 by thf (cached bytes for SharedMessages)
+ * previously modified: 10/18/26 by thf (concurrent pipelined requests)
+ * previously modified: 10/18/26 by thf (answering binary codec offers)
+ * previously modified: 10/18/26 by thf (pluggable Executor for connections)
+ * previously modified: 10/18/26 by thf (createServer() for selector mode)
  * previously modified: 11/23/18 by thf (creation)
  * @author Tyler Fenske (thf)
  * @author Warren D. Craft (wdc)
@@ -20,7 +33,17 @@ import java.net.Socket;
  */
 public class NotificationServer implements Runnable {
 
+    // system property used to opt in to the SelectorNotificationServer,
+    // e.g. java -Dpublicauction.server=selector -jar Bank.jar
+    public static final String SERVER_MODE_PROPERTY = "publicauction.server";
+    public static final String SELECTOR_MODE = "selector";
+
+    // longest pause between attempts to accept while accept() keeps
+    // failing (e.g. when the process is out of file descriptors)
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
     private ServerSocket serverSocket;
+    private Executor executor;
     //protected to allow for the child class "Notification" to access
     //the protocol
     protected PublicAuctionProtocol protocol;
@@ -30,16 +53,80 @@ public class NotificationServer implements Runnable {
     // ****************************** //
 
     /**
-     * A server that creates a new thread for each connection made to the
-     * server to allow for multiple synchronous client access.
+     * A server that runs each connection made to the server on its own
+     * (virtual, where available) thread to allow for multiple synchronous
+     * client access.
      * @param portNumber port number used to host this server on.
      * @param protocol protocol for handling incoming messages.
      * @throws IOException
      */
     public NotificationServer(int portNumber, PublicAuctionProtocol protocol)
             throws IOException {
+        this(portNumber, protocol,
+                ExecutorFactory.newPerTaskExecutor("notification"));
+    }
+
+    /**
+     * A server that runs each connection made to the server as a task on
+     * the given Executor. Each task blocks on its client for as long as the
+     * connection is open, so the Executor must not bound the number of
+     * concurrently running tasks below the number of expected clients.
+     * @param portNumber port number used to host this server on.
+     * @param protocol protocol for handling incoming messages.
+     * @param executor Executor that runs one Notification per connection
+     * @throws IOException
+     */
+    public NotificationServer(int portNumber, PublicAuctionProtocol protocol,
+                              Executor executor)
+            throws IOException {
         serverSocket = new ServerSocket(portNumber);
         this.protocol = protocol;
+        this.executor = executor;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Creates the server a Bank, AuctionHouse or Agent uses to listen for
+     * incoming connections. This is a thread-per-connection
+     * NotificationServer unless the "publicauction.server" system property
+     * is set to "selector", in which case a SelectorNotificationServer is
+     * returned instead. Either way the result is started on its own thread
+     * and drives the same protocol.
+     * @param portNumber port number used to host the server on.
+     * @param protocol protocol for handling incoming messages.
+     * @return Runnable server, ready to be started on a thread
+     * @throws IOException
+     */
+    public static Runnable createServer(int portNumber,
+                                        PublicAuctionProtocol protocol)
+            throws IOException {
+        return createServer(portNumber, protocol,
+                ExecutorFactory.newPerTaskExecutor("notification"));
+    }
+
+    /**
+     * As createServer(int, PublicAuctionProtocol), but with the Executor
+     * that the thread-per-connection NotificationServer runs its
+     * connections on. The Executor is not used in selector mode, which
+     * keeps its own event loops and worker pool.
+     * @param portNumber port number used to host the server on.
+     * @param protocol protocol for handling incoming messages.
+     * @param executor Executor for connection handlers
+     * @return Runnable server, ready to be started on a thread
+     * @throws IOException
+     */
+    public static Runnable createServer(int portNumber,
+                                        PublicAuctionProtocol protocol,
+                                        Executor executor)
+            throws IOException {
+        if(SELECTOR_MODE.equalsIgnoreCase(
+                System.getProperty(SERVER_MODE_PROPERTY))){
+            return new SelectorNotificationServer(portNumber, protocol);
+        }
+        return new NotificationServer(portNumber, protocol, executor);
     }
 
     // ****************************** //
@@ -48,29 +135,70 @@ public class NotificationServer implements Runnable {
 
     /**
      * Waits for a socket connection request from client. Once a connection
-     * is made, sends socket to a new thread for message passing — then
-     * proceeds to wait for new incoming socket connection requests.
+     * is made, hands the socket to the Executor for message passing — then
+     * proceeds to wait for new incoming socket connection requests. Stops
+     * once the server socket is closed; while accept() keeps failing for
+     * any other reason, waits longer and longer between attempts.
      */
     @Override
     public void run(){
-        while(true){
+        int failures = 0;
+        while(!serverSocket.isClosed()){
             try{
                 Socket clientSocket = serverSocket.accept();
+                failures = 0;
                 Notification notification = new Notification(clientSocket);
-                Thread thread = new Thread(notification);
-                thread.start();
+                executor.execute(notification);
             }catch(IOException e){
-                e.printStackTrace();
+                if(serverSocket.isClosed()){
+                    return;
+                }
+                if(!backOffAfterAcceptFailure(e, ++failures)){
+                    return;
+                }
             }
         }
     }
 
+    // ****************************** //
+    //   Utility Fxns                 //
+    // ****************************** //
+
+    /**
+     * Pauses after accept() has failed, for twice as long as after the
+     * previous failure in a row (up to MAX_ACCEPT_BACKOFF_MILLIS). Only
+     * the first failure in a row is printed. Shared with the
+     * SelectorNotificationServer.
+     * @param e the exception accept() threw
+     * @param failures number of failures in a row, including this one
+     * @return false if the thread was interrupted while pausing, in which
+     *         case the server should stop accepting
+     */
+    static boolean backOffAfterAcceptFailure(IOException e, int failures){
+        if(failures == 1){
+            e.printStackTrace();
+        }
+        try{
+            Thread.sleep(Math.min(MAX_ACCEPT_BACKOFF_MILLIS,
+                    10L << Math.min(failures - 1, 10)));
+            return true;
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Provides encapsulated method for establishing the socket and
      * ObjectOutputStream & ObjectInputStream to a requesting client.
      * Used to receive incoming messages from clients, then send a response.
+     * Switches to binary frames if the client offers the binary codec.
      * created: 11/23/18 by thf
-     * last modified: 11/23/18 by thf
+     * last modified: 10/18/26 by thf (closing the socket)
+     * previously modified: 10/18/26 by thf (asynchronous replies)
+     * previously modified: 10/18/26 by thf (cached bytes for SharedMessages)
+     * previously modified: 10/18/26 by thf (concurrent pipelined requests)
+     * previously modified: 10/18/26 by thf (answering binary codec offers)
      * previously modified: 11/23/18 by thf (creation)
      * @author Tyler Fenske (thf)
      * @author Warren D. Craft (wdc)
@@ -87,17 +215,15 @@ public class NotificationServer implements Runnable {
         // ****************************** //
 
         /**
-         * Thread is created to handle message passing between a client
-         * and this server.
+         * Task is created to handle message passing between a client
+         * and this server. The object streams are opened once the task
+         * runs, so a slow client cannot hold up the accepting thread.
          * @param clientSocket socket that holds the connection information
          *                     between the client and this server.
          * @throws IOException
          */
         public Notification(Socket clientSocket) throws IOException{
             this.clientSocket = clientSocket;
-            out = new ObjectOutputStream(clientSocket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(clientSocket.getInputStream());
         }
 
         // ****************************** //
@@ -108,21 +234,60 @@ public class NotificationServer implements Runnable {
          * Repeatedly checks for an incoming message. Upon arrival of a new
          * message, sends the message to be handled through this servers
          * protocol, then replies to the message received with a message
-         * generated by the aforementioned protocol.
+         * generated by the aforementioned protocol. A binary codec offer
+         * is answered here rather than by the protocol; once accepted, the
+         * rest of the connection is handled by runBinary(). The socket is
+         * closed however the conversation ends.
          */
         @Override
         public void run(){
+            try{
+                converse();
+            }finally{
+                try{
+                    clientSocket.close();
+                }catch(IOException io){
+                    // already closed
+                }
+            }
+        }
+
+        /**
+         * The message loop run() wraps: opens the object streams, then
+         * handles messages until the client closes the connection.
+         */
+        private void converse(){
+            try{
+                out = new ObjectOutputStream(clientSocket.getOutputStream());
+                out.flush();
+                in = new ObjectInputStream(clientSocket.getInputStream());
+            }catch(IOException io){
+                return;
+            }
+
             Message receivedMessage = null;
             do{
                 try{
                     receivedMessage = (Message) in.readObject();
 
+                    if(MessageCodec.isOffer(receivedMessage)){
+                        Message answer =
+                                MessageCodec.answerOffer(receivedMessage);
+                        out.writeObject(answer);
+                        out.flush();
+                        if(MessageCodec.isAcceptance(answer)){
+                            runBinary();
+                            return;
+                        }
+                        out.reset();
+                        continue;
+                    }
+
                     Message replyMessage =
                             protocol.handleMessage(receivedMessage);
 
-                    out.writeObject(replyMessage);
-                    out.flush();
-                    out.reset();
+                    SharedMessage.writeObject(out,
+                            clientSocket.getOutputStream(), replyMessage);
 
                 }catch(ClassNotFoundException cnf){
                     cnf.printStackTrace();
@@ -131,5 +296,79 @@ public class NotificationServer implements Runnable {
                 }
             }while(receivedMessage != null);
         }
+
+        /**
+         * Message loop used after the binary codec has been accepted: reads
+         * a frame, handles it through the protocol, and replies with a
+         * frame tagged with the request's correlation ID, until the client
+         * closes the connection. Requests carrying a correlation ID are
+         * independent of one another, so each is handled as its own task
+         * on the server's Executor; the others are handled in order here.
+         */
+        private void runBinary(){
+            Message receivedMessage = null;
+            try{
+                DataInputStream binaryIn = new DataInputStream(
+                        new BufferedInputStream(clientSocket.getInputStream()));
+                DataOutputStream binaryOut = new DataOutputStream(
+                        new BufferedOutputStream(
+                                clientSocket.getOutputStream()));
+                do{
+                    MessageCodec.Frame frame =
+                            MessageCodec.readFrame(binaryIn);
+                    receivedMessage = frame.getMessage();
+
+                    if(receivedMessage != null &&
+                            frame.getCorrelationID() != 0){
+                        Message request = receivedMessage;
+                        executor.execute(() ->
+                                reply(binaryOut, request,
+                                        frame.getCorrelationID()));
+                    }else{
+                        reply(binaryOut, receivedMessage, 0);
+                    }
+                }while(receivedMessage != null);
+            }catch(IOException io){
+                // client closed the connection
+            }
+        }
+
+        /**
+         * Handles one request through the protocol and writes the reply as
+         * a single frame. A request with a correlation ID may be answered
+         * asynchronously (see PublicAuctionProtocol.handleMessageAsync());
+         * its reply is then written on the Executor once complete, rather
+         * than on whichever thread completed it. Any other request is
+         * waited for, so replies keep the order of requests.
+         */
+        private void reply(DataOutputStream binaryOut, Message request,
+                           long correlationID){
+            CompletableFuture<Message> replyMessage = protocol
+                    .handleMessageAsync(request).toCompletableFuture();
+            if(correlationID == 0 || replyMessage.isDone()){
+                write(binaryOut, replyMessage.join(), correlationID);
+            }else{
+                replyMessage.thenAcceptAsync(completed ->
+                        write(binaryOut, completed, correlationID), executor);
+            }
+        }
+
+        /**
+         * Writes a reply as a single frame. Replies from concurrent
+         * requests are serialized on the output stream.
+         */
+        private void write(DataOutputStream binaryOut, Message replyMessage,
+                           long correlationID){
+            try{
+                byte[] frame = MessageCodec.encode(replyMessage,
+                        correlationID);
+                synchronized(binaryOut){
+                    binaryOut.write(frame);
+                    binaryOut.flush();
+                }
+            }catch(IOException io){
+                // client closed the connection
+            }
+        }
     }
 }
@@ -0,0 +1,585 @@
+package Utility;
+
+import java.io.StreamCorruptedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds where one object ends in a Java serialization stream without
+ * deserializing it, following the grammar of the Object Serialization
+ * Stream Protocol: it only reads type codes, lengths and class
+ * descriptors, and skips over everything else. Used by the
+ * SelectorNotificationServer to tell when a Message sent by an
+ * ObjectOutputStream has fully arrived, so it is deserialized exactly once.
+ *
+ * Scanning picks up where the last call stopped, so the bytes of a large
+ * Message arriving a piece at a time are each looked at once. The scanner
+ * keeps its own handle table, cleared for every object, just as each
+ * Message is read by a fresh ObjectInputStream.
+ * Not thread-safe; each connection has its own.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+class ObjectStreamScanner {
+
+    private static final byte TC_NULL = 0x70;
+    private static final byte TC_REFERENCE = 0x71;
+    private static final byte TC_CLASSDESC = 0x72;
+    private static final byte TC_OBJECT = 0x73;
+    private static final byte TC_STRING = 0x74;
+    private static final byte TC_ARRAY = 0x75;
+    private static final byte TC_CLASS = 0x76;
+    private static final byte TC_BLOCKDATA = 0x77;
+    private static final byte TC_ENDBLOCKDATA = 0x78;
+    private static final byte TC_RESET = 0x79;
+    private static final byte TC_BLOCKDATALONG = 0x7A;
+    private static final byte TC_EXCEPTION = 0x7B;
+    private static final byte TC_LONGSTRING = 0x7C;
+    private static final byte TC_PROXYCLASSDESC = 0x7D;
+    private static final byte TC_ENUM = 0x7E;
+    private static final int BASE_WIRE_HANDLE = 0x7E0000;
+
+    private static final int SC_WRITE_METHOD = 0x01;
+    private static final int SC_SERIALIZABLE = 0x02;
+    private static final int SC_EXTERNALIZABLE = 0x04;
+    private static final int SC_BLOCK_DATA = 0x08;
+
+    //what a Step on the stack is reading
+    private static final int CONTENT = 0;
+    private static final int CONTENTS = 1;
+    private static final int CLASS_DESC = 2;
+    private static final int OBJECT = 3;
+    private static final int ARRAY = 4;
+    private static final int ENUM = 5;
+    private static final int CLASS = 6;
+    private static final int ANNOTATION = 7;
+    private static final int SKIP = 8;
+
+    private final Deque<Step> stack = new ArrayDeque<>();
+    //class descriptor for each handle, null for handles of other objects
+    private final List<ClassInfo> handles = new ArrayList<>();
+    //offset of the next byte to look at
+    private int position = 0;
+    private boolean started = false;
+    //descriptor read by the CLASS_DESC step that finished last
+    private ClassInfo lastDesc;
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Scans the bytes buffered so far for the end of the next object,
+     * starting where the last call left off. The buffer must start with
+     * the bytes the last call was given (the first object's, if the last
+     * call returned a length, being dropped), followed by any new ones.
+     * Reset markers ahead of the object are counted as part of it.
+     * @param buffer bytes received so far, without the stream header
+     * @param length number of bytes in the buffer
+     * @return number of bytes making up the next object, or -1 if it has
+     *         not fully arrived
+     * @throws StreamCorruptedException if the bytes do not follow the
+     *         serialization grammar
+     */
+    int scan(byte[] buffer, int length) throws StreamCorruptedException {
+        if(!started){
+            while(position < length && buffer[position] == TC_RESET){
+                position++;
+            }
+            if(position == length){
+                return -1;
+            }
+            handles.clear();
+            stack.push(new Step(CONTENT));
+            started = true;
+        }
+
+        while(!stack.isEmpty()){
+            if(!step(buffer, length)){
+                return -1;
+            }
+        }
+
+        int end = position;
+        position = 0;
+        started = false;
+        handles.clear();
+        lastDesc = null;
+        return end;
+    }
+
+    // ****************************** //
+    //   Private Methods              //
+    // ****************************** //
+
+    /**
+     * Takes the step on top of the stack as far as the bytes allow. A step
+     * only moves past bytes once all of them have arrived, so a step that
+     * runs out can simply be tried again when more come in.
+     * @return false if more bytes are needed
+     */
+    private boolean step(byte[] buffer, int length)
+            throws StreamCorruptedException {
+        Step step = stack.peek();
+        int available = length - position;
+
+        switch(step.kind){
+            case CONTENT:
+                return content(buffer, length);
+
+            case CONTENTS:
+                if(step.remaining == 0){
+                    stack.pop();
+                }else{
+                    step.remaining--;
+                    stack.push(new Step(CONTENT));
+                }
+                return true;
+
+            case CLASS_DESC:
+                return classDesc(step, buffer, length);
+
+            case OBJECT:
+                return object(step);
+
+            case ARRAY:
+                if(step.stage == 0){
+                    step.desc = lastDesc;
+                    handles.add(null);
+                    step.stage = 1;
+                }
+                if(available < 4){
+                    return false;
+                }
+                int size = readInt(buffer, position);
+                int width = step.desc == null ? -1 :
+                        fieldWidth(step.desc.elementType);
+                if(size < 0 || width < 0){
+                    throw new StreamCorruptedException("Bad array");
+                }
+                position += 4;
+                stack.pop();
+                if(width == 0){
+                    stack.push(new Step(CONTENTS, size));
+                }else{
+                    stack.push(new Step(SKIP, (long) size * width));
+                }
+                return true;
+
+            case ENUM:
+                //the constant's name follows the descriptor
+                handles.add(null);
+                stack.pop();
+                stack.push(new Step(CONTENT));
+                return true;
+
+            case CLASS:
+                handles.add(null);
+                stack.pop();
+                return true;
+
+            case ANNOTATION:
+                if(available < 1){
+                    return false;
+                }
+                if(buffer[position] == TC_ENDBLOCKDATA){
+                    position++;
+                    stack.pop();
+                }else{
+                    stack.push(new Step(CONTENT));
+                }
+                return true;
+
+            case SKIP:
+                if(step.remaining > Integer.MAX_VALUE - position){
+                    throw new StreamCorruptedException("Object too large");
+                }
+                int skipped = (int) Math.min(step.remaining, available);
+                position += skipped;
+                step.remaining -= skipped;
+                if(step.remaining > 0){
+                    return false;
+                }
+                stack.pop();
+                return true;
+
+            default:
+                throw new IllegalStateException("Unknown step " + step.kind);
+        }
+    }
+
+    /**
+     * Reads the type code of one object (or block of data) and replaces
+     * the CONTENT step with the steps that read the rest of it.
+     */
+    private boolean content(byte[] buffer, int length)
+            throws StreamCorruptedException {
+        int available = length - position;
+        if(available < 1){
+            return false;
+        }
+        byte typeCode = buffer[position];
+
+        switch(typeCode){
+            case TC_NULL:
+                position++;
+                stack.pop();
+                return true;
+            case TC_REFERENCE:
+                if(available < 5){
+                    return false;
+                }
+                position += 5;
+                stack.pop();
+                return true;
+            case TC_STRING:
+                if(available < 3){
+                    return false;
+                }
+                int shortLength = readUnsignedShort(buffer, position + 1);
+                position += 3;
+                handles.add(null);
+                replaceTop(new Step(SKIP, shortLength));
+                return true;
+            case TC_LONGSTRING:
+                if(available < 9){
+                    return false;
+                }
+                long longLength = readLong(buffer, position + 1);
+                if(longLength < 0){
+                    throw new StreamCorruptedException("Bad string length");
+                }
+                position += 9;
+                handles.add(null);
+                replaceTop(new Step(SKIP, longLength));
+                return true;
+            case TC_BLOCKDATA:
+                if(available < 2){
+                    return false;
+                }
+                int blockLength = buffer[position + 1] & 0xFF;
+                position += 2;
+                replaceTop(new Step(SKIP, blockLength));
+                return true;
+            case TC_BLOCKDATALONG:
+                if(available < 5){
+                    return false;
+                }
+                int longBlockLength = readInt(buffer, position + 1);
+                if(longBlockLength < 0){
+                    throw new StreamCorruptedException("Bad block length");
+                }
+                position += 5;
+                replaceTop(new Step(SKIP, longBlockLength));
+                return true;
+            case TC_RESET:
+                position++;
+                handles.clear();
+                return true;
+            case TC_EXCEPTION:
+                //the Throwable that broke off the writer's object
+                position++;
+                handles.clear();
+                return true;
+            case TC_OBJECT:
+                position++;
+                replaceTop(new Step(OBJECT));
+                stack.push(new Step(CLASS_DESC));
+                return true;
+            case TC_ARRAY:
+                position++;
+                replaceTop(new Step(ARRAY));
+                stack.push(new Step(CLASS_DESC));
+                return true;
+            case TC_ENUM:
+                position++;
+                replaceTop(new Step(ENUM));
+                stack.push(new Step(CLASS_DESC));
+                return true;
+            case TC_CLASS:
+                position++;
+                replaceTop(new Step(CLASS));
+                stack.push(new Step(CLASS_DESC));
+                return true;
+            case TC_CLASSDESC:
+            case TC_PROXYCLASSDESC:
+                replaceTop(new Step(CLASS_DESC));
+                return true;
+            default:
+                throw new StreamCorruptedException(String.format(
+                        "Unexpected type code %02X", typeCode));
+        }
+    }
+
+    /**
+     * Reads a class descriptor (or a null or a reference to one), leaving
+     * it in lastDesc. Stages: 0 reads the type code and the fixed part,
+     * 1 reads the fields, 2 the annotation, 3 the superclass descriptor,
+     * and 4 the interface names of a proxy class.
+     */
+    private boolean classDesc(Step step, byte[] buffer, int length)
+            throws StreamCorruptedException {
+        int available = length - position;
+        ClassInfo info = step.desc;
+
+        switch(step.stage){
+            case 0:
+                if(available < 1){
+                    return false;
+                }
+                byte typeCode = buffer[position];
+                if(typeCode == TC_NULL){
+                    position++;
+                    lastDesc = null;
+                    stack.pop();
+                    return true;
+                }
+                if(typeCode == TC_REFERENCE){
+                    if(available < 5){
+                        return false;
+                    }
+                    int handle = readInt(buffer, position + 1) -
+                            BASE_WIRE_HANDLE;
+                    if(handle < 0 || handle >= handles.size() ||
+                            handles.get(handle) == null){
+                        throw new StreamCorruptedException(
+                                "Bad class descriptor handle");
+                    }
+                    position += 5;
+                    lastDesc = handles.get(handle);
+                    stack.pop();
+                    return true;
+                }
+                if(typeCode == TC_PROXYCLASSDESC){
+                    if(available < 5){
+                        return false;
+                    }
+                    info = new ClassInfo(SC_SERIALIZABLE, (byte) 0);
+                    handles.add(info);
+                    step.remaining = readInt(buffer, position + 1);
+                    position += 5;
+                    step.desc = info;
+                    step.stage = 4;
+                    return true;
+                }
+                if(typeCode != TC_CLASSDESC){
+                    throw new StreamCorruptedException(String.format(
+                            "Unexpected type code %02X", typeCode));
+                }
+                if(available < 3){
+                    return false;
+                }
+                int nameLength = readUnsignedShort(buffer, position + 1);
+                //name, serialVersionUID, flags, number of fields
+                if(available < 3 + nameLength + 8 + 1 + 2){
+                    return false;
+                }
+                //an array class is named "[" and its element type code
+                byte elementType = nameLength >= 2 &&
+                        buffer[position + 3] == '[' ?
+                        buffer[position + 4] : 0;
+                position += 3 + nameLength + 8;
+                info = new ClassInfo(buffer[position], elementType);
+                handles.add(info);
+                step.remaining = readUnsignedShort(buffer, position + 1);
+                position += 3;
+                step.desc = info;
+                step.stage = 1;
+                return true;
+
+            case 1:
+                if(step.remaining == 0){
+                    step.stage = 2;
+                    stack.push(new Step(ANNOTATION));
+                    return true;
+                }
+                if(available < 3){
+                    return false;
+                }
+                int fieldNameLength = readUnsignedShort(buffer, position + 1);
+                if(available < 3 + fieldNameLength){
+                    return false;
+                }
+                byte fieldType = buffer[position];
+                int width = fieldWidth(fieldType);
+                if(width < 0){
+                    throw new StreamCorruptedException(
+                            "Bad field type " + (char) fieldType);
+                }
+                position += 3 + fieldNameLength;
+                step.remaining--;
+                if(width == 0){
+                    info.objectFields++;
+                    //the field's class name, as a String
+                    stack.push(new Step(CONTENT));
+                }else{
+                    info.primitiveBytes += width;
+                }
+                return true;
+
+            case 2:
+                step.stage = 3;
+                stack.push(new Step(CLASS_DESC));
+                return true;
+
+            case 3:
+                info.superDesc = lastDesc;
+                lastDesc = info;
+                stack.pop();
+                return true;
+
+            case 4:
+                if(step.remaining == 0){
+                    step.stage = 2;
+                    stack.push(new Step(ANNOTATION));
+                    return true;
+                }
+                if(available < 2){
+                    return false;
+                }
+                int interfaceLength = readUnsignedShort(buffer, position);
+                if(available < 2 + interfaceLength){
+                    return false;
+                }
+                position += 2 + interfaceLength;
+                step.remaining--;
+                return true;
+
+            default:
+                throw new IllegalStateException("Unknown stage " + step.stage);
+        }
+    }
+
+    /**
+     * Reads the data of an object once its class descriptor is known,
+     * one class at a time from the topmost serializable superclass down.
+     */
+    private boolean object(Step step) throws StreamCorruptedException {
+        if(step.stage == 0){
+            if(lastDesc == null){
+                throw new StreamCorruptedException("Object without class");
+            }
+            handles.add(null);
+            List<ClassInfo> hierarchy = new ArrayList<>();
+            for(ClassInfo c = lastDesc; c != null; c = c.superDesc){
+                hierarchy.add(0, c);
+            }
+            step.hierarchy = hierarchy;
+            step.stage = 1;
+        }
+        if(step.remaining == step.hierarchy.size()){
+            stack.pop();
+            return true;
+        }
+
+        ClassInfo c = step.hierarchy.get((int) step.remaining++);
+        if((c.flags & SC_EXTERNALIZABLE) != 0){
+            if((c.flags & SC_BLOCK_DATA) == 0){
+                throw new StreamCorruptedException(
+                        "Externalizable data without block data");
+            }
+            stack.push(new Step(ANNOTATION));
+        }else if((c.flags & SC_SERIALIZABLE) != 0){
+            //pushed last to first: primitive values, object values, then
+            //whatever a writeObject method wrote after them
+            if((c.flags & SC_WRITE_METHOD) != 0){
+                stack.push(new Step(ANNOTATION));
+            }
+            if(c.objectFields > 0){
+                stack.push(new Step(CONTENTS, c.objectFields));
+            }
+            if(c.primitiveBytes > 0){
+                stack.push(new Step(SKIP, c.primitiveBytes));
+            }
+        }
+        return true;
+    }
+
+    private void replaceTop(Step step){
+        stack.pop();
+        stack.push(step);
+    }
+
+    /**
+     * Returns the number of bytes a field or array element of the given
+     * type code takes, 0 for object types, or -1 for an unknown code.
+     */
+    private static int fieldWidth(byte typeCode){
+        switch(typeCode){
+            case 'B': case 'Z':
+                return 1;
+            case 'C': case 'S':
+                return 2;
+            case 'I': case 'F':
+                return 4;
+            case 'J': case 'D':
+                return 8;
+            case 'L': case '[':
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] buffer, int at){
+        return ((buffer[at] & 0xFF) << 8) | (buffer[at + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] buffer, int at){
+        return ((buffer[at] & 0xFF) << 24) | ((buffer[at + 1] & 0xFF) << 16) |
+                ((buffer[at + 2] & 0xFF) << 8) | (buffer[at + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] buffer, int at){
+        return ((long) readInt(buffer, at) << 32) |
+                (readInt(buffer, at + 4) & 0xFFFFFFFFL);
+    }
+
+    // ****************************** //
+    //   Nested Classes               //
+    // ****************************** //
+
+    /**
+     * What the scanner needs to know about a class descriptor to skip over
+     * the data of its instances.
+     */
+    private static final class ClassInfo {
+        private final int flags;
+        //type code of the elements if this is an array class, else 0
+        private final byte elementType;
+        private int primitiveBytes;
+        private int objectFields;
+        private ClassInfo superDesc;
+
+        private ClassInfo(int flags, byte elementType){
+            this.flags = flags;
+            this.elementType = elementType;
+        }
+    }
+
+    /**
+     * One part of the stream still to be read.
+     */
+    private static final class Step {
+        private final int kind;
+        private int stage;
+        //bytes to skip, items to read, or (for an OBJECT) classes done
+        private long remaining;
+        private ClassInfo desc;
+        private List<ClassInfo> hierarchy;
+
+        private Step(int kind){
+            this.kind = kind;
+        }
+
+        private Step(int kind, long remaining){
+            this.kind = kind;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package Utility;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Provides an interface for more specific protocols to use as an outline. Each
  * component (Bank, AH, Agent) of a PublicAuction has a definition for
  * their own protocol which defines how messages should be handled.
+ * A protocol may also answer some messages asynchronously, by overriding
+ * handleMessageAsync(); the servers use it so that a request waiting for
+ * its reply does not have to hold a thread.
  * created: 11/23/18 by thf
- * last modified: 11/23/18 by thf
+ * last modified: 10/18/26 by thf (handleMessageAsync())
+ * previously modified: 11/23/18 by thf
  * previously modified: 11/23/18 by thf (creation)
  * @author Tyler Fenske (thf)
  * @author Warren D. Craft (wdc)
@@ -23,4 +30,18 @@ public interface PublicAuctionProtocol {
      */
     public Message handleMessage(Message message);
 
+    /**
+     * As handleMessage(), but returns the reply message as a
+     * CompletionStage, which may complete later on another thread. The
+     * default handles the message at once with handleMessage(), so the
+     * stage returned is already complete.
+     * @param message received message that will be read
+     * @return CompletionStage of the reply message that will be sent to
+     * the original sender
+     */
+    public default CompletionStage<Message> handleMessageAsync(
+            Message message) {
+        return CompletableFuture.completedFuture(handleMessage(message));
+    }
+
 }
@@ -0,0 +1,704 @@
+package Utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An alternative to the thread-per-connection NotificationServer, built on
+ * NIO Selectors. A small fixed set of event-loop threads owns all of the
+ * client sockets and only does non-blocking reads and writes; every complete
+ * Message is handed to a worker pool, which calls the same
+ * PublicAuctionProtocol.handleMessage() used by the NotificationServer. An
+ * idle connection therefore costs a socket and a few small objects instead
+ * of a whole thread stack.
+ *
+ * The bytes on the wire are exactly those produced by an ObjectOutputStream
+ * (stream header on connect, then one object per message with a TC_RESET
+ * marker between messages), so existing CommunicationService clients talk
+ * to this server without any change. Messages from one connection are still
+ * handled one at a time and in order, as with the NotificationServer. A
+ * client that offers the binary codec (see MessageCodec) is switched to
+ * length-prefixed binary frames, which are much cheaper to decode here;
+ * requests on such a connection that carry a correlation ID may be handled
+ * concurrently and answered out of order, and may be answered
+ * asynchronously by the protocol.
+ * A serialized Message is only deserialized once all of it has arrived,
+ * which an ObjectStreamScanner works out from the bytes as they come in.
+ * A connection that sends something other than a Message is closed
+ * without affecting the others on its event loop, and a request the
+ * protocol fails on is answered with REQUEST_FAILED.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (frame lengths checked on arrival)
+ * previously modified: 10/18/26 by thf (failures kept to one connection)
+ * previously modified: 10/18/26 by thf (accept back-off)
+ * previously modified: 10/18/26 by thf (scanning for complete objects)
+ * previously modified: 10/18/26 by thf (asynchronous replies)
+ * previously modified: 10/18/26 by thf (cached bytes for SharedMessages)
+ * previously modified: 10/18/26 by thf (concurrent pipelined requests)
+ * previously modified: 10/18/26 by thf (binary codec connections)
+ * previously modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+public class SelectorNotificationServer implements Runnable {
+
+    // system property setting the number of worker threads, e.g.
+    // java -Dpublicauction.selectorWorkers=64 -jar Bank.jar
+    public static final String WORKERS_PROPERTY =
+            "publicauction.selectorWorkers";
+
+    // first 4 bytes of every Java serialization stream (magic + version)
+    private static final byte[] STREAM_HEADER =
+            {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+    private static final byte TC_RESET = 0x79;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private ServerSocketChannel serverChannel;
+    private PublicAuctionProtocol protocol;
+    private EventLoop[] eventLoops;
+    private ExecutorService workers;
+    private int nextEventLoop = 0;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * A selector-based server using one event loop per two available
+     * processors and a worker pool for running the protocol of four
+     * threads per processor, or as many as the
+     * "publicauction.selectorWorkers" system property gives.
+     * @param portNumber port number used to host this server on.
+     * @param protocol protocol for handling incoming messages.
+     * @throws IOException
+     */
+    public SelectorNotificationServer(int portNumber,
+                                      PublicAuctionProtocol protocol)
+            throws IOException {
+        this(portNumber, protocol,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Executors.newFixedThreadPool(
+                        Math.max(1, Integer.getInteger(WORKERS_PROPERTY,
+                                4 * Runtime.getRuntime()
+                                        .availableProcessors())),
+                        new NamedThreadFactory("notification-worker")));
+    }
+
+    /**
+     * A selector-based server with an explicit number of event loops and
+     * the ExecutorService that will run PublicAuctionProtocol.handleMessage().
+     * The protocol may block (e.g. an AuctionHouse asking the Bank about
+     * funds), so the worker pool should be sized accordingly.
+     * @param portNumber port number used to host this server on.
+     * @param protocol protocol for handling incoming messages.
+     * @param numEventLoops number of selector threads to spread sockets over
+     * @param workers pool that runs the protocol for each message
+     * @throws IOException
+     */
+    public SelectorNotificationServer(int portNumber,
+                                      PublicAuctionProtocol protocol,
+                                      int numEventLoops,
+                                      ExecutorService workers)
+            throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNumber));
+        this.protocol = protocol;
+        this.workers = workers;
+        eventLoops = new EventLoop[Math.max(1, numEventLoops)];
+        for(int i = 0; i < eventLoops.length; i++){
+            eventLoops[i] = new EventLoop();
+        }
+    }
+
+    // ****************************** //
+    //   Override Fxns                //
+    // ****************************** //
+
+    /**
+     * Starts the event loop threads, then waits for socket connection
+     * requests from clients. Each accepted socket is switched to
+     * non-blocking mode and handed to the next event loop in turn. Stops
+     * once the server channel is closed; while accept() keeps failing for
+     * any other reason, waits longer and longer between attempts.
+     */
+    @Override
+    public void run(){
+        for(int i = 0; i < eventLoops.length; i++){
+            Thread loopThread = new Thread(eventLoops[i],
+                    "selector-loop-" + i);
+            loopThread.start();
+        }
+
+        int failures = 0;
+        while(serverChannel.isOpen()){
+            SocketChannel clientChannel = null;
+            try{
+                clientChannel = serverChannel.accept();
+                failures = 0;
+                clientChannel.configureBlocking(false);
+                clientChannel.socket().setTcpNoDelay(true);
+                eventLoops[nextEventLoop].register(clientChannel);
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            }catch(IOException e){
+                if(clientChannel != null){
+                    // accepted, but could not be set up
+                    try{
+                        clientChannel.close();
+                    }catch(IOException ignored){
+                        // already closed
+                    }
+                    continue;
+                }
+                if(!serverChannel.isOpen()){
+                    return;
+                }
+                if(!NotificationServer.backOffAfterAcceptFailure(e,
+                        ++failures)){
+                    return;
+                }
+            }
+        }
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    // ****************************** //
+
+    /**
+     * Serializes a reply the way the NotificationServer's ObjectOutputStream
+     * would: a TC_RESET marker (so the client forgets the handles of the
+     * previous message) followed by the object itself, without the stream
+     * header, which was sent once when the connection was accepted. A
+     * SharedMessage is not serialized again; its cached bytes are used.
+     * @param message reply to be encoded (may be null)
+     * @return ByteBuffer ready to be written to the channel
+     * @throws IOException
+     */
+    private static ByteBuffer encode(Message message) throws IOException {
+        if(message instanceof SharedMessage){
+            byte[] cached = ((SharedMessage<?>) message).getObjectBytes();
+            ByteBuffer frame = ByteBuffer.allocate(cached.length + 1);
+            frame.put(TC_RESET);
+            frame.put(cached);
+            frame.flip();
+            return frame;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.flush();
+
+        byte[] serialized = bytes.toByteArray();
+        ByteBuffer frame = ByteBuffer.allocate(
+                serialized.length - STREAM_HEADER.length + 1);
+        frame.put(TC_RESET);
+        frame.put(serialized, STREAM_HEADER.length,
+                serialized.length - STREAM_HEADER.length);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Thread factory giving worker and event loop threads readable names.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix){
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r){
+            return new Thread(r, prefix + "-" + count.incrementAndGet());
+        }
+    }
+
+    /**
+     * One selector thread. Owns the SelectionKeys of its connections; other
+     * threads (the acceptor and the workers) only ever hand it tasks through
+     * its queue, then wake it up.
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // shared by every connection of this loop, so an idle connection
+        // holds no read buffer of its own
+        private final ByteBuffer readBuffer =
+                ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Queues a task to be run on this loop's thread.
+         * @param task work that touches this loop's SelectionKeys
+         */
+        void execute(Runnable task){
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Registers a newly accepted channel with this loop and queues the
+         * serialization stream header the client is waiting for.
+         * @param channel non-blocking client channel
+         */
+        void register(SocketChannel channel){
+            execute(() -> {
+                try{
+                    Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector,
+                            SelectionKey.OP_READ, connection);
+                    connection.write(ByteBuffer.wrap(STREAM_HEADER));
+                }catch(ClosedChannelException e){
+                    // client went away before we got to it
+                }
+            });
+        }
+
+        @Override
+        public void run(){
+            while(true){
+                try{
+                    selector.select();
+
+                    Runnable task;
+                    while((task = tasks.poll()) != null){
+                        try{
+                            task.run();
+                        }catch(RuntimeException e){
+                            e.printStackTrace();
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys =
+                            selector.selectedKeys().iterator();
+                    while(keys.hasNext()){
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection =
+                                (Connection) key.attachment();
+                        //a failure on one connection closes only that one
+                        try{
+                            if(!key.isValid()){
+                                connection.close();
+                                continue;
+                            }
+                            if(key.isReadable()){
+                                connection.onReadable(readBuffer);
+                            }
+                            if(key.isValid() && key.isWritable()){
+                                connection.flushWrites();
+                            }
+                        }catch(RuntimeException e){
+                            e.printStackTrace();
+                            connection.close();
+                        }
+                    }
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-client state: the bytes of a partially received Message (if any),
+     * replies waiting to be written, and the requests waiting for the
+     * previous one from this client to finish.
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final EventLoop eventLoop;
+        private SelectionKey key;
+
+        // only touched by the event loop thread
+        private byte[] inBuffer;
+        private int inLength;
+        private boolean headerReceived = false;
+        private final ObjectStreamScanner scanner =
+                new ObjectStreamScanner();
+        // set if the scanner could not follow this client's stream; every
+        // attempt then deserializes whatever has arrived, as a fallback
+        private boolean scannerFailed = false;
+        // set on the event loop once the binary codec has been accepted;
+        // read by workers to choose how to encode replies
+        private volatile boolean binary = false;
+
+        private final Queue<ByteBuffer> writeQueue =
+                new ConcurrentLinkedQueue<>();
+
+        // guarded by this
+        private final Queue<Message> pendingRequests = new ArrayDeque<>();
+        private boolean busy = false;
+
+        Connection(SocketChannel channel, EventLoop eventLoop){
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+        }
+
+        /**
+         * Reads whatever is available and dispatches every complete Message.
+         * A client whose bytes cannot be read as Messages, e.g. a corrupt
+         * frame or an object that is not a Message, is disconnected.
+         * Runs on the event loop thread.
+         * @param readBuffer the loop's shared read buffer
+         */
+        void onReadable(ByteBuffer readBuffer){
+            try{
+                readBuffer.clear();
+                int count = channel.read(readBuffer);
+                if(count < 0){
+                    close();
+                    return;
+                }
+                readBuffer.flip();
+                append(readBuffer);
+
+                Message message;
+                while((message = decodeNext()) != null){
+                    if(!binary && MessageCodec.isOffer(message)){
+                        answerOffer(message);
+                    }else{
+                        dispatch(message);
+                    }
+                }
+            }catch(IOException | ClassNotFoundException |
+                    RuntimeException e){
+                close();
+            }
+        }
+
+        /**
+         * Appends freshly read bytes to this connection's input buffer,
+         * growing it if needed.
+         */
+        private void append(ByteBuffer data){
+            int needed = inLength + data.remaining();
+            if(inBuffer == null){
+                inBuffer = new byte[Math.max(needed, 512)];
+            }else if(needed > inBuffer.length){
+                inBuffer = Arrays.copyOf(inBuffer,
+                        Math.max(needed, inBuffer.length * 2));
+            }
+            data.get(inBuffer, inLength, data.remaining());
+            inLength = needed;
+        }
+
+        /**
+         * Drops the first n bytes of the input buffer. When nothing is left
+         * the buffer itself is released, keeping idle connections small.
+         */
+        private void consume(int n){
+            inLength -= n;
+            if(inLength == 0){
+                inBuffer = null;
+            }else{
+                System.arraycopy(inBuffer, n, inBuffer, 0, inLength);
+            }
+        }
+
+        /**
+         * Answers a binary codec offer directly from the event loop. The
+         * answer still goes out as a serialized object; if it is an
+         * acceptance, every later frame in either direction is binary. The
+         * client waits for the answer before sending anything else, so no
+         * request can be caught between the two encodings.
+         */
+        private void answerOffer(Message offer) throws IOException {
+            Message answer = MessageCodec.answerOffer(offer);
+            write(encode(answer));
+            if(MessageCodec.isAcceptance(answer)){
+                binary = true;
+            }
+        }
+
+        /**
+         * Takes one binary frame from the front of the input buffer.
+         * @return the next Message, or null if it has not fully arrived
+         * @throws IOException if the frame is corrupt
+         */
+        private Message decodeNextFrame() throws IOException {
+            if(inLength < 4){
+                return null;
+            }
+            int length = ((inBuffer[0] & 0xFF) << 24) |
+                    ((inBuffer[1] & 0xFF) << 16) |
+                    ((inBuffer[2] & 0xFF) << 8) |
+                    (inBuffer[3] & 0xFF);
+            // checked before waiting for the body, so a corrupt length
+            // cannot make this connection buffer without end
+            MessageCodec.checkFrameLength(length);
+            if(inLength < 4 + length){
+                return null;
+            }
+            Message message =
+                    MessageCodec.decode(inBuffer, 4, length).getMessage();
+            if(message == null){
+                // a null Message ends the conversation, as it does for
+                // the NotificationServer
+                throw new EOFException("Client sent no Message");
+            }
+            consume(4 + length);
+            return message;
+        }
+
+        /**
+         * Deserializes one Message from the front of the input buffer once
+         * the scanner has seen all of it. Since the client resets its
+         * stream after every message, each Message can be read on its own
+         * by a fresh ObjectInputStream that is fed the stream header
+         * followed by the Message's bytes.
+         * @return the next Message, or null if it has not fully arrived
+         * @throws IOException if the stream is corrupt
+         * @throws ClassNotFoundException
+         */
+        private Message decodeNext()
+                throws IOException, ClassNotFoundException {
+            if(binary){
+                return decodeNextFrame();
+            }
+            if(!headerReceived){
+                if(inLength < STREAM_HEADER.length){
+                    return null;
+                }
+                for(int i = 0; i < STREAM_HEADER.length; i++){
+                    if(inBuffer[i] != STREAM_HEADER[i]){
+                        throw new IOException("Not a serialization stream");
+                    }
+                }
+                headerReceived = true;
+                consume(STREAM_HEADER.length);
+            }
+            if(inLength == 0){
+                return null;
+            }
+
+            int objectLength = inLength;
+            if(!scannerFailed){
+                try{
+                    objectLength = scanner.scan(inBuffer, inLength);
+                }catch(StreamCorruptedException e){
+                    scannerFailed = true;
+                    objectLength = inLength;
+                }
+                if(objectLength < 0){
+                    return null;
+                }
+            }
+
+            ByteArrayInputStream body =
+                    new ByteArrayInputStream(inBuffer, 0, objectLength);
+            Message message;
+            try{
+                ObjectInputStream in = new ObjectInputStream(
+                        new SequenceInputStream(
+                                new ByteArrayInputStream(STREAM_HEADER),
+                                body));
+                message = (Message) in.readObject();
+            }catch(EOFException partial){
+                if(!scannerFailed){
+                    // the scanner thought the object had all arrived
+                    scannerFailed = true;
+                    return decodeNext();
+                }
+                return null;
+            }
+            consume(objectLength - body.available());
+            return message;
+        }
+
+        /**
+         * Hands a request to the worker pool, or queues it behind the
+         * request from this client that is still being handled. Requests
+         * carrying a correlation ID (binary connections only) are
+         * independent of one another and go straight to the pool.
+         */
+        private void dispatch(Message message){
+            if(binary && message.getCorrelationID() != 0){
+                workers.execute(() -> reply(message));
+                return;
+            }
+            synchronized(this){
+                if(busy){
+                    pendingRequests.add(message);
+                    return;
+                }
+                busy = true;
+            }
+            workers.execute(() -> handle(message));
+        }
+
+        /**
+         * Runs the protocol for one request on a worker thread, queues the
+         * reply, then moves on to the next request from this client. If
+         * that fails outright, the client is disconnected rather than left
+         * waiting behind a request that will never finish.
+         */
+        private void handle(Message message){
+            Message next = message;
+            try{
+                while(next != null){
+                    reply(next);
+                    synchronized(this){
+                        next = pendingRequests.poll();
+                        if(next == null){
+                            busy = false;
+                        }
+                    }
+                }
+            }finally{
+                if(next != null){
+                    synchronized(this){
+                        pendingRequests.clear();
+                        busy = false;
+                    }
+                    eventLoop.execute(this::close);
+                }
+            }
+        }
+
+        /**
+         * Runs the protocol for one request and queues the reply, encoded
+         * the way this connection expects. Binary replies carry the
+         * correlation ID of their request. A request with a correlation ID
+         * may be answered asynchronously (see
+         * PublicAuctionProtocol.handleMessageAsync()): its reply is queued
+         * whenever it completes, without holding this worker. Any other
+         * request is waited for, so replies keep the order of requests.
+         * If the protocol fails, the client is sent REQUEST_FAILED.
+         */
+        private void reply(Message request){
+            CompletableFuture<Message> replyMessage;
+            try{
+                replyMessage = protocol.handleMessageAsync(request)
+                        .toCompletableFuture();
+            }catch(RuntimeException e){
+                replyMessage = CompletableFuture.failedFuture(e);
+            }
+            if(binary && request.getCorrelationID() != 0){
+                replyMessage.whenComplete((completed, failure) ->
+                        send(request, failure == null ? completed :
+                                failedReply(failure)));
+            }else{
+                Message completed;
+                try{
+                    completed = replyMessage.join();
+                }catch(RuntimeException e){
+                    completed = failedReply(e);
+                }
+                send(request, completed);
+            }
+        }
+
+        /**
+         * The reply to a request the protocol failed to handle.
+         * @param failure what the protocol threw
+         * @return REQUEST_FAILED Message
+         */
+        private Message failedReply(Throwable failure){
+            failure.printStackTrace();
+            return new Message<>(Message.MessageIdentifier.REQUEST_FAILED,
+                    null);
+        }
+
+        /**
+         * Queues the reply to a request. Safe to call from any thread.
+         */
+        private void send(Message request, Message replyMessage){
+            try{
+                write(binary ?
+                        ByteBuffer.wrap(MessageCodec.encode(replyMessage,
+                                request.getCorrelationID())) :
+                        encode(replyMessage));
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Queues bytes for this client and asks the event loop to flush
+         * them. Safe to call from any thread.
+         */
+        void write(ByteBuffer data){
+            writeQueue.add(data);
+            eventLoop.execute(this::flushWrites);
+        }
+
+        /**
+         * Writes as much of the queued output as the socket will take,
+         * registering interest in OP_WRITE only while output remains.
+         * Runs on the event loop thread.
+         */
+        void flushWrites(){
+            if(key == null || !key.isValid()){
+                return;
+            }
+            try{
+                ByteBuffer head;
+                while((head = writeQueue.peek()) != null){
+                    channel.write(head);
+                    if(head.hasRemaining()){
+                        key.interestOps(key.interestOps() |
+                                SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    writeQueue.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }catch(IOException e){
+                close();
+            }
+        }
+
+        /**
+         * Closes the channel and releases everything held for this client.
+         */
+        void close(){
+            if(key != null){
+                key.cancel();
+            }
+            try{
+                channel.close();
+            }catch(IOException e){
+                // already closed
+            }
+            inBuffer = null;
+            writeQueue.clear();
+            synchronized(this){
+                pendingRequests.clear();
+            }
+        }
+    }
+}
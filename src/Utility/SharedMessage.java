@@ -0,0 +1,167 @@
+package Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+
+/**
+ * An immutable Message that is sent to many connections, such as the
+ * AuctionHouseInventory broadcast to every connected agent. Its content is
+ * encoded at most once per wire format (binary codec frame body, Java
+ * serialization bytes) and the cached bytes are then written to every
+ * connection, instead of each connection encoding the same content again.
+ *
+ * The content must not be changed once the SharedMessage has been created,
+ * so callers should hand it a snapshot. On the wire a SharedMessage is an
+ * ordinary Message; peers never see this class.
+ * created: 10/18/26 by thf
+ * last modified: 10/18/26 by thf (creation)
+ * @author Tyler Fenske (thf)
+ * @author Warren D. Craft (wdc)
+ * @author Liam Brady (lb)
+ */
+public class SharedMessage <T> extends Message<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    // first 4 bytes of every Java serialization stream (magic + version)
+    private static final int STREAM_HEADER_LENGTH = 4;
+
+    // guarded by this; computed on first use
+    private transient byte[] frameBody;
+    private transient byte[] objectBytes;
+
+    // ****************************** //
+    //   Constructor(s)               //
+    // ****************************** //
+
+    /**
+     * Public constructor for a SharedMessage.
+     * @param messageIdentifier enum identifying the type of message
+     * @param messageContent snapshot of the message information, which
+     *                       must not be modified afterwards
+     */
+    public SharedMessage(MessageIdentifier messageIdentifier,
+                         T messageContent){
+        super(messageIdentifier, messageContent);
+    }
+
+    // ****************************** //
+    //   Getter(s) & Setter(s)        //
+    // ****************************** //
+
+    /**
+     * A SharedMessage is immutable, as its encodings are cached.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setMessageContent(T messageContent) {
+        throw new UnsupportedOperationException(
+                "SharedMessage content cannot be changed");
+    }
+
+    /**
+     * A SharedMessage is immutable; correlation IDs for the requests it is
+     * sent in are put in each frame instead.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCorrelationID(long correlationID) {
+        throw new UnsupportedOperationException(
+                "SharedMessage cannot carry a correlation ID");
+    }
+
+    /**
+     * Returns the binary codec encoding of this Message (identifier and
+     * payload, i.e. a frame without its length and correlation ID),
+     * encoding it on first use.
+     * @return cached frame body; must not be modified
+     * @throws IOException
+     */
+    synchronized byte[] getFrameBody() throws IOException {
+        if(frameBody == null){
+            frameBody = MessageCodec.encodeBody(this);
+        }
+        return frameBody;
+    }
+
+    /**
+     * Returns this Message serialized as a plain Message, without the
+     * stream header, encoding it on first use. These are exactly the bytes
+     * an ObjectOutputStream writes for the Message right after a reset.
+     * @return cached serialized bytes; must not be modified
+     * @throws IOException
+     */
+    synchronized byte[] getObjectBytes() throws IOException {
+        if(objectBytes == null){
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(toMessage());
+            out.flush();
+
+            byte[] serialized = bytes.toByteArray();
+            objectBytes = new byte[serialized.length - STREAM_HEADER_LENGTH];
+            System.arraycopy(serialized, STREAM_HEADER_LENGTH, objectBytes, 0,
+                    objectBytes.length);
+        }
+        return objectBytes;
+    }
+
+    // ****************************** //
+    //   Public Methods               //
+    // ****************************** //
+
+    /**
+     * Writes a Message to an ObjectOutputStream the way every sender in
+     * Public Auction does (write, flush, reset), except that the cached
+     * bytes of a SharedMessage are written straight to the underlying
+     * stream rather than serialized again.
+     * @param out ObjectOutputStream of the connection
+     * @param rawOut the OutputStream that out writes to
+     * @param message Message to send (may be null)
+     * @throws IOException
+     */
+    public static void writeObject(ObjectOutputStream out,
+                                   OutputStream rawOut,
+                                   Message message) throws IOException {
+        if(message instanceof SharedMessage){
+            byte[] cached = ((SharedMessage<?>) message).getObjectBytes();
+            // everything before (including the last reset marker) must be
+            // on the wire ahead of the cached object
+            out.flush();
+            rawOut.write(cached);
+            rawOut.flush();
+            // the receiver assigned handles to the cached object; reset so
+            // both ends start the next Message from an empty handle table
+            out.reset();
+            return;
+        }
+        out.writeObject(message);
+        out.flush();
+        out.reset();
+    }
+
+    // ****************************** //
+    //   Utility Fxns                 //
+    // ****************************** //
+
+    /**
+     * Returns a plain Message with the same identifier and content.
+     * @return Message
+     */
+    private Message<T> toMessage(){
+        return new Message<>(getMessageIdentifier(), getMessageContent());
+    }
+
+    /**
+     * Serialization hook: a SharedMessage is always sent as a plain
+     * Message, so peers never need this class.
+     * @return plain Message to serialize in place of this one
+     * @throws ObjectStreamException
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return toMessage();
+    }
+}